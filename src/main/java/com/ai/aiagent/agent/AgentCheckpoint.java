@@ -0,0 +1,20 @@
+package com.ai.aiagent.agent;
+
+import com.ai.aiagent.agent.model.AgentState;
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.List;
+
+/**
+ * 智能体运行的检查点，每一步结束后保存
+ *
+ * @param runId       运行 ID
+ * @param agentName   智能体名称
+ * @param currentStep 已完成的步骤数
+ * @param state       保存时的状态
+ * @param messages    完整的消息历史
+ * @param updatedAt   保存时间（毫秒）
+ */
+public record AgentCheckpoint(String runId, String agentName, int currentStep, AgentState state,
+                              List<Message> messages, long updatedAt) {
+}
@@ -0,0 +1,320 @@
+package com.ai.aiagent.agent;
+
+import com.ai.aiagent.agent.model.AgentState;
+import com.ai.aiagent.chatmemory.MessageCodec;
+import com.ai.aiagent.constant.FileConstant;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * 智能体检查点存储
+ *
+ * 每个运行一个文件，每一步结束后整体重写：先写临时文件再原子替换，进程在写入过程中崩溃也不会留下损坏的检查点。
+ * 消息使用 MessageCodec 编码。目录可配置到共享存储上，这样任意节点都可以恢复运行。
+ * 启动时清理超过保留时间的检查点。
+ * <p>
+ * 执行中的运行持有租约文件 [runId].lock，内容为持有者和到期时间，以 CREATE_NEW 原子创建，每保存一次检查点续约一次。
+ * 多个节点同时恢复同一个运行时只有一个能拿到租约；持有者崩溃后租约到期，其他节点才能接管。
+ * 接管时先把过期的租约改名移走并核对内容，移走的若是别人刚创建的新租约，对方下次续约失败后停止运行，不会出现两个节点同时写检查点。
+ */
+@Component
+@Slf4j
+public class AgentCheckpointStore {
+
+    private static final int FORMAT_VERSION = 1;
+    private static final String SUFFIX = ".ckpt";
+    private static final String LOCK_SUFFIX = ".lock";
+    private static final Duration DEFAULT_LEASE_TIMEOUT = Duration.ofMinutes(10);
+    // 运行 ID 直接作为文件名，只允许安全字符
+    private static final Pattern RUN_ID_PATTERN = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    private final Path directory;
+    private final Duration retention;
+    private final Duration leaseTimeout;
+    private final MessageCodec codec = new MessageCodec();
+    // 本节点的租约持有者标识，进程重启后变化
+    private final String owner = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID();
+
+    public AgentCheckpointStore(String directory, Duration retention) {
+        this(directory, retention, DEFAULT_LEASE_TIMEOUT);
+    }
+
+    /**
+     * @param directory    检查点目录，为空时使用 tmp/agent-checkpoints
+     * @param retention    检查点保留时间
+     * @param leaseTimeout 租约有效期，应长于单步的最长执行时间
+     */
+    @Autowired
+    public AgentCheckpointStore(@Value("${agent.checkpoint.dir:}") String directory,
+                                @Value("${agent.checkpoint.retention:24h}") Duration retention,
+                                @Value("${agent.checkpoint.lease-timeout:10m}") Duration leaseTimeout) {
+        if (directory == null || directory.isBlank()) {
+            directory = FileConstant.FILE_SAVE_DIR + "/agent-checkpoints";
+        }
+        if (leaseTimeout == null || leaseTimeout.isNegative() || leaseTimeout.isZero()) {
+            throw new IllegalArgumentException("leaseTimeout must be greater than 0");
+        }
+        this.directory = Paths.get(directory);
+        this.retention = retention;
+        this.leaseTimeout = leaseTimeout;
+        try {
+            Files.createDirectories(this.directory);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot create checkpoint directory: " + directory, e);
+        }
+        purgeExpired();
+    }
+
+    /**
+     * 保存检查点，覆盖该运行之前的检查点
+     */
+    public void save(AgentCheckpoint checkpoint) {
+        Path file = fileOf(checkpoint.runId());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.write(temp, serialize(checkpoint));
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            // 检查点只用于恢复，保存失败不影响本次运行
+            log.error("保存检查点失败, runId: {}", checkpoint.runId(), e);
+        }
+    }
+
+    public Optional<AgentCheckpoint> load(String runId) {
+        if (!isValidRunId(runId)) {
+            return Optional.empty();
+        }
+        Path file = fileOf(runId);
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(deserialize(Files.readAllBytes(file)));
+        } catch (IOException | RuntimeException e) {
+            log.error("读取检查点失败, runId: {}", runId, e);
+            return Optional.empty();
+        }
+    }
+
+    public void delete(String runId) {
+        if (!isValidRunId(runId)) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(fileOf(runId));
+        } catch (IOException e) {
+            log.warn("删除检查点失败, runId: {}", runId, e);
+        }
+    }
+
+    /**
+     * 获取运行的租约，租约被其他节点持有且未到期时返回 false
+     */
+    public boolean acquireLease(String runId) {
+        Path lock = lockOf(runId);
+        // 第二次尝试用于接管过期租约或租约恰好被释放的情况
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                Files.write(lock, leaseContent(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                return true;
+            } catch (FileAlreadyExistsException e) {
+                Lease current = readLease(lock);
+                if (current == null) {
+                    continue;
+                }
+                if (owner.equals(current.owner())) {
+                    return renewLease(runId);
+                }
+                if (current.expiresAt() > System.currentTimeMillis() || !removeExpired(lock, current)) {
+                    return false;
+                }
+                log.warn("运行 {} 的租约已过期，接管自 {}", runId, current.owner());
+            } catch (IOException e) {
+                log.error("获取运行租约失败, runId: {}", runId, e);
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 延长本节点持有的租约
+     *
+     * @return 租约已不属于本节点（已过期被接管或已被删除）时返回 false
+     */
+    public boolean renewLease(String runId) {
+        Path lock = lockOf(runId);
+        try {
+            Lease current = readLease(lock);
+            if (current == null || !owner.equals(current.owner())) {
+                return false;
+            }
+            Path temp = lock.resolveSibling(lock.getFileName() + "." + UUID.randomUUID() + ".tmp");
+            Files.write(temp, leaseContent());
+            Files.move(temp, lock, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            log.error("续约失败, runId: {}", runId, e);
+            return false;
+        }
+    }
+
+    /**
+     * 释放本节点持有的租约
+     */
+    public void releaseLease(String runId) {
+        Path lock = lockOf(runId);
+        try {
+            Lease current = readLease(lock);
+            if (current != null && owner.equals(current.owner())) {
+                Files.deleteIfExists(lock);
+            }
+        } catch (IOException e) {
+            log.warn("释放运行租约失败, runId: {}", runId, e);
+        }
+    }
+
+    public static boolean isValidRunId(String runId) {
+        return runId != null && RUN_ID_PATTERN.matcher(runId).matches();
+    }
+
+    /**
+     * 删除超过保留时间的检查点
+     */
+    public void purgeExpired() {
+        long expireBefore = System.currentTimeMillis() - retention.toMillis();
+        // 崩溃遗留的租约文件和接管时移走的旧租约一并清理
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*{" + SUFFIX + "," + LOCK_SUFFIX + "*}")) {
+            for (Path file : files) {
+                if (Files.getLastModifiedTime(file).toMillis() < expireBefore) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("清理过期检查点失败", e);
+        }
+    }
+
+    private Path fileOf(String runId) {
+        if (!isValidRunId(runId)) {
+            throw new IllegalArgumentException("Invalid run id: " + runId);
+        }
+        return directory.resolve(runId + SUFFIX);
+    }
+
+    private Path lockOf(String runId) {
+        if (!isValidRunId(runId)) {
+            throw new IllegalArgumentException("Invalid run id: " + runId);
+        }
+        return directory.resolve(runId + LOCK_SUFFIX);
+    }
+
+    private byte[] leaseContent() {
+        long expiresAt = System.currentTimeMillis() + leaseTimeout.toMillis();
+        return (owner + "\n" + expiresAt).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 读取租约，文件不存在时返回 null。内容不完整（对方刚创建还没写完）时按文件修改时间加有效期计算到期时间
+     */
+    private Lease readLease(Path lock) throws IOException {
+        try {
+            String content = Files.readString(lock, StandardCharsets.UTF_8);
+            int separator = content.indexOf('\n');
+            if (separator > 0) {
+                try {
+                    return new Lease(content.substring(0, separator),
+                            Long.parseLong(content.substring(separator + 1).trim()));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+            return new Lease("", Files.getLastModifiedTime(lock).toMillis() + leaseTimeout.toMillis());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 把过期的租约改名移走，并核对移走的正是读到的那份租约
+     */
+    private boolean removeExpired(Path lock, Lease expired) throws IOException {
+        Path stale = lock.resolveSibling(lock.getFileName() + "." + UUID.randomUUID() + ".stale");
+        try {
+            Files.move(lock, stale, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            // 已被释放或被其他节点移走，重新尝试创建
+            return true;
+        }
+        Lease moved = readLease(stale);
+        if (!expired.equals(moved)) {
+            // 移走的是其他节点刚创建的租约，对方下次续约时失败并停止运行，本次不再接管
+            log.warn("接管租约时发生竞争，放弃接管: {}", lock.getFileName());
+            return false;
+        }
+        Files.deleteIfExists(stale);
+        return true;
+    }
+
+    private byte[] serialize(AgentCheckpoint checkpoint) throws IOException {
+        byte[] messages = codec.encodeAll(checkpoint.messages());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(messages.length + 128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(checkpoint.runId());
+            out.writeUTF(checkpoint.agentName() == null ? "" : checkpoint.agentName());
+            out.writeInt(checkpoint.currentStep());
+            out.writeUTF(checkpoint.state().name());
+            out.writeLong(checkpoint.updatedAt());
+            out.writeInt(messages.length);
+            out.write(messages);
+        }
+        return bytes.toByteArray();
+    }
+
+    private AgentCheckpoint deserialize(byte[] data) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported checkpoint version: " + version);
+            }
+            String runId = in.readUTF();
+            String agentName = in.readUTF();
+            int currentStep = in.readInt();
+            AgentState state = AgentState.valueOf(in.readUTF());
+            long updatedAt = in.readLong();
+            byte[] messages = new byte[in.readInt()];
+            in.readFully(messages);
+            return new AgentCheckpoint(runId, agentName, currentStep, state, codec.decodeAll(messages), updatedAt);
+        }
+    }
+
+    private record Lease(String owner, long expiresAt) {
+    }
+}
@@ -0,0 +1,292 @@
+package com.ai.aiagent.agent;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jsoup.Jsoup;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 智能体上下文管理
+ *
+ * 智能体自己维护的 messageList 保留完整历史，每一步发送给模型前由这里生成压缩后的视图：
+ * 1. 重复追加的 nextStepPrompt 只保留最后一条；
+ * 2. 工具输出中的 HTML 提取为纯文本，最近一次工具输出和更早的工具输出按不同长度截断；
+ * 3. 压缩后仍超出 Token 预算时，保留用户的原始任务，从最早的消息开始成组丢弃（工具调用与其结果一起丢弃）。
+ * 每一步的原始字符数、压缩后字符数和 Token 数记录在统计信息中，并累加到多个实例共享的 SharedStats。
+ * Token 估算器加载 BPE 词表的成本较高且线程安全，所有实例共用一个。
+ */
+@Slf4j
+public class AgentContextManager {
+
+    private static final TokenCountEstimator TOKEN_COUNT_ESTIMATOR = new JTokkitTokenCountEstimator();
+
+    private final int maxToolResultChars;
+    private final int staleToolResultChars;
+    private final int maxPromptTokens;
+
+    private final List<StepContextStats> stepStats = Collections.synchronizedList(new ArrayList<>());
+    // 跨实例累计的统计，为空时只记录本实例
+    private final SharedStats sharedStats;
+
+    public AgentContextManager() {
+        this((SharedStats) null);
+    }
+
+    public AgentContextManager(SharedStats sharedStats) {
+        this(4000, 800, 24000, sharedStats);
+    }
+
+    /**
+     * @param maxToolResultChars   最近一次工具输出保留的最大字符数
+     * @param staleToolResultChars 更早的工具输出保留的最大字符数
+     * @param maxPromptTokens      每一步发送给模型的消息 Token 预算（不含系统提示词）
+     */
+    public AgentContextManager(int maxToolResultChars, int staleToolResultChars, int maxPromptTokens) {
+        this(maxToolResultChars, staleToolResultChars, maxPromptTokens, null);
+    }
+
+    /**
+     * @param sharedStats 跨实例累计的统计，为空时只记录本实例
+     */
+    public AgentContextManager(int maxToolResultChars, int staleToolResultChars, int maxPromptTokens,
+                               SharedStats sharedStats) {
+        this.maxToolResultChars = maxToolResultChars;
+        this.staleToolResultChars = staleToolResultChars;
+        this.maxPromptTokens = maxPromptTokens;
+        this.sharedStats = sharedStats;
+    }
+
+    /**
+     * 生成本步发送给模型的消息列表，不修改原始历史
+     *
+     * @param messages       完整历史
+     * @param nextStepPrompt 每一步追加的提示词，为空时不做去重
+     * @param step           当前步骤，用于记录统计信息
+     */
+    public List<Message> prepare(List<Message> messages, String nextStepPrompt, int step) {
+        int lastToolResponseIndex = -1;
+        int lastNextStepPromptIndex = -1;
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            if (message instanceof ToolResponseMessage) {
+                lastToolResponseIndex = i;
+            } else if (isNextStepPrompt(message, nextStepPrompt)) {
+                lastNextStepPromptIndex = i;
+            }
+        }
+        long originalChars = 0;
+        List<Message> compacted = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            originalChars += charCount(message);
+            if (isNextStepPrompt(message, nextStepPrompt) && i != lastNextStepPromptIndex) {
+                continue;
+            }
+            if (message instanceof ToolResponseMessage toolResponseMessage) {
+                int limit = i == lastToolResponseIndex ? maxToolResultChars : staleToolResultChars;
+                compacted.add(compactToolResponse(toolResponseMessage, limit));
+            } else {
+                compacted.add(message);
+            }
+        }
+        int tokens = enforceBudget(compacted);
+        long compactedChars = compacted.stream().mapToLong(AgentContextManager::charCount).sum();
+        StepContextStats stats = new StepContextStats(step, messages.size(), compacted.size(),
+                originalChars, compactedChars, tokens);
+        stepStats.add(stats);
+        if (sharedStats != null) {
+            sharedStats.record(stats);
+        }
+        log.info("第 {} 步上下文: {} 条消息 {} 字符 -> {} 条消息 {} 字符，约 {} Token", step,
+                stats.originalMessages(), originalChars, stats.compactedMessages(), compactedChars, tokens);
+        return compacted;
+    }
+
+    /**
+     * 每一步的上下文大小
+     */
+    public List<StepContextStats> getStepStats() {
+        synchronized (stepStats) {
+            return new ArrayList<>(stepStats);
+        }
+    }
+
+    /**
+     * 超出预算时从最早的消息开始丢弃，第一条用户消息（原始任务）始终保留
+     *
+     * @return 最终的 Token 数
+     */
+    private int enforceBudget(List<Message> messages) {
+        List<Integer> tokens = new ArrayList<>(messages.size());
+        int total = 0;
+        for (Message message : messages) {
+            int count = estimateTokens(message);
+            tokens.add(count);
+            total += count;
+        }
+        int taskIndex = -1;
+        for (int i = 0; i < messages.size(); i++) {
+            if (messages.get(i) instanceof UserMessage) {
+                taskIndex = i;
+                break;
+            }
+        }
+        int removed = 0;
+        int cursor = taskIndex + 1;
+        // 至少保留最后两条消息（本步提示词和最近一次的结果）
+        while (total > maxPromptTokens && cursor < messages.size() - 2) {
+            int groupSize = groupSize(messages, cursor);
+            if (cursor + groupSize > messages.size() - 2) {
+                break;
+            }
+            for (int i = 0; i < groupSize; i++) {
+                messages.remove(cursor);
+                total -= tokens.remove(cursor);
+            }
+            removed += groupSize;
+        }
+        if (removed > 0) {
+            UserMessage notice = new UserMessage("（为控制上下文长度，已省略较早的 " + removed + " 条消息）");
+            messages.add(cursor, notice);
+            total += estimateTokens(notice);
+        }
+        return total;
+    }
+
+    /**
+     * 带工具调用的助手消息与紧随其后的工具结果必须一起丢弃，否则模型会收到不成对的调用
+     */
+    private static int groupSize(List<Message> messages, int index) {
+        if (messages.get(index) instanceof AssistantMessage assistantMessage && assistantMessage.hasToolCalls()
+                && index + 1 < messages.size() && messages.get(index + 1) instanceof ToolResponseMessage) {
+            return 2;
+        }
+        return 1;
+    }
+
+    private ToolResponseMessage compactToolResponse(ToolResponseMessage message, int limit) {
+        boolean changed = false;
+        List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>(message.getResponses().size());
+        for (ToolResponseMessage.ToolResponse response : message.getResponses()) {
+            String data = compactText(response.responseData(), limit);
+            changed |= data != response.responseData();
+            responses.add(new ToolResponseMessage.ToolResponse(response.id(), response.name(), data));
+        }
+        return changed ? new ToolResponseMessage(responses, new HashMap<>(message.getMetadata())) : message;
+    }
+
+    /**
+     * HTML 只保留正文文本，超出长度时截断并注明原始长度
+     */
+    private static String compactText(String text, int limit) {
+        if (text == null || text.length() <= limit) {
+            return text;
+        }
+        String plain = looksLikeHtml(text) ? Jsoup.parse(text).text() : text;
+        if (plain.length() <= limit) {
+            return plain;
+        }
+        return plain.substring(0, limit) + "...（已截断，原始长度 " + text.length() + " 字符）";
+    }
+
+    private static boolean looksLikeHtml(String text) {
+        int length = Math.min(text.length(), 1024);
+        String head = text.substring(0, length).toLowerCase();
+        return head.contains("<html") || head.contains("<!doctype") || head.contains("<body") || head.contains("<div");
+    }
+
+    private static boolean isNextStepPrompt(Message message, String nextStepPrompt) {
+        return nextStepPrompt != null && !nextStepPrompt.isEmpty()
+                && message instanceof UserMessage && nextStepPrompt.equals(message.getText());
+    }
+
+    private int estimateTokens(Message message) {
+        int tokens = 0;
+        if (message.getText() != null && !message.getText().isEmpty()) {
+            tokens += TOKEN_COUNT_ESTIMATOR.estimate(message.getText());
+        }
+        if (message instanceof AssistantMessage assistantMessage) {
+            for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+                tokens += TOKEN_COUNT_ESTIMATOR.estimate(toolCall.name() + toolCall.arguments());
+            }
+        }
+        if (message instanceof ToolResponseMessage toolResponseMessage) {
+            for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+                if (response.responseData() != null) {
+                    tokens += TOKEN_COUNT_ESTIMATOR.estimate(response.responseData());
+                }
+            }
+        }
+        return tokens;
+    }
+
+    private static long charCount(Message message) {
+        long chars = message.getText() == null ? 0 : message.getText().length();
+        if (message instanceof AssistantMessage assistantMessage) {
+            for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+                chars += toolCall.arguments() == null ? 0 : toolCall.arguments().length();
+            }
+        }
+        if (message instanceof ToolResponseMessage toolResponseMessage) {
+            for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+                chars += response.responseData() == null ? 0 : response.responseData().length();
+            }
+        }
+        return chars;
+    }
+
+    /**
+     * 单步上下文统计
+     */
+    public record StepContextStats(int step, int originalMessages, int compactedMessages,
+                                   long originalChars, long compactedChars, int promptTokens) {
+    }
+
+    /**
+     * 多个智能体实例共享的上下文统计，由 MyManusFactory 持有，实例结束后统计仍然保留
+     */
+    public static class SharedStats {
+        private final AtomicLong steps = new AtomicLong();
+        private final AtomicLong originalChars = new AtomicLong();
+        private final AtomicLong compactedChars = new AtomicLong();
+        private final AtomicLong promptTokens = new AtomicLong();
+        private final AtomicLong maxPromptTokens = new AtomicLong();
+
+        private void record(StepContextStats stats) {
+            steps.incrementAndGet();
+            originalChars.addAndGet(stats.originalChars());
+            compactedChars.addAndGet(stats.compactedChars());
+            promptTokens.addAndGet(stats.promptTokens());
+            maxPromptTokens.accumulateAndGet(stats.promptTokens(), Math::max);
+        }
+
+        public ContextStats snapshot() {
+            long count = steps.get();
+            long original = originalChars.get();
+            long compacted = compactedChars.get();
+            return new ContextStats(count, original, compacted,
+                    original == 0 ? 1 : (double) compacted / original,
+                    count == 0 ? 0 : (double) promptTokens.get() / count, maxPromptTokens.get());
+        }
+    }
+
+    /**
+     * 累计的上下文统计
+     *
+     * @param compressionRatio 压缩后字符数与原始字符数之比
+     * @param avgPromptTokens  每一步发送给模型的平均 Token 数
+     */
+    public record ContextStats(long steps, long originalChars, long compactedChars, double compressionRatio,
+                               double avgPromptTokens, long maxPromptTokens) {
+    }
+}
@@ -0,0 +1,177 @@
+package com.ai.aiagent.agent;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 智能体执行器
+ *
+ * 每次智能体运行占用一个虚拟线程，阻塞在大模型和工具调用上时不占用平台线程。
+ * 同时运行的数量受信号量限制，超出的运行在虚拟线程上排队等待；排队数也有上限，超过后直接拒绝。
+ * 每次运行有超时时间，超时后取消运行（CancellableRun）或中断运行线程，智能体在下一步开始前结束。
+ */
+@Component
+@Slf4j
+public class AgentExecutor implements Executor {
+
+    private final int maxConcurrentRuns;
+    private final int maxQueuedRuns;
+    private final Duration runTimeout;
+
+    private final ExecutorService virtualThreads = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("agent-run-", 0).factory());
+    // 只负责触发超时中断，任务很轻
+    private final ScheduledExecutorService timeoutScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "agent-run-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Semaphore permits;
+
+    // 已提交且未结束的运行数（运行中 + 排队中）
+    private final AtomicInteger pendingRuns = new AtomicInteger();
+    private final AtomicInteger activeRuns = new AtomicInteger();
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong timedOutCount = new AtomicLong();
+
+    public AgentExecutor(@Value("${agent.executor.max-concurrent-runs:20}") int maxConcurrentRuns,
+                         @Value("${agent.executor.max-queued-runs:100}") int maxQueuedRuns,
+                         @Value("${agent.executor.run-timeout:5m}") Duration runTimeout) {
+        if (maxConcurrentRuns <= 0) {
+            throw new IllegalArgumentException("maxConcurrentRuns must be greater than 0");
+        }
+        this.maxConcurrentRuns = maxConcurrentRuns;
+        this.maxQueuedRuns = maxQueuedRuns;
+        this.runTimeout = runTimeout;
+        this.permits = new Semaphore(maxConcurrentRuns, true);
+    }
+
+    /**
+     * 提交一次智能体运行
+     *
+     * @throws RejectedExecutionException 排队数已满或执行器已关闭
+     */
+    @Override
+    public void execute(Runnable run) {
+        if (pendingRuns.incrementAndGet() > maxConcurrentRuns + maxQueuedRuns) {
+            pendingRuns.decrementAndGet();
+            rejectedCount.incrementAndGet();
+            throw new RejectedExecutionException("Agent executor is busy, " + maxQueuedRuns + " runs already queued");
+        }
+        try {
+            virtualThreads.execute(() -> runWithLimit(run));
+        } catch (RejectedExecutionException e) {
+            pendingRuns.decrementAndGet();
+            rejectedCount.incrementAndGet();
+            throw e;
+        }
+        submittedCount.incrementAndGet();
+    }
+
+    /**
+     * 获取执行器统计信息
+     */
+    public AgentExecutorStats getStats() {
+        int active = activeRuns.get();
+        return new AgentExecutorStats(maxConcurrentRuns, active, Math.max(0, pendingRuns.get() - active),
+                submittedCount.get(), completedCount.get(), failedCount.get(), rejectedCount.get(),
+                timedOutCount.get());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        virtualThreads.shutdownNow();
+        timeoutScheduler.shutdownNow();
+    }
+
+    private void runWithLimit(Runnable run) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            // 执行器关闭时排队中的运行直接放弃
+            pendingRuns.decrementAndGet();
+            return;
+        }
+        activeRuns.incrementAndGet();
+        Thread runner = Thread.currentThread();
+        AtomicBoolean finished = new AtomicBoolean(false);
+        ScheduledFuture<?> timeout = timeoutScheduler.schedule(() -> {
+            if (finished.compareAndSet(false, true)) {
+                timedOutCount.incrementAndGet();
+                if (run instanceof CancellableRun cancellable) {
+                    // 只中断线程时，吞掉中断的步骤会让运行继续下去，取消标记保证运行结束并触发取消回调
+                    log.warn("智能体运行超时({})，取消运行", runTimeout);
+                    cancellable.cancel("运行超时(" + runTimeout + ")");
+                } else {
+                    log.warn("智能体运行超时({})，中断线程 {}", runTimeout, runner.getName());
+                    runner.interrupt();
+                }
+            }
+        }, runTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        try {
+            run.run();
+            completedCount.incrementAndGet();
+        } catch (Throwable e) {
+            failedCount.incrementAndGet();
+            log.error("智能体运行失败", e);
+        } finally {
+            finished.set(true);
+            timeout.cancel(false);
+            activeRuns.decrementAndGet();
+            pendingRuns.decrementAndGet();
+            permits.release();
+        }
+    }
+
+    /**
+     * 可以取消的运行，超时时执行器调用 cancel 而不只是中断运行线程
+     */
+    public interface CancellableRun extends Runnable {
+
+        void cancel(String reason);
+
+        static CancellableRun of(Runnable task, Consumer<String> cancel) {
+            return new CancellableRun() {
+                @Override
+                public void run() {
+                    task.run();
+                }
+
+                @Override
+                public void cancel(String reason) {
+                    cancel.accept(reason);
+                }
+            };
+        }
+    }
+
+    /**
+     * 智能体执行器统计信息
+     *
+     * @param queuedRuns    等待并发名额的运行数
+     * @param rejectedCount 因排队已满被拒绝的运行数
+     */
+    public record AgentExecutorStats(int maxConcurrentRuns, int activeRuns, int queuedRuns, long submittedCount,
+                                     long completedCount, long failedCount, long rejectedCount,
+                                     long timedOutCount) {
+    }
+}
@@ -0,0 +1,106 @@
+package com.ai.aiagent.agent;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 一次流式运行的句柄
+ *
+ * 记录执行智能体循环的线程，cancel 时设置取消标记并中断该线程：
+ * 正在等待的工具调用被取消并中断工具线程（进行中的 HTTP 请求随之中止），流式模型调用取消订阅，
+ * 智能体在开始下一步前结束。客户端断开、SSE 超时或出错时由 BaseAgent 自动取消。
+ */
+@Slf4j
+public class AgentRun {
+
+    private final String runId;
+    private final SseEmitter emitter;
+    private final CompletableFuture<Void> finished = new CompletableFuture<>();
+
+    private Thread runner;
+    private boolean cancelled;
+    private String cancelReason;
+
+    AgentRun(SseEmitter emitter) {
+        this(UUID.randomUUID().toString(), emitter);
+    }
+
+    /**
+     * 从检查点恢复时沿用原来的运行 ID
+     */
+    AgentRun(String runId, SseEmitter emitter) {
+        this.runId = runId;
+        this.emitter = emitter;
+    }
+
+    public String getRunId() {
+        return runId;
+    }
+
+    public SseEmitter getEmitter() {
+        return emitter;
+    }
+
+    /**
+     * 取消运行，运行已结束时无效果
+     *
+     * @return 本次调用是否取消了运行
+     */
+    public synchronized boolean cancel(String reason) {
+        if (cancelled || finished.isDone()) {
+            return false;
+        }
+        cancelled = true;
+        cancelReason = reason;
+        log.info("取消智能体运行 {}: {}", runId, reason);
+        if (runner != null) {
+            runner.interrupt();
+        }
+        return true;
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    public synchronized String getCancelReason() {
+        return cancelReason;
+    }
+
+    public boolean isFinished() {
+        return finished.isDone();
+    }
+
+    /**
+     * 运行结束（正常完成、失败或取消）后执行回调
+     */
+    public void whenFinished(Runnable callback) {
+        finished.whenComplete((result, e) -> callback.run());
+    }
+
+    /**
+     * 在执行线程上调用，运行开始前已被取消时返回 false
+     */
+    synchronized boolean start() {
+        if (cancelled) {
+            return false;
+        }
+        runner = Thread.currentThread();
+        return true;
+    }
+
+    /**
+     * 在执行线程上调用，之后 cancel 不会再中断该线程
+     */
+    void finish() {
+        synchronized (this) {
+            runner = null;
+            // 清除取消时设置的中断标记，避免影响执行器在同一线程上的后续任务
+            Thread.interrupted();
+        }
+        finished.complete(null);
+    }
+}
@@ -0,0 +1,66 @@
+package com.ai.aiagent.agent;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进行中的流式运行，运行结束后自动移除
+ */
+@Component
+public class AgentRunRegistry {
+
+    private final Map<String, AgentRun> runs = new ConcurrentHashMap<>();
+    // 已预占、尚未注册的运行 ID，防止同一运行被并发恢复两次
+    private final Set<String> claims = ConcurrentHashMap.newKeySet();
+
+    public void register(AgentRun run) {
+        runs.put(run.getRunId(), run);
+        // 先放入 runs 再释放预占，期间 claim 总能看到其中之一
+        claims.remove(run.getRunId());
+        run.whenFinished(() -> runs.remove(run.getRunId()));
+    }
+
+    /**
+     * 预占运行 ID，成功后调用方负责 register 或 release
+     *
+     * @return 运行仍在进行中或已被其他请求预占时返回 false
+     */
+    public boolean claim(String runId) {
+        if (runId == null || runs.containsKey(runId) || !claims.add(runId)) {
+            return false;
+        }
+        if (runs.containsKey(runId)) {
+            claims.remove(runId);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 放弃预占的运行 ID
+     */
+    public void release(String runId) {
+        claims.remove(runId);
+    }
+
+    /**
+     * 取消指定的运行
+     *
+     * @return 运行不存在或已结束时返回 false
+     */
+    public boolean cancel(String runId, String reason) {
+        AgentRun run = runs.get(runId);
+        return run != null && run.cancel(reason);
+    }
+
+    public boolean isActive(String runId) {
+        return runId != null && (runs.containsKey(runId) || claims.contains(runId));
+    }
+
+    public int getActiveCount() {
+        return runs.size();
+    }
+}
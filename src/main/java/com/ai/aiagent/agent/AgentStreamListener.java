@@ -0,0 +1,30 @@
+package com.ai.aiagent.agent;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+
+/**
+ * 智能体运行过程的流式事件监听器
+ *
+ * 思考阶段逐个接收模型输出的 Token，行动阶段接收每个工具调用的开始和结束。
+ * 工具并行执行时回调来自不同线程，实现需要保证线程安全。
+ */
+public interface AgentStreamListener {
+
+    /**
+     * 模型输出的一段文本
+     */
+    default void onToken(String token) {
+    }
+
+    /**
+     * 工具开始执行
+     */
+    default void onToolCallStart(AssistantMessage.ToolCall toolCall) {
+    }
+
+    /**
+     * 工具执行结束
+     */
+    default void onToolCallFinish(AssistantMessage.ToolCall toolCall, String result) {
+    }
+}
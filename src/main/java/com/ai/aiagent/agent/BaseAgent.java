@@ -5,13 +5,18 @@ import com.ai.aiagent.agent.model.AgentState;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 
 /**
  * 抽象基础代理类，用于管理代理状态和执行流程。
@@ -23,6 +28,9 @@ import java.util.concurrent.CompletableFuture;
 @Slf4j
 public abstract class BaseAgent {
 
+    // 未指定执行器时，每次运行使用一个不受限的虚拟线程
+    private static final ExecutorService DEFAULT_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
     // 核心属性
     private String name;
 
@@ -43,6 +51,18 @@ public abstract class BaseAgent {
     // Memory（需要自主维护会话上下文）
     private List<Message> messageList = new ArrayList<>();
 
+    // 每一步发送给模型前压缩上下文
+    private AgentContextManager contextManager = new AgentContextManager();
+
+    // 流式运行时接收 Token 和工具调用事件，非流式运行时为空
+    private AgentStreamListener streamListener;
+
+    // 当前的流式运行，用于在步骤之间检查是否已取消
+    private volatile AgentRun currentRun;
+
+    // 流式运行每一步结束后保存检查点，为空时不保存
+    private AgentCheckpointStore checkpointStore;
+
     /**
      * 运行代理
      *
@@ -64,6 +84,7 @@ public abstract class BaseAgent {
         List<String> results = new ArrayList<>();
         try {
             for (int i = 0; i < maxSteps && state != AgentState.FINISHED; i++) {
+                checkInterrupted();
                 int stepNumber = i + 1;
                 currentStep = stepNumber;
                 log.info("Executing step " + stepNumber + "/" + maxSteps);
@@ -94,30 +115,118 @@ public abstract class BaseAgent {
      * @return SseEmitter实例
      */
     public SseEmitter runStream(String userPrompt) {
+        return runStream(userPrompt, DEFAULT_EXECUTOR);
+    }
+
+    /**
+     * 运行代理（流式输出），在指定的执行器上执行
+     *
+     * @param userPrompt 用户提示词
+     * @param executor   执行智能体循环的执行器，如 AgentExecutor
+     * @return SseEmitter实例
+     */
+    public SseEmitter runStream(String userPrompt, Executor executor) {
+        return startStream(userPrompt, executor).getEmitter();
+    }
+
+    /**
+     * 运行代理（流式输出），返回可取消的运行句柄
+     *
+     * 第一条 SSE 事件为 run_id，客户端可以据此取消运行
+     *
+     * @param userPrompt 用户提示词
+     * @param executor   执行智能体循环的执行器，如 AgentExecutor
+     * @return 运行句柄
+     */
+    public AgentRun startStream(String userPrompt, Executor executor) {
         // 创建SseEmitter，设置较长的超时时间
         SseEmitter emitter = new SseEmitter(300000L); // 5分钟超时
+        return launch(new AgentRun(emitter), executor, () -> {
+            if (StrUtil.isBlank(userPrompt)) {
+                return "错误：不能使用空提示词运行代理";
+            }
+            // 记录消息上下文
+            messageList.add(new UserMessage(userPrompt));
+            return null;
+        });
+    }
+
+    /**
+     * 从检查点恢复运行（流式输出），沿用原来的运行 ID，从检查点之后的一步继续执行。
+     * 配置了检查点存储时，拿到运行的租约后重新读取一次检查点，避免使用租约前读到的过期内容
+     *
+     * @param checkpoint 检查点
+     * @param executor   执行智能体循环的执行器，如 AgentExecutor
+     * @return 运行句柄
+     */
+    public AgentRun resumeStream(AgentCheckpoint checkpoint, Executor executor) {
+        SseEmitter emitter = new SseEmitter(300000L); // 5分钟超时
+        return launch(new AgentRun(checkpoint.runId(), emitter), executor, () -> {
+            AgentCheckpoint latest = checkpointStore == null
+                    ? checkpoint
+                    : checkpointStore.load(checkpoint.runId()).orElse(null);
+            if (latest == null) {
+                return "错误：运行不存在或已结束";
+            }
+            if (latest.state() == AgentState.FINISHED) {
+                return "错误：运行已结束，无法恢复";
+            }
+            messageList = new ArrayList<>(latest.messages());
+            currentStep = latest.currentStep();
+            log.info("从第 {} 步恢复运行 {}", currentStep, latest.runId());
+            return null;
+        });
+    }
+
+    /**
+     * 在执行器上启动智能体循环
+     *
+     * @param prepare 初始化消息上下文，返回错误信息时不执行
+     */
+    private AgentRun launch(AgentRun run, Executor executor, Supplier<String> prepare) {
+        SseEmitter emitter = run.getEmitter();
+        sendEvent(emitter, "run_id", run.getRunId());
 
         // 使用线程异步处理，避免阻塞主线程
-        CompletableFuture.runAsync(() -> {
+        Runnable task = () -> {
+            if (!run.start()) {
+                // 开始执行前客户端已断开
+                run.finish();
+                return;
+            }
+            boolean leased = false;
             try {
                 if (this.state != AgentState.IDLE) {
                     emitter.send("错误：无法从状态运行代理: " + this.state);
                     emitter.complete();
                     return;
                 }
-                if (StrUtil.isBlank(userPrompt)) {
-                    emitter.send("错误：不能使用空提示词运行代理");
+                // 检查点目录可能被多个节点共享，持有租约的节点才能执行该运行
+                if (checkpointStore != null) {
+                    leased = checkpointStore.acquireLease(run.getRunId());
+                    if (!leased) {
+                        emitter.send("错误：运行仍在进行中");
+                        emitter.complete();
+                        return;
+                    }
+                }
+                String error = prepare.get();
+                if (error != null) {
+                    emitter.send(error);
                     emitter.complete();
                     return;
                 }
 
                 // 更改状态
                 state = AgentState.RUNNING;
-                // 记录消息上下文
-                messageList.add(new UserMessage(userPrompt));
+                currentRun = run;
+                // 思考过程逐 Token 推送，工具调用开始和结束时推送事件
+                streamListener = sseListener(emitter, run);
 
                 try {
-                    for (int i = 0; i < maxSteps && state != AgentState.FINISHED; i++) {
+                    // 从检查点恢复时从已完成的步骤之后继续
+                    for (int i = currentStep; i < maxSteps && state != AgentState.FINISHED; i++) {
+                        checkInterrupted();
                         int stepNumber = i + 1;
                         currentStep = stepNumber;
                         log.info("Executing step " + stepNumber + "/" + maxSteps);
@@ -125,6 +234,9 @@ public abstract class BaseAgent {
                         // 单步执行
                         String stepResult = step();
                         String result = "Step " + stepNumber + ": " + stepResult;
+                        // 步骤被取消时可能吞掉中断并记录一条错误回复，不能存进检查点，否则恢复时会重放给模型
+                        checkInterrupted();
+                        saveCheckpoint(run);
 
                         // 发送每一步的结果
                         emitter.send(result);
@@ -134,42 +246,135 @@ public abstract class BaseAgent {
                         state = AgentState.FINISHED;
                         emitter.send("执行结束: 达到最大步骤 (" + maxSteps + ")");
                     }
-                    // 正常完成
+                    // 正常完成后不再需要恢复
+                    if (checkpointStore != null) {
+                        checkpointStore.delete(run.getRunId());
+                    }
                     emitter.complete();
                 } catch (Exception e) {
                     state = AgentState.ERROR;
-                    log.error("执行智能体失败", e);
-                    try {
-                        emitter.send("执行错误: " + e.getMessage());
+                    if (run.isCancelled()) {
+                        // 客户端已离开，不再推送错误信息
+                        log.info("智能体运行 {} 已取消: {}", run.getRunId(), run.getCancelReason());
                         emitter.complete();
-                    } catch (Exception ex) {
-                        emitter.completeWithError(ex);
+                    } else {
+                        log.error("执行智能体失败", e);
+                        try {
+                            emitter.send("执行错误: " + e.getMessage());
+                            emitter.complete();
+                        } catch (Exception ex) {
+                            emitter.completeWithError(ex);
+                        }
                     }
                 } finally {
                     // 清理资源
+                    currentRun = null;
                     this.cleanup();
                 }
             } catch (Exception e) {
                 emitter.completeWithError(e);
+            } finally {
+                if (leased) {
+                    checkpointStore.releaseLease(run.getRunId());
+                }
+                run.finish();
             }
-        });
+        };
+        try {
+            // AgentExecutor 超时时取消运行，吞掉中断的步骤也会在下一步开始前结束
+            executor.execute(AgentExecutor.CancellableRun.of(task, run::cancel));
+        } catch (RejectedExecutionException e) {
+            log.warn("智能体执行器繁忙，拒绝本次运行: {}", e.getMessage());
+            try {
+                emitter.send("错误：当前使用人数过多，请稍后再试");
+                emitter.complete();
+            } catch (Exception ex) {
+                emitter.completeWithError(ex);
+            }
+            run.finish();
+            return run;
+        }
 
-        // 设置超时和完成回调
+        // 客户端断开、超时或出错时立即取消运行，不再继续调用模型和工具
         emitter.onTimeout(() -> {
-            this.state = AgentState.ERROR;
-            this.cleanup();
+            run.cancel("SSE 连接超时");
             log.warn("SSE connection timed out");
         });
 
+        emitter.onError(e -> run.cancel("SSE 连接异常: " + e.getMessage()));
+
         emitter.onCompletion(() -> {
+            // 正常结束时运行已完成，这里只处理客户端提前关闭连接的情况
             if (this.state == AgentState.RUNNING) {
-                this.state = AgentState.FINISHED;
+                run.cancel("SSE 连接已关闭");
             }
-            this.cleanup();
             log.info("SSE connection completed");
         });
 
-        return emitter;
+        return run;
+    }
+
+    /**
+     * 每一步结束后续约并保存检查点，步骤中途崩溃时恢复后重做该步。
+     * 续约失败说明运行已被其他节点接管，停止运行，不再覆盖对方的检查点
+     */
+    private void saveCheckpoint(AgentRun run) {
+        if (checkpointStore != null) {
+            if (!checkpointStore.renewLease(run.getRunId())) {
+                throw new IllegalStateException("运行 " + run.getRunId() + " 的租约已失效，可能已在其他节点恢复");
+            }
+            checkpointStore.save(new AgentCheckpoint(run.getRunId(), name, currentStep, state,
+                    new ArrayList<>(messageList), System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * 把 Token 和工具调用事件以具名 SSE 事件（token、tool_start、tool_end）推送，步骤结果仍以默认事件发送
+     */
+    private AgentStreamListener sseListener(SseEmitter emitter, AgentRun run) {
+        return new AgentStreamListener() {
+            @Override
+            public void onToken(String token) {
+                if (!sendEvent(emitter, "token", token)) {
+                    run.cancel("客户端连接已断开");
+                }
+            }
+
+            @Override
+            public void onToolCallStart(AssistantMessage.ToolCall toolCall) {
+                sendEvent(emitter, "tool_start", "工具名称：" + toolCall.name() + "，参数：" + toolCall.arguments());
+            }
+
+            @Override
+            public void onToolCallFinish(AssistantMessage.ToolCall toolCall, String result) {
+                sendEvent(emitter, "tool_end", "工具 " + toolCall.name() + " 执行完成: " + StrUtil.maxLength(result, 500));
+            }
+        };
+    }
+
+    /**
+     * @return 是否推送成功，失败通常说明客户端已断开
+     */
+    private static boolean sendEvent(SseEmitter emitter, String name, String data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data));
+            return true;
+        } catch (Exception e) {
+            log.debug("推送 {} 事件失败: {}", name, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 运行超时或被取消时线程会被中断，在开始下一步前结束运行
+     *
+     * 步骤内部捕获异常时可能清除了中断标记，因此同时检查运行句柄的取消标记
+     */
+    private void checkInterrupted() {
+        AgentRun run = currentRun;
+        if (Thread.currentThread().isInterrupted() || (run != null && run.isCancelled())) {
+            throw new RuntimeException("执行超时或已被中断");
+        }
     }
 
     /**
@@ -3,34 +3,55 @@ package com.ai.aiagent.agent;
 import com.ai.aiagent.advisor.MyLoggerAdvisor;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.model.tool.ToolCallingManager;
 import org.springframework.ai.tool.ToolCallback;
-import org.springframework.stereotype.Component;
 
-@Component
+/**
+ * MyManus 超级智能体
+ *
+ * 每个实例保存一次运行的状态（消息列表、步骤、状态），不能在多个请求间共享，
+ * 通过 {@link MyManusFactory} 创建，工具、客户端等不可变配置由工厂统一复用。
+ */
 public class MyManus extends ToolCallAgent {
 
+    static final String SYSTEM_PROMPT = """  
+            You are MyManus, an all-capable AI assistant, aimed at solving any task presented by the user.  
+            You have various tools at your disposal that you can call upon to efficiently complete complex requests.  
+            """;
+
+    static final String NEXT_STEP_PROMPT = """  
+            Based on user needs, proactively select the most appropriate tool or combination of tools.  
+            For complex tasks, you can break down the problem and use different tools step by step to solve it.  
+            After using each tool, clearly explain the execution results and suggest the next steps.  
+            If you want to stop the interaction at any point, use the `terminate` tool/function call.  
+            """;
+
+    static final int MAX_STEPS = 20;
+
     public MyManus(ToolCallback[] allTools, ChatModel dashscopeChatModel) {
-        super(allTools);
+        this(allTools, defaultToolCallingManager(allTools), defaultChatOptions(), buildChatClient(dashscopeChatModel));
+    }
+
+    /**
+     * 使用共享的工具调用管理者、选项模板和客户端创建实例，只分配本次运行的状态
+     */
+    public MyManus(ToolCallback[] allTools, ToolCallingManager toolCallingManager, ChatOptions chatOptions,
+                   ChatClient chatClient) {
+        super(allTools, toolCallingManager, chatOptions);
         this.setName("MyManus");
-        String SYSTEM_PROMPT = """  
-                You are MyManus, an all-capable AI assistant, aimed at solving any task presented by the user.  
-                You have various tools at your disposal that you can call upon to efficiently complete complex requests.  
-                """;
         this.setSystemPrompt(SYSTEM_PROMPT);
-        String NEXT_STEP_PROMPT = """  
-                Based on user needs, proactively select the most appropriate tool or combination of tools.  
-                For complex tasks, you can break down the problem and use different tools step by step to solve it.  
-                After using each tool, clearly explain the execution results and suggest the next steps.  
-                If you want to stop the interaction at any point, use the `terminate` tool/function call.  
-                """;
         this.setNextStepPrompt(NEXT_STEP_PROMPT);
-        this.setMaxSteps(20);
-        // 初始化客户端
-        ChatClient chatClient = ChatClient.builder(dashscopeChatModel)
+        this.setMaxSteps(MAX_STEPS);
+        this.setChatClient(chatClient);
+    }
+
+    /**
+     * 初始化客户端，ChatClient 线程安全，可在多次运行间共享
+     */
+    static ChatClient buildChatClient(ChatModel dashscopeChatModel) {
+        return ChatClient.builder(dashscopeChatModel)
                 .defaultAdvisors(new MyLoggerAdvisor())
                 .build();
-        this.setChatClient(chatClient);
     }
 }
-
-
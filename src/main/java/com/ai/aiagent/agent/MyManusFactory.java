@@ -0,0 +1,68 @@
+package com.ai.aiagent.agent;
+
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * MyManus 智能体工厂
+ *
+ * 工具、ChatClient、工具调用管理者和选项模板都是不可变或线程安全的，启动时只构建一次；
+ * 每次请求创建的 MyManus 只包含本次运行的状态，多个请求可以并发运行互不影响。
+ * 运行状态只有几个小对象，创建成本很低，因此不做实例池，也就不存在归还前清理状态不彻底的问题。
+ * 各实例每一步的上下文大小累计到工厂持有的统计中。
+ */
+@Component
+public class MyManusFactory {
+
+    private final ToolCallback[] allTools;
+    private final ToolCallingManager toolCallingManager;
+    private final ChatOptions chatOptions;
+    private final ChatClient chatClient;
+    private final AgentCheckpointStore checkpointStore;
+
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AgentContextManager.SharedStats contextStats = new AgentContextManager.SharedStats();
+
+    /**
+     * @param checkpointStore 流式运行的检查点存储，为空时不保存检查点
+     */
+    public MyManusFactory(ToolCallback[] allTools, ChatModel dashscopeChatModel,
+                          AgentCheckpointStore checkpointStore) {
+        this.allTools = allTools;
+        this.toolCallingManager = ToolCallAgent.defaultToolCallingManager(allTools);
+        this.chatOptions = ToolCallAgent.defaultChatOptions();
+        this.chatClient = MyManus.buildChatClient(dashscopeChatModel);
+        this.checkpointStore = checkpointStore;
+    }
+
+    /**
+     * 创建一个新的智能体实例，用于一次运行
+     */
+    public MyManus create() {
+        createdCount.incrementAndGet();
+        MyManus myManus = new MyManus(allTools, toolCallingManager, chatOptions, chatClient);
+        myManus.setCheckpointStore(checkpointStore);
+        myManus.setContextManager(new AgentContextManager(contextStats));
+        return myManus;
+    }
+
+    /**
+     * 已创建的智能体实例数
+     */
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    /**
+     * 所有实例累计的每步上下文大小
+     */
+    public AgentContextManager.ContextStats getContextStats() {
+        return contextStats.snapshot();
+    }
+}
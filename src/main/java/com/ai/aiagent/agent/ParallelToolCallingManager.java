@@ -0,0 +1,219 @@
+package com.ai.aiagent.agent;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.execution.DefaultToolExecutionExceptionProcessor;
+import org.springframework.ai.tool.execution.ToolExecutionException;
+import org.springframework.ai.tool.execution.ToolExecutionExceptionProcessor;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 并行执行工具调用的 ToolCallingManager
+ *
+ * 模型在同一条助手消息里返回的多个工具调用彼此独立，每个调用放在一个虚拟线程上并发执行，
+ * 一步的耗时从各工具耗时之和变为最大值。工具结果按调用顺序写入 ToolResponseMessage。
+ * 每个工具有独立的超时时间，超时后中断该工具并返回超时提示，不影响其他工具的结果。
+ */
+@Slf4j
+public class ParallelToolCallingManager implements ToolCallingManager {
+
+    private static final ExecutorService VIRTUAL_THREADS = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("tool-call-", 0).factory());
+
+    // 负责解析工具定义，与默认实现保持一致
+    private final ToolCallingManager delegate = ToolCallingManager.builder().build();
+    private final Map<String, ToolCallback> toolCallbacks;
+    private final Duration defaultTimeout;
+    private final Map<String, Duration> toolTimeouts;
+    private final ToolExecutionExceptionProcessor exceptionProcessor;
+
+    private ParallelToolCallingManager(Builder builder) {
+        this.toolCallbacks = builder.toolCallbacks;
+        this.defaultTimeout = builder.defaultTimeout;
+        this.toolTimeouts = builder.toolTimeouts;
+        this.exceptionProcessor = builder.exceptionProcessor;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public List<ToolDefinition> resolveToolDefinitions(ToolCallingChatOptions chatOptions) {
+        return delegate.resolveToolDefinitions(chatOptions);
+    }
+
+    @Override
+    public ToolExecutionResult executeToolCalls(Prompt prompt, ChatResponse chatResponse) {
+        return executeToolCalls(prompt, chatResponse, null);
+    }
+
+    /**
+     * 执行工具调用，并把每个工具的开始和结束通知给监听器
+     */
+    public ToolExecutionResult executeToolCalls(Prompt prompt, ChatResponse chatResponse, AgentStreamListener listener) {
+        AssistantMessage assistantMessage = chatResponse.getResults().stream()
+                .map(Generation::getOutput)
+                .filter(output -> output != null && output.hasToolCalls())
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("No tool call requested by the chat model"));
+        Map<String, ToolCallback> callbacks = resolveCallbacks(prompt);
+        List<Message> history = new ArrayList<>(prompt.copy().getInstructions());
+        history.add(assistantMessage);
+        ToolContext toolContext = buildToolContext(prompt, history);
+
+        List<AssistantMessage.ToolCall> toolCalls = assistantMessage.getToolCalls();
+        List<Future<String>> futures = new ArrayList<>(toolCalls.size());
+        long startNanos = System.nanoTime();
+        boolean returnDirect = true;
+        for (AssistantMessage.ToolCall toolCall : toolCalls) {
+            ToolCallback callback = callbacks.get(toolCall.name());
+            if (callback == null) {
+                throw new IllegalStateException("No ToolCallback found for tool name: " + toolCall.name());
+            }
+            returnDirect = returnDirect && callback.getToolMetadata().returnDirect();
+            futures.add(VIRTUAL_THREADS.submit(() -> callTool(callback, toolCall, toolContext, listener)));
+        }
+        // 按调用顺序收集结果，保证与助手消息中的 toolCall 一一对应
+        List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>(toolCalls.size());
+        for (int i = 0; i < toolCalls.size(); i++) {
+            AssistantMessage.ToolCall toolCall = toolCalls.get(i);
+            responses.add(new ToolResponseMessage.ToolResponse(toolCall.id(), toolCall.name(),
+                    awaitResult(toolCall, futures.get(i), startNanos)));
+        }
+        history.add(new ToolResponseMessage(responses, Map.of()));
+        return ToolExecutionResult.builder()
+                .conversationHistory(history)
+                .returnDirect(returnDirect)
+                .build();
+    }
+
+    private String callTool(ToolCallback callback, AssistantMessage.ToolCall toolCall, ToolContext toolContext,
+                            AgentStreamListener listener) {
+        long start = System.currentTimeMillis();
+        if (listener != null) {
+            listener.onToolCallStart(toolCall);
+        }
+        String result;
+        try {
+            result = callback.call(toolCall.arguments(), toolContext);
+        } catch (ToolExecutionException e) {
+            result = exceptionProcessor.process(e);
+        } catch (RuntimeException e) {
+            result = exceptionProcessor.process(new ToolExecutionException(callback.getToolDefinition(), e));
+        }
+        log.info("工具 {} 执行耗时 {} ms", toolCall.name(), System.currentTimeMillis() - start);
+        if (listener != null) {
+            listener.onToolCallFinish(toolCall, result);
+        }
+        return result;
+    }
+
+    private String awaitResult(AssistantMessage.ToolCall toolCall, Future<String> future, long startNanos) {
+        Duration timeout = toolTimeouts.getOrDefault(toolCall.name(), defaultTimeout);
+        try {
+            // 超时从所有工具一起提交时开始计算，等待前面的工具不会延长后面工具的时限
+            long remainingNanos = startNanos + timeout.toNanos() - System.nanoTime();
+            return future.get(Math.max(0, remainingNanos), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            log.warn("工具 {} 执行超时({})", toolCall.name(), timeout);
+            return "Tool " + toolCall.name() + " timed out after " + timeout.toSeconds() + " seconds";
+        } catch (InterruptedException e) {
+            // 智能体运行被中断时，取消仍在执行的工具
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return "Tool " + toolCall.name() + " was cancelled";
+        } catch (ExecutionException e) {
+            return "Tool " + toolCall.name() + " failed: " + e.getCause().getMessage();
+        }
+    }
+
+    /**
+     * 优先使用请求选项中的工具，再补充构建时注册的工具
+     */
+    private Map<String, ToolCallback> resolveCallbacks(Prompt prompt) {
+        Map<String, ToolCallback> callbacks = new HashMap<>(toolCallbacks);
+        if (prompt.getOptions() instanceof ToolCallingChatOptions options) {
+            for (ToolCallback callback : options.getToolCallbacks()) {
+                callbacks.put(callback.getToolDefinition().name(), callback);
+            }
+        }
+        return callbacks;
+    }
+
+    private static ToolContext buildToolContext(Prompt prompt, List<Message> history) {
+        Map<String, Object> context = new HashMap<>();
+        if (prompt.getOptions() instanceof ToolCallingChatOptions options
+                && options.getToolContext() != null && !options.getToolContext().isEmpty()) {
+            context.putAll(options.getToolContext());
+            context.put(ToolContext.TOOL_CALL_HISTORY, new ArrayList<>(history));
+        }
+        return new ToolContext(context);
+    }
+
+    public static class Builder {
+        private final Map<String, ToolCallback> toolCallbacks = new LinkedHashMap<>();
+        private Duration defaultTimeout = Duration.ofSeconds(60);
+        private final Map<String, Duration> toolTimeouts = new HashMap<>();
+        private ToolExecutionExceptionProcessor exceptionProcessor = DefaultToolExecutionExceptionProcessor.builder().build();
+
+        private Builder() {
+        }
+
+        /**
+         * 注册可供调用的工具，请求选项中没有携带工具时使用
+         */
+        public Builder toolCallbacks(ToolCallback... toolCallbacks) {
+            for (ToolCallback callback : toolCallbacks) {
+                this.toolCallbacks.put(callback.getToolDefinition().name(), callback);
+            }
+            return this;
+        }
+
+        public Builder defaultTimeout(Duration defaultTimeout) {
+            this.defaultTimeout = defaultTimeout;
+            return this;
+        }
+
+        /**
+         * 为指定工具设置超时时间，如下载、抓取网页等耗时较长的工具
+         */
+        public Builder toolTimeout(String toolName, Duration timeout) {
+            this.toolTimeouts.put(toolName, timeout);
+            return this;
+        }
+
+        public Builder exceptionProcessor(ToolExecutionExceptionProcessor exceptionProcessor) {
+            this.exceptionProcessor = exceptionProcessor;
+            return this;
+        }
+
+        public ParallelToolCallingManager build() {
+            return new ParallelToolCallingManager(this);
+        }
+    }
+}
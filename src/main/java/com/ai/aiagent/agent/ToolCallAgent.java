@@ -1,6 +1,7 @@
 package com.ai.aiagent.agent;
 
 import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.StrUtil;
 import com.ai.aiagent.agent.model.AgentState;
 import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatOptions;
 import lombok.Data;
@@ -11,13 +12,18 @@ import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.ToolResponseMessage;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
 import org.springframework.ai.chat.prompt.ChatOptions;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.model.tool.ToolCallingManager;
 import org.springframework.ai.model.tool.ToolExecutionResult;
 import org.springframework.ai.tool.ToolCallback;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -41,11 +47,36 @@ public class ToolCallAgent extends ReActAgent {
     private final ChatOptions chatOptions;
 
     public ToolCallAgent(ToolCallback[] availableTools) {
+        this(availableTools, defaultToolCallingManager(availableTools), defaultChatOptions());
+    }
+
+    /**
+     * 复用已构建好的工具调用管理者和选项模板，每次运行只创建自己的运行状态
+     *
+     * @param chatOptions 选项模板，调用模型时选项会被写入工具信息，因此这里复制一份独立使用
+     */
+    public ToolCallAgent(ToolCallback[] availableTools, ToolCallingManager toolCallingManager, ChatOptions chatOptions) {
         super();
         this.availableTools = availableTools;
-        this.toolCallingManager = ToolCallingManager.builder().build();
-        // 禁用 Spring AI 内置的工具调用机制，自己维护选项和消息上下文
-        this.chatOptions = DashScopeChatOptions.builder()
+        this.toolCallingManager = toolCallingManager;
+        this.chatOptions = chatOptions.copy();
+    }
+
+    /**
+     * 同一步中的多个工具调用并行执行，管理者本身无状态，可在多次运行间共享
+     */
+    public static ToolCallingManager defaultToolCallingManager(ToolCallback[] availableTools) {
+        return ParallelToolCallingManager.builder()
+                .toolCallbacks(availableTools)
+                .toolTimeout("downloadResource", Duration.ofMinutes(3))
+                .build();
+    }
+
+    /**
+     * 禁用 Spring AI 内置的工具调用机制，自己维护选项和消息上下文
+     */
+    public static ChatOptions defaultChatOptions() {
+        return DashScopeChatOptions.builder()
                 .withInternalToolExecutionEnabled(false)
                 .build();
     }
@@ -61,15 +92,13 @@ public class ToolCallAgent extends ReActAgent {
             UserMessage userMessage = new UserMessage(getNextStepPrompt());
             getMessageList().add(userMessage);
         }
-        List<Message> messageList = getMessageList();
+        // 发送压缩后的上下文视图，完整历史仍保留在 messageList 中
+        List<Message> messageList = getContextManager().prepare(getMessageList(), getNextStepPrompt(), getCurrentStep());
         Prompt prompt = new Prompt(messageList, chatOptions);
         try {
-            // 获取带工具选项的响应
-            ChatResponse chatResponse = getChatClient().prompt(prompt)
-                    .system(getSystemPrompt())
-                    .tools(availableTools)
-                    .call()
-                    .chatResponse();
+            // 获取带工具选项的响应，流式运行时边生成边推送 Token
+            AgentStreamListener listener = getStreamListener();
+            ChatResponse chatResponse = listener == null ? callChatModel(prompt) : streamChatModel(prompt, listener);
             // 记录响应，用于 Act
             this.toolCallChatResponse = chatResponse;
             AssistantMessage assistantMessage = chatResponse.getResult().getOutput();
@@ -113,7 +142,10 @@ public class ToolCallAgent extends ReActAgent {
         }
         // 调用工具
         Prompt prompt = new Prompt(getMessageList(), chatOptions);
-        ToolExecutionResult toolExecutionResult = toolCallingManager.executeToolCalls(prompt, toolCallChatResponse);
+        ToolExecutionResult toolExecutionResult =
+                toolCallingManager instanceof ParallelToolCallingManager parallelToolCallingManager
+                        ? parallelToolCallingManager.executeToolCalls(prompt, toolCallChatResponse, getStreamListener())
+                        : toolCallingManager.executeToolCalls(prompt, toolCallChatResponse);
         // 记录消息上下文，conversationHistory 已经包含了助手消息和工具调用返回的结果
         setMessageList(toolExecutionResult.conversationHistory());
         // 当前工具调用的结果
@@ -130,5 +162,76 @@ public class ToolCallAgent extends ReActAgent {
         log.info(results);
         return results;
     }
-}
 
+    private ChatResponse callChatModel(Prompt prompt) {
+        return getChatClient().prompt(prompt)
+                .system(getSystemPrompt())
+                .toolCallbacks(availableTools)
+                .call()
+                .chatResponse();
+    }
+
+    /**
+     * 流式调用模型，把文本片段转发给监听器，并把分片返回的工具调用拼装为完整的响应供 act() 使用
+     */
+    private ChatResponse streamChatModel(Prompt prompt, AgentStreamListener listener) {
+        StringBuilder text = new StringBuilder();
+        Map<String, AssistantMessage.ToolCall> toolCalls = new LinkedHashMap<>();
+        String[] lastToolCallId = {null};
+        getChatClient().prompt(prompt)
+                .system(getSystemPrompt())
+                .toolCallbacks(availableTools)
+                .stream()
+                .chatResponse()
+                .doOnNext(chunk -> {
+                    if (chunk.getResult() == null || chunk.getResult().getOutput() == null) {
+                        return;
+                    }
+                    AssistantMessage output = chunk.getResult().getOutput();
+                    if (StrUtil.isNotEmpty(output.getText())) {
+                        text.append(output.getText());
+                        listener.onToken(output.getText());
+                    }
+                    // 带结束原因的分片是最后一个分片
+                    boolean last = chunk.getResult().getMetadata() != null
+                            && StrUtil.isNotEmpty(chunk.getResult().getMetadata().getFinishReason());
+                    for (AssistantMessage.ToolCall toolCall : output.getToolCalls()) {
+                        lastToolCallId[0] = mergeToolCall(toolCalls, lastToolCallId[0], toolCall, last);
+                    }
+                })
+                .blockLast();
+        AssistantMessage assistantMessage = new AssistantMessage(text.toString(), Map.of(),
+                new ArrayList<>(toolCalls.values()));
+        return new ChatResponse(List.of(new Generation(assistantMessage)));
+    }
+
+    /**
+     * 合并工具调用分片：带新 ID 的分片开始一个新调用，没有 ID 或 ID 相同的分片追加到对应调用的参数上。
+     * 部分模型在最后一个分片里重复完整的调用：最后一个分片中带 ID 和名称的已有调用视为完整调用，替换已拼装的内容
+     *
+     * @param last 分片是否来自带结束原因的最后一个响应
+     * @return 当前正在拼装的工具调用 ID
+     */
+    private static String mergeToolCall(Map<String, AssistantMessage.ToolCall> toolCalls, String lastId,
+                                        AssistantMessage.ToolCall fragment, boolean last) {
+        String id = StrUtil.isNotEmpty(fragment.id()) ? fragment.id() : lastId;
+        if (id == null) {
+            return null;
+        }
+        AssistantMessage.ToolCall existing = toolCalls.get(id);
+        if (existing == null) {
+            toolCalls.put(id, new AssistantMessage.ToolCall(id, fragment.type(), fragment.name(),
+                    StrUtil.nullToEmpty(fragment.arguments())));
+        } else if (last && StrUtil.isNotEmpty(fragment.id()) && StrUtil.isNotEmpty(fragment.name())) {
+            toolCalls.put(id, new AssistantMessage.ToolCall(id,
+                    StrUtil.isNotEmpty(fragment.type()) ? fragment.type() : existing.type(),
+                    fragment.name(), StrUtil.nullToEmpty(fragment.arguments())));
+        } else {
+            toolCalls.put(id, new AssistantMessage.ToolCall(id,
+                    StrUtil.isNotEmpty(existing.type()) ? existing.type() : fragment.type(),
+                    StrUtil.isNotEmpty(existing.name()) ? existing.name() : fragment.name(),
+                    existing.arguments() + StrUtil.nullToEmpty(fragment.arguments())));
+        }
+        return id;
+    }
+}
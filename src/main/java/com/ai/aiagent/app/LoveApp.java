@@ -2,9 +2,9 @@ package com.ai.aiagent.app;
 
 import com.ai.aiagent.advisor.MyLoggerAdvisor;
 import com.ai.aiagent.advisor.ReReadingAdvisor;
-import com.ai.aiagent.chatmemory.FileBasedChatMemory;
 import com.ai.aiagent.rag.LoveAppRagCustomAdvisorFactory;
 import com.ai.aiagent.rag.QueryRewriter;
+import com.ai.aiagent.tools.ToolResultCache;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
@@ -34,6 +34,8 @@ public class LoveApp {
 
     private final ChatClient chatClient;
 
+    private final ChatMemory chatMemory;
+
     private static final String SYSTEM_PROMPT = "扮演深耕恋爱心理领域的专家。开场向用户表明身份，告知用户可倾诉恋爱难题。" +
             "围绕单身、恋爱、已婚三种状态提问：单身状态询问社交圈拓展及追求心仪对象的困扰；" +
             "恋爱状态询问沟通、习惯差异引发的矛盾；已婚状态询问家庭责任与亲属关系处理的问题。" +
@@ -43,16 +45,16 @@ public class LoveApp {
      * 初始化 ChatClient
      *
      * @param dashscopeChatModel
+     * @param loveAppChatMemory 对话记忆，见 LoveAppChatMemoryConfig
      */
-    public LoveApp(ChatModel dashscopeChatModel) {
+    public LoveApp(ChatModel dashscopeChatModel, ChatMemory loveAppChatMemory) {
         // 初始化基于内存的对话记忆
 //        MessageWindowChatMemory chatMemory = MessageWindowChatMemory.builder()
 //                .chatMemoryRepository(new InMemoryChatMemoryRepository())
 //                .maxMessages(20)
 //                .build();
-        // 初始化基于文件的对话记忆
-        String fileDir = System.getProperty("user.dir") + "/tmp/chat-memory";
-        ChatMemory chatMemory = new FileBasedChatMemory(fileDir);
+        // 使用注入的对话记忆装饰链（存储后端可为文件、日志结构或异步写入），由 LoveAppChatMemoryConfig 组装
+        chatMemory = loveAppChatMemory;
         chatClient = ChatClient.builder(dashscopeChatModel)
                 .defaultSystem(SYSTEM_PROMPT)
                 .defaultAdvisors(
@@ -64,6 +66,15 @@ public class LoveApp {
                 ).build();
     }
 
+    /**
+     * 对话记忆（最外层），用于查看各层的统计信息
+     *
+     * @return
+     */
+    public ChatMemory getChatMemory() {
+        return chatMemory;
+    }
+
     /**
      * AI 基础对话（支持多轮对话记忆）
      *
@@ -189,7 +200,7 @@ public class LoveApp {
                         .param(TOP_K, 10))
                 // 开启日志，便于观察效果
                 .advisors(new MyLoggerAdvisor())
-                .toolCallbacks(toolCallbackProvider)
+                .toolCallbacks(toolResultCache.wrap(toolCallbackProvider.getToolCallbacks()))
                 .call()
                 .chatResponse();
         String content = chatResponse.getResult().getOutput().getText();
@@ -200,6 +211,10 @@ public class LoveApp {
     @Resource
     private ToolCallbackProvider toolCallbackProvider;
 
+    // MCP 图片搜索等幂等工具的结果缓存
+    @Resource
+    private ToolResultCache toolResultCache;
+
     /**
      * AI 恋爱报告功能（ 调用 MCP 服务）
      *
@@ -215,7 +230,7 @@ public class LoveApp {
                         .param(TOP_K, 10))
                 // 开启日志，便于观察效果
                 .advisors(new MyLoggerAdvisor())
-                .tools(toolCallbackProvider)
+                .toolCallbacks(toolResultCache.wrap(toolCallbackProvider.getToolCallbacks()))
                 .call()
                 .chatResponse();
         String content = response.getResult().getOutput().getText();
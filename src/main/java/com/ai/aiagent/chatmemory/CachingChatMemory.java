@@ -0,0 +1,269 @@
+package com.ai.aiagent.chatmemory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 带内存缓存的对话记忆（写穿透）
+ *
+ * 以 conversationId 为键缓存会话消息，命中时读路径不再访问文件系统；
+ * 写入时先写底层存储再更新缓存。按会话数、估算字节数做 LRU 淘汰，并淘汰长时间未访问的会话。
+ * 同一会话的回源与写入通过分段锁串行执行，LRU 表本身只在短暂的内存操作期间加锁。
+ */
+@Slf4j
+public class CachingChatMemory implements DelegatingChatMemory, AutoCloseable {
+
+    // 每条消息的估算固定开销（对象头、元数据等）
+    private static final long MESSAGE_OVERHEAD_BYTES = 64;
+
+    private final ChatMemory delegate;
+    private final int maxConversations;
+    private final long maxBytes;
+    private final long idleExpireMillis;
+    private final int maxMessagesPerConversation;
+
+    private final StripedLocks locks = new StripedLocks();
+    // 按访问顺序排列，队首为最久未访问的会话，访问时需持有自身的锁
+    private final LinkedHashMap<String, CacheEntry> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong expirationCount = new AtomicLong();
+
+    private CachingChatMemory(Builder builder) {
+        this.delegate = builder.delegate;
+        this.maxConversations = builder.maxConversations;
+        this.maxBytes = builder.maxBytes;
+        this.idleExpireMillis = builder.idleExpire.toMillis();
+        this.maxMessagesPerConversation = builder.maxMessagesPerConversation;
+    }
+
+    public CachingChatMemory(ChatMemory delegate) {
+        this(builder(delegate));
+    }
+
+    public static Builder builder(ChatMemory delegate) {
+        return new Builder(delegate);
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        ReentrantLock lock = locks.lockFor(conversationId);
+        lock.lock();
+        try {
+            delegate.add(conversationId, messages);
+            synchronized (cache) {
+                CacheEntry entry = cache.get(conversationId);
+                if (entry == null) {
+                    // 未缓存的会话不主动加载，等下一次读时再回源
+                    return;
+                }
+                totalBytes -= entry.bytes;
+                entry.messages.addAll(messages);
+                trimToWindow(entry.messages);
+                entry.bytes = estimateBytes(entry.messages);
+                entry.lastAccessTime = System.currentTimeMillis();
+                totalBytes += entry.bytes;
+                evictIfNecessary();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        ReentrantLock lock = locks.lockFor(conversationId);
+        lock.lock();
+        try {
+            synchronized (cache) {
+                long now = System.currentTimeMillis();
+                CacheEntry entry = cache.get(conversationId);
+                if (entry != null && now - entry.lastAccessTime <= idleExpireMillis) {
+                    hitCount.incrementAndGet();
+                    entry.lastAccessTime = now;
+                    return new ArrayList<>(entry.messages);
+                }
+                if (entry != null) {
+                    remove(conversationId);
+                    expirationCount.incrementAndGet();
+                }
+            }
+            missCount.incrementAndGet();
+            // 回源读取时只持有该会话的分段锁，不阻塞其他会话的缓存访问
+            List<Message> messages = new ArrayList<>(delegate.get(conversationId));
+            trimToWindow(messages);
+            synchronized (cache) {
+                CacheEntry loaded = new CacheEntry(messages, estimateBytes(messages), System.currentTimeMillis());
+                cache.put(conversationId, loaded);
+                totalBytes += loaded.bytes;
+                evictIfNecessary();
+                return new ArrayList<>(messages);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        ReentrantLock lock = locks.lockFor(conversationId);
+        lock.lock();
+        try {
+            delegate.clear(conversationId);
+            synchronized (cache) {
+                remove(conversationId);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public ChatMemory getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * 获取缓存统计信息
+     */
+    public CacheStats getStats() {
+        synchronized (cache) {
+            return new CacheStats(hitCount.get(), missCount.get(), evictionCount.get(),
+                    expirationCount.get(), cache.size(), totalBytes);
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (delegate instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    private void remove(String conversationId) {
+        CacheEntry removed = cache.remove(conversationId);
+        if (removed != null) {
+            totalBytes -= removed.bytes;
+        }
+    }
+
+    /**
+     * 先清理空闲过期的会话，再按 LRU 淘汰直到满足会话数和字节数限制
+     */
+    private void evictIfNecessary() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, CacheEntry>> iterator = cache.entrySet().iterator();
+        while (iterator.hasNext()) {
+            CacheEntry eldest = iterator.next().getValue();
+            if (now - eldest.lastAccessTime <= idleExpireMillis) {
+                break;
+            }
+            iterator.remove();
+            totalBytes -= eldest.bytes;
+            expirationCount.incrementAndGet();
+        }
+        iterator = cache.entrySet().iterator();
+        // 至少保留最近访问的一个会话，避免单个超大会话反复加载
+        while (cache.size() > 1 && (cache.size() > maxConversations || totalBytes > maxBytes)) {
+            CacheEntry eldest = iterator.next().getValue();
+            iterator.remove();
+            totalBytes -= eldest.bytes;
+            evictionCount.incrementAndGet();
+        }
+    }
+
+    private void trimToWindow(List<Message> messages) {
+        int overflow = messages.size() - maxMessagesPerConversation;
+        if (overflow > 0) {
+            messages.subList(0, overflow).clear();
+        }
+    }
+
+    private static long estimateBytes(List<Message> messages) {
+        long bytes = 0;
+        for (Message message : messages) {
+            String text = message.getText();
+            bytes += MESSAGE_OVERHEAD_BYTES + (text == null ? 0 : text.length() * 2L);
+        }
+        return bytes;
+    }
+
+    private static class CacheEntry {
+        private final List<Message> messages;
+        private long bytes;
+        private long lastAccessTime;
+
+        private CacheEntry(List<Message> messages, long bytes, long lastAccessTime) {
+            this.messages = messages;
+            this.bytes = bytes;
+            this.lastAccessTime = lastAccessTime;
+        }
+    }
+
+    /**
+     * 缓存统计信息
+     */
+    public record CacheStats(long hitCount, long missCount, long evictionCount, long expirationCount,
+                             int conversationCount, long estimatedBytes) {
+
+        public double hitRate() {
+            long total = hitCount + missCount;
+            return total == 0 ? 0 : (double) hitCount / total;
+        }
+    }
+
+    public static class Builder {
+        private final ChatMemory delegate;
+        private int maxConversations = 1000;
+        private long maxBytes = 64L * 1024 * 1024;
+        private Duration idleExpire = Duration.ofMinutes(30);
+        private int maxMessagesPerConversation = Integer.MAX_VALUE;
+
+        private Builder(ChatMemory delegate) {
+            if (delegate == null) {
+                throw new IllegalArgumentException("delegate chat memory must not be null");
+            }
+            this.delegate = delegate;
+        }
+
+        public Builder maxConversations(int maxConversations) {
+            this.maxConversations = maxConversations;
+            return this;
+        }
+
+        public Builder maxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        public Builder idleExpire(Duration idleExpire) {
+            this.idleExpire = idleExpire;
+            return this;
+        }
+
+        /**
+         * 与底层存储保留的消息窗口保持一致，保证命中与回源返回相同的结果
+         */
+        public Builder maxMessagesPerConversation(int maxMessagesPerConversation) {
+            this.maxMessagesPerConversation = maxMessagesPerConversation;
+            return this;
+        }
+
+        public CachingChatMemory build() {
+            return new CachingChatMemory(this);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.ai.aiagent.chatmemory;
+
+import org.springframework.ai.chat.memory.ChatMemory;
+
+import java.util.Optional;
+
+/**
+ * 装饰其他对话记忆的对话记忆（缓存、异步写回等）
+ *
+ * 对外只暴露最外层的对话记忆，通过 find 沿装饰链找到指定的一层，用于读取各层的统计信息。
+ */
+public interface DelegatingChatMemory extends ChatMemory {
+
+    /**
+     * 被装饰的下一层对话记忆
+     */
+    ChatMemory getDelegate();
+
+    /**
+     * 从 chatMemory 开始沿装饰链查找第一个指定类型的对话记忆
+     *
+     * @return 装饰链中不存在该类型时返回空
+     */
+    static <T extends ChatMemory> Optional<T> find(ChatMemory chatMemory, Class<T> type) {
+        ChatMemory current = chatMemory;
+        while (current != null) {
+            if (type.isInstance(current)) {
+                return Optional.of(type.cast(current));
+            }
+            current = current instanceof DelegatingChatMemory delegating ? delegating.getDelegate() : null;
+        }
+        return Optional.empty();
+    }
+}
@@ -1,36 +1,44 @@
 package com.ai.aiagent.chatmemory;
 
-import com.esotericsoftware.kryo.Kryo;
-import com.esotericsoftware.kryo.io.Input;
-import com.esotericsoftware.kryo.io.Output;
-import org.objenesis.strategy.StdInstantiatorStrategy;
 import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.chat.messages.Message;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * 基于文件持久化的对话记忆
+ *
+ * 序列化使用 MessageCodec（预注册类 ID + 压缩），旧版格式的文件在首次读取时迁移。
+ * 同一会话的读写通过分段锁串行执行，不同会话可以并发读写。
+ * 可选开启内存映射读：文件超过阈值时直接从 MappedByteBuffer 解码，避免经过堆内缓冲区复制；解码完立即解除映射。
  */
 public class FileBasedChatMemory implements ChatMemory {
 
     private final String BASE_DIR;
-    private static final Kryo kryo = new Kryo();
-
-    static {
-        kryo.setRegistrationRequired(false);
-        // 设置实例化策略
-        kryo.setInstantiatorStrategy(new StdInstantiatorStrategy());
-    }
+    // 文件超过该字节数时使用内存映射读取
+    private final long mmapThresholdBytes;
+    private final StripedLocks locks = new StripedLocks();
+    private final MessageCodec codec = new MessageCodec();
 
     // 构造对象时，指定文件保存目录
     public FileBasedChatMemory(String dir) {
+        this(dir, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param mmapThresholdBytes 启用内存映射读取的最小文件字节数，0 表示总是映射，Long.MAX_VALUE 表示关闭
+     */
+    public FileBasedChatMemory(String dir, long mmapThresholdBytes) {
         this.BASE_DIR = dir;
+        this.mmapThresholdBytes = mmapThresholdBytes;
         File baseDir = new File(dir);
         if (!baseDir.exists()) {
             baseDir.mkdirs();
@@ -39,43 +47,78 @@ public class FileBasedChatMemory implements ChatMemory {
 
     @Override
     public void add(String conversationId, List<Message> messages) {
-        List<Message> conversationMessages = getOrCreateConversation(conversationId);
-        conversationMessages.addAll(messages);
-        saveConversation(conversationId, conversationMessages);
+        ReentrantLock lock = locks.lockFor(conversationId);
+        lock.lock();
+        try {
+            List<Message> conversationMessages = getOrCreateConversation(conversationId);
+            conversationMessages.addAll(messages);
+            saveConversation(conversationId, conversationMessages);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public List<Message> get(String conversationId) {
-        return getOrCreateConversation(conversationId);
+        ReentrantLock lock = locks.lockFor(conversationId);
+        lock.lock();
+        try {
+            return getOrCreateConversation(conversationId);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public void clear(String conversationId) {
-        File file = getConversationFile(conversationId);
-        if (file.exists()) {
-            file.delete();
+        ReentrantLock lock = locks.lockFor(conversationId);
+        lock.lock();
+        try {
+            File file = getConversationFile(conversationId);
+            if (file.exists()) {
+                file.delete();
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
     private List<Message> getOrCreateConversation(String conversationId) {
         File file = getConversationFile(conversationId);
-        List<Message> messages = new ArrayList<>();
-        if (file.exists()) {
-            try (Input input = new Input(new FileInputStream(file))) {
-                messages = kryo.readObject(input, ArrayList.class);
-            } catch (IOException e) {
-                e.printStackTrace();
+        if (!file.exists()) {
+            return new ArrayList<>();
+        }
+        try {
+            // 映射在解码完成后立即解除，之后才能原子替换该文件
+            MessageCodec.DecodedConversation decoded = file.length() >= mmapThresholdBytes
+                    ? MappedFiles.read(file.toPath(), 0, codec::decodeConversation)
+                    : codec.decodeConversation(ByteBuffer.wrap(Files.readAllBytes(file.toPath())));
+            // 旧版格式的文件解码后立即按新格式重写（调用方持有该会话的锁）
+            if (!decoded.currentFormat()) {
+                try {
+                    saveConversation(conversationId, decoded.messages());
+                } catch (UncheckedIOException e) {
+                    // 迁移失败不影响本次读取，下次读取时再迁移
+                    e.printStackTrace();
+                }
             }
+            return decoded.messages();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
         }
-        return messages;
     }
 
     private void saveConversation(String conversationId, List<Message> messages) {
         File file = getConversationFile(conversationId);
-        try (Output output = new Output(new FileOutputStream(file))) {
-            kryo.writeObject(output, messages);
+        // 先写临时文件再原子替换，避免写到一半时被读到残缺的文件
+        File tmpFile = new File(BASE_DIR, conversationId + ".kryo.tmp");
+        try {
+            Files.write(tmpFile.toPath(), codec.encodeAll(messages));
+            Files.move(tmpFile.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new UncheckedIOException("Failed to save chat memory, conversationId: " + conversationId, e);
         }
     }
 
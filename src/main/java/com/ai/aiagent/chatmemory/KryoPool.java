@@ -0,0 +1,43 @@
+package com.ai.aiagent.chatmemory;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.util.Pool;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+
+import java.util.function.Function;
+
+/**
+ * 对话记忆共享的 Kryo 实例池
+ *
+ * Kryo 实例不是线程安全的，每次序列化从池中借出一个实例，用完归还，
+ * 避免多个请求线程同时操作同一个 Kryo。
+ */
+final class KryoPool {
+
+    private static final Pool<Kryo> POOL = new Pool<>(true, false,
+            Runtime.getRuntime().availableProcessors() * 4) {
+        @Override
+        protected Kryo create() {
+            Kryo kryo = new Kryo();
+            kryo.setRegistrationRequired(false);
+            // 设置实例化策略
+            kryo.setInstantiatorStrategy(new StdInstantiatorStrategy());
+            return kryo;
+        }
+    };
+
+    private KryoPool() {
+    }
+
+    /**
+     * 借出一个 Kryo 实例执行操作，结束后自动归还
+     */
+    static <T> T execute(Function<Kryo, T> action) {
+        Kryo kryo = POOL.obtain();
+        try {
+            return action.apply(kryo);
+        } finally {
+            POOL.free(kryo);
+        }
+    }
+}
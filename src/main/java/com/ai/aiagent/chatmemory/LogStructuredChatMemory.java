@@ -0,0 +1,605 @@
+package com.ai.aiagent.chatmemory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * 基于单一日志结构存储的对话记忆
+ *
+ * 所有会话共享少量按序编号的段文件，不再为每个会话创建文件，适合海量会话 ID 的场景。
+ * 每条记录为 [CRC32 + 长度 + 类型 + 会话 ID + 编码后的消息]，清空会话写入一条删除标记。
+ * 写入由单独的提交线程分组提交：一次取出队列中所有等待的写请求，顺序写入后只调用一次 fsync，
+ * 多个会话的并发写入因此合并为很少的磁盘刷写。一批写入中途失败时截断回写入前的位置，不会在段中留下残缺记录。
+ * 内存中维护会话到记录位置的索引，启动时扫描段文件重建；每个会话只保留最近的 maxMessages 条，更早的记录和被清空的记录
+ * 都计为无效数据。无效数据超过一个段的大小，且占比过半或段文件过多时，将存活记录压缩到新段并删除旧段，
+ * 压缩段以快照标记开头，恢复时忽略其之前的所有段。
+ */
+@Slf4j
+public class LogStructuredChatMemory implements ChatMemory, AutoCloseable {
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final byte TYPE_APPEND = 1;
+    private static final byte TYPE_CLEAR = 2;
+    // 压缩段的首条记录，表示之前的段均已被该段取代
+    private static final byte TYPE_SNAPSHOT = 3;
+    private static final String TMP_SUFFIX = ".tmp";
+    // 记录头：4 字节 CRC32 + 4 字节记录体长度
+    private static final int RECORD_HEADER_BYTES = 8;
+    // 段文件数超过该值时，只要无效数据足够多就压缩
+    private static final int MAX_SEGMENTS = 8;
+
+    private final Path baseDir;
+    private final long maxSegmentBytes;
+    private final int maxBatchSize;
+    private final int maxMessages;
+    // 无效数据超过该值时才考虑压缩
+    private final long minCompactionBytes;
+
+    private final MessageCodec codec = new MessageCodec();
+
+    // 会话 ID -> 按顺序排列的消息记录位置（不可变列表，整体替换）
+    private final Map<String, List<RecordPointer>> index = new ConcurrentHashMap<>();
+    private final Map<Integer, FileChannel> segments = new ConcurrentHashMap<>();
+    // 读取持有读锁，压缩替换段文件时持有写锁
+    private final ReentrantReadWriteLock segmentLock = new ReentrantReadWriteLock();
+    private final BlockingQueue<WriteRequest> writeQueue = new LinkedBlockingQueue<>();
+    private final Thread committer;
+    private volatile boolean running = true;
+
+    // 以下字段只由提交线程修改
+    private int activeSegmentId;
+    private long activeSegmentSize;
+    private long totalBytes;
+    private long liveBytes;
+    // 提交线程每次提交后发布的统计值，读写都持有 statsLock
+    private final Object statsLock = new Object();
+    private long publishedTotalBytes;
+    private long publishedLiveBytes;
+
+    private final AtomicLong commitCount = new AtomicLong();
+    private final AtomicLong committedRecordCount = new AtomicLong();
+
+    public LogStructuredChatMemory(String dir) {
+        this(dir, 64L * 1024 * 1024, 1024);
+    }
+
+    public LogStructuredChatMemory(String dir, long maxSegmentBytes, int maxBatchSize) {
+        this(dir, maxSegmentBytes, maxBatchSize, 200);
+    }
+
+    /**
+     * @param maxSegmentBytes 单个段文件的最大字节数，超过后滚动到新段
+     * @param maxBatchSize    一次分组提交最多合并的写请求数
+     * @param maxMessages     每个会话保留的最近消息数，更早的记录在压缩时删除
+     */
+    public LogStructuredChatMemory(String dir, long maxSegmentBytes, int maxBatchSize, int maxMessages) {
+        if (maxMessages <= 0) {
+            throw new IllegalArgumentException("maxMessages must be greater than 0");
+        }
+        this.baseDir = Path.of(dir);
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.maxBatchSize = maxBatchSize;
+        this.maxMessages = maxMessages;
+        this.minCompactionBytes = maxSegmentBytes;
+        try {
+            Files.createDirectories(baseDir);
+            recover();
+            publishStats();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to open chat memory store: " + dir, e);
+        }
+        this.committer = new Thread(this::commitLoop, "chat-memory-committer");
+        this.committer.setDaemon(true);
+        this.committer.start();
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+        List<byte[]> payloads = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            payloads.add(codec.encode(message));
+        }
+        submit(new WriteRequest(conversationId, TYPE_APPEND, payloads));
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        segmentLock.readLock().lock();
+        try {
+            List<RecordPointer> pointers = index.getOrDefault(conversationId, List.of());
+            List<Message> messages = new ArrayList<>(pointers.size());
+            for (RecordPointer pointer : pointers) {
+                messages.add(codec.decode(readPayload(pointer)));
+            }
+            return messages;
+        } catch (IOException e) {
+            log.error("读取对话记录失败, conversationId: {}", conversationId, e);
+            return new ArrayList<>();
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        submit(new WriteRequest(conversationId, TYPE_CLEAR, List.of()));
+    }
+
+    /**
+     * 获取存储统计信息
+     */
+    public StoreStats getStats() {
+        synchronized (statsLock) {
+            return new StoreStats(segments.size(), index.size(), publishedTotalBytes, publishedLiveBytes,
+                    commitCount.get(), committedRecordCount.get());
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            committer.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (FileChannel channel : segments.values()) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("关闭段文件失败", e);
+            }
+        }
+    }
+
+    /**
+     * 提交写请求并等待其落盘，落盘失败时抛出异常，由调用方决定是否重试
+     */
+    private void submit(WriteRequest request) {
+        if (!running) {
+            throw new IllegalStateException("Chat memory store is closed");
+        }
+        writeQueue.add(request);
+        try {
+            request.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (writeQueue.remove(request)) {
+                // 尚未被提交线程取走，撤回后可以确定没有落盘，调用方可以安全重试
+                throw new IllegalStateException("Interrupted before chat memory was written, conversationId: "
+                        + request.conversationId);
+            }
+            // 已进入提交中的批次，等待结果，避免成功落盘的记录被当作失败重试而重复写入
+            try {
+                request.future.join();
+            } catch (CompletionException completionException) {
+                throw writeFailure(request, completionException.getCause());
+            }
+        } catch (ExecutionException e) {
+            throw writeFailure(request, e.getCause());
+        }
+    }
+
+    // 提交失败时整批已回滚，重试不会产生重复记录
+    private static RuntimeException writeFailure(WriteRequest request, Throwable cause) {
+        if (cause instanceof IOException ioException) {
+            return new UncheckedIOException("Failed to write chat memory, conversationId: "
+                    + request.conversationId, ioException);
+        }
+        return cause instanceof RuntimeException runtimeException
+                ? runtimeException
+                : new IllegalStateException("Failed to write chat memory", cause);
+    }
+
+    private void commitLoop() {
+        while (running || !writeQueue.isEmpty()) {
+            WriteRequest first;
+            try {
+                first = writeQueue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (first == null) {
+                continue;
+            }
+            List<WriteRequest> batch = new ArrayList<>();
+            batch.add(first);
+            writeQueue.drainTo(batch, maxBatchSize - 1);
+            try {
+                commit(batch);
+                batch.forEach(request -> request.future.complete(null));
+            } catch (Exception e) {
+                log.error("分组提交失败，共 {} 个写请求", batch.size(), e);
+                batch.forEach(request -> request.future.completeExceptionally(e));
+                continue;
+            }
+            // 滚动和压缩失败不影响已落盘的写请求，避免调用方重试写入重复记录
+            try {
+                maintainSegments();
+            } catch (Exception e) {
+                log.error("段文件滚动或压缩失败", e);
+            }
+        }
+    }
+
+    /**
+     * 顺序写入一批请求，只执行一次 fsync，落盘后再更新索引
+     */
+    private void commit(List<WriteRequest> batch) throws IOException {
+        FileChannel channel = segments.get(activeSegmentId);
+        List<List<RecordPointer>> written = new ArrayList<>(batch.size());
+        int records = 0;
+        long batchStart = activeSegmentSize;
+        long totalBefore = totalBytes;
+        try {
+            for (WriteRequest request : batch) {
+                List<RecordPointer> pointers = new ArrayList<>();
+                if (request.type == TYPE_CLEAR) {
+                    append(channel, request.conversationId, TYPE_CLEAR, new byte[0]);
+                    records++;
+                }
+                for (byte[] payload : request.payloads) {
+                    pointers.add(append(channel, request.conversationId, TYPE_APPEND, payload));
+                    records++;
+                }
+                written.add(pointers);
+            }
+            channel.force(false);
+        } catch (IOException | RuntimeException e) {
+            rollback(channel, batchStart, totalBefore, e);
+            throw e;
+        }
+        commitCount.incrementAndGet();
+        committedRecordCount.addAndGet(records);
+        for (int i = 0; i < batch.size(); i++) {
+            WriteRequest request = batch.get(i);
+            if (request.type == TYPE_CLEAR) {
+                removeConversation(request.conversationId);
+            } else {
+                appendPointers(request.conversationId, written.get(i));
+            }
+        }
+        publishStats();
+    }
+
+    /**
+     * 活跃段写满时滚动到新段，垃圾记录过多时压缩
+     */
+    private void maintainSegments() throws IOException {
+        if (activeSegmentSize >= maxSegmentBytes) {
+            rollSegment();
+        }
+        long garbageBytes = totalBytes - liveBytes;
+        if (garbageBytes >= minCompactionBytes && (liveBytes * 2 < totalBytes || segments.size() > MAX_SEGMENTS)) {
+            compact();
+        }
+        publishStats();
+    }
+
+    /**
+     * 写入失败时把段截断回本批写入前的位置，避免残缺记录之后再追加新记录，恢复时连同后面已提交的记录一起被截断。
+     * 截断也失败时滚动到新段，残缺记录留在旧段末尾，恢复时只截掉它本身。
+     */
+    private void rollback(FileChannel channel, long batchStart, long totalBefore, Exception cause) {
+        activeSegmentSize = batchStart;
+        totalBytes = totalBefore;
+        try {
+            channel.truncate(batchStart);
+        } catch (IOException truncateFailure) {
+            cause.addSuppressed(truncateFailure);
+            try {
+                rollSegment();
+            } catch (IOException rollFailure) {
+                cause.addSuppressed(rollFailure);
+            }
+        }
+    }
+
+    /**
+     * 追加会话的记录位置，超出保留条数的最早记录从索引中移除，计为无效数据
+     */
+    private void appendPointers(String conversationId, List<RecordPointer> added) {
+        List<RecordPointer> existing = index.getOrDefault(conversationId, List.of());
+        List<RecordPointer> merged = new ArrayList<>(existing.size() + added.size());
+        merged.addAll(existing);
+        merged.addAll(added);
+        added.forEach(pointer -> liveBytes += pointer.recordLength);
+        int excess = merged.size() - maxMessages;
+        if (excess > 0) {
+            merged.subList(0, excess).forEach(pointer -> liveBytes -= pointer.recordLength);
+            merged = merged.subList(excess, merged.size());
+        }
+        index.put(conversationId, List.copyOf(merged));
+    }
+
+    private void removeConversation(String conversationId) {
+        List<RecordPointer> removed = index.remove(conversationId);
+        if (removed != null) {
+            removed.forEach(pointer -> liveBytes -= pointer.recordLength);
+        }
+    }
+
+    private void publishStats() {
+        synchronized (statsLock) {
+            publishedTotalBytes = totalBytes;
+            publishedLiveBytes = liveBytes;
+        }
+    }
+
+    /**
+     * 在活跃段末尾追加一条记录
+     */
+    private RecordPointer append(FileChannel channel, String conversationId, byte type, byte[] payload)
+            throws IOException {
+        RecordPointer pointer = writeRecord(channel, activeSegmentId, activeSegmentSize, conversationId, type, payload);
+        activeSegmentSize += pointer.recordLength;
+        totalBytes += pointer.recordLength;
+        return pointer;
+    }
+
+    /**
+     * 在段的指定位置写入一条记录，不修改活跃段的状态
+     */
+    private RecordPointer writeRecord(FileChannel channel, int segmentId, long recordStart, String conversationId,
+                                      byte type, byte[] payload) throws IOException {
+        byte[] idBytes = conversationId.getBytes(StandardCharsets.UTF_8);
+        int bodyLength = 1 + 2 + idBytes.length + payload.length;
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_BYTES + bodyLength);
+        buffer.position(RECORD_HEADER_BYTES);
+        buffer.put(type).putShort((short) idBytes.length).put(idBytes).put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), RECORD_HEADER_BYTES, bodyLength);
+        buffer.putInt(0, (int) crc.getValue()).putInt(4, bodyLength);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, recordStart + buffer.position());
+        }
+        long payloadOffset = recordStart + RECORD_HEADER_BYTES + 1 + 2 + idBytes.length;
+        return new RecordPointer(segmentId, payloadOffset, payload.length, RECORD_HEADER_BYTES + bodyLength);
+    }
+
+    private void rollSegment() throws IOException {
+        // 新段打开成功后再切换，打开失败时继续写入当前段
+        FileChannel channel = openSegment(activeSegmentId + 1);
+        activeSegmentId++;
+        activeSegmentSize = 0;
+        segments.put(activeSegmentId, channel);
+        log.info("对话存储滚动到新段文件: {}", activeSegmentId);
+    }
+
+    /**
+     * 将所有存活记录复制到新段，替换索引后删除旧段
+     *
+     * 新段先写入临时文件，fsync 后再改名，保证改名后的压缩段一定是完整的。
+     * 改名成功前只写局部变量，失败时关闭并删除临时文件，活跃段和统计值保持不变，后续提交照常写入旧段
+     */
+    private void compact() throws IOException {
+        long before = totalBytes;
+        List<Integer> oldSegmentIds = new ArrayList<>(segments.keySet());
+        int compactedSegmentId = activeSegmentId + 1;
+        Path tmpPath = Path.of(segmentPath(compactedSegmentId) + TMP_SUFFIX);
+        FileChannel channel = FileChannel.open(tmpPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long compactedSize = 0;
+        Map<String, List<RecordPointer>> compacted = new ConcurrentHashMap<>();
+        try {
+            compactedSize += writeRecord(channel, compactedSegmentId, compactedSize, "", TYPE_SNAPSHOT,
+                    new byte[0]).recordLength;
+            // 索引只由提交线程修改，这里可以安全地遍历
+            for (Map.Entry<String, List<RecordPointer>> entry : index.entrySet()) {
+                List<RecordPointer> pointers = new ArrayList<>(entry.getValue().size());
+                for (RecordPointer pointer : entry.getValue()) {
+                    RecordPointer copied = writeRecord(channel, compactedSegmentId, compactedSize, entry.getKey(),
+                            TYPE_APPEND, readPayload(pointer));
+                    compactedSize += copied.recordLength;
+                    pointers.add(copied);
+                }
+                compacted.put(entry.getKey(), List.copyOf(pointers));
+            }
+            channel.force(false);
+            Files.move(tmpPath, segmentPath(compactedSegmentId), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            discardTmpSegment(channel, tmpPath, e);
+            throw e;
+        }
+        segments.put(compactedSegmentId, channel);
+        activeSegmentId = compactedSegmentId;
+        activeSegmentSize = compactedSize;
+        totalBytes = compactedSize;
+        segmentLock.writeLock().lock();
+        try {
+            index.putAll(compacted);
+            for (Integer segmentId : oldSegmentIds) {
+                FileChannel old = segments.remove(segmentId);
+                old.close();
+                Files.deleteIfExists(segmentPath(segmentId));
+            }
+        } finally {
+            segmentLock.writeLock().unlock();
+        }
+        liveBytes = compacted.values().stream()
+                .flatMap(List::stream)
+                .mapToLong(RecordPointer::recordLength)
+                .sum();
+        log.info("对话存储压缩完成: {} -> {} 字节", before, totalBytes);
+    }
+
+    private static void discardTmpSegment(FileChannel channel, Path tmpPath, Exception cause) {
+        try {
+            channel.close();
+        } catch (IOException closeFailure) {
+            cause.addSuppressed(closeFailure);
+        }
+        try {
+            Files.deleteIfExists(tmpPath);
+        } catch (IOException deleteFailure) {
+            cause.addSuppressed(deleteFailure);
+        }
+    }
+
+    /**
+     * 启动时按顺序扫描段文件重建索引，截断末尾损坏或不完整的记录
+     */
+    private void recover() throws IOException {
+        // 未完成改名的压缩段直接丢弃，旧段仍然完整
+        File[] tmpFiles = baseDir.toFile().listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX + TMP_SUFFIX));
+        if (tmpFiles != null) {
+            for (File tmpFile : tmpFiles) {
+                Files.deleteIfExists(tmpFile.toPath());
+            }
+        }
+        File[] files = baseDir.toFile().listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        int[] segmentIds = files == null ? new int[0] : Arrays.stream(files)
+                .map(file -> file.getName().substring(0, file.getName().length() - SEGMENT_SUFFIX.length()))
+                .mapToInt(Integer::parseInt)
+                .sorted()
+                .toArray();
+        for (int segmentId : segmentIds) {
+            FileChannel channel = openSegment(segmentId);
+            segments.put(segmentId, channel);
+            long validLength = scanSegment(segmentId, channel);
+            if (validLength < channel.size()) {
+                log.warn("段文件 {} 末尾存在损坏的记录，截断至 {} 字节", segmentId, validLength);
+                channel.truncate(validLength);
+            }
+            totalBytes += validLength;
+            activeSegmentId = segmentId;
+            activeSegmentSize = validLength;
+        }
+        if (segmentIds.length == 0) {
+            activeSegmentId = 1;
+            activeSegmentSize = 0;
+            segments.put(activeSegmentId, openSegment(activeSegmentId));
+        }
+        log.info("对话存储加载完成: {} 个段文件, {} 个会话", segments.size(), index.size());
+    }
+
+    private long scanSegment(int segmentId, FileChannel channel) throws IOException {
+        long position = 0;
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+        while (position + RECORD_HEADER_BYTES <= size) {
+            header.clear();
+            readFully(channel, header, position);
+            int expectedCrc = header.getInt(0);
+            int bodyLength = header.getInt(4);
+            if (bodyLength < 3 || position + RECORD_HEADER_BYTES + bodyLength > size) {
+                break;
+            }
+            ByteBuffer body = ByteBuffer.allocate(bodyLength);
+            readFully(channel, body, position + RECORD_HEADER_BYTES);
+            CRC32 crc = new CRC32();
+            crc.update(body.array());
+            if ((int) crc.getValue() != expectedCrc) {
+                break;
+            }
+            byte type = body.get(0);
+            int idLength = body.getShort(1) & 0xFFFF;
+            String conversationId = new String(body.array(), 3, idLength, StandardCharsets.UTF_8);
+            int recordLength = RECORD_HEADER_BYTES + bodyLength;
+            if (type == TYPE_SNAPSHOT) {
+                dropSegmentsBefore(segmentId);
+            } else if (type == TYPE_CLEAR) {
+                removeConversation(conversationId);
+            } else {
+                long payloadOffset = position + RECORD_HEADER_BYTES + 3 + idLength;
+                appendPointers(conversationId, List.of(new RecordPointer(segmentId, payloadOffset,
+                        bodyLength - 3 - idLength, recordLength)));
+            }
+            position += recordLength;
+        }
+        return position;
+    }
+
+    /**
+     * 遇到压缩段时，之前的段与索引都已被取代：关闭并删除旧段，清空已重建的索引
+     */
+    private void dropSegmentsBefore(int segmentId) throws IOException {
+        index.clear();
+        liveBytes = 0;
+        totalBytes = 0;
+        for (Integer oldSegmentId : new ArrayList<>(segments.keySet())) {
+            if (oldSegmentId < segmentId) {
+                segments.remove(oldSegmentId).close();
+                Files.deleteIfExists(segmentPath(oldSegmentId));
+            }
+        }
+    }
+
+    private byte[] readPayload(RecordPointer pointer) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(pointer.payloadLength);
+        readFully(segments.get(pointer.segmentId), buffer, pointer.payloadOffset);
+        return buffer.array();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of segment at position " + position);
+            }
+        }
+    }
+
+    private FileChannel openSegment(int segmentId) throws IOException {
+        return FileChannel.open(segmentPath(segmentId),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private Path segmentPath(int segmentId) {
+        return baseDir.resolve(String.format("%08d%s", segmentId, SEGMENT_SUFFIX));
+    }
+
+    private record RecordPointer(int segmentId, long payloadOffset, int payloadLength, int recordLength) {
+    }
+
+    private static class WriteRequest {
+        private final String conversationId;
+        private final byte type;
+        private final List<byte[]> payloads;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private WriteRequest(String conversationId, byte type, List<byte[]> payloads) {
+            this.conversationId = conversationId;
+            this.type = type;
+            this.payloads = payloads;
+        }
+    }
+
+    /**
+     * 存储统计信息，commitCount 与 committedRecordCount 之比即平均每次 fsync 合并的记录数
+     */
+    public record StoreStats(int segmentCount, int conversationCount, long totalBytes, long liveBytes,
+                             long commitCount, long committedRecordCount) {
+    }
+}
@@ -0,0 +1,60 @@
+package com.ai.aiagent.chatmemory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 恋爱大师应用的对话记忆配置
+ *
+ * 通过 chat-memory.store 选择底层存储：
+ * segment 为每个会话一个追加写段文件，log-structured 为所有会话共享的日志结构存储（适合海量会话）。
+ */
+@Configuration
+@Slf4j
+public class LoveAppChatMemoryConfig {
+
+    // 每个会话保留的最大消息数
+    private static final int MAX_MESSAGES = 200;
+    // 尾部数据超过 1MB（通常含大段工具输出）时使用内存映射读取
+    private static final long MMAP_THRESHOLD_BYTES = 1024 * 1024;
+
+    @Value("${chat-memory.store:segment}")
+    private String store;
+
+    @Value("${chat-memory.write-behind.enabled:true}")
+    private boolean writeBehindEnabled;
+
+    @Value("${chat-memory.write-behind.capacity:10000}")
+    private int writeBehindCapacity;
+
+    @Value("${chat-memory.max-tokens:4000}")
+    private int maxTokens;
+
+    @Bean
+    public ChatMemory loveAppChatMemory(ChatModel dashscopeChatModel) {
+        String baseDir = System.getProperty("user.dir") + "/tmp";
+        ChatMemory storeChatMemory = switch (store) {
+            case "log-structured" -> new LogStructuredChatMemory(baseDir + "/chat-memory-store");
+            case "segment" -> new SegmentedLogChatMemory(baseDir + "/chat-memory", MAX_MESSAGES, MMAP_THRESHOLD_BYTES);
+            default -> throw new IllegalArgumentException("Unknown chat-memory.store: " + store);
+        };
+        log.info("对话记忆存储: {}, 异步写回: {}", store, writeBehindEnabled);
+        if (writeBehindEnabled) {
+            // 记忆写入不再占用请求线程，关闭时刷完剩余消息
+            storeChatMemory = new WriteBehindChatMemory(storeChatMemory, writeBehindCapacity, 256);
+        }
+        // 内存缓存热点会话，读路径命中时不访问文件系统
+        ChatMemory cachedChatMemory = CachingChatMemory.builder(storeChatMemory)
+                .maxMessagesPerConversation(MAX_MESSAGES)
+                .build();
+        // 按 Token 预算截取最近的对话，更早的对话在后台滚动摘要
+        return TokenBudgetChatMemory.builder(cachedChatMemory)
+                .maxTokens(maxTokens)
+                .summarizer(TokenBudgetChatMemory.chatModelSummarizer(dashscopeChatModel))
+                .build();
+    }
+}
@@ -0,0 +1,85 @@
+package com.ai.aiagent.chatmemory;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Function;
+
+/**
+ * 内存映射读取
+ *
+ * 映射在缓冲区被 GC 回收之前一直有效，Windows 上存在映射的文件不能被替换或删除，
+ * 之后的原子替换（写入、压缩、迁移）会失败。因此读完立即解除映射；
+ * 当前 JVM 不支持解除映射时退回堆内读取，保证映射不会比读取本身活得更久。
+ */
+@Slf4j
+final class MappedFiles {
+
+    // sun.misc.Unsafe#invokeCleaner，不可用时为 null
+    private static final MethodHandle UNMAPPER = findUnmapper();
+
+    private MappedFiles() {
+    }
+
+    /**
+     * 读取文件从 position 开始到末尾的内容
+     *
+     * @param reader 在缓冲区上解码，不能在返回值中保留缓冲区或它的切片
+     */
+    static <T> T read(Path file, long position, Function<ByteBuffer, T> reader) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size() - position;
+            if (UNMAPPER == null) {
+                return reader.apply(readFully(channel, position, length));
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            try {
+                return reader.apply(buffer);
+            } finally {
+                unmap(buffer);
+            }
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, long length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(length));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            UNMAPPER.invokeExact((ByteBuffer) buffer);
+        } catch (Throwable e) {
+            log.warn("解除内存映射失败，映射将在缓冲区被回收时释放", e);
+        }
+    }
+
+    private static MethodHandle findUnmapper() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(field.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("当前 JVM 不支持解除内存映射，改为堆内读取");
+            return null;
+        }
+    }
+}
@@ -0,0 +1,426 @@
+package com.ai.aiagent.chatmemory;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.ByteBufferInput;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.util.Pool;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+import org.springframework.ai.chat.messages.AbstractMessage;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.content.Media;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 对话消息的二进制编解码器
+ *
+ * 消息类型和常用元数据类型预先注册了固定的类 ID，并为 Spring AI 的消息类型编写了专用序列化器，
+ * 每条记录不再写入完整类名和 AbstractMessage 的内部字段。较大的记录（通常是工具输出）按块压缩。
+ * <p>
+ * 编码格式：[魔数 4 字节][版本 1 字节][标志 1 字节][正文]，共 6 字节的头部，压缩时正文为 [原始长度 varint][Deflate 数据]。
+ * 没有头部的旧版数据不占用版本号，带头部的格式从版本 1 开始。
+ * 没有魔数、或按当前格式解码失败的数据按旧版（未注册类、写入完整类名）的 Kryo 格式解码，旧文件可以直接读取并在重写时迁移。
+ */
+public final class MessageCodec {
+
+    // 旧版数据以 Kryo varint（类 ID 或集合长度）开头。魔数的 4 个字节最高位都为 1，
+    // 作为 varint 读取时至少表示 2^28，旧数据的类 ID 和消息数都不可能这么大，因此不会与旧数据冲突
+    private static final byte[] MAGIC = {(byte) 0xCE, (byte) 0xCD, (byte) 0xC3, (byte) 0x80};
+    private static final byte VERSION = 1;
+    private static final int HEADER_BYTES = MAGIC.length + 2;
+    private static final byte FLAG_DEFLATE = 1;
+
+    /**
+     * 类 ID 一经写入文件就不能再修改，新增类型只能追加新的 ID
+     */
+    private static final Pool<Kryo> POOL = new Pool<>(true, false,
+            Runtime.getRuntime().availableProcessors() * 4) {
+        @Override
+        protected Kryo create() {
+            Kryo kryo = new Kryo();
+            // 元数据中偶尔出现的未注册类型仍按类名写入
+            kryo.setRegistrationRequired(false);
+            kryo.setInstantiatorStrategy(new StdInstantiatorStrategy());
+            kryo.register(UserMessage.class, new UserMessageSerializer(), 100);
+            kryo.register(AssistantMessage.class, new AssistantMessageSerializer(), 101);
+            kryo.register(SystemMessage.class, new SystemMessageSerializer(), 102);
+            kryo.register(ToolResponseMessage.class, new ToolResponseMessageSerializer(), 103);
+            kryo.register(HashMap.class, 110);
+            kryo.register(LinkedHashMap.class, 111);
+            kryo.register(ArrayList.class, 112);
+            kryo.register(MessageType.class, 113);
+            return kryo;
+        }
+    };
+
+    public enum Compression {
+        NONE,
+        /**
+         * 依赖中没有 LZ4，使用 JDK 自带的 Deflate（最快档）
+         */
+        DEFLATE
+    }
+
+    private final Compression compression;
+    private final int compressionThresholdBytes;
+
+    public MessageCodec() {
+        this(Compression.DEFLATE, 1024);
+    }
+
+    /**
+     * @param compressionThresholdBytes 正文不小于该字节数时才尝试压缩
+     */
+    public MessageCodec(Compression compression, int compressionThresholdBytes) {
+        this.compression = compression;
+        this.compressionThresholdBytes = compressionThresholdBytes;
+    }
+
+    /**
+     * 编码单条消息
+     */
+    public byte[] encode(Message message) {
+        return wrap(execute(kryo -> {
+            try (Output output = new Output(256, -1)) {
+                kryo.writeClassAndObject(output, message);
+                return output.toBytes();
+            }
+        }));
+    }
+
+    /**
+     * 编码整个会话的消息列表
+     */
+    public byte[] encodeAll(List<Message> messages) {
+        return wrap(execute(kryo -> {
+            try (Output output = new Output(1024, -1)) {
+                output.writeVarInt(messages.size(), true);
+                for (Message message : messages) {
+                    kryo.writeClassAndObject(output, message);
+                }
+                return output.toBytes();
+            }
+        }));
+    }
+
+    public Message decode(byte[] bytes) {
+        return decode(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * 解码单条消息，兼容旧版 writeClassAndObject 写出的记录
+     */
+    public Message decode(ByteBuffer buffer) {
+        return decodeWithFallback(buffer,
+                body -> execute(kryo -> (Message) kryo.readClassAndObject(new ByteBufferInput(body))),
+                legacy -> KryoPool.execute(kryo -> (Message) kryo.readClassAndObject(new ByteBufferInput(legacy))));
+    }
+
+    public List<Message> decodeAll(byte[] bytes) {
+        return decodeAll(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * 解码整个会话的消息列表，兼容旧版 FileBasedChatMemory 写出的 ArrayList
+     */
+    @SuppressWarnings("unchecked")
+    public List<Message> decodeAll(ByteBuffer buffer) {
+        return decodeWithFallback(buffer,
+                body -> execute(kryo -> {
+                    Input input = new ByteBufferInput(body);
+                    int size = input.readVarInt(true);
+                    List<Message> messages = new ArrayList<>(size);
+                    for (int i = 0; i < size; i++) {
+                        messages.add((Message) kryo.readClassAndObject(input));
+                    }
+                    return messages;
+                }),
+                legacy -> KryoPool.execute(kryo -> kryo.readObject(new ByteBufferInput(legacy), ArrayList.class)));
+    }
+
+    /**
+     * 解码整个会话，同时返回数据是否为当前格式，旧版格式的数据需要按当前格式重写
+     */
+    public DecodedConversation decodeConversation(ByteBuffer buffer) {
+        return new DecodedConversation(new ArrayList<>(decodeAll(buffer)), isCurrentFormat(buffer));
+    }
+
+    /**
+     * 数据是否为当前格式，旧版数据需要在重写时迁移
+     */
+    public static boolean isCurrentFormat(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_BYTES) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buffer.get(buffer.position() + i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 有魔数时按当前格式解码，失败（版本不支持、数据损坏）时再按旧版格式尝试；两者都失败时抛出当前格式的异常
+     */
+    private static <T> T decodeWithFallback(ByteBuffer buffer, Function<ByteBuffer, T> current,
+                                            Function<ByteBuffer, T> legacy) {
+        if (!isCurrentFormat(buffer)) {
+            return legacy.apply(buffer.slice());
+        }
+        try {
+            return current.apply(unwrap(buffer));
+        } catch (RuntimeException e) {
+            try {
+                return legacy.apply(buffer.slice());
+            } catch (RuntimeException legacyFailure) {
+                e.addSuppressed(legacyFailure);
+                throw e;
+            }
+        }
+    }
+
+    private byte[] wrap(byte[] raw) {
+        if (compression == Compression.DEFLATE && raw.length >= compressionThresholdBytes) {
+            byte[] compressed = deflate(raw);
+            // 压缩收益不足（已压缩的数据等）时保留原文
+            if (compressed != null) {
+                return compressed;
+            }
+        }
+        byte[] bytes = new byte[HEADER_BYTES + raw.length];
+        System.arraycopy(MAGIC, 0, bytes, 0, MAGIC.length);
+        bytes[MAGIC.length] = VERSION;
+        bytes[MAGIC.length + 1] = 0;
+        System.arraycopy(raw, 0, bytes, HEADER_BYTES, raw.length);
+        return bytes;
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (Output output = new Output(raw.length / 2 + 16, raw.length)) {
+            output.writeBytes(MAGIC);
+            output.writeByte(VERSION);
+            output.writeByte(FLAG_DEFLATE);
+            output.writeVarInt(raw.length, true);
+            deflater.setInput(raw);
+            deflater.finish();
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(chunk);
+                if (output.position() + n >= raw.length) {
+                    return null;
+                }
+                output.writeBytes(chunk, 0, n);
+            }
+            return output.toBytes();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static ByteBuffer unwrap(ByteBuffer buffer) {
+        ByteBuffer body = buffer.slice();
+        byte version = body.get(MAGIC.length);
+        if (version != VERSION) {
+            throw new IllegalStateException("Unsupported chat memory format version: " + version);
+        }
+        byte flags = body.get(MAGIC.length + 1);
+        body.position(HEADER_BYTES);
+        if ((flags & FLAG_DEFLATE) == 0) {
+            return body.slice();
+        }
+        int rawLength = readVarInt(body);
+        byte[] raw = new byte[rawLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(body);
+            int offset = 0;
+            while (offset < rawLength) {
+                int n = inflater.inflate(raw, offset, rawLength - offset);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IllegalStateException("Truncated chat memory record");
+                }
+                offset += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupted chat memory record", e);
+        } finally {
+            inflater.end();
+        }
+        return ByteBuffer.wrap(raw);
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalStateException("Malformed varint in chat memory record");
+    }
+
+    private static <T> T execute(Function<Kryo, T> action) {
+        Kryo kryo = POOL.obtain();
+        try {
+            return action.apply(kryo);
+        } finally {
+            POOL.free(kryo);
+        }
+    }
+
+    // ---------- 消息序列化器：只写文本、元数据和各类型特有的字段 ----------
+
+    private static void writeMetadata(Kryo kryo, Output output, Map<String, Object> metadata) {
+        // 消息类型由类 ID 表示，构造时会重新写入元数据，不再重复存储
+        int size = metadata.containsKey(AbstractMessage.MESSAGE_TYPE) ? metadata.size() - 1 : metadata.size();
+        output.writeVarInt(size, true);
+        for (Map.Entry<String, Object> entry : metadata.entrySet()) {
+            if (AbstractMessage.MESSAGE_TYPE.equals(entry.getKey())) {
+                continue;
+            }
+            output.writeString(entry.getKey());
+            kryo.writeClassAndObject(output, entry.getValue());
+        }
+    }
+
+    private static Map<String, Object> readMetadata(Kryo kryo, Input input) {
+        int size = input.readVarInt(true);
+        Map<String, Object> metadata = new HashMap<>(Math.max(4, size * 2));
+        for (int i = 0; i < size; i++) {
+            metadata.put(input.readString(), kryo.readClassAndObject(input));
+        }
+        return metadata;
+    }
+
+    private static void writeMedia(Kryo kryo, Output output, List<Media> media) {
+        output.writeVarInt(media.size(), true);
+        for (Media item : media) {
+            kryo.writeClassAndObject(output, item);
+        }
+    }
+
+    private static List<Media> readMedia(Kryo kryo, Input input) {
+        int size = input.readVarInt(true);
+        List<Media> media = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            media.add((Media) kryo.readClassAndObject(input));
+        }
+        return media;
+    }
+
+    private static class UserMessageSerializer extends Serializer<UserMessage> {
+        @Override
+        public void write(Kryo kryo, Output output, UserMessage message) {
+            output.writeString(message.getText());
+            writeMetadata(kryo, output, message.getMetadata());
+            writeMedia(kryo, output, message.getMedia());
+        }
+
+        @Override
+        public UserMessage read(Kryo kryo, Input input, Class<? extends UserMessage> type) {
+            return UserMessage.builder()
+                    .text(input.readString())
+                    .metadata(readMetadata(kryo, input))
+                    .media(readMedia(kryo, input))
+                    .build();
+        }
+    }
+
+    private static class AssistantMessageSerializer extends Serializer<AssistantMessage> {
+        @Override
+        public void write(Kryo kryo, Output output, AssistantMessage message) {
+            output.writeString(message.getText());
+            writeMetadata(kryo, output, message.getMetadata());
+            List<AssistantMessage.ToolCall> toolCalls = message.getToolCalls();
+            output.writeVarInt(toolCalls.size(), true);
+            for (AssistantMessage.ToolCall toolCall : toolCalls) {
+                output.writeString(toolCall.id());
+                output.writeString(toolCall.type());
+                output.writeString(toolCall.name());
+                output.writeString(toolCall.arguments());
+            }
+            writeMedia(kryo, output, message.getMedia());
+        }
+
+        @Override
+        public AssistantMessage read(Kryo kryo, Input input, Class<? extends AssistantMessage> type) {
+            String text = input.readString();
+            Map<String, Object> metadata = readMetadata(kryo, input);
+            int size = input.readVarInt(true);
+            List<AssistantMessage.ToolCall> toolCalls = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                toolCalls.add(new AssistantMessage.ToolCall(input.readString(), input.readString(),
+                        input.readString(), input.readString()));
+            }
+            return new AssistantMessage(text, metadata, toolCalls, readMedia(kryo, input));
+        }
+    }
+
+    private static class SystemMessageSerializer extends Serializer<SystemMessage> {
+        @Override
+        public void write(Kryo kryo, Output output, SystemMessage message) {
+            output.writeString(message.getText());
+            writeMetadata(kryo, output, message.getMetadata());
+        }
+
+        @Override
+        public SystemMessage read(Kryo kryo, Input input, Class<? extends SystemMessage> type) {
+            return SystemMessage.builder()
+                    .text(input.readString())
+                    .metadata(readMetadata(kryo, input))
+                    .build();
+        }
+    }
+
+    private static class ToolResponseMessageSerializer extends Serializer<ToolResponseMessage> {
+        @Override
+        public void write(Kryo kryo, Output output, ToolResponseMessage message) {
+            List<ToolResponseMessage.ToolResponse> responses = message.getResponses();
+            output.writeVarInt(responses.size(), true);
+            for (ToolResponseMessage.ToolResponse response : responses) {
+                output.writeString(response.id());
+                output.writeString(response.name());
+                output.writeString(response.responseData());
+            }
+            writeMetadata(kryo, output, message.getMetadata());
+        }
+
+        @Override
+        public ToolResponseMessage read(Kryo kryo, Input input, Class<? extends ToolResponseMessage> type) {
+            int size = input.readVarInt(true);
+            List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                responses.add(new ToolResponseMessage.ToolResponse(input.readString(), input.readString(),
+                        input.readString()));
+            }
+            return new ToolResponseMessage(responses, readMetadata(kryo, input));
+        }
+    }
+
+    /**
+     * @param messages      可修改的消息列表
+     * @param currentFormat 数据是否为当前格式
+     */
+    public record DecodedConversation(List<Message> messages, boolean currentFormat) {
+    }
+}
@@ -0,0 +1,367 @@
+package com.ai.aiagent.chatmemory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 基于追加写分段日志的对话记忆
+ *
+ * 每个会话对应一个 .log 段文件和一个 .idx 索引文件：
+ * 段文件中每条消息是一条 [长度 + 编码后的消息] 的帧记录，add 只追加新消息；
+ * 索引文件按顺序记录每条帧的起始偏移，get 可以直接定位到尾部，无需解码整段历史。
+ * 当记录数超过保留条数的两倍时进行压缩，只保留最近的 maxMessages 条。
+ * 消息由 MessageCodec 编码，同一会话的操作通过分段锁串行执行，不同会话可以并发读写。
+ * 可选开启内存映射读：待读取的尾部超过阈值时，直接从 MappedByteBuffer 解码消息，避免经过堆内缓冲区复制。
+ */
+@Slf4j
+public class SegmentedLogChatMemory implements ChatMemory {
+
+    private static final String LOG_SUFFIX = ".log";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final String LEGACY_SUFFIX = ".kryo";
+    // 帧头：4 字节的记录长度
+    private static final int FRAME_HEADER_BYTES = 4;
+
+    private final String BASE_DIR;
+    // 每个会话保留的最大消息数
+    private final int maxMessages;
+    // 触发压缩的记录数
+    private final int compactionThreshold;
+    // 尾部数据超过该字节数时使用内存映射读取，小文件映射的开销反而更大
+    private final long mmapThresholdBytes;
+    private final StripedLocks locks = new StripedLocks();
+    private final MessageCodec codec = new MessageCodec();
+
+    public SegmentedLogChatMemory(String dir) {
+        this(dir, 200);
+    }
+
+    public SegmentedLogChatMemory(String dir, int maxMessages) {
+        this(dir, maxMessages, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param mmapThresholdBytes 启用内存映射读取的最小字节数，0 表示总是映射，Long.MAX_VALUE 表示关闭
+     */
+    public SegmentedLogChatMemory(String dir, int maxMessages, long mmapThresholdBytes) {
+        if (maxMessages <= 0) {
+            throw new IllegalArgumentException("maxMessages must be greater than 0");
+        }
+        this.BASE_DIR = dir;
+        this.maxMessages = maxMessages;
+        this.compactionThreshold = maxMessages * 2;
+        this.mmapThresholdBytes = mmapThresholdBytes;
+        File baseDir = new File(dir);
+        if (!baseDir.exists()) {
+            baseDir.mkdirs();
+        }
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+        ReentrantLock lock = locks.lockFor(conversationId);
+        lock.lock();
+        try {
+            List<Long> offsets;
+            try {
+                migrateLegacyIfPresent(conversationId);
+                offsets = loadIndex(conversationId);
+                offsets.addAll(appendRecords(conversationId, messages));
+            } catch (IOException e) {
+                // 抛给调用方，由上层（如 WriteBehindChatMemory）决定是否重试
+                throw new UncheckedIOException("Failed to append chat memory, conversationId: " + conversationId, e);
+            }
+            if (offsets.size() > compactionThreshold) {
+                try {
+                    compact(conversationId, offsets);
+                } catch (IOException e) {
+                    // 消息已经落盘，压缩失败只记录日志，下次 add 时再压缩；抛出会让调用方重试而重复追加
+                    log.error("对话记录压缩失败, conversationId: {}", conversationId, e);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        return get(conversationId, maxMessages);
+    }
+
+    /**
+     * 读取会话最近的 lastN 条消息，只解码尾部记录
+     *
+     * @param conversationId 会话 ID
+     * @param lastN          需要读取的消息条数
+     * @return 消息列表
+     */
+    public List<Message> get(String conversationId, int lastN) {
+        ReentrantLock lock = locks.lockFor(conversationId);
+        lock.lock();
+        try {
+            migrateLegacyIfPresent(conversationId);
+            List<Long> offsets = loadIndex(conversationId);
+            if (offsets.isEmpty() || lastN <= 0) {
+                return new ArrayList<>();
+            }
+            int from = Math.max(0, offsets.size() - lastN);
+            return readRecords(conversationId, offsets.get(from), offsets.size() - from);
+        } catch (IOException e) {
+            log.error("读取对话记录失败, conversationId: {}", conversationId, e);
+            return new ArrayList<>();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        ReentrantLock lock = locks.lockFor(conversationId);
+        lock.lock();
+        try {
+            getLogFile(conversationId).delete();
+            getIndexFile(conversationId).delete();
+            getLegacyFile(conversationId).delete();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 将消息编码为帧记录并追加到段文件，返回每条记录的起始偏移；
+     * 写入失败时把段文件截断回写入前的长度，调用方重试时不会重复追加
+     */
+    private List<Long> appendRecords(String conversationId, List<Message> messages) throws IOException {
+        File logFile = getLogFile(conversationId);
+        long start = logFile.length();
+        try {
+            return appendRecords(conversationId, messages, start);
+        } catch (IOException | RuntimeException e) {
+            try (RandomAccessFile raf = new RandomAccessFile(logFile, "rw")) {
+                raf.setLength(start);
+            } catch (IOException truncateFailure) {
+                e.addSuppressed(truncateFailure);
+            }
+            throw e;
+        }
+    }
+
+    private List<Long> appendRecords(String conversationId, List<Message> messages, long start) throws IOException {
+        File logFile = getLogFile(conversationId);
+        List<Long> newOffsets = new ArrayList<>(messages.size());
+        long position = start;
+        try (DataOutputStream logOut = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(logFile, true)))) {
+            for (Message message : messages) {
+                byte[] payload = codec.encode(message);
+                logOut.writeInt(payload.length);
+                logOut.write(payload);
+                newOffsets.add(position);
+                position += FRAME_HEADER_BYTES + payload.length;
+            }
+        }
+        // 先写数据再写索引，崩溃时索引最多落后于数据，可以通过扫描恢复
+        try (DataOutputStream indexOut = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(getIndexFile(conversationId), true)))) {
+            for (Long offset : newOffsets) {
+                indexOut.writeLong(offset);
+            }
+        }
+        return newOffsets;
+    }
+
+    /**
+     * 从指定偏移开始顺序读取 count 条记录
+     */
+    private List<Message> readRecords(String conversationId, long fromOffset, int count) throws IOException {
+        if (getLogFile(conversationId).length() - fromOffset >= mmapThresholdBytes) {
+            return readRecordsMapped(conversationId, fromOffset, count);
+        }
+        List<Message> messages = new ArrayList<>(count);
+        try (FileInputStream fileIn = new FileInputStream(getLogFile(conversationId))) {
+            fileIn.getChannel().position(fromOffset);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(fileIn));
+            for (int i = 0; i < count; i++) {
+                int length = in.readInt();
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                messages.add(codec.decode(payload));
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * 将尾部数据映射到内存，直接从映射缓冲区逐帧解码，解码完立即解除映射，不影响之后压缩时替换段文件
+     */
+    private List<Message> readRecordsMapped(String conversationId, long fromOffset, int count) throws IOException {
+        return MappedFiles.read(getLogFile(conversationId).toPath(), fromOffset, buffer -> {
+            List<Message> messages = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int length = buffer.getInt();
+                messages.add(codec.decode(buffer.slice(buffer.position(), length)));
+                buffer.position(buffer.position() + length);
+            }
+            return messages;
+        });
+    }
+
+    /**
+     * 加载索引，并校验索引与段文件是否一致，不一致时扫描段文件重建
+     */
+    private List<Long> loadIndex(String conversationId) throws IOException {
+        File logFile = getLogFile(conversationId);
+        File indexFile = getIndexFile(conversationId);
+        if (!logFile.exists()) {
+            indexFile.delete();
+            return new ArrayList<>();
+        }
+        List<Long> offsets = new ArrayList<>();
+        if (indexFile.exists()) {
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(indexFile)))) {
+                long entries = indexFile.length() / Long.BYTES;
+                for (long i = 0; i < entries; i++) {
+                    offsets.add(in.readLong());
+                }
+            }
+        }
+        if (isIndexConsistent(logFile, offsets)) {
+            return offsets;
+        }
+        log.warn("对话索引与数据不一致，重建索引, conversationId: {}", conversationId);
+        return rebuildIndex(conversationId);
+    }
+
+    private boolean isIndexConsistent(File logFile, List<Long> offsets) throws IOException {
+        long logLength = logFile.length();
+        if (offsets.isEmpty()) {
+            return logLength == 0;
+        }
+        long lastOffset = offsets.get(offsets.size() - 1);
+        if (lastOffset + FRAME_HEADER_BYTES > logLength) {
+            return false;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(logFile, "r")) {
+            raf.seek(lastOffset);
+            return lastOffset + FRAME_HEADER_BYTES + raf.readInt() == logLength;
+        }
+    }
+
+    /**
+     * 扫描段文件重建索引，截断末尾不完整的帧
+     */
+    private List<Long> rebuildIndex(String conversationId) throws IOException {
+        File logFile = getLogFile(conversationId);
+        List<Long> offsets = new ArrayList<>();
+        long validLength = 0;
+        long logLength = logFile.length();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(logFile)))) {
+            while (validLength + FRAME_HEADER_BYTES <= logLength) {
+                int length = in.readInt();
+                if (length < 0 || validLength + FRAME_HEADER_BYTES + length > logLength) {
+                    break;
+                }
+                in.skipNBytes(length);
+                offsets.add(validLength);
+                validLength += FRAME_HEADER_BYTES + length;
+            }
+        } catch (EOFException ignored) {
+            // 末尾帧不完整，按已扫描的有效长度处理
+        }
+        if (validLength < logLength) {
+            try (RandomAccessFile raf = new RandomAccessFile(logFile, "rw")) {
+                raf.setLength(validLength);
+            }
+        }
+        writeIndex(conversationId, offsets);
+        return offsets;
+    }
+
+    /**
+     * 压缩段文件，只保留最近的 maxMessages 条记录
+     */
+    private void compact(String conversationId, List<Long> offsets) throws IOException {
+        int from = offsets.size() - maxMessages;
+        long fromOffset = offsets.get(from);
+        File logFile = getLogFile(conversationId);
+        File tmpFile = new File(BASE_DIR, conversationId + LOG_SUFFIX + ".compact");
+        try (RandomAccessFile src = new RandomAccessFile(logFile, "r");
+             FileOutputStream dest = new FileOutputStream(tmpFile)) {
+            src.getChannel().transferTo(fromOffset, logFile.length() - fromOffset, dest.getChannel());
+        }
+        List<Long> compacted = new ArrayList<>(maxMessages);
+        for (int i = from; i < offsets.size(); i++) {
+            compacted.add(offsets.get(i) - fromOffset);
+        }
+        Files.move(tmpFile.toPath(), logFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        writeIndex(conversationId, compacted);
+        log.info("对话记录压缩完成, conversationId: {}, 保留 {} 条", conversationId, compacted.size());
+    }
+
+    private void writeIndex(String conversationId, List<Long> offsets) throws IOException {
+        File indexFile = getIndexFile(conversationId);
+        File tmpFile = new File(BASE_DIR, conversationId + INDEX_SUFFIX + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            for (Long offset : offsets) {
+                out.writeLong(offset);
+            }
+        }
+        Files.move(tmpFile.toPath(), indexFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 兼容 FileBasedChatMemory 写出的整文件格式，首次访问时迁移为段文件
+     */
+    private void migrateLegacyIfPresent(String conversationId) throws IOException {
+        File legacyFile = getLegacyFile(conversationId);
+        if (!legacyFile.exists() || getLogFile(conversationId).exists()) {
+            return;
+        }
+        List<Message> legacyMessages = codec.decodeAll(Files.readAllBytes(legacyFile.toPath()));
+        if (legacyMessages != null && !legacyMessages.isEmpty()) {
+            appendRecords(conversationId, legacyMessages);
+        }
+        legacyFile.delete();
+        log.info("迁移旧版对话记录, conversationId: {}, 共 {} 条", conversationId,
+                legacyMessages == null ? 0 : legacyMessages.size());
+    }
+
+    private File getLogFile(String conversationId) {
+        return new File(BASE_DIR, conversationId + LOG_SUFFIX);
+    }
+
+    private File getIndexFile(String conversationId) {
+        return new File(BASE_DIR, conversationId + INDEX_SUFFIX);
+    }
+
+    private File getLegacyFile(String conversationId) {
+        return new File(BASE_DIR, conversationId + LEGACY_SUFFIX);
+    }
+}
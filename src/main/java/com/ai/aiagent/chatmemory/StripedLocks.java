@@ -0,0 +1,36 @@
+package com.ai.aiagent.chatmemory;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按会话 ID 分段的锁
+ *
+ * 同一会话的读写串行执行，不同会话大概率落在不同分段上并发执行，
+ * 既保证单个会话文件不被并发写坏，又不需要用一把全局锁串行化所有对话。
+ */
+final class StripedLocks {
+
+    private final ReentrantLock[] locks;
+    private final int mask;
+
+    StripedLocks() {
+        this(Runtime.getRuntime().availableProcessors() * 8);
+    }
+
+    StripedLocks(int minStripes) {
+        // 分段数取不小于 minStripes 的 2 的幂，便于用位运算取模
+        int stripes = Integer.highestOneBit(Math.max(1, minStripes - 1)) << 1;
+        this.locks = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.mask = stripes - 1;
+    }
+
+    ReentrantLock lockFor(String conversationId) {
+        int hash = conversationId.hashCode();
+        // 扰动高位，避免相近的 ID 落在同一分段
+        hash ^= (hash >>> 16);
+        return locks[hash & mask];
+    }
+}
@@ -0,0 +1,543 @@
+package com.ai.aiagent.chatmemory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * 按 Token 预算裁剪并滚动摘要的对话记忆
+ *
+ * 完整历史仍写入底层存储，返回给模型的只有预算内最近的消息，加上一段滚动摘要。
+ * 超出预算被挤出窗口的旧消息交给后台线程增量合并进摘要，不阻塞请求线程；摘要失败时退避重试，仍失败则留到下次挤出时再合并。
+ * 待摘要的消息数有上限，摘要模型持续失败时丢弃最早的消息（完整历史仍在底层存储中）。
+ * 会话被清空后，进行中的摘要结果直接丢弃，不会写回已清空的会话。
+ * 摘要作为开头的一条用户消息返回：MessageChatMemoryAdvisor 把记忆放在应用的系统提示词之前，不额外增加系统消息。
+ * 摘要保存在底层存储中单独的会话里，不占用对话本身的消息数上限；重建窗口时取最新的摘要，并跳过它已覆盖的消息，重启后摘要不会丢失。
+ * 写入的每条消息在元数据中记录会话内递增的序号，摘要按序号记录覆盖到哪一条，不受重复内容和底层存储裁剪的影响。
+ * 摘要轮流写入两个会话，新摘要写入成功后才清空旧的一个，任何时候底层存储中至少有一份完整的摘要。
+ * 每条消息的 Token 数在进入窗口时计算一次并缓存，窗口总数随增删维护，预算检查为 O(1)。
+ */
+@Slf4j
+public class TokenBudgetChatMemory implements DelegatingChatMemory, AutoCloseable {
+
+    private static final String SUMMARY_PREFIX = "以下是此前对话的摘要，请结合摘要理解后续对话：\n";
+    // 保存摘要的会话 ID 后缀，后面再加上 0 或 1 区分两个轮流写入的会话
+    static final String SUMMARY_CONVERSATION_SUFFIX = ".summary.";
+    // 消息的元数据：会话内递增的序号
+    static final String SEQUENCE_METADATA = "chatMemorySequence";
+    // 摘要消息的元数据：标记，摘要覆盖的最后一条消息的序号，以及摘要的版本号
+    static final String SUMMARY_METADATA = "chatMemorySummary";
+    static final String COVERED_METADATA = "coveredSequence";
+    static final String GENERATION_METADATA = "summaryGeneration";
+
+    private final ChatMemory delegate;
+    private final int maxTokens;
+    private final int minRetainedMessages;
+    private final TokenCountEstimator tokenCountEstimator;
+    private final Summarizer summarizer;
+    private final int maxSummaryAttempts;
+    private final int maxPendingSummary;
+    private final Duration summaryRetryBackoff;
+    private final ExecutorService summaryExecutor;
+    private final boolean ownsExecutor;
+
+    // 会话窗口状态，按访问顺序淘汰，淘汰后下次访问从底层存储重建
+    private final Map<String, ConversationWindow> windows;
+
+    private TokenBudgetChatMemory(Builder builder) {
+        this.delegate = builder.delegate;
+        this.maxTokens = builder.maxTokens;
+        this.minRetainedMessages = builder.minRetainedMessages;
+        this.tokenCountEstimator = builder.tokenCountEstimator;
+        this.summarizer = builder.summarizer;
+        this.maxSummaryAttempts = builder.maxSummaryAttempts;
+        this.maxPendingSummary = builder.maxPendingSummary;
+        this.summaryRetryBackoff = builder.summaryRetryBackoff;
+        this.ownsExecutor = builder.summaryExecutor == null;
+        this.summaryExecutor = ownsExecutor
+                ? Executors.newFixedThreadPool(2, runnable -> {
+                    Thread thread = new Thread(runnable, "chat-memory-summarizer");
+                    thread.setDaemon(true);
+                    return thread;
+                })
+                : builder.summaryExecutor;
+        int maxConversations = builder.maxConversations;
+        this.windows = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ConversationWindow> eldest) {
+                return size() > maxConversations;
+            }
+        });
+    }
+
+    public static Builder builder(ChatMemory delegate) {
+        return new Builder(delegate);
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        // 先建立窗口再写入底层存储，避免重建窗口时把本次消息重复计入
+        while (true) {
+            ConversationWindow window = windowFor(conversationId);
+            synchronized (window) {
+                if (window.cleared) {
+                    // 拿到窗口后会话被清空，重新建立窗口
+                    continue;
+                }
+                for (Message message : messages) {
+                    message.getMetadata().put(SEQUENCE_METADATA, window.nextSequence++);
+                }
+                delegate.add(conversationId, messages);
+                for (Message message : messages) {
+                    window.append(new CountedMessage(message, countTokens(message)));
+                }
+                enforceBudget(conversationId, window);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        ConversationWindow window = windowFor(conversationId);
+        synchronized (window) {
+            List<Message> messages = new ArrayList<>(window.messages.size() + 1);
+            if (!window.summary.isEmpty()) {
+                messages.add(new UserMessage(SUMMARY_PREFIX + window.summary));
+            }
+            for (CountedMessage counted : window.messages) {
+                messages.add(counted.message());
+            }
+            return messages;
+        }
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        ConversationWindow window = windows.remove(conversationId);
+        if (window == null) {
+            clearStored(conversationId);
+            return;
+        }
+        // 持有窗口锁标记清空，进行中的摘要完成后看到标记不再更新状态或写回
+        synchronized (window) {
+            window.cleared = true;
+            window.pendingSummary.clear();
+            clearStored(conversationId);
+        }
+    }
+
+    private void clearStored(String conversationId) {
+        delegate.clear(conversationId);
+        delegate.clear(summaryConversationId(conversationId, 0));
+        delegate.clear(summaryConversationId(conversationId, 1));
+    }
+
+    /**
+     * 当前窗口（含摘要）占用的 Token 数
+     */
+    public int getWindowTokens(String conversationId) {
+        ConversationWindow window = windowFor(conversationId);
+        synchronized (window) {
+            return window.windowTokens + window.summaryTokens;
+        }
+    }
+
+    @Override
+    public ChatMemory getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (ownsExecutor) {
+            summaryExecutor.shutdown();
+        }
+        if (delegate instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    private ConversationWindow windowFor(String conversationId) {
+        ConversationWindow window = windows.get(conversationId);
+        if (window != null) {
+            return window;
+        }
+        // 从底层存储重建窗口，加载期间不持有全局锁
+        ConversationWindow loaded = new ConversationWindow();
+        // 早期版本把摘要写在对话中，这些摘要消息不再计入窗口
+        List<Message> stored = delegate.get(conversationId).stream().filter(message -> !isSummary(message)).toList();
+        int covered = 0;
+        Message summaryMessage = latestSummary(conversationId);
+        if (summaryMessage != null) {
+            String text = summaryMessage.getText();
+            loaded.summary = text.startsWith(SUMMARY_PREFIX) ? text.substring(SUMMARY_PREFIX.length()) : text;
+            loaded.summaryTokens = tokenCountEstimator.estimate(loaded.summary);
+            loaded.summaryGeneration = longMetadata(summaryMessage, GENERATION_METADATA);
+            loaded.lastRemovedSequence = longMetadata(summaryMessage, COVERED_METADATA);
+            covered = coveredCount(stored, loaded.lastRemovedSequence);
+        }
+        // 序号接着已写入的最大序号和摘要覆盖的序号继续递增
+        loaded.nextSequence = loaded.lastRemovedSequence + 1;
+        for (Message message : stored) {
+            loaded.nextSequence = Math.max(loaded.nextSequence, longMetadata(message, SEQUENCE_METADATA) + 1);
+        }
+        for (Message message : stored.subList(covered, stored.size())) {
+            loaded.append(new CountedMessage(message, countTokens(message)));
+        }
+        synchronized (windows) {
+            window = windows.get(conversationId);
+            if (window != null) {
+                return window;
+            }
+            windows.put(conversationId, loaded);
+        }
+        // 超出预算的部分进入摘要队列
+        synchronized (loaded) {
+            enforceBudget(conversationId, loaded);
+        }
+        return loaded;
+    }
+
+    /**
+     * 从窗口头部移出消息直到满足预算，移出的消息排队等待摘要
+     */
+    private void enforceBudget(String conversationId, ConversationWindow window) {
+        evictOverBudget(window);
+        if (!window.pendingSummary.isEmpty() && !window.summarizing) {
+            window.summarizing = true;
+            summaryExecutor.execute(() -> summarize(conversationId, window));
+        }
+    }
+
+    /**
+     * 后台合并摘要，期间新挤出的消息会在下一轮继续合并
+     */
+    private void summarize(String conversationId, ConversationWindow window) {
+        while (true) {
+            String previousSummary;
+            List<Message> batch;
+            long batchStart;
+            synchronized (window) {
+                if (window.cleared || window.pendingSummary.isEmpty()) {
+                    window.summarizing = false;
+                    return;
+                }
+                previousSummary = window.summary;
+                batch = new ArrayList<>(window.pendingSummary);
+                batchStart = window.pendingStart;
+            }
+            String summary = summarizeWithRetry(conversationId, previousSummary, batch);
+            synchronized (window) {
+                if (window.cleared || summary == null) {
+                    // 会话已清空时丢弃结果；摘要失败时待摘要的消息保留，下次有消息挤出时再尝试
+                    window.summarizing = false;
+                    return;
+                }
+                // 摘要期间可能因超出上限丢弃了队首的消息，只移除本批中还在队列里的部分
+                long consumed = Math.min(Math.max(0, batchStart + batch.size() - window.pendingStart),
+                        window.pendingSummary.size());
+                removePending(window, (int) consumed);
+                window.summary = summary;
+                window.summaryTokens = tokenCountEstimator.estimate(window.summary);
+                // 摘要变长后可能再次超出预算
+                evictOverBudget(window);
+                persistSummary(conversationId, window);
+            }
+        }
+    }
+
+    /**
+     * 调用摘要模型，失败时按指数退避重试
+     *
+     * @return 新的摘要，重试后仍失败时为 null
+     */
+    private String summarizeWithRetry(String conversationId, String previousSummary, List<Message> batch) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                String summary = summarizer.summarize(previousSummary, batch);
+                return summary == null ? "" : summary;
+            } catch (Exception e) {
+                if (attempt >= maxSummaryAttempts) {
+                    log.error("对话摘要生成失败, conversationId: {}, 已尝试 {} 次", conversationId, attempt, e);
+                    return null;
+                }
+                log.warn("对话摘要生成失败, conversationId: {}, 第 {} 次重试: {}", conversationId, attempt, e.getMessage());
+            }
+            try {
+                Thread.sleep(summaryRetryBackoff.multipliedBy(1L << Math.min(attempt - 1, 10)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 摘要保存到单独的会话，记录摘要覆盖的最后一条消息的序号。
+     * 新版本写入另一个会话，写入成功后再清空旧版本所在的会话，中途失败时旧摘要仍然完整
+     */
+    private void persistSummary(String conversationId, ConversationWindow window) {
+        if (window.summary.isEmpty() || window.lastRemovedSequence < 0) {
+            return;
+        }
+        long generation = window.summaryGeneration + 1;
+        Message summaryMessage = UserMessage.builder()
+                .text(SUMMARY_PREFIX + window.summary)
+                .metadata(Map.of(SUMMARY_METADATA, true,
+                        COVERED_METADATA, window.lastRemovedSequence,
+                        GENERATION_METADATA, generation))
+                .build();
+        String target = summaryConversationId(conversationId, generation);
+        try {
+            // 目标会话中只可能是更早一版的摘要，当前版本在另一个会话中
+            delegate.clear(target);
+            delegate.add(target, List.of(summaryMessage));
+            window.summaryGeneration = generation;
+            delegate.clear(summaryConversationId(conversationId, generation - 1));
+        } catch (RuntimeException e) {
+            log.error("对话摘要保存失败, conversationId: {}", conversationId, e);
+        }
+    }
+
+    /**
+     * 两个摘要会话中版本号较大的一条，都没有时为 null
+     */
+    private Message latestSummary(String conversationId) {
+        Message latest = null;
+        for (int slot = 0; slot < 2; slot++) {
+            for (Message message : delegate.get(summaryConversationId(conversationId, slot))) {
+                if (latest == null
+                        || longMetadata(message, GENERATION_METADATA) > longMetadata(latest, GENERATION_METADATA)) {
+                    latest = message;
+                }
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * 已被摘要覆盖的消息数：底层存储按序号顺序保存，从后往前找第一条序号不大于覆盖序号的消息。
+     * 没有序号的消息来自早期版本，不参与比较
+     */
+    private static int coveredCount(List<Message> stored, long coveredSequence) {
+        if (coveredSequence < 0) {
+            return 0;
+        }
+        for (int i = stored.size() - 1; i >= 0; i--) {
+            long sequence = longMetadata(stored.get(i), SEQUENCE_METADATA);
+            if (sequence >= 0 && sequence <= coveredSequence) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    // 缺失或类型不对时为 -1
+    private static long longMetadata(Message message, String key) {
+        return message.getMetadata().get(key) instanceof Number number ? number.longValue() : -1;
+    }
+
+    static String summaryConversationId(String conversationId, long generation) {
+        return conversationId + SUMMARY_CONVERSATION_SUFFIX + (generation & 1);
+    }
+
+    private static boolean isSummary(Message message) {
+        return Boolean.TRUE.equals(message.getMetadata().get(SUMMARY_METADATA));
+    }
+
+    /**
+     * 从待摘要队列头部移除消息（已合并进摘要或因超出上限丢弃），记录最后移除的一条的序号
+     */
+    private static void removePending(ConversationWindow window, int count) {
+        if (count <= 0) {
+            return;
+        }
+        List<Message> removed = window.pendingSummary.subList(0, count);
+        long sequence = longMetadata(removed.get(count - 1), SEQUENCE_METADATA);
+        if (sequence >= 0) {
+            window.lastRemovedSequence = sequence;
+        }
+        removed.clear();
+        window.pendingStart += count;
+    }
+
+    private void evictOverBudget(ConversationWindow window) {
+        while (window.windowTokens + window.summaryTokens > maxTokens
+                && window.messages.size() > minRetainedMessages) {
+            CountedMessage evicted = window.messages.pollFirst();
+            window.windowTokens -= evicted.tokens();
+            window.pendingSummary.add(evicted.message());
+        }
+        int overflow = window.pendingSummary.size() - maxPendingSummary;
+        if (overflow > 0) {
+            removePending(window, overflow);
+            log.warn("待摘要的消息超过 {} 条，丢弃最早的 {} 条", maxPendingSummary, overflow);
+        }
+    }
+
+    private int countTokens(Message message) {
+        String text = message.getText();
+        return text == null ? 0 : tokenCountEstimator.estimate(text);
+    }
+
+    private record CountedMessage(Message message, int tokens) {
+    }
+
+    private static class ConversationWindow {
+        private final Deque<CountedMessage> messages = new ArrayDeque<>();
+        private final List<Message> pendingSummary = new ArrayList<>();
+        // pendingSummary 第一条消息的序号，每移除一条加一，用于对齐进行中的摘要批次
+        private long pendingStart = 0;
+        private int windowTokens = 0;
+        private String summary = "";
+        private int summaryTokens = 0;
+        private boolean summarizing = false;
+        // 已保存的摘要的版本号，没有时为 0
+        private long summaryGeneration = 0;
+        // 下一条写入的消息的序号
+        private long nextSequence = 0;
+        // 最近一条移出待摘要队列的消息的序号，它和之前的消息都不再出现在窗口中，没有时为 -1
+        private long lastRemovedSequence = -1;
+        // 会话已被清空，该窗口作废
+        private boolean cleared = false;
+
+        private void append(CountedMessage counted) {
+            messages.addLast(counted);
+            windowTokens += counted.tokens();
+        }
+    }
+
+    /**
+     * 将旧摘要与新挤出的消息合并为新的摘要
+     */
+    @FunctionalInterface
+    public interface Summarizer {
+        String summarize(String previousSummary, List<Message> evictedMessages);
+    }
+
+    /**
+     * 基于对话模型生成摘要
+     */
+    public static Summarizer chatModelSummarizer(ChatModel chatModel) {
+        ChatClient chatClient = ChatClient.builder(chatModel).build();
+        return (previousSummary, evictedMessages) -> {
+            String transcript = evictedMessages.stream()
+                    .map(message -> message.getMessageType().getValue() + ": " + message.getText())
+                    .collect(Collectors.joining("\n"));
+            return chatClient.prompt()
+                    .system("你负责压缩对话历史。请将已有摘要与新的对话片段合并为一段简洁的摘要，" +
+                            "保留用户的身份信息、感情状态、关键事件和已给出的建议，不要编造内容，不超过 300 字。")
+                    .user("已有摘要：\n" + (previousSummary.isEmpty() ? "无" : previousSummary)
+                            + "\n\n新的对话片段：\n" + transcript)
+                    .call()
+                    .content();
+        };
+    }
+
+    public static class Builder {
+        private final ChatMemory delegate;
+        private int maxTokens = 4000;
+        private int minRetainedMessages = 2;
+        private int maxConversations = 10000;
+        private TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+        private Summarizer summarizer;
+        private int maxSummaryAttempts = 3;
+        private int maxPendingSummary = 500;
+        private Duration summaryRetryBackoff = Duration.ofSeconds(1);
+        private ExecutorService summaryExecutor;
+
+        private Builder(ChatMemory delegate) {
+            if (delegate == null) {
+                throw new IllegalArgumentException("delegate chat memory must not be null");
+            }
+            this.delegate = delegate;
+        }
+
+        public Builder maxTokens(int maxTokens) {
+            this.maxTokens = maxTokens;
+            return this;
+        }
+
+        /**
+         * 无论预算如何，窗口中至少保留的最近消息数
+         */
+        public Builder minRetainedMessages(int minRetainedMessages) {
+            this.minRetainedMessages = minRetainedMessages;
+            return this;
+        }
+
+        public Builder maxConversations(int maxConversations) {
+            this.maxConversations = maxConversations;
+            return this;
+        }
+
+        public Builder tokenCountEstimator(TokenCountEstimator tokenCountEstimator) {
+            this.tokenCountEstimator = tokenCountEstimator;
+            return this;
+        }
+
+        public Builder summarizer(Summarizer summarizer) {
+            this.summarizer = summarizer;
+            return this;
+        }
+
+        /**
+         * 摘要失败时的最大尝试次数（含第一次）和第一次重试前的等待时间，之后每次翻倍
+         */
+        public Builder summaryRetry(int maxSummaryAttempts, Duration summaryRetryBackoff) {
+            this.maxSummaryAttempts = maxSummaryAttempts;
+            this.summaryRetryBackoff = summaryRetryBackoff;
+            return this;
+        }
+
+        /**
+         * 每个会话最多积压的待摘要消息数，超过时丢弃最早的
+         */
+        public Builder maxPendingSummary(int maxPendingSummary) {
+            this.maxPendingSummary = maxPendingSummary;
+            return this;
+        }
+
+        /**
+         * 指定摘要任务的执行器，不指定时使用内部的后台线程池
+         */
+        public Builder summaryExecutor(ExecutorService summaryExecutor) {
+            this.summaryExecutor = summaryExecutor;
+            return this;
+        }
+
+        public TokenBudgetChatMemory build() {
+            if (summarizer == null) {
+                throw new IllegalArgumentException("summarizer must not be null");
+            }
+            if (maxTokens <= 0) {
+                throw new IllegalArgumentException("maxTokens must be greater than 0");
+            }
+            if (maxPendingSummary <= 0) {
+                throw new IllegalArgumentException("maxPendingSummary must be greater than 0");
+            }
+            if (maxSummaryAttempts <= 0) {
+                throw new IllegalArgumentException("maxSummaryAttempts must be greater than 0");
+            }
+            return new TokenBudgetChatMemory(this);
+        }
+    }
+}
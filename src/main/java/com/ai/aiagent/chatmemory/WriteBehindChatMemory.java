@@ -0,0 +1,406 @@
+package com.ai.aiagent.chatmemory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 异步写回（write-behind）的对话记忆
+ *
+ * add 只把消息放进内存中的待写队列就返回，由后台刷盘线程按会话合并后批量写入底层存储，
+ * 请求线程（包括流式对话结束时的记忆写入）不再等待磁盘。读取时合并底层存储与尚未落盘的消息。
+ * 刷盘期间不持有会话锁，慢磁盘不会阻塞同一会话的 add；读取与清空会等待该会话正在进行的刷盘完成。
+ * 待写消息总数有上限，写满后 add 阻塞等待刷盘（背压），并记录阻塞次数与时长。
+ * 底层存储写入失败时抛出异常（而不是吞掉），待写消息保留在内存中稍后重试。
+ * close 时会把所有待写消息刷完再关闭底层存储；与 close 并发的 add 要么在关闭前入队并被刷完，要么同步写入。
+ * 关闭阶段写入失败的消息由 close 同步重试有限次数，仍然失败才丢弃，丢弃的消息数计入统计信息。
+ */
+@Slf4j
+public class WriteBehindChatMemory implements DelegatingChatMemory, AutoCloseable {
+
+    // 刷盘失败后的重试间隔
+    private static final long RETRY_BACKOFF_MILLIS = 100;
+    // 关闭时同步刷盘的最大尝试次数
+    private static final int SHUTDOWN_FLUSH_ATTEMPTS = 5;
+
+    private final ChatMemory delegate;
+    private final int capacity;
+    private final int maxBatchConversations;
+
+    private final StripedLocks locks = new StripedLocks();
+    // 尚未落盘的消息，按会话合并；修改时需持有该会话的分段锁
+    private final Map<String, PendingWrites> pending = new ConcurrentHashMap<>();
+    // 待刷盘的会话 ID，以及 flush() 插入的屏障
+    private final LinkedBlockingQueue<Object> flushQueue = new LinkedBlockingQueue<>();
+    // 每条待写消息占用一个许可
+    private final Semaphore permits;
+    private final Thread flusher;
+    // add 入队时持有读锁，close 持有写锁切换 running，关闭后不会再有消息进入待写队列
+    private final ReentrantReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private volatile boolean running = true;
+
+    private final AtomicLong enqueuedMessages = new AtomicLong();
+    private final AtomicLong flushedMessages = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong failedFlushCount = new AtomicLong();
+    private final AtomicLong lostMessages = new AtomicLong();
+    private final AtomicLong backpressureCount = new AtomicLong();
+    private final AtomicLong backpressureWaitNanos = new AtomicLong();
+
+    public WriteBehindChatMemory(ChatMemory delegate) {
+        this(delegate, 10000, 256);
+    }
+
+    /**
+     * @param capacity              最多缓存的待写消息数，超过后 add 阻塞
+     * @param maxBatchConversations 刷盘线程每轮最多处理的会话数
+     */
+    public WriteBehindChatMemory(ChatMemory delegate, int capacity, int maxBatchConversations) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate chat memory must not be null");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0");
+        }
+        this.delegate = delegate;
+        this.capacity = capacity;
+        this.maxBatchConversations = Math.max(1, maxBatchConversations);
+        this.permits = new Semaphore(capacity);
+        this.flusher = new Thread(this::runFlusher, "chat-memory-write-behind");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        if (!running) {
+            addSynchronously(conversationId, messages);
+            return;
+        }
+        // 单次写入超过容量时按容量计，保证总能拿到许可
+        int required = Math.min(messages.size(), capacity);
+        if (!permits.tryAcquire(required)) {
+            backpressureCount.incrementAndGet();
+            long start = System.nanoTime();
+            permits.acquireUninterruptibly(required);
+            backpressureWaitNanos.addAndGet(System.nanoTime() - start);
+        }
+        closeLock.readLock().lock();
+        try {
+            if (!running) {
+                // 等待许可期间已关闭
+                permits.release(required);
+            } else {
+                enqueue(conversationId, messages, required);
+                return;
+            }
+        } finally {
+            closeLock.readLock().unlock();
+        }
+        addSynchronously(conversationId, messages);
+    }
+
+    private void enqueue(String conversationId, List<Message> messages, int required) {
+        ReentrantLock lock = locks.lockFor(conversationId);
+        lock.lock();
+        try {
+            PendingWrites writes = pending.computeIfAbsent(conversationId, id -> new PendingWrites());
+            writes.messages.addAll(messages);
+            writes.permits += required;
+            if (!writes.queued) {
+                writes.queued = true;
+                flushQueue.offer(conversationId);
+            }
+        } finally {
+            lock.unlock();
+        }
+        enqueuedMessages.addAndGet(messages.size());
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        ReentrantLock lock = locks.lockFor(conversationId);
+        lockIdle(conversationId, lock);
+        try {
+            // 持锁且没有进行中的刷盘，底层存储与待写消息之间不会重复或遗漏
+            List<Message> messages = new ArrayList<>(delegate.get(conversationId));
+            PendingWrites writes = pending.get(conversationId);
+            if (writes != null) {
+                messages.addAll(writes.messages);
+            }
+            return messages;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        ReentrantLock lock = locks.lockFor(conversationId);
+        lockIdle(conversationId, lock);
+        try {
+            PendingWrites writes = pending.remove(conversationId);
+            if (writes != null) {
+                permits.release(writes.permits);
+            }
+            delegate.clear(conversationId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 阻塞直到调用前提交的消息全部写入底层存储
+     */
+    public void flush() {
+        if (!running || Thread.currentThread() == flusher) {
+            return;
+        }
+        CompletableFuture<Void> barrier = new CompletableFuture<>();
+        flushQueue.offer(barrier);
+        barrier.join();
+    }
+
+    @Override
+    public ChatMemory getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * 获取写回队列统计信息
+     */
+    public WriteBehindStats getStats() {
+        return new WriteBehindStats(pending.size(), capacity - permits.availablePermits(),
+                enqueuedMessages.get(), flushedMessages.get(), flushCount.get(), failedFlushCount.get(),
+                lostMessages.get(), backpressureCount.get(),
+                TimeUnit.NANOSECONDS.toMillis(backpressureWaitNanos.get()));
+    }
+
+    /**
+     * 停止接收异步写入，把剩余的待写消息全部刷入底层存储后关闭底层存储
+     */
+    @Override
+    public void close() throws Exception {
+        if (running) {
+            closeLock.writeLock().lock();
+            try {
+                running = false;
+            } finally {
+                closeLock.writeLock().unlock();
+            }
+            flusher.join();
+            flushRemaining();
+        }
+        if (delegate instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    /**
+     * 刷盘线程退出后仍留在内存中的消息（包括关闭阶段写入失败的）由当前线程同步重试，间隔逐次翻倍；
+     * 用尽重试次数后丢弃并计入 lostMessages
+     */
+    private void flushRemaining() {
+        for (int attempt = 1; attempt <= SHUTDOWN_FLUSH_ATTEMPTS && !pending.isEmpty(); attempt++) {
+            if (attempt > 1) {
+                try {
+                    Thread.sleep(RETRY_BACKOFF_MILLIS << (attempt - 2));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            for (String conversationId : new ArrayList<>(pending.keySet())) {
+                flushConversation(conversationId);
+            }
+        }
+        for (String conversationId : new ArrayList<>(pending.keySet())) {
+            ReentrantLock lock = locks.lockFor(conversationId);
+            lock.lock();
+            try {
+                PendingWrites writes = pending.remove(conversationId);
+                if (writes != null && !writes.messages.isEmpty()) {
+                    permits.release(writes.permits);
+                    lostMessages.addAndGet(writes.messages.size());
+                    log.error("关闭时对话记忆写回失败，丢弃 {} 条消息, conversationId: {}",
+                            writes.messages.size(), conversationId);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 关闭后退化为同步写入，连同该会话尚未落盘的消息一起按顺序写入
+     */
+    private void addSynchronously(String conversationId, List<Message> messages) {
+        ReentrantLock lock = locks.lockFor(conversationId);
+        lockIdle(conversationId, lock);
+        try {
+            PendingWrites writes = pending.remove(conversationId);
+            if (writes == null) {
+                delegate.add(conversationId, messages);
+                return;
+            }
+            permits.release(writes.permits);
+            List<Message> combined = new ArrayList<>(writes.messages);
+            combined.addAll(messages);
+            delegate.add(conversationId, combined);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void runFlusher() {
+        List<Object> batch = new ArrayList<>(maxBatchConversations);
+        while (running || !flushQueue.isEmpty()) {
+            Object first;
+            try {
+                first = flushQueue.poll(RETRY_BACKOFF_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (first == null) {
+                continue;
+            }
+            batch.add(first);
+            flushQueue.drainTo(batch, maxBatchConversations - 1);
+            boolean failed = false;
+            for (Object item : batch) {
+                if (item instanceof CompletableFuture<?> barrier) {
+                    barrier.complete(null);
+                } else if (!flushConversation((String) item)) {
+                    failed = true;
+                }
+            }
+            batch.clear();
+            if (failed && running) {
+                // 底层存储异常时稍后重试，待写消息保留在内存中并继续占用许可
+                try {
+                    Thread.sleep(RETRY_BACKOFF_MILLIS);
+                } catch (InterruptedException ignored) {
+                }
+            }
+        }
+        // 关闭时仍在等待的屏障直接放行
+        for (Object item : flushQueue) {
+            if (item instanceof CompletableFuture<?> barrier) {
+                barrier.complete(null);
+            }
+        }
+    }
+
+    /**
+     * 加锁并等待该会话进行中的刷盘结束，返回时调用方持有锁
+     */
+    private void lockIdle(String conversationId, ReentrantLock lock) {
+        while (true) {
+            lock.lock();
+            PendingWrites writes = pending.get(conversationId);
+            if (writes == null || writes.flushing == null) {
+                return;
+            }
+            CompletableFuture<Void> flushing = writes.flushing;
+            lock.unlock();
+            flushing.join();
+        }
+    }
+
+    /**
+     * 把一个会话的全部待写消息合并为一次写入，写入期间不持有会话锁
+     */
+    private boolean flushConversation(String conversationId) {
+        ReentrantLock lock = locks.lockFor(conversationId);
+        PendingWrites writes;
+        List<Message> batch;
+        int batchPermits;
+        lock.lock();
+        try {
+            writes = pending.get(conversationId);
+            if (writes == null || writes.messages.isEmpty() || writes.flushing != null) {
+                // 刷盘前会话已被清空，或已由其他线程写入
+                return true;
+            }
+            batch = writes.messages;
+            batchPermits = writes.permits;
+            writes.messages = new ArrayList<>();
+            writes.permits = 0;
+            writes.queued = false;
+            writes.flushing = new CompletableFuture<>();
+        } finally {
+            lock.unlock();
+        }
+        Exception failure = null;
+        try {
+            delegate.add(conversationId, batch);
+        } catch (Exception e) {
+            failure = e;
+        }
+        lock.lock();
+        try {
+            CompletableFuture<Void> flushing = writes.flushing;
+            writes.flushing = null;
+            if (failure == null) {
+                permits.release(batchPermits);
+                flushCount.incrementAndGet();
+                flushedMessages.addAndGet(batch.size());
+                if (writes.messages.isEmpty()) {
+                    pending.remove(conversationId, writes);
+                }
+            } else {
+                failedFlushCount.incrementAndGet();
+                log.error("对话记忆写回失败, conversationId: {}", conversationId, failure);
+                // 放回队首等待重试，保持消息顺序
+                writes.messages.addAll(0, batch);
+                writes.permits += batchPermits;
+                // 关闭阶段不再放回刷盘队列，避免刷盘线程无法退出，由 close 同步重试
+                if (running && !writes.queued) {
+                    writes.queued = true;
+                    flushQueue.offer(conversationId);
+                }
+            }
+            flushing.complete(null);
+            return failure == null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static class PendingWrites {
+        private List<Message> messages = new ArrayList<>();
+        private int permits = 0;
+        // 是否已在刷盘队列中
+        private boolean queued = false;
+        // 进行中的刷盘，完成后置空
+        private CompletableFuture<Void> flushing;
+    }
+
+    /**
+     * 写回队列统计信息
+     *
+     * @param pendingMessages        尚未落盘的消息数
+     * @param lostMessages           关闭时重试后仍写入失败而丢弃的消息数
+     * @param backpressureCount      add 因队列写满而阻塞的次数
+     * @param backpressureWaitMillis add 因背压累计阻塞的时长
+     */
+    public record WriteBehindStats(int pendingConversations, int pendingMessages, long enqueuedMessages,
+                                   long flushedMessages, long flushCount, long failedFlushCount,
+                                   long lostMessages, long backpressureCount, long backpressureWaitMillis) {
+    }
+}
@@ -1,8 +1,25 @@
 package com.ai.aiagent.controller;
 
+import com.ai.aiagent.agent.AgentCheckpoint;
+import com.ai.aiagent.agent.AgentCheckpointStore;
+import com.ai.aiagent.agent.AgentContextManager;
+import com.ai.aiagent.agent.AgentExecutor;
+import com.ai.aiagent.agent.AgentRun;
+import com.ai.aiagent.agent.AgentRunRegistry;
 import com.ai.aiagent.agent.MyManus;
+import com.ai.aiagent.agent.MyManusFactory;
 import com.ai.aiagent.app.LoveApp;
+import com.ai.aiagent.chatmemory.CachingChatMemory;
+import com.ai.aiagent.chatmemory.DelegatingChatMemory;
+import com.ai.aiagent.chatmemory.WriteBehindChatMemory;
+import com.ai.aiagent.rag.BatchingEmbeddingModel;
+import com.ai.aiagent.rag.DocumentEmbeddingConfig;
+import com.ai.aiagent.rag.DocumentIngestionService;
+import com.ai.aiagent.tools.DownloadEngine;
+import com.ai.aiagent.tools.OutboundHttpClient;
 import com.ai.aiagent.tools.SpeechToTextTool;
+import com.ai.aiagent.tools.ToolResultCache;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
@@ -10,8 +27,6 @@ import org.springframework.web.multipart.MultipartFile;
 import lombok.extern.slf4j.Slf4j;
 
 import jakarta.annotation.Resource;
-import org.springframework.ai.chat.model.ChatModel;
-import org.springframework.ai.tool.ToolCallback;
 import org.springframework.http.MediaType;
 import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -22,7 +37,10 @@ import reactor.core.publisher.Flux;
 
 import java.io.IOException;
 import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/ai")
@@ -33,10 +51,32 @@ public class AiController {
     private LoveApp loveApp;
 
     @Resource
-    private ToolCallback[] allTools;
+    private MyManusFactory myManusFactory;
 
     @Resource
-    private ChatModel dashscopeChatModel;
+    private AgentExecutor agentExecutor;
+
+    @Resource
+    private AgentRunRegistry agentRunRegistry;
+
+    @Resource
+    private AgentCheckpointStore agentCheckpointStore;
+
+    @Resource
+    private ToolResultCache toolResultCache;
+
+    @Resource
+    private OutboundHttpClient outboundHttpClient;
+
+    @Resource
+    private DownloadEngine downloadEngine;
+
+    @Resource
+    private ObjectProvider<DocumentIngestionService> documentIngestionService;
+
+    @Resource
+    private DocumentEmbeddingConfig.DocumentEmbedding documentEmbedding;
+
     @Value("${youdao.appKey}")
     private String appKey;
 
@@ -57,23 +97,41 @@ public class AiController {
             @RequestParam("audio") MultipartFile audioFile,
             @RequestParam(required = false) String chatId) {
         return Flux.defer(() -> {
+            Path tempFile = null;
             try {
-                // 保存临时文件
-                String tempFilePath = Files.createTempFile("audio_", ".wav").toString();
-                audioFile.transferTo(Paths.get(tempFilePath));
-                SpeechToTextTool speechToTextTool = new SpeechToTextTool(appKey, appSecret);
-                // 语音转文字
-                String text = speechToTextTool.convertSpeechToText(tempFilePath, "zh-CHS");
+                // 上传内容流式写入临时文件，识别时按段读取
+                tempFile = Files.createTempFile("audio_", ".wav");
+                audioFile.transferTo(tempFile);
+                SpeechToTextTool speechToTextTool = new SpeechToTextTool(appKey, appSecret, outboundHttpClient);
+                // 语音转文字，失败时抛出异常
+                String text = speechToTextTool.transcribeFile(tempFile, "zh-CHS");
 
                 // 调用AI流式接口
                 return loveApp.doChatByStream(text, chatId);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Flux.just("语音识别已取消");
             } catch (Exception e) {
                 log.error("语音问答处理失败: {}", e.getMessage(), e);
                 return Flux.just("语音识别失败: " + e.getMessage());
+            } finally {
+                // 识别完成后临时文件不再需要
+                deleteQuietly(tempFile);
             }
         });
     }
 
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("删除临时文件失败: {}", file, e);
+        }
+    }
+
     @GetMapping("/love_app/chat/sync")
     public String doChatWithLoveAppSync(String message, String chatId) {
         return loveApp.doChat(message, chatId);
@@ -138,8 +196,153 @@ public class AiController {
      */
     @GetMapping("/manus/chat")
     public SseEmitter doChatWithManus(String message) {
-        MyManus myManus = new MyManus(allTools, dashscopeChatModel);
-        return myManus.runStream(message);
+        // 共享工具和客户端配置，每个请求只创建自己的运行状态
+        MyManus myManus = myManusFactory.create();
+        // 在虚拟线程上运行，并发数和排队数受执行器限制
+        AgentRun run = myManus.startStream(message, agentExecutor);
+        agentRunRegistry.register(run);
+        return run.getEmitter();
+    }
+
+    /**
+     * 从检查点恢复 Manus 超级智能体的运行，已完成的步骤不再重复执行
+     *
+     * @param runId 运行 ID
+     * @return
+     */
+    @GetMapping("/manus/resume")
+    public SseEmitter resumeManus(String runId) {
+        // 先预占运行 ID 再读取检查点，同一节点上并发的恢复请求只有一个能继续执行；跨节点由检查点存储的租约保证
+        if (!agentRunRegistry.claim(runId)) {
+            return errorEmitter("错误：运行仍在进行中");
+        }
+        try {
+            Optional<AgentCheckpoint> checkpoint = agentCheckpointStore.load(runId);
+            if (checkpoint.isEmpty()) {
+                agentRunRegistry.release(runId);
+                return errorEmitter("错误：运行不存在或已结束");
+            }
+            AgentRun run = myManusFactory.create().resumeStream(checkpoint.get(), agentExecutor);
+            agentRunRegistry.register(run);
+            return run.getEmitter();
+        } catch (RuntimeException e) {
+            agentRunRegistry.release(runId);
+            throw e;
+        }
+    }
+
+    private static SseEmitter errorEmitter(String message) {
+        SseEmitter emitter = new SseEmitter();
+        try {
+            emitter.send(message);
+            emitter.complete();
+        } catch (IOException e) {
+            emitter.completeWithError(e);
+        }
+        return emitter;
+    }
+
+    /**
+     * 取消 Manus 超级智能体的运行
+     *
+     * @param runId 运行 ID，即 /manus/chat 推送的第一条 run_id 事件
+     * @return 是否取消成功
+     */
+    @PostMapping("/manus/cancel")
+    public boolean cancelManus(String runId) {
+        return agentRunRegistry.cancel(runId, "用户取消");
+    }
+
+    /**
+     * 恋爱大师对话记忆缓存的命中情况，未启用缓存时返回空
+     *
+     * @return
+     */
+    @GetMapping("/love_app/memory/cache/stats")
+    public Optional<CachingChatMemory.CacheStats> getChatMemoryCacheStats() {
+        return DelegatingChatMemory.find(loveApp.getChatMemory(), CachingChatMemory.class)
+                .map(CachingChatMemory::getStats);
+    }
+
+    /**
+     * 恋爱大师对话记忆异步写回队列的统计，未开启异步写回时返回空
+     *
+     * @return
+     */
+    @GetMapping("/love_app/memory/write_behind/stats")
+    public Optional<WriteBehindChatMemory.WriteBehindStats> getChatMemoryWriteBehindStats() {
+        return DelegatingChatMemory.find(loveApp.getChatMemory(), WriteBehindChatMemory.class)
+                .map(WriteBehindChatMemory::getStats);
+    }
+
+    /**
+     * 智能体执行器状态
+     *
+     * @return
+     */
+    @GetMapping("/manus/stats")
+    public AgentExecutor.AgentExecutorStats getManusStats() {
+        return agentExecutor.getStats();
+    }
+
+    /**
+     * 智能体每一步发送给模型的上下文大小（压缩前后的字符数和 Token 数）
+     *
+     * @return
+     */
+    @GetMapping("/manus/context/stats")
+    public AgentContextManager.ContextStats getManusContextStats() {
+        return myManusFactory.getContextStats();
     }
-}
 
+    /**
+     * 工具结果缓存的命中情况
+     *
+     * @return
+     */
+    @GetMapping("/tools/cache/stats")
+    public ToolResultCache.CacheStats getToolCacheStats() {
+        return toolResultCache.getStats();
+    }
+
+    /**
+     * 工具出站 HTTP 请求按主机的统计
+     *
+     * @return
+     */
+    @GetMapping("/tools/http/stats")
+    public Map<String, OutboundHttpClient.HostStats> getToolHttpStats() {
+        return outboundHttpClient.getStats();
+    }
+
+    /**
+     * 进行中的资源下载及进度
+     *
+     * @return
+     */
+    @GetMapping("/tools/downloads")
+    public List<DownloadEngine.DownloadProgress> getActiveDownloads() {
+        return downloadEngine.getActiveDownloads();
+    }
+
+    /**
+     * 文档目录增量导入的统计，未开启导入时返回空
+     *
+     * @return
+     */
+    @GetMapping("/rag/ingestion/stats")
+    public Optional<DocumentIngestionService.IngestionStats> getIngestionStats() {
+        return Optional.ofNullable(documentIngestionService.getIfAvailable())
+                .map(DocumentIngestionService::getStats);
+    }
+
+    /**
+     * 知识库文档分批嵌入的统计：请求数、重试和限流次数等
+     *
+     * @return
+     */
+    @GetMapping("/rag/embedding/stats")
+    public BatchingEmbeddingModel.EmbeddingStats getEmbeddingStats() {
+        return documentEmbedding.model().getStats();
+    }
+}
@@ -0,0 +1,319 @@
+package com.ai.aiagent.rag;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.MetadataMode;
+import org.springframework.ai.embedding.BatchingStrategy;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.retry.NonTransientAiException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 分批、并行计算向量的嵌入模型装饰器
+ *
+ * 大量文本按 batchSize 拆成多个请求，在虚拟线程上并行发送，同时进行的请求数受信号量限制（所有批量调用共享）。
+ * 请求失败时按指数退避加随机抖动重试；遇到限流时所有批量请求一起暂停到退避结束，避免继续触发限流。
+ * 参数错误等不可重试的异常直接抛出。统计请求数、重试次数和吞吐量，供日志和监控使用。
+ *
+ * 重试只在这一层进行，delegate 应当不带重试（见 DocumentEmbeddingConfig），
+ * 否则 delegate 内部的重试会一直占着许可，也不理会限流暂停。
+ * 查询等单条文本的请求不占用批量请求的许可，也不等待限流暂停，避免检索排在大批量入库之后。
+ */
+@Slf4j
+public class BatchingEmbeddingModel implements EmbeddingModel {
+
+    private static final Duration MAX_BACKOFF = Duration.ofSeconds(30);
+    private static final String THROTTLING_STATUS_PREFIX = "429 - ";
+    // DashScope 限流错误码为 Throttling、Throttling.RateQuota 等
+    private static final String THROTTLING_ERROR_CODE = "Throttling";
+
+    private final EmbeddingModel delegate;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Semaphore permits;
+
+    // 限流后所有请求暂停到该时刻（System.nanoTime）
+    private final AtomicLong pausedUntil = new AtomicLong(System.nanoTime());
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong embeddedTexts = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+
+    /**
+     * @param batchSize      每个请求的最大文本数，DashScope text-embedding-v3 为 10，v1/v2 为 25
+     * @param maxConcurrency 同时进行的请求数
+     * @param maxAttempts    每个请求的最大尝试次数，包括第一次
+     * @param initialBackoff 第一次重试前的等待时间，之后每次翻倍，最长 30 秒
+     */
+    public BatchingEmbeddingModel(EmbeddingModel delegate, int batchSize, int maxConcurrency, int maxAttempts,
+                                  Duration initialBackoff) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate embedding model must not be null");
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be greater than 0");
+        }
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be greater than 0");
+        }
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be greater than 0");
+        }
+        this.delegate = delegate;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.permits = new Semaphore(maxConcurrency, true);
+    }
+
+    public EmbeddingModel getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<String> texts = request.getInstructions();
+        List<float[]> vectors = texts.size() == 1
+                ? embedSingle(() -> delegate.call(request).getResults().stream().map(Embedding::getOutput).toList())
+                : embedAll(split(texts), request.getOptions());
+        List<Embedding> embeddings = new ArrayList<>(vectors.size());
+        for (int i = 0; i < vectors.size(); i++) {
+            embeddings.add(new Embedding(vectors.get(i), i));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return embedSingle(() -> List.of(delegate.embed(document))).get(0);
+    }
+
+    /**
+     * 先按 batchingStrategy 切分（控制每个请求的 token 数），再按 batchSize 切分，所有请求一起并行发送。
+     * 与 embed(Document) 一样对带 EMBED 元信息的格式化内容计算向量
+     */
+    @Override
+    public List<float[]> embed(List<Document> documents, EmbeddingOptions options, BatchingStrategy batchingStrategy) {
+        List<List<String>> batches = new ArrayList<>();
+        for (List<Document> batch : batchingStrategy.batch(documents)) {
+            batches.addAll(split(batch.stream()
+                    .map(document -> document.getFormattedContent(MetadataMode.EMBED))
+                    .toList()));
+        }
+        List<float[]> vectors = embedAll(batches, options);
+        if (vectors.size() != documents.size()) {
+            throw new IllegalStateException("Embedded " + vectors.size() + " of " + documents.size() + " documents");
+        }
+        return vectors;
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    /**
+     * 累计统计
+     */
+    public EmbeddingStats getStats() {
+        long texts = embeddedTexts.get();
+        long nanos = busyNanos.get();
+        return new EmbeddingStats(requests.get(), texts, retries.get(), throttled.get(), failures.get(),
+                nanos == 0 ? 0 : texts * 1_000_000_000.0 / nanos);
+    }
+
+    /**
+     * 单条文本直接发送，不经过批量请求的信号量和限流暂停
+     */
+    private List<float[]> embedSingle(Supplier<List<float[]>> call) {
+        long start = System.nanoTime();
+        try {
+            return embedBatch(1, call, false);
+        } finally {
+            busyNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    private List<List<String>> split(List<String> texts) {
+        List<List<String>> batches = new ArrayList<>();
+        for (int from = 0; from < texts.size(); from += batchSize) {
+            batches.add(texts.subList(from, Math.min(texts.size(), from + batchSize)));
+        }
+        return batches;
+    }
+
+    /**
+     * 并行发送所有请求，按原顺序拼接结果；任意一个请求最终失败则整体失败
+     */
+    private List<float[]> embedAll(List<List<String>> batches, EmbeddingOptions options) {
+        long start = System.nanoTime();
+        List<float[]> vectors = new ArrayList<>();
+        if (batches.size() == 1) {
+            vectors.addAll(embedBatch(batches.get(0), options));
+        } else {
+            List<Future<List<float[]>>> futures = new ArrayList<>();
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (List<String> batch : batches) {
+                    futures.add(executor.submit(() -> embedBatch(batch, options)));
+                }
+                for (Future<List<float[]>> future : futures) {
+                    try {
+                        vectors.addAll(future.get());
+                    } catch (ExecutionException e) {
+                        futures.forEach(f -> f.cancel(true));
+                        throw e.getCause() instanceof RuntimeException runtimeException
+                                ? runtimeException
+                                : new IllegalStateException("Embedding failed", e.getCause());
+                    } catch (InterruptedException e) {
+                        futures.forEach(f -> f.cancel(true));
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Embedding interrupted", e);
+                    }
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        busyNanos.addAndGet(elapsed);
+        if (batches.size() > 1) {
+            log.info("向量计算完成：{} 条文本，{} 个请求，耗时 {} ms，{} 条/秒", vectors.size(), batches.size(),
+                    elapsed / 1_000_000, String.format("%.1f", vectors.size() * 1_000_000_000.0 / elapsed));
+        }
+        return vectors;
+    }
+
+    private List<float[]> embedBatch(List<String> texts, EmbeddingOptions options) {
+        return embedBatch(texts.size(), () -> {
+            EmbeddingResponse response = delegate.call(new EmbeddingRequest(texts, options));
+            return response.getResults().stream().map(Embedding::getOutput).toList();
+        }, true);
+    }
+
+    /**
+     * 发送一个请求，失败时退避重试
+     *
+     * @param count 请求中的文本数
+     * @param bulk  是否为批量请求，批量请求占用许可并等待限流暂停
+     */
+    private List<float[]> embedBatch(int count, Supplier<List<float[]>> call, boolean bulk) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                List<float[]> vectors = bulk ? callWithPermit(count, call) : callDirectly(count, call);
+                embeddedTexts.addAndGet(count);
+                return vectors;
+            } catch (RuntimeException e) {
+                if (!isRetryable(e) || attempt >= maxAttempts) {
+                    failures.incrementAndGet();
+                    throw e;
+                }
+                retries.incrementAndGet();
+                long backoff = backoffNanos(attempt);
+                if (isThrottling(e)) {
+                    throttled.incrementAndGet();
+                    long until = System.nanoTime() + backoff;
+                    pausedUntil.accumulateAndGet(until, Math::max);
+                }
+                log.warn("向量计算请求失败，{} ms 后第 {} 次重试：{}", backoff / 1_000_000, attempt, e.getMessage());
+                sleepNanos(backoff);
+            }
+        }
+    }
+
+    private List<float[]> callWithPermit(int count, Supplier<List<float[]>> call) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Embedding interrupted", e);
+        }
+        try {
+            // 其他请求触发限流后，等暂停结束再发送
+            sleepNanos(pausedUntil.get() - System.nanoTime());
+            return callDirectly(count, call);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private List<float[]> callDirectly(int count, Supplier<List<float[]>> call) {
+        requests.incrementAndGet();
+        List<float[]> vectors = call.get();
+        if (vectors.size() != count) {
+            throw new IllegalStateException("Embedding response has " + vectors.size()
+                    + " results for " + count + " texts");
+        }
+        return vectors;
+    }
+
+    /**
+     * 指数退避，加上最多一半的随机抖动，避免多个请求同时重试
+     */
+    private long backoffNanos(int attempt) {
+        long base = Math.min(MAX_BACKOFF.toNanos(), initialBackoff.toNanos() << Math.min(attempt - 1, 20));
+        return base + ThreadLocalRandom.current().nextLong(base / 2 + 1);
+    }
+
+    /**
+     * 默认的响应错误处理把 4xx 都转换为 NonTransientAiException，其中的 429 限流仍然需要重试
+     */
+    private static boolean isRetryable(RuntimeException e) {
+        return isThrottling(e) || !(e instanceof NonTransientAiException) && !(e instanceof IllegalArgumentException);
+    }
+
+    /**
+     * 异常链中有 HTTP 429 响应（默认错误处理生成的消息以 "429 - " 开头）或 DashScope 的 Throttling 错误码时视为被限流。
+     * 不在消息中任意位置匹配 429，请求 ID 或响应正文中恰好出现 429 的其他错误不应重试
+     */
+    static boolean isThrottling(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            String message = String.valueOf(cause.getMessage());
+            if (message.startsWith(THROTTLING_STATUS_PREFIX) || message.contains(THROTTLING_ERROR_CODE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void sleepNanos(long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(Duration.ofNanos(nanos));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Embedding interrupted", e);
+        }
+    }
+
+    /**
+     * 向量计算统计
+     *
+     * @param requests       发送的请求数，包括重试
+     * @param embeddedTexts  已计算向量的文本数
+     * @param retries        重试次数
+     * @param throttled      被限流的次数
+     * @param failures       重试后仍失败的请求数
+     * @param textsPerSecond 每秒计算的文本数，按调用的总耗时计算
+     */
+    public record EmbeddingStats(long requests, long embeddedTexts, long retries, long throttled, long failures,
+                                 double textsPerSecond) {
+    }
+}
@@ -0,0 +1,58 @@
+package com.ai.aiagent.rag;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.MetadataMode;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+import org.springframework.ai.vectorstore.SimpleVectorStoreContent;
+import org.springframework.core.io.Resource;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 支持边查询边写入的 SimpleVectorStore
+ *
+ * SimpleVectorStore 从文件加载后内部使用普通 Map，后台增量写入时与查询并发会出错；加载后换回 ConcurrentHashMap。
+ * SimpleVectorStore 逐个文档计算向量，这里改为整批交给嵌入模型，可以配合 BatchingEmbeddingModel 分批并行计算。
+ */
+public class ConcurrentSimpleVectorStore extends SimpleVectorStore implements FileBackedVectorStore {
+
+    protected ConcurrentSimpleVectorStore(SimpleVectorStoreBuilder builder) {
+        super(builder);
+    }
+
+    public static ConcurrentSimpleVectorStore create(EmbeddingModel embeddingModel) {
+        return new ConcurrentSimpleVectorStore(SimpleVectorStore.builder(embeddingModel));
+    }
+
+    @Override
+    public void doAdd(List<Document> documents) {
+        if (documents.isEmpty()) {
+            super.doAdd(documents);
+            return;
+        }
+        // 与 SimpleVectorStore 逐个调用 embed(Document) 一样，对带 EMBED 元信息的格式化内容计算向量
+        List<float[]> embeddings = this.embeddingModel.embed(documents.stream()
+                .map(document -> document.getFormattedContent(MetadataMode.EMBED))
+                .toList());
+        for (int i = 0; i < documents.size(); i++) {
+            Document document = documents.get(i);
+            this.store.put(document.getId(), new SimpleVectorStoreContent(document.getId(), document.getText(),
+                    document.getMetadata(), embeddings.get(i)));
+        }
+    }
+
+    @Override
+    public void load(File file) {
+        super.load(file);
+        this.store = new ConcurrentHashMap<>(this.store);
+    }
+
+    @Override
+    public void load(Resource resource) {
+        super.load(resource);
+        this.store = new ConcurrentHashMap<>(this.store);
+    }
+}
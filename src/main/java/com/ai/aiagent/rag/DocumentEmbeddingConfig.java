@@ -0,0 +1,78 @@
+package com.ai.aiagent.rag;
+
+import com.alibaba.cloud.ai.autoconfigure.dashscope.DashScopeConnectionProperties;
+import com.alibaba.cloud.ai.autoconfigure.dashscope.DashScopeConnectionUtils;
+import com.alibaba.cloud.ai.autoconfigure.dashscope.DashScopeEmbeddingProperties;
+import com.alibaba.cloud.ai.autoconfigure.dashscope.ResolvedConnectionProperties;
+import com.alibaba.cloud.ai.dashscope.api.DashScopeApi;
+import com.alibaba.cloud.ai.dashscope.embedding.DashScopeEmbeddingModel;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.ai.embedding.observation.EmbeddingModelObservationConvention;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.web.client.ResponseErrorHandler;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+
+/**
+ * 知识库文档向量计算配置
+ *
+ * 所有向量库共用同一个 BatchingEmbeddingModel，embedding.max-concurrent 限制的是整个应用对嵌入接口的并发请求数。
+ * 它包装在 DocumentEmbedding 中注册，而不是注册为 EmbeddingModel 类型的 Bean：
+ * 自动配置的 dashscopeEmbeddingModel 带有 @ConditionalOnMissingBean，容器中已有 EmbeddingModel 时不会再创建。
+ */
+@Configuration
+public class DocumentEmbeddingConfig {
+
+    @Value("${embedding.batch-size:10}")
+    private int batchSize;
+    @Value("${embedding.max-concurrent:4}")
+    private int maxConcurrent;
+    @Value("${embedding.max-attempts:5}")
+    private int maxAttempts;
+    @Value("${embedding.initial-backoff:500ms}")
+    private Duration initialBackoff;
+
+    /**
+     * 文档分批并行计算向量，限流时退避重试；重试由 BatchingEmbeddingModel 统一处理，delegate 不再重试
+     */
+    @Bean
+    DocumentEmbedding documentEmbedding(DashScopeConnectionProperties connectionProperties,
+                                        DashScopeEmbeddingProperties embeddingProperties,
+                                        RestClient.Builder restClientBuilder,
+                                        WebClient.Builder webClientBuilder,
+                                        ResponseErrorHandler responseErrorHandler,
+                                        ObjectProvider<ObservationRegistry> observationRegistry,
+                                        ObjectProvider<EmbeddingModelObservationConvention> observationConvention) {
+        // 与自动配置使用相同的连接参数（spring.ai.dashscope.embedding.* 覆盖 spring.ai.dashscope.*），只把 RetryTemplate 换成不重试的
+        ResolvedConnectionProperties connection = DashScopeConnectionUtils.resolveConnectionProperties(
+                connectionProperties, embeddingProperties, "embedding");
+        DashScopeApi dashScopeApi = DashScopeApi.builder()
+                .apiKey(connection.apiKey())
+                .baseUrl(connection.baseUrl())
+                .workSpaceId(connection.workspaceId())
+                .headers(connection.headers())
+                .restClientBuilder(restClientBuilder)
+                .webClientBuilder(webClientBuilder)
+                .responseErrorHandler(responseErrorHandler)
+                .build();
+        DashScopeEmbeddingModel withoutRetry = new DashScopeEmbeddingModel(dashScopeApi,
+                embeddingProperties.getMetadataMode(), embeddingProperties.getOptions(),
+                RetryTemplate.builder().maxAttempts(1).build(),
+                observationRegistry.getIfUnique(() -> ObservationRegistry.NOOP));
+        observationConvention.ifAvailable(withoutRetry::setObservationConvention);
+        return new DocumentEmbedding(new BatchingEmbeddingModel(withoutRetry, batchSize, maxConcurrent, maxAttempts,
+                initialBackoff));
+    }
+
+    /**
+     * 知识库入库共用的分批嵌入模型
+     */
+    public record DocumentEmbedding(BatchingEmbeddingModel model) {
+    }
+}
@@ -0,0 +1,182 @@
+package com.ai.aiagent.rag;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * 文档目录的增量导入
+ *
+ * 启动时把目录中的 Markdown 文件与向量索引对齐，之后通过 WatchService 监听新增、修改和删除。
+ * 变化的文件重新切分，只有内容变化的片段会计算向量；同一文件的连续写入在静默一段时间后合并处理。
+ * 导入在后台线程执行，向量库在导入期间照常提供查询。
+ */
+@Slf4j
+public class DocumentIngestionService implements AutoCloseable {
+
+    private static final String SOURCE_PREFIX = "file:";
+
+    private final Path directory;
+    private final PersistentVectorIndex index;
+    private final Function<Path, List<Document>> reader;
+    private final Duration debounce;
+
+    private WatchService watchService;
+    private Thread watcher;
+
+    private final AtomicLong ingestedFiles = new AtomicLong();
+    private final AtomicLong deletedFiles = new AtomicLong();
+    private final AtomicLong failedFiles = new AtomicLong();
+
+    /**
+     * @param reader   读取并切分单个文件
+     * @param debounce 文件最后一次变化后等待的时间，编辑器分多次写入时只处理一次
+     */
+    public DocumentIngestionService(Path directory, PersistentVectorIndex index,
+                                    Function<Path, List<Document>> reader, Duration debounce) {
+        this.directory = directory.toAbsolutePath().normalize();
+        this.index = index;
+        this.reader = reader;
+        this.debounce = debounce;
+    }
+
+    /**
+     * 对齐目录与索引，并开始监听目录
+     */
+    public synchronized void start() throws IOException {
+        if (watcher != null) {
+            return;
+        }
+        Files.createDirectories(directory);
+        // 先注册监听再对齐，对齐期间发生的变化不会丢失
+        watchService = FileSystems.getDefault().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        watcher = Thread.ofPlatform().daemon().name("document-ingestion").start(() -> {
+            reconcile();
+            watchLoop();
+        });
+        log.info("开始监听文档目录：{}", directory);
+    }
+
+    /**
+     * 全量对齐：导入目录中的每个文件（未变化的文件不会重新计算向量），删除索引中已不存在的文件
+     */
+    void reconcile() {
+        Set<Path> files = new LinkedHashSet<>();
+        try (Stream<Path> stream = Files.list(directory)) {
+            stream.filter(this::isDocument).forEach(files::add);
+        } catch (IOException e) {
+            log.error("读取文档目录失败：{}", directory, e);
+            return;
+        }
+        for (String source : index.getSources()) {
+            if (source.startsWith(SOURCE_PREFIX)) {
+                Path file = Path.of(source.substring(SOURCE_PREFIX.length()));
+                if (directory.equals(file.getParent()) && !files.contains(file)) {
+                    files.add(file);
+                }
+            }
+        }
+        files.forEach(this::ingest);
+    }
+
+    /**
+     * 导入单个文件；文件已不存在时从索引中删除
+     */
+    void ingest(Path file) {
+        String source = SOURCE_PREFIX + file;
+        try {
+            if (isDocument(file)) {
+                index.sync(source, reader.apply(file));
+                ingestedFiles.incrementAndGet();
+            } else if (!Files.exists(file)) {
+                index.sync(source, List.of());
+                deletedFiles.incrementAndGet();
+            }
+        } catch (RuntimeException e) {
+            // 单个文件失败不影响其他文件，下次变化或重启时重试
+            failedFiles.incrementAndGet();
+            log.error("导入文档失败：{}", file, e);
+        }
+    }
+
+    private void watchLoop() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.take();
+                Set<Path> changed = new LinkedHashSet<>();
+                boolean overflow = false;
+                // 收集变化直到静默 debounce 时间
+                while (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            overflow = true;
+                        } else {
+                            changed.add(directory.resolve((Path) event.context()));
+                        }
+                    }
+                    if (!key.reset()) {
+                        log.warn("文档目录已不可访问，停止监听：{}", directory);
+                        return;
+                    }
+                    key = watchService.poll(debounce.toMillis(), TimeUnit.MILLISECONDS);
+                }
+                if (overflow) {
+                    reconcile();
+                } else {
+                    changed.stream().filter(file -> file.getFileName().toString().endsWith(".md"))
+                            .forEach(this::ingest);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // 关闭
+        }
+    }
+
+    private boolean isDocument(Path file) {
+        return Files.isRegularFile(file) && file.getFileName().toString().endsWith(".md");
+    }
+
+    /**
+     * 导入统计
+     */
+    public IngestionStats getStats() {
+        return new IngestionStats(directory.toString(), ingestedFiles.get(), deletedFiles.get(), failedFiles.get());
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (watcher == null) {
+            return;
+        }
+        watcher.interrupt();
+        watchService.close();
+        watcher = null;
+    }
+
+    /**
+     * @param ingestedFiles 导入（包括内容未变化）的文件次数
+     * @param deletedFiles  从索引中删除的文件次数
+     * @param failedFiles   导入失败的文件次数
+     */
+    public record IngestionStats(String directory, long ingestedFiles, long deletedFiles, long failedFiles) {
+    }
+}
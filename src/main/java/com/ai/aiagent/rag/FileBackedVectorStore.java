@@ -0,0 +1,18 @@
+package com.ai.aiagent.rag;
+
+import org.springframework.ai.vectorstore.VectorStore;
+
+import java.io.File;
+
+/**
+ * 可以整体保存到文件、再从文件加载的内存向量库
+ */
+public interface FileBackedVectorStore extends VectorStore {
+
+    void save(File file);
+
+    /**
+     * 从文件加载，替换当前内容
+     */
+    void load(File file);
+}
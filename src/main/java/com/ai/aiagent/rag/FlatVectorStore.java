@@ -0,0 +1,427 @@
+package com.ai.aiagent.rag;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.MetadataMode;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.observation.conventions.VectorStoreProvider;
+import org.springframework.ai.observation.conventions.VectorStoreSimilarityMetric;
+import org.springframework.ai.vectorstore.AbstractVectorStoreBuilder;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.observation.AbstractObservationVectorStore;
+import org.springframework.ai.vectorstore.observation.VectorStoreObservationContext;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+/**
+ * 向量连续存放在一维 float 数组中的内存向量库
+ *
+ * 向量写入时归一化，查询时余弦相似度即点积，逐行扫描连续内存，不产生装箱对象和中间集合，只用一个大小为 topK 的堆保留结果。
+ * status、filename 等常用过滤字段按字典编码为 int 数组，过滤条件在计算相似度之前判断，不满足条件的行直接跳过；
+ * 其他字段的条件在元信息上判断。写入时先在锁外计算向量，再在写锁内追加，查询只需读锁。
+ */
+public class FlatVectorStore extends AbstractObservationVectorStore implements FileBackedVectorStore {
+
+    private static final int FILE_VERSION = 1;
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final String[] prefilterKeys;
+
+    // 以下字段受 lock 保护
+    private int dimensions = -1;
+    private int size = 0;
+    private float[] vectors = new float[0];
+    private String[] ids = new String[0];
+    private String[] texts = new String[0];
+    private Map<String, Object>[] metadata = newMetadataArray(0);
+    // 每个预过滤字段一列：行 -> 字典编码，缺失为 -1
+    private int[][] codes;
+    private final List<Map<String, Integer>> dictionaries = new ArrayList<>();
+    private final Map<String, Integer> rowById = new HashMap<>();
+
+    protected FlatVectorStore(Builder builder) {
+        super(builder);
+        this.prefilterKeys = builder.prefilterKeys;
+        this.codes = new int[prefilterKeys.length][0];
+        for (int i = 0; i < prefilterKeys.length; i++) {
+            dictionaries.add(new HashMap<>());
+        }
+    }
+
+    public static Builder builder(EmbeddingModel embeddingModel) {
+        return new Builder(embeddingModel);
+    }
+
+    @Override
+    public void doAdd(List<Document> documents) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        // 向量计算在锁外进行，不阻塞查询。与 SimpleVectorStore 一样对带 EMBED 元信息（关键词、文件名等）的格式化内容计算向量
+        List<float[]> embeddings = this.embeddingModel.embed(documents.stream()
+                .map(document -> document.getFormattedContent(MetadataMode.EMBED))
+                .toList());
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < documents.size(); i++) {
+                put(documents.get(i), embeddings.get(i));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void doDelete(List<String> idList) {
+        lock.writeLock().lock();
+        try {
+            idList.forEach(this::remove);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Document> doSimilaritySearch(SearchRequest request) {
+        float[] query = normalize(this.embeddingModel.embed(request.getQuery()));
+        int topK = request.getTopK();
+        double threshold = request.getSimilarityThreshold();
+        lock.readLock().lock();
+        try {
+            IntPredicate filter = request.hasFilterExpression() ? compile(request.getFilterExpression()) : row -> true;
+            if (size == 0 || topK <= 0) {
+                return List.of();
+            }
+            if (query.length != dimensions) {
+                throw new IllegalArgumentException("Query embedding has " + query.length
+                        + " dimensions, but the store has " + dimensions);
+            }
+            // 小顶堆，堆顶是当前第 topK 名
+            PriorityQueue<Hit> heap = new PriorityQueue<>(Math.min(topK, size) + 1,
+                    (a, b) -> Float.compare(a.score, b.score));
+            for (int row = 0; row < size; row++) {
+                if (!filter.test(row)) {
+                    continue;
+                }
+                float score = dot(query, vectors, row * dimensions, dimensions);
+                if (score < threshold) {
+                    continue;
+                }
+                if (heap.size() < topK) {
+                    heap.add(new Hit(row, score));
+                } else if (score > heap.peek().score) {
+                    heap.poll();
+                    heap.add(new Hit(row, score));
+                }
+            }
+            Document[] results = new Document[heap.size()];
+            for (int i = results.length - 1; i >= 0; i--) {
+                Hit hit = heap.poll();
+                Map<String, Object> meta = new HashMap<>(metadata[hit.row]);
+                meta.put("distance", 1 - hit.score);
+                results[i] = Document.builder()
+                        .id(ids[hit.row])
+                        .text(texts[hit.row])
+                        .metadata(meta)
+                        .score((double) hit.score)
+                        .build();
+            }
+            return Arrays.asList(results);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 点积，四路累加减少浮点加法的依赖链
+     */
+    static float dot(float[] query, float[] data, int offset, int length) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        int bound = length & ~3;
+        for (; i < bound; i += 4) {
+            s0 += query[i] * data[offset + i];
+            s1 += query[i + 1] * data[offset + i + 1];
+            s2 += query[i + 2] * data[offset + i + 2];
+            s3 += query[i + 3] * data[offset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += query[i] * data[offset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        float[] normalized = Arrays.copyOf(vector, vector.length);
+        if (norm > 0) {
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < normalized.length; i++) {
+                normalized[i] *= scale;
+            }
+        }
+        return normalized;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 写入一行，相同 ID 覆盖原有内容；调用方持有写锁
+     */
+    private void put(Document document, float[] embedding) {
+        if (dimensions < 0) {
+            dimensions = embedding.length;
+        } else if (embedding.length != dimensions) {
+            throw new IllegalArgumentException("Embedding has " + embedding.length
+                    + " dimensions, but the store has " + dimensions);
+        }
+        Integer existing = rowById.get(document.getId());
+        int row = existing != null ? existing : append(document.getId());
+        System.arraycopy(normalize(embedding), 0, vectors, row * dimensions, dimensions);
+        texts[row] = document.getText();
+        metadata[row] = new HashMap<>(document.getMetadata());
+        for (int k = 0; k < prefilterKeys.length; k++) {
+            Object value = document.getMetadata().get(prefilterKeys[k]);
+            Map<String, Integer> dictionary = dictionaries.get(k);
+            codes[k][row] = value == null ? -1 : dictionary.computeIfAbsent(value.toString(), v -> dictionary.size());
+        }
+    }
+
+    private int append(String id) {
+        if (size == ids.length) {
+            int capacity = Math.max(16, ids.length * 2);
+            vectors = Arrays.copyOf(vectors, capacity * dimensions);
+            ids = Arrays.copyOf(ids, capacity);
+            texts = Arrays.copyOf(texts, capacity);
+            metadata = Arrays.copyOf(metadata, capacity);
+            for (int k = 0; k < codes.length; k++) {
+                codes[k] = Arrays.copyOf(codes[k], capacity);
+            }
+        }
+        int row = size++;
+        ids[row] = id;
+        rowById.put(id, row);
+        return row;
+    }
+
+    /**
+     * 删除一行，用最后一行填补空位，保持数据连续；调用方持有写锁
+     */
+    private void remove(String id) {
+        Integer row = rowById.remove(id);
+        if (row == null) {
+            return;
+        }
+        int last = --size;
+        if (row != last) {
+            System.arraycopy(vectors, last * dimensions, vectors, row * dimensions, dimensions);
+            ids[row] = ids[last];
+            texts[row] = texts[last];
+            metadata[row] = metadata[last];
+            for (int[] column : codes) {
+                column[row] = column[last];
+            }
+            rowById.put(ids[row], row);
+        }
+        ids[last] = null;
+        texts[last] = null;
+        metadata[last] = null;
+    }
+
+    /**
+     * 将过滤表达式编译为按行判断的条件；调用方持有读锁
+     */
+    private IntPredicate compile(Filter.Expression expression) {
+        return MetadataFilters.compile(expression, comparison -> {
+            Filter.ExpressionType type = comparison.type();
+            int k = Arrays.asList(prefilterKeys).indexOf(comparison.key());
+            if (k < 0 || (type != Filter.ExpressionType.EQ && type != Filter.ExpressionType.NE
+                    && type != Filter.ExpressionType.IN && type != Filter.ExpressionType.NIN)) {
+                return row -> MetadataFilters.matches(metadata[row].get(comparison.key()), type, comparison.value());
+            }
+            // 预过滤字段：把条件值换成字典编码，逐行只比较 int
+            Collection<?> values = comparison.value() instanceof Collection<?> list ? list : List.of(comparison.value());
+            int[] wanted = values.stream()
+                    .map(v -> dictionaries.get(k).get(v.toString()))
+                    .filter(Objects::nonNull)
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            boolean negate = type == Filter.ExpressionType.NE || type == Filter.ExpressionType.NIN;
+            return row -> {
+                int code = codes[k][row];
+                for (int w : wanted) {
+                    if (w == code) {
+                        return !negate;
+                    }
+                }
+                return negate;
+            };
+        });
+    }
+
+    /**
+     * 保存为二进制文件：版本、维度、行数，每行为 ID、正文、元信息 JSON 和归一化后的向量
+     */
+    @Override
+    public void save(File file) {
+        lock.readLock().lock();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file.toPath())))) {
+            out.writeInt(FILE_VERSION);
+            out.writeInt(dimensions);
+            out.writeInt(size);
+            for (int row = 0; row < size; row++) {
+                writeString(out, ids[row]);
+                writeString(out, texts[row]);
+                writeString(out, OBJECT_MAPPER.writeValueAsString(metadata[row]));
+                for (int i = 0; i < dimensions; i++) {
+                    out.writeFloat(vectors[row * dimensions + i]);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 从文件加载，替换当前内容
+     */
+    @Override
+    public void load(File file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            int version = in.readInt();
+            if (version != FILE_VERSION) {
+                throw new IOException("Unsupported vector store file version " + version);
+            }
+            int dims = in.readInt();
+            int count = in.readInt();
+            List<Document> documents = new ArrayList<>(count);
+            List<float[]> embeddings = new ArrayList<>(count);
+            for (int row = 0; row < count; row++) {
+                String id = readString(in);
+                String text = readString(in);
+                Map<String, Object> meta = OBJECT_MAPPER.readValue(readString(in), new TypeReference<LinkedHashMap<String, Object>>() {
+                });
+                float[] vector = new float[dims];
+                for (int i = 0; i < dims; i++) {
+                    vector[i] = in.readFloat();
+                }
+                documents.add(Document.builder().id(id).text(text).metadata(meta).build());
+                embeddings.add(vector);
+            }
+            lock.writeLock().lock();
+            try {
+                clear();
+                for (int i = 0; i < documents.size(); i++) {
+                    put(documents.get(i), embeddings.get(i));
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void clear() {
+        dimensions = -1;
+        size = 0;
+        vectors = new float[0];
+        ids = new String[0];
+        texts = new String[0];
+        metadata = newMetadataArray(0);
+        codes = new int[prefilterKeys.length][0];
+        dictionaries.forEach(Map::clear);
+        rowById.clear();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Map<String, Object>[] newMetadataArray(int length) {
+        return (Map<String, Object>[]) new Map[length];
+    }
+
+    @Override
+    public VectorStoreObservationContext.Builder createObservationContextBuilder(String operationName) {
+        int dims;
+        lock.readLock().lock();
+        try {
+            dims = dimensions;
+        } finally {
+            lock.readLock().unlock();
+        }
+        // 已有数据时直接使用其维度，避免为获取维度额外调用嵌入模型
+        return VectorStoreObservationContext.builder(VectorStoreProvider.SIMPLE.value(), operationName)
+                .dimensions(dims > 0 ? dims : this.embeddingModel.dimensions())
+                .collectionName("flat-array")
+                .similarityMetric(VectorStoreSimilarityMetric.COSINE.value());
+    }
+
+    private record Hit(int row, float score) {
+    }
+
+    public static class Builder extends AbstractVectorStoreBuilder<Builder> {
+        private String[] prefilterKeys = {"status", "filename"};
+
+        private Builder(EmbeddingModel embeddingModel) {
+            super(embeddingModel);
+        }
+
+        /**
+         * 按字典编码预过滤的元信息字段，默认 status 和 filename
+         */
+        public Builder prefilterKeys(String... prefilterKeys) {
+            this.prefilterKeys = prefilterKeys;
+            return this;
+        }
+
+        @Override
+        public FlatVectorStore build() {
+            return new FlatVectorStore(this);
+        }
+    }
+}
@@ -0,0 +1,727 @@
+package com.ai.aiagent.rag;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.MetadataMode;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.observation.conventions.VectorStoreProvider;
+import org.springframework.ai.observation.conventions.VectorStoreSimilarityMetric;
+import org.springframework.ai.vectorstore.AbstractVectorStoreBuilder;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.observation.AbstractObservationVectorStore;
+import org.springframework.ai.vectorstore.observation.VectorStoreObservationContext;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * 基于 HNSW（分层可导航小世界图）的近似最近邻内存向量库
+ *
+ * 每个文档是图中的一个节点，按指数分布随机分配层数，上层稀疏、下层稠密；查询从最上层入口贪心下降，
+ * 在第 0 层以 efSearch 为候选集宽度做最佳优先搜索，复杂度约为 O(log n)，代替逐行扫描。
+ * 节点的邻居列表是不可变数组，写入时整体替换，查询不加锁；多个线程可以同时插入，同一节点的邻居更新按节点加锁。
+ * 删除只做标记，被删除的节点仍参与导航但不会返回，保存时剔除；标记删除的节点占比过高时用存活节点重建图。
+ * 带过滤条件的查询在图搜索结果中过滤，满足条件的结果不足 topK 时退回精确扫描，保证过滤条件很严格时也不漏结果。
+ */
+@Slf4j
+public class HnswVectorStore extends AbstractObservationVectorStore implements FileBackedVectorStore {
+
+    private static final int FILE_VERSION = 1;
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    // 一次写入的文档数超过该值时并行插入
+    private static final int PARALLEL_INSERT_THRESHOLD = 64;
+    // 标记删除的节点数同时超过这两个阈值时重建图
+    private static final int PURGE_MIN_TOMBSTONES = 100;
+    private static final double PURGE_TOMBSTONE_RATIO = 0.3;
+
+    private final int m;
+    private final int maxNeighborsLevel0;
+    private final int efConstruction;
+    private volatile int efSearch;
+    private final double levelMultiplier;
+
+    // 插入、删除、查询和保存时的快照持有读锁，加载和重建持有写锁
+    private final ReentrantReadWriteLock structureLock = new ReentrantReadWriteLock();
+    private final Object allocationLock = new Object();
+    private final Object entryLock = new Object();
+
+    private volatile Node[] nodes = new Node[16];
+    private volatile int nodeCount = 0;
+    private volatile EntryPoint entryPoint;
+    private volatile int dimensions = -1;
+    private final Map<String, Integer> nodeById = new ConcurrentHashMap<>();
+    private final AtomicInteger tombstones = new AtomicInteger();
+
+    protected HnswVectorStore(Builder builder) {
+        super(builder);
+        this.m = builder.m;
+        this.maxNeighborsLevel0 = builder.m * 2;
+        this.efConstruction = builder.efConstruction;
+        this.efSearch = builder.efSearch;
+        this.levelMultiplier = 1 / Math.log(builder.m);
+    }
+
+    public static Builder builder(EmbeddingModel embeddingModel) {
+        return new Builder(embeddingModel);
+    }
+
+    @Override
+    public void doAdd(List<Document> documents) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        // 与 SimpleVectorStore 一样对带 EMBED 元信息（关键词、文件名等）的格式化内容计算向量
+        List<float[]> embeddings = this.embeddingModel.embed(documents.stream()
+                .map(document -> document.getFormattedContent(MetadataMode.EMBED))
+                .toList());
+        structureLock.readLock().lock();
+        try {
+            IntStream indexes = IntStream.range(0, documents.size());
+            if (documents.size() >= PARALLEL_INSERT_THRESHOLD) {
+                indexes = indexes.parallel();
+            }
+            indexes.forEach(i -> insert(documents.get(i), FlatVectorStore.normalize(embeddings.get(i))));
+        } finally {
+            structureLock.readLock().unlock();
+        }
+        purgeTombstonesIfNeeded();
+    }
+
+    @Override
+    public void doDelete(List<String> idList) {
+        structureLock.readLock().lock();
+        try {
+            for (String id : idList) {
+                Integer index = nodeById.remove(id);
+                if (index != null) {
+                    markDeleted(index);
+                }
+            }
+        } finally {
+            structureLock.readLock().unlock();
+        }
+        purgeTombstonesIfNeeded();
+    }
+
+    @Override
+    public List<Document> doSimilaritySearch(SearchRequest request) {
+        float[] query = FlatVectorStore.normalize(this.embeddingModel.embed(request.getQuery()));
+        int topK = request.getTopK();
+        structureLock.readLock().lock();
+        try {
+            EntryPoint entry = entryPoint;
+            if (entry == null || topK <= 0) {
+                return List.of();
+            }
+            if (query.length != dimensions) {
+                throw new IllegalArgumentException("Query embedding has " + query.length
+                        + " dimensions, but the store has " + dimensions);
+            }
+            IntPredicate filter = request.hasFilterExpression()
+                    ? MetadataFilters.compile(request.getFilterExpression(), comparison -> index ->
+                    MetadataFilters.matches(node(index).metadata.get(comparison.key()), comparison.type(),
+                            comparison.value()))
+                    : index -> true;
+            IntPredicate accepted = filter.and(index -> !node(index).deleted);
+
+            int ep = greedyDescend(query, entry.node, entry.level, 1);
+            List<Candidate> found = searchLayer(query, ep, Math.max(efSearch, topK), 0);
+            List<Candidate> results = new ArrayList<>(topK);
+            boolean rejected = false;
+            for (Candidate candidate : found) {
+                if (results.size() == topK || candidate.similarity < request.getSimilarityThreshold()) {
+                    break;
+                }
+                if (accepted.test(candidate.node)) {
+                    results.add(candidate);
+                } else {
+                    rejected = true;
+                }
+            }
+            if (results.size() < topK && rejected) {
+                // 过滤条件过严或删除过多时图搜索的候选不够，退回精确扫描
+                results = exactSearch(query, topK, request.getSimilarityThreshold(), accepted);
+            }
+            return results.stream().map(this::toDocument).toList();
+        } finally {
+            structureLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 修改查询时的候选集宽度，越大召回率越高、耗时越长
+     */
+    public void setEfSearch(int efSearch) {
+        if (efSearch < 1) {
+            throw new IllegalArgumentException("efSearch must be greater than 0");
+        }
+        this.efSearch = efSearch;
+    }
+
+    public int size() {
+        return nodeById.size();
+    }
+
+    /**
+     * 逐个节点计算相似度的精确查询
+     */
+    List<Candidate> exactSearch(float[] query, int topK, double threshold, IntPredicate accepted) {
+        PriorityQueue<Candidate> heap = new PriorityQueue<>(Comparator.comparingDouble(Candidate::similarity));
+        int count = nodeCount;
+        for (int i = 0; i < count; i++) {
+            if (!accepted.test(i)) {
+                continue;
+            }
+            float similarity = similarity(query, i);
+            if (similarity < threshold) {
+                continue;
+            }
+            heap.add(new Candidate(i, similarity));
+            if (heap.size() > topK) {
+                heap.poll();
+            }
+        }
+        List<Candidate> results = new ArrayList<>(heap);
+        results.sort(Comparator.comparingDouble(Candidate::similarity).reversed());
+        return results;
+    }
+
+    private void insert(Document document, float[] vector) {
+        if (dimensions < 0) {
+            synchronized (entryLock) {
+                if (dimensions < 0) {
+                    dimensions = vector.length;
+                }
+            }
+        }
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Embedding has " + vector.length
+                    + " dimensions, but the store has " + dimensions);
+        }
+        Node node = new Node(document.getId(), document.getText(), new HashMap<>(document.getMetadata()), vector,
+                randomLevel());
+        int index = allocate(node);
+        // 相同 ID 的旧节点标记删除
+        Integer previous = nodeById.put(document.getId(), index);
+        if (previous != null) {
+            markDeleted(previous);
+        }
+        connect(node, index);
+    }
+
+    /**
+     * 把已分配的节点接入图中：从入口下降，在节点所在的每一层挑选邻居并建立双向边
+     */
+    private void connect(Node node, int index) {
+        float[] vector = node.vector;
+        int level = node.level;
+        EntryPoint entry;
+        synchronized (entryLock) {
+            entry = entryPoint;
+            if (entry == null) {
+                entryPoint = new EntryPoint(index, level);
+                return;
+            }
+        }
+        int ep = greedyDescend(vector, entry.node, entry.level, level + 1);
+        for (int layer = Math.min(level, entry.level); layer >= 0; layer--) {
+            List<Candidate> candidates = searchLayer(vector, ep, efConstruction, layer);
+            int maxNeighbors = layer == 0 ? maxNeighborsLevel0 : m;
+            int[] neighbors = selectNeighbors(candidates, m);
+            synchronized (node) {
+                // 其他插入线程可能已经从更高层找到该节点并在这一层加了反向边，合并后再裁剪，不能直接覆盖
+                int[] existing = node.neighbors.get(layer);
+                int[] merged = IntStream.concat(Arrays.stream(existing), Arrays.stream(neighbors)).distinct().toArray();
+                node.neighbors.set(layer, prune(node, merged, maxNeighbors));
+            }
+            for (int neighbor : neighbors) {
+                link(neighbor, index, layer, maxNeighbors);
+            }
+            ep = candidates.get(0).node;
+        }
+        if (level > entry.level) {
+            synchronized (entryLock) {
+                if (level > entryPoint.level) {
+                    entryPoint = new EntryPoint(index, level);
+                }
+            }
+        }
+    }
+
+    private void markDeleted(int index) {
+        node(index).deleted = true;
+        tombstones.incrementAndGet();
+    }
+
+    private boolean needsPurge(int dead, int count) {
+        return dead >= PURGE_MIN_TOMBSTONES && dead > count * PURGE_TOMBSTONE_RATIO;
+    }
+
+    /**
+     * 标记删除的节点过多时，用存活节点重建图：被删除的节点不再占内存，也不再拖慢导航。
+     * 存活节点保留原来的层数和向量，不需要重新计算向量；重建期间持有写锁，插入和查询等待重建完成
+     */
+    private void purgeTombstonesIfNeeded() {
+        if (!needsPurge(tombstones.get(), nodeCount)) {
+            return;
+        }
+        structureLock.writeLock().lock();
+        try {
+            int count = nodeCount;
+            if (!needsPurge(tombstones.get(), count)) {
+                return;
+            }
+            List<Node> live = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Node node = node(i);
+                if (!node.deleted) {
+                    live.add(new Node(node.id, node.text, node.metadata, node.vector, node.level));
+                }
+            }
+            nodes = new Node[Math.max(16, live.size())];
+            nodeCount = 0;
+            entryPoint = null;
+            nodeById.clear();
+            tombstones.set(0);
+            IntStream indexes = IntStream.range(0, live.size());
+            if (live.size() >= PARALLEL_INSERT_THRESHOLD) {
+                indexes = indexes.parallel();
+            }
+            indexes.forEach(i -> {
+                Node node = live.get(i);
+                int index = allocate(node);
+                nodeById.put(node.id, index);
+                connect(node, index);
+            });
+            log.info("HNSW 图已重建：清除 {} 个已删除节点，保留 {} 个", count - live.size(), live.size());
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 给 from 节点增加一条指向 to 的边，超过上限时用启发式规则重新挑选邻居
+     */
+    private void link(int from, int to, int layer, int maxNeighbors) {
+        Node node = node(from);
+        synchronized (node) {
+            int[] current = node.neighbors.get(layer);
+            int[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = to;
+            node.neighbors.set(layer, prune(node, updated, maxNeighbors));
+        }
+    }
+
+    /**
+     * 邻居数超过上限时用启发式规则重新挑选邻居；调用方持有该节点的锁
+     */
+    private int[] prune(Node node, int[] neighbors, int maxNeighbors) {
+        if (neighbors.length <= maxNeighbors) {
+            return neighbors;
+        }
+        List<Candidate> candidates = new ArrayList<>(neighbors.length);
+        for (int neighbor : neighbors) {
+            candidates.add(new Candidate(neighbor, similarity(node.vector, neighbor)));
+        }
+        candidates.sort(Comparator.comparingDouble(Candidate::similarity).reversed());
+        return selectNeighbors(candidates, maxNeighbors);
+    }
+
+    /**
+     * 启发式邻居选择：候选按相似度从高到低，只有比已选邻居更接近当前节点时才选入，使边分布在不同方向上；
+     * 不足时用剩余候选补齐
+     *
+     * @param candidates 按相似度从高到低排列
+     */
+    private int[] selectNeighbors(List<Candidate> candidates, int limit) {
+        List<Candidate> selected = new ArrayList<>(limit);
+        List<Candidate> pruned = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            if (selected.size() >= limit) {
+                break;
+            }
+            boolean diverse = true;
+            for (Candidate chosen : selected) {
+                if (similarity(node(chosen.node).vector, candidate.node) > candidate.similarity) {
+                    diverse = false;
+                    break;
+                }
+            }
+            (diverse ? selected : pruned).add(candidate);
+        }
+        for (int i = 0; i < pruned.size() && selected.size() < limit; i++) {
+            selected.add(pruned.get(i));
+        }
+        return selected.stream().mapToInt(Candidate::node).toArray();
+    }
+
+    /**
+     * 从 level 层贪心下降到 stopLevel 层，每层只保留最近的一个节点
+     */
+    private int greedyDescend(float[] query, int ep, int level, int stopLevel) {
+        int current = ep;
+        float best = similarity(query, current);
+        for (int layer = level; layer >= stopLevel; layer--) {
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (int neighbor : neighborsOf(current, layer)) {
+                    float similarity = similarity(query, neighbor);
+                    if (similarity > best) {
+                        best = similarity;
+                        current = neighbor;
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 在指定层做最佳优先搜索，返回最多 ef 个节点，按相似度从高到低排列
+     */
+    private List<Candidate> searchLayer(float[] query, int ep, int ef, int layer) {
+        BitSet visited = new BitSet(nodeCount);
+        visited.set(ep);
+        Candidate start = new Candidate(ep, similarity(query, ep));
+        // 待扩展的候选，相似度高的先出队
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(
+                Comparator.comparingDouble(Candidate::similarity).reversed());
+        // 当前结果，相似度最低的在堆顶
+        PriorityQueue<Candidate> results = new PriorityQueue<>(Comparator.comparingDouble(Candidate::similarity));
+        candidates.add(start);
+        results.add(start);
+        while (!candidates.isEmpty()) {
+            Candidate current = candidates.poll();
+            if (results.size() >= ef && current.similarity < results.peek().similarity) {
+                break;
+            }
+            for (int neighbor : neighborsOf(current.node, layer)) {
+                if (visited.get(neighbor)) {
+                    continue;
+                }
+                visited.set(neighbor);
+                float similarity = similarity(query, neighbor);
+                if (results.size() < ef || similarity > results.peek().similarity) {
+                    Candidate candidate = new Candidate(neighbor, similarity);
+                    candidates.add(candidate);
+                    results.add(candidate);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+        List<Candidate> sorted = new ArrayList<>(results);
+        sorted.sort(Comparator.comparingDouble(Candidate::similarity).reversed());
+        return sorted;
+    }
+
+    private int[] neighborsOf(int index, int layer) {
+        Node node = node(index);
+        return layer < node.neighbors.length() ? node.neighbors.get(layer) : new int[0];
+    }
+
+    private float similarity(float[] query, int index) {
+        return FlatVectorStore.dot(query, node(index).vector, 0, query.length);
+    }
+
+    private int randomLevel() {
+        double random = 1 - ThreadLocalRandom.current().nextDouble();
+        return (int) (-Math.log(random) * levelMultiplier);
+    }
+
+    private int allocate(Node node) {
+        synchronized (allocationLock) {
+            int index = nodeCount;
+            if (index == nodes.length) {
+                nodes = Arrays.copyOf(nodes, nodes.length * 2);
+            }
+            nodes[index] = node;
+            nodeCount = index + 1;
+            return index;
+        }
+    }
+
+    private Node node(int index) {
+        return nodes[index];
+    }
+
+    private Document toDocument(Candidate candidate) {
+        Node node = node(candidate.node);
+        Map<String, Object> meta = new HashMap<>(node.metadata);
+        meta.put("distance", 1 - candidate.similarity);
+        return Document.builder()
+                .id(node.id)
+                .text(node.text)
+                .metadata(meta)
+                .score((double) candidate.similarity)
+                .build();
+    }
+
+    /**
+     * 保存为二进制文件，包含图结构，加载后不需要重建；已删除的节点和指向它们的边被剔除。
+     * 只在读锁内复制节点引用和邻居数组，序列化和写文件在锁外进行，保存期间插入和查询照常进行
+     */
+    @Override
+    public void save(File file) {
+        GraphSnapshot snapshot;
+        structureLock.readLock().lock();
+        try {
+            snapshot = snapshot();
+        } finally {
+            structureLock.readLock().unlock();
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file.toPath())))) {
+            out.writeInt(FILE_VERSION);
+            out.writeInt(snapshot.dimensions);
+            out.writeInt(snapshot.nodes.size());
+            out.writeInt(snapshot.entry);
+            for (SavedNode saved : snapshot.nodes) {
+                Node node = saved.node;
+                writeString(out, node.id);
+                writeString(out, node.text);
+                writeString(out, OBJECT_MAPPER.writeValueAsString(node.metadata));
+                for (float v : node.vector) {
+                    out.writeFloat(v);
+                }
+                out.writeInt(node.level);
+                for (int[] neighbors : saved.neighbors) {
+                    out.writeInt(neighbors.length);
+                    for (int neighbor : neighbors) {
+                        out.writeInt(neighbor);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 复制存活节点和重新编号后的邻居，调用方持有读锁。
+     * 并发插入的节点可能只连了一部分边，编号超出快照范围的邻居被丢弃
+     */
+    private GraphSnapshot snapshot() {
+        // 先读入口再读节点数，入口节点一定在快照范围内
+        EntryPoint currentEntry = entryPoint;
+        int count = nodeCount;
+        boolean[] deleted = new boolean[count];
+        int[] remap = new int[count];
+        int live = 0;
+        int entry = -1;
+        for (int i = 0; i < count; i++) {
+            deleted[i] = node(i).deleted;
+            remap[i] = deleted[i] ? -1 : live++;
+            // 入口节点被删除时选层数最高的存活节点
+            if (remap[i] >= 0 && (entry < 0 || node(i).level > node(entry).level)) {
+                entry = i;
+            }
+        }
+        if (currentEntry != null && !deleted[currentEntry.node]) {
+            entry = currentEntry.node;
+        }
+        List<SavedNode> saved = new ArrayList<>(live);
+        for (int i = 0; i < count; i++) {
+            if (deleted[i]) {
+                continue;
+            }
+            Node node = node(i);
+            int[][] neighbors = new int[node.level + 1][];
+            for (int layer = 0; layer <= node.level; layer++) {
+                neighbors[layer] = Arrays.stream(node.neighbors.get(layer))
+                        .filter(neighbor -> neighbor < count)
+                        .map(neighbor -> remap[neighbor])
+                        .filter(neighbor -> neighbor >= 0)
+                        .toArray();
+            }
+            saved.add(new SavedNode(node, neighbors));
+        }
+        return new GraphSnapshot(dimensions, entry < 0 ? -1 : remap[entry], saved);
+    }
+
+    /**
+     * 从文件加载，替换当前内容
+     */
+    @Override
+    public void load(File file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            int version = in.readInt();
+            if (version != FILE_VERSION) {
+                throw new IOException("Unsupported vector store file version " + version);
+            }
+            int dims = in.readInt();
+            int count = in.readInt();
+            int entry = in.readInt();
+            Node[] loaded = new Node[Math.max(16, count)];
+            Map<String, Integer> ids = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                String id = readString(in);
+                String text = readString(in);
+                Map<String, Object> meta = OBJECT_MAPPER.readValue(readString(in),
+                        new TypeReference<LinkedHashMap<String, Object>>() {
+                        });
+                float[] vector = new float[dims];
+                for (int d = 0; d < dims; d++) {
+                    vector[d] = in.readFloat();
+                }
+                int level = in.readInt();
+                Node node = new Node(id, text, meta, vector, level);
+                for (int layer = 0; layer <= level; layer++) {
+                    int[] neighbors = new int[in.readInt()];
+                    for (int n = 0; n < neighbors.length; n++) {
+                        neighbors[n] = in.readInt();
+                    }
+                    node.neighbors.set(layer, neighbors);
+                }
+                loaded[i] = node;
+                ids.put(id, i);
+            }
+            structureLock.writeLock().lock();
+            try {
+                nodes = loaded;
+                nodeCount = count;
+                dimensions = count == 0 ? -1 : dims;
+                entryPoint = entry < 0 ? null : new EntryPoint(entry, loaded[entry].level);
+                nodeById.clear();
+                nodeById.putAll(ids);
+                tombstones.set(0);
+            } finally {
+                structureLock.writeLock().unlock();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public VectorStoreObservationContext.Builder createObservationContextBuilder(String operationName) {
+        int dims = dimensions;
+        return VectorStoreObservationContext.builder(VectorStoreProvider.SIMPLE.value(), operationName)
+                .dimensions(dims > 0 ? dims : this.embeddingModel.dimensions())
+                .collectionName("hnsw")
+                .similarityMetric(VectorStoreSimilarityMetric.COSINE.value());
+    }
+
+    private static class Node {
+        private final String id;
+        private final String text;
+        private final Map<String, Object> metadata;
+        private final float[] vector;
+        private final int level;
+        // 每层一个邻居数组，整体替换，读取不加锁
+        private final AtomicReferenceArray<int[]> neighbors;
+        private volatile boolean deleted = false;
+
+        private Node(String id, String text, Map<String, Object> metadata, float[] vector, int level) {
+            this.id = id;
+            this.text = text;
+            this.metadata = metadata;
+            this.vector = vector;
+            this.level = level;
+            this.neighbors = new AtomicReferenceArray<>(level + 1);
+            for (int layer = 0; layer <= level; layer++) {
+                neighbors.set(layer, new int[0]);
+            }
+        }
+    }
+
+    private record EntryPoint(int node, int level) {
+    }
+
+    private record SavedNode(Node node, int[][] neighbors) {
+    }
+
+    private record GraphSnapshot(int dimensions, int entry, List<SavedNode> nodes) {
+    }
+
+    record Candidate(int node, float similarity) {
+    }
+
+    public static class Builder extends AbstractVectorStoreBuilder<Builder> {
+        private int m = 16;
+        private int efConstruction = 200;
+        private int efSearch = 64;
+
+        private Builder(EmbeddingModel embeddingModel) {
+            super(embeddingModel);
+        }
+
+        /**
+         * 每个节点在上层的最大邻居数，第 0 层为其两倍
+         */
+        public Builder m(int m) {
+            this.m = m;
+            return this;
+        }
+
+        /**
+         * 插入时的候选集宽度
+         */
+        public Builder efConstruction(int efConstruction) {
+            this.efConstruction = efConstruction;
+            return this;
+        }
+
+        /**
+         * 查询时的候选集宽度，不小于 topK
+         */
+        public Builder efSearch(int efSearch) {
+            this.efSearch = efSearch;
+            return this;
+        }
+
+        @Override
+        public HnswVectorStore build() {
+            // m 为 1 时层数分布的参数 1/ln(m) 为无穷大
+            if (m < 2) {
+                throw new IllegalArgumentException("m must be at least 2");
+            }
+            if (efConstruction < 1) {
+                throw new IllegalArgumentException("efConstruction must be greater than 0");
+            }
+            if (efSearch < 1) {
+                throw new IllegalArgumentException("efSearch must be greater than 0");
+            }
+            return new HnswVectorStore(this);
+        }
+    }
+}
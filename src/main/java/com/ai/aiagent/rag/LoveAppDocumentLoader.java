@@ -28,23 +28,30 @@ class LoveAppDocumentLoader {
             // 这里可以修改为你要加载的多个 Markdown 文件的路径模式
             Resource[] resources = resourcePatternResolver.getResources("classpath:document/*.md");
             for (Resource resource : resources) {
-                String fileName = resource.getFilename();
-                // 提取文档倒数第 3 和第 2 个字作为标签
-                String status = fileName.substring(fileName.length() - 6, fileName.length() - 4);
-                MarkdownDocumentReaderConfig config = MarkdownDocumentReaderConfig.builder()
-                        .withHorizontalRuleCreateDocument(true)
-                        .withIncludeCodeBlock(false)
-                        .withIncludeBlockquote(false)
-                        .withAdditionalMetadata("filename", fileName)
-                        .withAdditionalMetadata("status", status)
-                        .build();
-                MarkdownDocumentReader reader = new MarkdownDocumentReader(resource, config);
-                allDocuments.addAll(reader.get());
+                allDocuments.addAll(loadMarkdown(resource));
             }
         } catch (IOException e) {
             log.error("Markdown 文档加载失败", e);
         }
         return allDocuments;
     }
+
+    /**
+     * 加载单个 Markdown 文件，文件名和状态标签作为元信息
+     */
+    public List<Document> loadMarkdown(Resource resource) {
+        String fileName = resource.getFilename();
+        // 提取文档倒数第 3 和第 2 个字作为标签
+        String status = fileName.length() >= 6 ? fileName.substring(fileName.length() - 6, fileName.length() - 4) : "";
+        MarkdownDocumentReaderConfig config = MarkdownDocumentReaderConfig.builder()
+                .withHorizontalRuleCreateDocument(true)
+                .withIncludeCodeBlock(false)
+                .withIncludeBlockquote(false)
+                .withAdditionalMetadata("filename", fileName)
+                .withAdditionalMetadata("status", status)
+                .build();
+        MarkdownDocumentReader reader = new MarkdownDocumentReader(resource, config);
+        return reader.get();
+    }
 }
 
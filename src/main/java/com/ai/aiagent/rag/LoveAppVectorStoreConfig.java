@@ -1,13 +1,19 @@
 package com.ai.aiagent.rag;
 
+import com.ai.aiagent.constant.FileConstant;
 import jakarta.annotation.Resource;
 import org.springframework.ai.document.Document;
-import org.springframework.ai.embedding.EmbeddingModel;
-import org.springframework.ai.vectorstore.SimpleVectorStore;
+import org.springframework.ai.document.MetadataMode;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.FileSystemResource;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.List;
 
 @Configuration
@@ -19,17 +25,70 @@ public class LoveAppVectorStoreConfig {
     private MyTokenTextSplitter myTokenTextSplitter;
     @Resource
     private MyKeywordEnricher myKeywordEnricher;
+    // 向量索引保存目录，为空时使用 tmp/vector-index/love-app
+    @Value("${love-app.vector-index.dir:}")
+    private String vectorIndexDir;
+    @Value("${spring.ai.dashscope.embedding.options.model:default}")
+    private String embeddingModelName;
+
+    /**
+     * 加载已保存的向量索引，只对内容变化的文档补充关键词元信息并计算向量
+     */
+    @Bean
+    PersistentVectorIndex loveAppVectorIndex(DocumentEmbeddingConfig.DocumentEmbedding documentEmbedding,
+                                             @Value("${love-app.ingestion.batch-size:100}") int batchSize,
+                                             @Value("${love-app.vector-index.store:flat}") String storeType,
+                                             @Value("${love-app.vector-index.hnsw.m:16}") int hnswM,
+                                             @Value("${love-app.vector-index.hnsw.ef-construction:200}") int hnswEfConstruction,
+                                             @Value("${love-app.vector-index.hnsw.ef-search:64}") int hnswEfSearch) {
+        // 与其他向量库共用分批并行、带退避重试的嵌入模型
+        BatchingEmbeddingModel embeddingModel = documentEmbedding.model();
+        Path directory = vectorIndexDir.isBlank()
+                ? Paths.get(FileConstant.FILE_SAVE_DIR, "vector-index", "love-app")
+                : Paths.get(vectorIndexDir);
+        // flat：向量连续存放的 FlatVectorStore；simple：Spring AI 自带的 SimpleVectorStore；hnsw：近似检索的 HnswVectorStore
+        FileBackedVectorStore store = switch (storeType) {
+            case "simple" -> ConcurrentSimpleVectorStore.create(embeddingModel);
+            case "hnsw" -> HnswVectorStore.builder(embeddingModel)
+                    .m(hnswM)
+                    .efConstruction(hnswEfConstruction)
+                    .efSearch(hnswEfSearch)
+                    .build();
+            default -> FlatVectorStore.builder(embeddingModel).build();
+        };
+        // 图结构由 M 和 efConstruction 决定，变化时重建；efSearch 只影响查询
+        String storeName = store instanceof HnswVectorStore
+                ? "HnswVectorStore(m=" + hnswM + ",efConstruction=" + hnswEfConstruction + ")"
+                : store.getClass().getSimpleName();
+        // 向量按 EMBED 元信息格式化后的内容计算，只按正文计算的旧索引需要重建
+        String fingerprint = storeName + ":" + embeddingModel.getDelegate().getClass().getName()
+                + ":" + embeddingModelName + ":keywords=" + MyKeywordEnricher.KEYWORD_COUNT
+                + ":content=" + MetadataMode.EMBED;
+        return new PersistentVectorIndex(directory, fingerprint, store,
+                myKeywordEnricher::enrichDocuments, batchSize);
+    }
+
     @Bean
-    VectorStore loveAppVectorStore(EmbeddingModel dashscopeEmbeddingModel) {
-        SimpleVectorStore simpleVectorStore = SimpleVectorStore.builder(dashscopeEmbeddingModel)
-                .build();
+    VectorStore loveAppVectorStore(PersistentVectorIndex loveAppVectorIndex) {
         // 加载文档
         List<Document> documents = loveAppDocumentLoader.loadMarkdowns();
-        // 自动补充关键词元信息
-        List<Document> enrichedDocuments = myKeywordEnricher.enrichDocuments(documents);
         // 自主切分
         //List<Document> splitDocuments = myTokenTextSplitter.splitCustomized(documents);
-        simpleVectorStore.add(enrichedDocuments);
-        return simpleVectorStore;
+        loveAppVectorIndex.sync("classpath:document", documents);
+        return loveAppVectorIndex.getStore();
+    }
+
+    /**
+     * 监听文档目录，新增或修改的 Markdown 文件切分后增量写入知识库
+     */
+    @Bean(initMethod = "start", destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "love-app.ingestion", name = "enabled", havingValue = "true")
+    DocumentIngestionService loveAppDocumentIngestion(PersistentVectorIndex loveAppVectorIndex,
+                                                      @Value("${love-app.ingestion.dir}") String dir,
+                                                      @Value("${love-app.ingestion.debounce:1s}") Duration debounce) {
+        return new DocumentIngestionService(Paths.get(dir), loveAppVectorIndex,
+                file -> myTokenTextSplitter.splitCustomized(
+                        loveAppDocumentLoader.loadMarkdown(new FileSystemResource(file))),
+                debounce);
     }
 }
@@ -0,0 +1,86 @@
+package com.ai.aiagent.rag;
+
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.Collection;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+
+/**
+ * 将 Spring AI 的过滤表达式编译为按行号判断的条件，供内存向量库在计算相似度之前过滤
+ */
+final class MetadataFilters {
+
+    private MetadataFilters() {
+    }
+
+    /**
+     * 编译过滤表达式，AND / OR / NOT 在这里组合，单个比较条件由 comparisons 编译
+     */
+    static IntPredicate compile(Filter.Expression expression, Function<Comparison, IntPredicate> comparisons) {
+        return switch (expression.type()) {
+            case AND -> compileOperand(expression.left(), comparisons)
+                    .and(compileOperand(expression.right(), comparisons));
+            case OR -> compileOperand(expression.left(), comparisons)
+                    .or(compileOperand(expression.right(), comparisons));
+            case NOT -> compileOperand(expression.left(), comparisons).negate();
+            default -> {
+                if (!(expression.left() instanceof Filter.Key key)
+                        || !(expression.right() instanceof Filter.Value value)) {
+                    throw new IllegalArgumentException("Unsupported filter expression: " + expression);
+                }
+                yield comparisons.apply(new Comparison(stripQuotes(key.key()), expression.type(), value.value()));
+            }
+        };
+    }
+
+    private static IntPredicate compileOperand(Filter.Operand operand, Function<Comparison, IntPredicate> comparisons) {
+        if (operand instanceof Filter.Group group) {
+            return compile(group.content(), comparisons);
+        }
+        if (operand instanceof Filter.Expression expression) {
+            return compile(expression, comparisons);
+        }
+        throw new IllegalArgumentException("Unsupported filter operand: " + operand);
+    }
+
+    /**
+     * 判断元信息中的值是否满足比较条件
+     */
+    static boolean matches(Object actual, Filter.ExpressionType type, Object expected) {
+        return switch (type) {
+            case EQ -> actual != null && compare(actual, expected) == 0;
+            case NE -> actual == null || compare(actual, expected) != 0;
+            case GT -> actual != null && compare(actual, expected) > 0;
+            case GTE -> actual != null && compare(actual, expected) >= 0;
+            case LT -> actual != null && compare(actual, expected) < 0;
+            case LTE -> actual != null && compare(actual, expected) <= 0;
+            case IN -> actual != null && ((Collection<?>) expected).stream().anyMatch(v -> compare(actual, v) == 0);
+            case NIN -> actual == null || ((Collection<?>) expected).stream().noneMatch(v -> compare(actual, v) == 0);
+            default -> throw new IllegalArgumentException("Unsupported filter operator: " + type);
+        };
+    }
+
+    private static int compare(Object actual, Object expected) {
+        if (actual instanceof Number a && expected instanceof Number b) {
+            return Double.compare(a.doubleValue(), b.doubleValue());
+        }
+        return actual.toString().compareTo(expected.toString());
+    }
+
+    private static String stripQuotes(String key) {
+        if (key.length() >= 2 && (key.startsWith("\"") && key.endsWith("\"")
+                || key.startsWith("'") && key.endsWith("'"))) {
+            return key.substring(1, key.length() - 1);
+        }
+        return key;
+    }
+
+    /**
+     * 单个比较条件
+     *
+     * @param key 元信息字段名，已去掉引号
+     */
+    record Comparison(String key, Filter.ExpressionType type, Object value) {
+    }
+}
@@ -10,11 +10,15 @@ import java.util.List;
 
 @Component
 public class MyKeywordEnricher {
+
+    // 每个文档提取的关键词数量
+    static final int KEYWORD_COUNT = 5;
+
     @Resource
     private ChatModel dashscopeChatModel;
 
     List<Document> enrichDocuments(List<Document> documents) {
-        KeywordMetadataEnricher enricher = new KeywordMetadataEnricher(this.dashscopeChatModel, 5);
+        KeywordMetadataEnricher enricher = new KeywordMetadataEnricher(this.dashscopeChatModel, KEYWORD_COUNT);
         return enricher.apply(documents);
     }
 }
@@ -0,0 +1,240 @@
+package com.ai.aiagent.rag;
+
+import cn.hutool.json.JSONArray;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.UnaryOperator;
+
+/**
+ * 持久化到磁盘的向量索引
+ *
+ * 文档 ID 由内容（正文 + 元信息）的哈希生成，清单文件按来源（如类路径语料、某个被监听的文件）记录已写入向量库的文档 ID。
+ * 同步某个来源时只对内容变化的文档补充关键词并计算向量，不再存在的文档从向量库中删除；内容未变化时不调用任何模型。
+ * 内存向量库（FileBackedVectorStore）的数据与清单一起保存，启动时直接加载；其他向量库自身已持久化，只保存清单。
+ * 清单中记录了嵌入模型等配置的指纹，指纹变化时整体重建。
+ */
+@Slf4j
+public class PersistentVectorIndex {
+
+    private static final String STORE_FILE = "vector-store.dat";
+    private static final String MANIFEST_FILE = "manifest.json";
+    private static final int FORMAT_VERSION = 2;
+
+    private final Path directory;
+    private final String fingerprint;
+    private final VectorStore store;
+    private final UnaryOperator<List<Document>> enricher;
+    private final int batchSize;
+
+    // 来源 -> 该来源写入向量库的文档 ID
+    private final Map<String, Set<String>> sources = new LinkedHashMap<>();
+    private boolean loaded = false;
+
+    /**
+     * @param fingerprint 影响向量结果的配置（嵌入模型、关键词数量等），变化时重建索引
+     * @param enricher    新增文档在计算向量前的处理（如补充关键词），只对变化的文档调用
+     * @param batchSize   每批补充关键词并计算向量的文档数
+     */
+    public PersistentVectorIndex(Path directory, String fingerprint, VectorStore store,
+                                 UnaryOperator<List<Document>> enricher, int batchSize) {
+        this.directory = directory;
+        this.fingerprint = FORMAT_VERSION + ":" + fingerprint;
+        this.store = store;
+        this.enricher = enricher;
+        this.batchSize = batchSize;
+    }
+
+    public VectorStore getStore() {
+        return store;
+    }
+
+    /**
+     * 将某个来源的文档同步到向量库：先按批新增内容变化的文档，再删除不再存在的文档，有变化时保存。
+     * 同步期间向量库仍可查询，文件更新时旧内容在新内容写入后才删除。
+     *
+     * @param source    来源标识，documents 为空表示该来源已删除
+     */
+    public synchronized SyncResult sync(String source, List<Document> documents) {
+        ensureLoaded();
+        Set<String> previous = sources.getOrDefault(source, Set.of());
+        // 其他来源引用的文档不重复写入，也不删除
+        Set<String> referencedElsewhere = new HashSet<>();
+        sources.forEach((name, ids) -> {
+            if (!name.equals(source)) {
+                referencedElsewhere.addAll(ids);
+            }
+        });
+        // 相同内容的文档只保留一份
+        Map<String, Document> current = new LinkedHashMap<>();
+        for (Document document : documents) {
+            String id = contentId(document);
+            current.putIfAbsent(id, Document.builder()
+                    .id(id)
+                    .text(document.getText())
+                    .metadata(document.getMetadata())
+                    .build());
+        }
+        List<Document> added = new ArrayList<>();
+        current.forEach((id, document) -> {
+            if (!previous.contains(id) && !referencedElsewhere.contains(id)) {
+                added.add(document);
+            }
+        });
+        List<String> removed = new ArrayList<>();
+        for (String id : previous) {
+            if (!current.containsKey(id) && !referencedElsewhere.contains(id)) {
+                removed.add(id);
+            }
+        }
+        for (int from = 0; from < added.size(); from += batchSize) {
+            List<Document> batch = added.subList(from, Math.min(added.size(), from + batchSize));
+            store.add(enricher.apply(new ArrayList<>(batch)));
+        }
+        if (!removed.isEmpty()) {
+            store.delete(removed);
+        }
+        boolean changed = !previous.equals(current.keySet());
+        if (current.isEmpty()) {
+            sources.remove(source);
+        } else {
+            sources.put(source, new LinkedHashSet<>(current.keySet()));
+        }
+        SyncResult result = new SyncResult(added.size(), removed.size(), current.size() - added.size());
+        if (changed) {
+            save();
+        }
+        log.info("向量索引同步完成 {}：新增 {}，删除 {}，复用 {}", source, result.added(), result.removed(),
+                result.unchanged());
+        return result;
+    }
+
+    /**
+     * 已记录的来源
+     */
+    public synchronized Set<String> getSources() {
+        ensureLoaded();
+        return new LinkedHashSet<>(sources.keySet());
+    }
+
+    /**
+     * 文档内容的 ID：正文和按键排序的元信息的 SHA-256，转为 UUID 格式
+     */
+    static String contentId(Document document) {
+        MessageDigest digest = sha256();
+        digest.update(String.valueOf(document.getText()).getBytes(StandardCharsets.UTF_8));
+        new TreeMap<>(document.getMetadata()).forEach((key, value) -> {
+            digest.update((byte) 0);
+            digest.update(key.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '=');
+            digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+        });
+        return UUID.nameUUIDFromBytes(digest.digest()).toString();
+    }
+
+    /**
+     * 加载已保存的索引；文件缺失、损坏或指纹不一致时从空索引开始
+     */
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        Path manifestFile = directory.resolve(MANIFEST_FILE);
+        Path storeFile = directory.resolve(STORE_FILE);
+        boolean fileBacked = store instanceof FileBackedVectorStore;
+        if (!Files.exists(manifestFile) || (fileBacked && !Files.exists(storeFile))) {
+            return;
+        }
+        try {
+            JSONObject manifest = JSONUtil.parseObj(Files.readString(manifestFile, StandardCharsets.UTF_8));
+            if (!fingerprint.equals(manifest.getStr("fingerprint"))) {
+                log.info("向量索引配置已变化，重新构建：{}", directory);
+                return;
+            }
+            if (fileBacked) {
+                ((FileBackedVectorStore) store).load(storeFile.toFile());
+            }
+            JSONObject saved = manifest.getJSONObject("sources");
+            for (String source : saved.keySet()) {
+                sources.put(source, new LinkedHashSet<>(saved.getJSONArray(source).toList(String.class)));
+            }
+        } catch (Exception e) {
+            log.warn("读取向量索引失败，重新构建：{}", directory, e);
+            sources.clear();
+        }
+    }
+
+    /**
+     * 先写临时文件再原子替换；写向量库前先删除清单，中途失败时下次启动整体重建，不会按旧清单误用新的向量库
+     */
+    private void save() {
+        try {
+            Files.createDirectories(directory);
+            Files.deleteIfExists(directory.resolve(MANIFEST_FILE));
+            if (store instanceof FileBackedVectorStore fileBackedStore) {
+                Path storeTemp = directory.resolve(STORE_FILE + ".tmp");
+                fileBackedStore.save(storeTemp.toFile());
+                moveIntoPlace(storeTemp, directory.resolve(STORE_FILE));
+            }
+
+            JSONObject saved = new JSONObject();
+            sources.forEach((source, ids) -> saved.set(source, new JSONArray(ids)));
+            JSONObject manifest = new JSONObject();
+            manifest.set("fingerprint", fingerprint);
+            manifest.set("sources", saved);
+            Path manifestTemp = directory.resolve(MANIFEST_FILE + ".tmp");
+            Files.writeString(manifestTemp, manifest.toString(), StandardCharsets.UTF_8);
+            moveIntoPlace(manifestTemp, directory.resolve(MANIFEST_FILE));
+        } catch (IOException | RuntimeException e) {
+            // 保存失败不影响本次运行，下次启动重新计算
+            log.error("保存向量索引失败：{}", directory, e);
+        }
+    }
+
+    private static void moveIntoPlace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 同步结果
+     *
+     * @param added     新计算向量的文档数
+     * @param removed   从向量库中删除的文档数
+     * @param unchanged 直接复用的文档数
+     */
+    public record SyncResult(int added, int removed, int unchanged) {
+    }
+}
@@ -1,15 +1,18 @@
 package com.ai.aiagent.rag;
 
+import com.ai.aiagent.constant.FileConstant;
 import jakarta.annotation.Resource;
 import org.springframework.ai.document.Document;
-import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.document.MetadataMode;
 import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.ai.vectorstore.pgvector.PgVectorStore;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.jdbc.core.JdbcTemplate;
 
+import java.nio.file.Paths;
 import java.util.List;
+import java.util.function.UnaryOperator;
 
 import static org.springframework.ai.vectorstore.pgvector.PgVectorStore.PgDistanceType.COSINE_DISTANCE;
 import static org.springframework.ai.vectorstore.pgvector.PgVectorStore.PgIndexType.HNSW;
@@ -20,8 +23,11 @@ public class PgVectorVectorStoreConfig {
     private LoveAppDocumentLoader loveAppDocumentLoader;
 
     @Bean
-    public VectorStore pgVectorVectorStore(JdbcTemplate jdbcTemplate, EmbeddingModel dashscopeEmbeddingModel) {
-        VectorStore vectorStore = PgVectorStore.builder(jdbcTemplate, dashscopeEmbeddingModel)
+    public VectorStore pgVectorVectorStore(JdbcTemplate jdbcTemplate,
+                                           DocumentEmbeddingConfig.DocumentEmbedding documentEmbedding) {
+        // 与其他向量库共用分批并行、带退避重试的嵌入模型
+        BatchingEmbeddingModel embeddingModel = documentEmbedding.model();
+        VectorStore vectorStore = PgVectorStore.builder(jdbcTemplate, embeddingModel)
                 .dimensions(1536)                    // Optional: defaults to model dimensions or 1536
                 .distanceType(COSINE_DISTANCE)       // Optional: defaults to COSINE_DISTANCE
                 .indexType(HNSW)                     // Optional: defaults to HNSW
@@ -30,9 +36,12 @@ public class PgVectorVectorStoreConfig {
                 .vectorTableName("vector_store")     // Optional: defaults to "vector_store"
                 .maxDocumentBatchSize(10000)         // Optional: defaults to 10000
                 .build();
-        // 加载文档
+        // 加载文档，按内容 ID 写入，重启时已写入的文档不再重复添加
         List<Document> documents = loveAppDocumentLoader.loadMarkdowns();
-        vectorStore.add(documents);
+        new PersistentVectorIndex(Paths.get(FileConstant.FILE_SAVE_DIR, "vector-index", "pgvector"),
+                embeddingModel.getDelegate().getClass().getName() + ":content=" + MetadataMode.EMBED, vectorStore,
+                UnaryOperator.identity(), 100)
+                .sync("classpath:document", documents);
         return vectorStore;
     }
 }
@@ -0,0 +1,192 @@
+package com.ai.aiagent.tools;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 音频文件分段
+ *
+ * 只解析 WAV 文件头找到 PCM 数据区，按时长切分后每段读取时再拼上新的文件头，音频本身不读入内存。
+ * 不是 PCM 编码的 WAV 文件时整个文件作为一段。
+ */
+final class AudioSegments {
+
+    private static final int HEADER_SIZE = 44;
+
+    private AudioSegments() {
+    }
+
+    /**
+     * 按时长切分音频，每段的字节数对齐到采样帧
+     */
+    static List<Segment> split(Path file, int segmentSeconds) throws IOException {
+        long fileSize = Files.size(file);
+        WavFormat format = readFormat(file, fileSize);
+        if (format == null) {
+            return List.of(new Segment(file, new byte[0], 0, fileSize, 16000, 1));
+        }
+        long segmentBytes = Math.max(format.blockAlign,
+                (long) format.byteRate * segmentSeconds / format.blockAlign * format.blockAlign);
+        List<Segment> segments = new ArrayList<>();
+        for (long offset = 0; offset < format.dataLength; offset += segmentBytes) {
+            long length = Math.min(segmentBytes, format.dataLength - offset);
+            segments.add(new Segment(file, header(format, length), format.dataOffset + offset, length,
+                    format.sampleRate, format.channels));
+        }
+        if (segments.isEmpty()) {
+            segments.add(new Segment(file, header(format, 0), format.dataOffset, 0, format.sampleRate, format.channels));
+        }
+        return segments;
+    }
+
+    /**
+     * 解析 RIFF 块，找到 fmt 和 data 块；不是 PCM 编码的 WAV 时返回 null
+     */
+    private static WavFormat readFormat(Path file, long fileSize) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer riff = readAt(channel, 0, 12);
+            if (riff == null || riff.getInt(0) != 0x46464952 || riff.getInt(8) != 0x45564157) {
+                // "RIFF" ... "WAVE"
+                return null;
+            }
+            WavFormat format = null;
+            long position = 12;
+            while (position + 8 <= fileSize) {
+                ByteBuffer chunk = readAt(channel, position, 8);
+                if (chunk == null) {
+                    return null;
+                }
+                int id = chunk.getInt(0);
+                long size = Integer.toUnsignedLong(chunk.getInt(4));
+                if (id == 0x20746d66) {
+                    // "fmt "
+                    ByteBuffer fmt = readAt(channel, position + 8, 16);
+                    if (fmt == null || fmt.getShort(0) != 1) {
+                        return null;
+                    }
+                    format = new WavFormat(fmt.getShort(2), fmt.getInt(4), fmt.getInt(8), fmt.getShort(12),
+                            fmt.getShort(14));
+                } else if (id == 0x61746164) {
+                    // "data"，录音程序未回填长度时以文件实际长度为准
+                    if (format == null || format.blockAlign <= 0 || format.byteRate <= 0) {
+                        return null;
+                    }
+                    format.dataOffset = position + 8;
+                    format.dataLength = Math.min(size, fileSize - format.dataOffset);
+                    format.dataLength -= format.dataLength % format.blockAlign;
+                    return format;
+                }
+                position += 8 + size + (size & 1);
+            }
+            return null;
+        }
+    }
+
+    private static ByteBuffer readAt(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return null;
+            }
+        }
+        return buffer;
+    }
+
+    private static byte[] header(WavFormat format, long dataLength) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0x46464952).putInt((int) (36 + dataLength)).putInt(0x45564157);
+        header.putInt(0x20746d66).putInt(16).putShort((short) 1).putShort(format.channels)
+                .putInt(format.sampleRate).putInt(format.byteRate).putShort(format.blockAlign)
+                .putShort(format.bitsPerSample);
+        header.putInt(0x61746164).putInt((int) dataLength);
+        return header.array();
+    }
+
+    private static class WavFormat {
+        private final short channels;
+        private final int sampleRate;
+        private final int byteRate;
+        private final short blockAlign;
+        private final short bitsPerSample;
+        private long dataOffset;
+        private long dataLength;
+
+        private WavFormat(short channels, int sampleRate, int byteRate, short blockAlign, short bitsPerSample) {
+            this.channels = channels;
+            this.sampleRate = sampleRate;
+            this.byteRate = byteRate;
+            this.blockAlign = blockAlign;
+            this.bitsPerSample = bitsPerSample;
+        }
+    }
+
+    /**
+     * 一段音频：文件头 + 文件中的一段数据
+     */
+    record Segment(Path file, byte[] header, long dataOffset, long dataLength, int sampleRate, int channels) {
+
+        long size() {
+            return header.length + dataLength;
+        }
+
+        /**
+         * 从段内的指定位置开始读取
+         */
+        InputStream open(long from) throws IOException {
+            if (from >= header.length) {
+                return new RegionInputStream(file, dataOffset + from - header.length, dataOffset + dataLength);
+            }
+            return new SequenceInputStream(
+                    new ByteArrayInputStream(header, (int) from, header.length - (int) from),
+                    new RegionInputStream(file, dataOffset, dataOffset + dataLength));
+        }
+    }
+
+    /**
+     * 读取文件中 [position, end) 的数据
+     */
+    private static class RegionInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+        private final long end;
+
+        private RegionInputStream(Path file, long position, long end) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            this.position = position;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+            if (n > 0) {
+                position += n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,566 @@
+package com.ai.aiagent.tools;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 资源下载引擎
+ *
+ * 响应体通过 FileChannel.transferFrom 直接写入磁盘，不在堆内存中缓冲整个文件；下载过程中统计字节数，超过上限立即中止。
+ * 下载先写入 .part 文件，完成后原子重命名；失败或被取消时保留 .part 文件，下次下载同一文件时用 Range 请求续传。
+ * .part 旁边的 .part.meta 记录这些字节来自哪个 URL 以及响应的 ETag/Last-Modified：只有 URL 相同且有校验值时才续传，
+ * 并带上 If-Range，资源已变化时服务器返回完整内容；否则丢弃 .part 从头下载，避免把不同资源的字节拼在一起。
+ * 同时进行的下载数受信号量限制。每个下载完成的 URL 记录文件大小、SHA-256 以及响应的 ETag/Last-Modified，
+ * 同一 URL 再次下载时，本地文件未变化则带上 If-None-Match/If-Modified-Since 发条件请求，服务器返回 304 才复用，
+ * 否则按新内容重新下载；没有校验值的资源无法确认是否变化，总是重新下载。SHA-256 只随结果返回供调用方校验，不用于去重。
+ */
+@Slf4j
+public class DownloadEngine {
+
+    private static final String INDEX_FILE = ".download-index.json";
+    private static final String PART_SUFFIX = ".part";
+    private static final String PART_META_SUFFIX = ".part.meta";
+    // 每次 transferFrom 传输的最大字节数，同时作为检查上限和汇报进度的粒度
+    private static final long TRANSFER_CHUNK = 1024 * 1024;
+
+    private final OutboundHttpClient httpClient;
+    private final Path directory;
+    private final long maxBytes;
+    private final Semaphore permits;
+
+    // URL -> 已下载的文件
+    private final Map<String, IndexEntry> index = new ConcurrentHashMap<>();
+    // 同一目标文件同时只有一个下载在写；没有下载持有或等待时移除
+    private final Map<Path, FileLock> fileLocks = new ConcurrentHashMap<>();
+    private final Map<Path, DownloadProgress> activeDownloads = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxBytes               单个文件的大小上限
+     * @param maxConcurrentDownloads 同时进行的下载数
+     */
+    public DownloadEngine(OutboundHttpClient httpClient, Path directory, long maxBytes, int maxConcurrentDownloads) {
+        this.httpClient = httpClient;
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.permits = new Semaphore(maxConcurrentDownloads, true);
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot create download directory: " + directory, e);
+        }
+        loadIndex();
+    }
+
+    /**
+     * 下载到指定文件名，阻塞直到完成；线程被中断时中止下载并保留已下载的部分
+     *
+     * @param fileName 文件名，只取最后一段，不能写到下载目录之外
+     */
+    public DownloadResult download(String url, String fileName) throws IOException, InterruptedException {
+        Path target = resolveTarget(fileName);
+        permits.acquire();
+        try {
+            FileLock fileLock = fileLocks.compute(target, (path, existing) -> {
+                FileLock acquired = existing == null ? new FileLock() : existing;
+                acquired.users++;
+                return acquired;
+            });
+            try {
+                fileLock.lock.lockInterruptibly();
+                try {
+                    return fetch(url, target, cachedEntry(url));
+                } finally {
+                    fileLock.lock.unlock();
+                }
+            } finally {
+                fileLocks.computeIfPresent(target, (path, existing) -> --existing.users == 0 ? null : existing);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * 并发下载多个资源，并发数受下载上限限制；单个下载失败不影响其他下载
+     */
+    public List<DownloadOutcome> downloadAll(Map<String, String> urlToFileName) throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        List<DownloadOutcome> outcomes = new ArrayList<>();
+        for (Map.Entry<String, String> entry : urlToFileName.entrySet()) {
+            DownloadOutcome outcome = new DownloadOutcome(entry.getKey());
+            outcomes.add(outcome);
+            threads.add(Thread.ofVirtual().name("download-", 0).start(() -> {
+                try {
+                    outcome.result = download(entry.getKey(), entry.getValue());
+                } catch (InterruptedException e) {
+                    outcome.error = "cancelled";
+                } catch (Exception e) {
+                    outcome.error = e.getMessage();
+                }
+            }));
+        }
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            threads.forEach(Thread::interrupt);
+            throw e;
+        }
+        return outcomes;
+    }
+
+    /**
+     * 进行中的下载及其进度
+     */
+    public List<DownloadProgress> getActiveDownloads() {
+        return new ArrayList<>(activeDownloads.values());
+    }
+
+    /**
+     * 同一 URL 已下载、本地文件未变化且记录了校验值时返回索引项，用于发条件请求；本地文件已变化时移除索引项
+     */
+    private IndexEntry cachedEntry(String url) throws IOException {
+        IndexEntry entry = index.get(url);
+        if (entry == null) {
+            return null;
+        }
+        Path existing = directory.resolve(entry.fileName());
+        if (!Files.isRegularFile(existing) || Files.size(existing) != entry.size()
+                || Files.getLastModifiedTime(existing).toMillis() != entry.lastModified()) {
+            index.remove(url);
+            return null;
+        }
+        return entry.etag() != null || entry.serverLastModified() != null ? entry : null;
+    }
+
+    /**
+     * 服务器确认资源未变化，复用已下载的文件，目标文件名不同则复制一份
+     */
+    private DownloadResult reuse(String url, Path target, IndexEntry entry) throws IOException {
+        Path existing = directory.resolve(entry.fileName());
+        if (!existing.equals(target)) {
+            Files.copy(existing, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        log.info("{} 未变化，复用已下载的文件 {}", url, existing);
+        return new DownloadResult(target, entry.size(), entry.sha256(), true, false);
+    }
+
+    /**
+     * @param cached 已下载且可校验的索引项，不为空且没有可续传的 .part 时发条件请求
+     */
+    private DownloadResult fetch(String url, Path target, IndexEntry cached) throws IOException, InterruptedException {
+        Path part = target.resolveSibling(target.getFileName() + PART_SUFFIX);
+        Path meta = target.resolveSibling(target.getFileName() + PART_META_SUFFIX);
+        PartMeta partMeta = resumablePart(url, part, meta);
+        long offset = partMeta == null ? 0 : Files.size(part);
+        HttpRequest.Builder builder = httpClient.newRequest(url).GET();
+        if (offset > 0) {
+            builder.header("Range", "bytes=" + offset + "-");
+            builder.header("If-Range", partMeta.validator());
+        } else if (cached != null) {
+            if (cached.etag() != null) {
+                builder.header("If-None-Match", cached.etag());
+            }
+            if (cached.serverLastModified() != null) {
+                builder.header("If-Modified-Since", cached.serverLastModified());
+            }
+        }
+        HttpResponse<InputStream> response = httpClient.send(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+        int status = response.statusCode();
+        if (status == 304 && cached != null && offset == 0) {
+            response.body().close();
+            return reuse(url, target, cached);
+        }
+        // 续传的起点已超出文件长度，或返回的区间、ETag 对不上（服务器忽略了 If-Range），部分文件不可信，重新下载
+        boolean stalePart = offset > 0 && (status == 416 || status == 206 && !continuesPart(response, offset, partMeta));
+        try (InputStream body = response.body()) {
+            if (!stalePart) {
+                return receive(url, target, response, body, part, meta, offset);
+            }
+        }
+        // 离开 try 时响应体已关闭并归还主机并发名额，再重新请求，否则会同时占用两个名额
+        discardPart(part, meta);
+        return fetch(url, target, cached);
+    }
+
+    /**
+     * 把响应内容写入 .part，完成后移动到目标位置并记入索引
+     */
+    private DownloadResult receive(String url, Path target, HttpResponse<InputStream> response, InputStream body,
+                                   Path part, Path meta, long offset) throws IOException, InterruptedException {
+        int status = response.statusCode();
+        if (status / 100 != 2) {
+            throw new IOException("HTTP " + status);
+        }
+        // If-Range 校验失败时服务器返回 200 和完整内容
+        boolean resumed = offset > 0 && status == 206;
+        if (!resumed) {
+            offset = 0;
+            writePartMeta(meta, new PartMeta(url, strongETag(response),
+                    response.headers().firstValue("Last-Modified").orElse(null)));
+        }
+        long remaining = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+        long total = remaining < 0 ? -1 : offset + remaining;
+        if (total > maxBytes) {
+            discardPart(part, meta);
+            throw new IOException("Resource size " + total + " bytes exceeds the limit of " + maxBytes + " bytes");
+        }
+        MessageDigest digest = sha256();
+        if (resumed) {
+            digestExisting(part, offset, digest);
+            log.info("从第 {} 字节续传 {}", offset, url);
+        }
+        DownloadProgress progress = new DownloadProgress(url, target.getFileName().toString(), total);
+        progress.downloaded.set(offset);
+        activeDownloads.put(target, progress);
+        try {
+            long size = transfer(body, part, meta, offset, digest, progress);
+            moveIntoPlace(part, target);
+            Files.deleteIfExists(meta);
+            String sha256 = HexFormat.of().formatHex(digest.digest());
+            // If-None-Match 可以使用弱 ETag
+            index.put(url, new IndexEntry(target.getFileName().toString(), size, sha256,
+                    Files.getLastModifiedTime(target).toMillis(), response.headers().firstValue("ETag").orElse(null),
+                    response.headers().firstValue("Last-Modified").orElse(null)));
+            saveIndex();
+            return new DownloadResult(target, size, sha256, false, resumed);
+        } finally {
+            activeDownloads.remove(target);
+        }
+    }
+
+    /**
+     * 已有的 .part 来自同一 URL 且记录了校验值时返回其元数据，否则删除 .part 并返回 null
+     */
+    private PartMeta resumablePart(String url, Path part, Path meta) throws IOException {
+        if (!Files.exists(part)) {
+            Files.deleteIfExists(meta);
+            return null;
+        }
+        PartMeta partMeta = readPartMeta(meta);
+        if (partMeta != null && url.equals(partMeta.url()) && partMeta.validator() != null && Files.size(part) > 0) {
+            return partMeta;
+        }
+        log.info("{} 不是 {} 的未完成下载或无法校验，从头下载", part.getFileName(), url);
+        discardPart(part, meta);
+        return null;
+    }
+
+    private static PartMeta readPartMeta(Path meta) {
+        if (!Files.exists(meta)) {
+            return null;
+        }
+        try {
+            JSONObject json = JSONUtil.parseObj(Files.readString(meta, StandardCharsets.UTF_8));
+            return new PartMeta(json.getStr("url"), json.getStr("etag"), json.getStr("lastModified"));
+        } catch (Exception e) {
+            log.warn("读取续传元数据失败: {}", meta, e);
+            return null;
+        }
+    }
+
+    private static void writePartMeta(Path meta, PartMeta partMeta) throws IOException {
+        JSONObject json = new JSONObject()
+                .set("url", partMeta.url())
+                .set("etag", partMeta.etag())
+                .set("lastModified", partMeta.lastModified());
+        Files.writeString(meta, json.toString(), StandardCharsets.UTF_8);
+    }
+
+    private static void discardPart(Path part, Path meta) throws IOException {
+        Files.deleteIfExists(part);
+        Files.deleteIfExists(meta);
+    }
+
+    /**
+     * If-Range 只接受强校验的 ETag，弱 ETag（W/ 开头）不记录
+     */
+    private static String strongETag(HttpResponse<?> response) {
+        return response.headers().firstValue("ETag")
+                .filter(etag -> !etag.startsWith("W/"))
+                .orElse(null);
+    }
+
+    /**
+     * 从响应流按块写入文件，边写边计算摘要并检查大小上限
+     */
+    private long transfer(InputStream body, Path part, Path meta, long offset, MessageDigest digest,
+                          DownloadProgress progress) throws IOException, InterruptedException {
+        ReadableByteChannel source = new DigestChannel(body, digest);
+        long position = offset;
+        try (FileChannel file = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // 续传时从已有长度之后写入，否则丢弃旧内容
+            file.truncate(offset);
+            while (position <= maxBytes) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException("Download cancelled");
+                }
+                long transferred = file.transferFrom(source, position, TRANSFER_CHUNK);
+                if (transferred <= 0) {
+                    // transferFrom 返回 0 可能只是暂时没有数据，读一个字节确认是否结束
+                    ByteBuffer probe = ByteBuffer.allocate(1);
+                    if (source.read(probe) < 0) {
+                        break;
+                    }
+                    probe.flip();
+                    file.write(probe, position);
+                    transferred = 1;
+                }
+                position += transferred;
+                progress.downloaded.set(position);
+            }
+            if (position <= maxBytes) {
+                file.force(false);
+                return position;
+            }
+        }
+        // 超出上限时先离开 try 关闭文件，再删除 .part
+        discardPart(part, meta);
+        throw new IOException("Resource exceeds the limit of " + maxBytes + " bytes");
+    }
+
+    private static boolean continuesPart(HttpResponse<?> response, long offset, PartMeta partMeta) {
+        // Content-Range: bytes 100-999/1000
+        boolean rangeMatches = response.headers().firstValue("Content-Range")
+                .map(value -> value.startsWith("bytes " + offset + "-"))
+                .orElse(false);
+        String etag = response.headers().firstValue("ETag").orElse(null);
+        return rangeMatches && (partMeta.etag() == null || etag == null || partMeta.etag().equals(etag));
+    }
+
+    private static void digestExisting(Path part, long length, MessageDigest digest) throws IOException {
+        try (InputStream in = Files.newInputStream(part)) {
+            byte[] buffer = new byte[64 * 1024];
+            long remaining = length;
+            int read;
+            while (remaining > 0 && (read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) > 0) {
+                digest.update(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+    }
+
+    private static void moveIntoPlace(Path part, Path target) throws IOException {
+        try {
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private Path resolveTarget(String fileName) {
+        Path name = Path.of(fileName).getFileName();
+        if (name == null || name.toString().isBlank() || name.toString().startsWith(".")) {
+            throw new IllegalArgumentException("Invalid file name: " + fileName);
+        }
+        return directory.resolve(name);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void loadIndex() {
+        Path file = directory.resolve(INDEX_FILE);
+        if (!Files.exists(file)) {
+            return;
+        }
+        try {
+            JSONObject json = JSONUtil.parseObj(Files.readString(file, StandardCharsets.UTF_8));
+            for (String url : json.keySet()) {
+                JSONObject entry = json.getJSONObject(url);
+                index.put(url, new IndexEntry(entry.getStr("fileName"), entry.getLong("size"),
+                        entry.getStr("sha256"), entry.getLong("lastModified"), entry.getStr("etag"),
+                        entry.getStr("serverLastModified")));
+            }
+        } catch (Exception e) {
+            log.warn("读取下载索引失败，将重新下载", e);
+        }
+    }
+
+    private synchronized void saveIndex() {
+        JSONObject json = new JSONObject();
+        index.forEach((url, entry) -> json.set(url, new JSONObject()
+                .set("fileName", entry.fileName())
+                .set("size", entry.size())
+                .set("sha256", entry.sha256())
+                .set("lastModified", entry.lastModified())
+                .set("etag", entry.etag())
+                .set("serverLastModified", entry.serverLastModified())));
+        Path file = directory.resolve(INDEX_FILE);
+        Path temp = directory.resolve(INDEX_FILE + ".tmp");
+        try {
+            Files.writeString(temp, json.toString(), StandardCharsets.UTF_8);
+            moveIntoPlace(temp, file);
+        } catch (IOException e) {
+            log.warn("保存下载索引失败", e);
+        }
+    }
+
+    /**
+     * 读取时同步更新摘要的通道
+     */
+    private static class DigestChannel implements ReadableByteChannel {
+        private final InputStream delegate;
+        private final MessageDigest digest;
+        private final byte[] chunk = new byte[64 * 1024];
+        private boolean open = true;
+
+        private DigestChannel(InputStream delegate, MessageDigest digest) {
+            this.delegate = delegate;
+            this.digest = digest;
+        }
+
+        /**
+         * 直接读取响应流，不用 Channels.newChannel：它在 synchronized 中读取，
+         * 等待数据时虚拟线程占住载体线程，载体线程不够时 HttpClient 无法继续投递响应数据
+         */
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            int read = delegate.read(chunk, 0, Math.min(chunk.length, dst.remaining()));
+            if (read > 0) {
+                digest.update(chunk, 0, read);
+                dst.put(chunk, 0, read);
+            }
+            return read;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() throws IOException {
+            open = false;
+            delegate.close();
+        }
+    }
+
+    /**
+     * 目标文件的锁，users 为持有和等待的下载数，只在 fileLocks.compute 中修改
+     */
+    private static class FileLock {
+        private final ReentrantLock lock = new ReentrantLock();
+        private int users;
+    }
+
+    /**
+     * 已下载的文件，lastModified 为本地文件的修改时间，etag 和 serverLastModified 为响应头，用于条件请求
+     */
+    private record IndexEntry(String fileName, long size, String sha256, long lastModified,
+                              String etag, String serverLastModified) {
+    }
+
+    /**
+     * .part 文件的来源，etag 和 lastModified 都为空时无法校验，不续传
+     */
+    private record PartMeta(String url, String etag, String lastModified) {
+
+        /**
+         * If-Range 的值，优先使用 ETag
+         */
+        private String validator() {
+            return etag != null ? etag : lastModified;
+        }
+    }
+
+    /**
+     * 下载结果
+     *
+     * @param reused  是否复用了已下载的文件
+     * @param resumed 是否从上次中断处续传
+     */
+    public record DownloadResult(Path path, long size, String sha256, boolean reused, boolean resumed) {
+    }
+
+    /**
+     * 批量下载中单个资源的结果，失败时 result 为空
+     */
+    public static class DownloadOutcome {
+        private final String url;
+        private volatile DownloadResult result;
+        private volatile String error;
+
+        private DownloadOutcome(String url) {
+            this.url = url;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public DownloadResult getResult() {
+            return result;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+
+    /**
+     * 下载进度
+     */
+    public static class DownloadProgress {
+        private final String url;
+        private final String fileName;
+        private final long totalBytes;
+        private final AtomicLong downloaded = new AtomicLong();
+
+        private DownloadProgress(String url, String fileName, long totalBytes) {
+            this.url = url;
+            this.fileName = fileName;
+            this.totalBytes = totalBytes;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        /**
+         * 文件总大小，服务器未返回长度时为 -1
+         */
+        public long getTotalBytes() {
+            return totalBytes;
+        }
+
+        public long getDownloadedBytes() {
+            return downloaded.get();
+        }
+    }
+}
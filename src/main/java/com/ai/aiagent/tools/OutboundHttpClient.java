@@ -0,0 +1,398 @@
+package com.ai.aiagent.tools;
+
+import javax.net.ssl.SSLSession;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 工具共用的出站 HTTP 客户端
+ *
+ * 所有工具共享同一个 JDK HttpClient：连接池和 keep-alive 在工具之间复用，优先协商 HTTP/2，
+ * 请求在虚拟线程上执行，阻塞的 send 可以被线程中断取消。
+ * 每个主机的并发请求数受信号量限制，避免某个外部接口被智能体的并行工具调用打满；
+ * 按主机统计请求数、失败数、平均和最大耗时。
+ * 请求超时只覆盖到收到响应头为止，以 InputStream 返回的响应体另有读取超时：单次读取等待数据超过 readTimeout 时抛出 HttpTimeoutException。
+ */
+public class OutboundHttpClient implements AutoCloseable {
+
+    private static volatile OutboundHttpClient defaultClient;
+
+    private final ExecutorService executor;
+    private final HttpClient httpClient;
+    private final Duration requestTimeout;
+    private final Duration readTimeout;
+    // 到期时中断阻塞在响应体读取上的线程
+    private final ScheduledThreadPoolExecutor readWatchdog;
+    private final int maxConcurrentPerHost;
+    private final Duration permitTimeout;
+
+    private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+    private final Map<String, HostCounters> hostCounters = new ConcurrentHashMap<>();
+
+    private OutboundHttpClient(Builder builder) {
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("outbound-http-", 0).factory());
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(builder.connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(executor)
+                .build();
+        this.requestTimeout = builder.requestTimeout;
+        this.readTimeout = builder.readTimeout;
+        this.readWatchdog = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "outbound-http-read-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.readWatchdog.setRemoveOnCancelPolicy(true);
+        this.maxConcurrentPerHost = builder.maxConcurrentPerHost;
+        this.permitTimeout = builder.permitTimeout;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 未通过 Spring 注入时工具使用的默认客户端
+     */
+    public static OutboundHttpClient getDefault() {
+        if (defaultClient == null) {
+            synchronized (OutboundHttpClient.class) {
+                if (defaultClient == null) {
+                    defaultClient = builder().build();
+                }
+            }
+        }
+        return defaultClient;
+    }
+
+    /**
+     * 创建请求，已设置默认的请求超时时间
+     */
+    public HttpRequest.Builder newRequest(String url) {
+        return HttpRequest.newBuilder(URI.create(url)).timeout(requestTimeout);
+    }
+
+    /**
+     * 发送请求并返回字符串响应体
+     */
+    public HttpResponse<String> sendForString(HttpRequest request) throws IOException, InterruptedException {
+        return send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * 发送请求，等待该主机的并发名额
+     *
+     * 名额在 send 返回时释放；响应体以 InputStream 返回时，读取期间仍占用连接，名额在关闭响应体时释放，
+     * 调用方必须关闭响应体。这样的响应体带有读取超时，服务器发送响应头后停止发送数据时不会一直占用名额和线程
+     *
+     * @throws IOException 请求失败，或等待并发名额超时
+     */
+    @SuppressWarnings("unchecked")
+    public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler)
+            throws IOException, InterruptedException {
+        String host = hostOf(request.uri());
+        HostCounters counters = hostCounters.computeIfAbsent(host, h -> new HostCounters());
+        Semaphore permits = hostPermits.computeIfAbsent(host, h -> new Semaphore(maxConcurrentPerHost, true));
+        if (!permits.tryAcquire()) {
+            counters.throttled.incrementAndGet();
+            if (!permits.tryAcquire(permitTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                counters.failures.incrementAndGet();
+                throw new IOException("Too many concurrent requests to " + host);
+            }
+        }
+        long start = System.nanoTime();
+        boolean releaseOnClose = false;
+        try {
+            HttpResponse<T> response = httpClient.send(request, bodyHandler);
+            if (response.statusCode() >= 400) {
+                counters.failures.incrementAndGet();
+            }
+            if (response.body() instanceof InputStream body) {
+                releaseOnClose = true;
+                return (HttpResponse<T>) new StreamingResponse((HttpResponse<InputStream>) response,
+                        new PermitReleasingInputStream(new ReadTimeoutInputStream(body, readTimeout, readWatchdog),
+                                permits));
+            }
+            return response;
+        } catch (IOException | RuntimeException e) {
+            counters.failures.incrementAndGet();
+            throw e;
+        } finally {
+            if (!releaseOnClose) {
+                permits.release();
+            }
+            counters.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 按主机统计的请求情况
+     */
+    public Map<String, HostStats> getStats() {
+        Map<String, HostStats> stats = new TreeMap<>();
+        hostCounters.forEach((host, counters) -> {
+            Semaphore permits = hostPermits.get(host);
+            int inFlight = permits == null ? 0 : maxConcurrentPerHost - permits.availablePermits();
+            stats.put(host, counters.snapshot(inFlight));
+        });
+        return stats;
+    }
+
+    /**
+     * 停止共享客户端，中止进行中的请求并关闭执行请求的虚拟线程执行器
+     */
+    @Override
+    public void close() {
+        httpClient.shutdownNow();
+        executor.shutdownNow();
+        readWatchdog.shutdownNow();
+    }
+
+    private static String hostOf(URI uri) {
+        String host = uri.getHost();
+        return host == null ? "unknown" : host.toLowerCase();
+    }
+
+    /**
+     * 关闭时释放主机并发名额的响应体，重复关闭只释放一次
+     */
+    private static class PermitReleasingInputStream extends FilterInputStream {
+        private final Semaphore permits;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private PermitReleasingInputStream(InputStream in, Semaphore permits) {
+            super(in);
+            this.permits = permits;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (released.compareAndSet(false, true)) {
+                    permits.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * 带读取超时的响应体
+     *
+     * 每次读取前登记一个超时任务，读取阻塞超过 readTimeout 时由任务中断读取线程；读取线程清除中断标记后抛出 HttpTimeoutException。
+     * 超时任务和读取结束通过状态的 CAS 决出先后，读取已正常结束时不会再被中断；外部对读取线程的中断照常传递给调用方
+     */
+    private static class ReadTimeoutInputStream extends FilterInputStream {
+        private static final int READING = 0;
+        private static final int DONE = 1;
+        private static final int TIMED_OUT = 2;
+
+        private final Duration readTimeout;
+        private final ScheduledThreadPoolExecutor watchdog;
+
+        private ReadTimeoutInputStream(InputStream in, Duration readTimeout, ScheduledThreadPoolExecutor watchdog) {
+            super(in);
+            this.readTimeout = readTimeout;
+            this.watchdog = watchdog;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return (int) timed(in::read);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return (int) timed(() -> in.read(b, off, len));
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            return timed(() -> in.skip(n));
+        }
+
+        private long timed(BlockingRead read) throws IOException {
+            AtomicInteger state = new AtomicInteger(READING);
+            Thread reader = Thread.currentThread();
+            ScheduledFuture<?> timeout = watchdog.schedule(() -> {
+                // 持锁设置状态并中断，读取线程确认超时后再持锁一次，保证清除中断标记时中断已经发生
+                synchronized (state) {
+                    if (state.compareAndSet(READING, TIMED_OUT)) {
+                        reader.interrupt();
+                    }
+                }
+            }, readTimeout.toNanos(), TimeUnit.NANOSECONDS);
+            try {
+                long result = read.read();
+                if (state.compareAndSet(READING, DONE)) {
+                    return result;
+                }
+            } catch (IOException | RuntimeException e) {
+                if (state.compareAndSet(READING, DONE)) {
+                    throw e;
+                }
+            } finally {
+                timeout.cancel(false);
+            }
+            synchronized (state) {
+                Thread.interrupted();
+            }
+            throw new HttpTimeoutException("No data received from the response body within "
+                    + readTimeout.toMillis() + " ms");
+        }
+    }
+
+    @FunctionalInterface
+    private interface BlockingRead {
+        long read() throws IOException;
+    }
+
+    /**
+     * 替换了响应体的响应，其余内容委托给原响应
+     */
+    private record StreamingResponse(HttpResponse<InputStream> delegate, InputStream body)
+            implements HttpResponse<InputStream> {
+
+        @Override
+        public int statusCode() {
+            return delegate.statusCode();
+        }
+
+        @Override
+        public HttpRequest request() {
+            return delegate.request();
+        }
+
+        @Override
+        public Optional<HttpResponse<InputStream>> previousResponse() {
+            return delegate.previousResponse();
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            return delegate.headers();
+        }
+
+        @Override
+        public Optional<SSLSession> sslSession() {
+            return delegate.sslSession();
+        }
+
+        @Override
+        public URI uri() {
+            return delegate.uri();
+        }
+
+        @Override
+        public HttpClient.Version version() {
+            return delegate.version();
+        }
+    }
+
+    private static class HostCounters {
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong throttled = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private void record(long nanos) {
+            requests.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        private HostStats snapshot(int inFlight) {
+            long count = requests.get();
+            double avgMillis = count == 0 ? 0 : totalNanos.get() / 1_000_000.0 / count;
+            return new HostStats(count, failures.get(), throttled.get(), inFlight, avgMillis,
+                    TimeUnit.NANOSECONDS.toMillis(maxNanos.get()));
+        }
+    }
+
+    /**
+     * 单个主机的请求统计
+     *
+     * @param throttledCount 因并发名额已满而等待的次数
+     * @param inFlight       正在进行的请求数
+     */
+    public record HostStats(long requestCount, long failureCount, long throttledCount, int inFlight,
+                            double avgLatencyMillis, long maxLatencyMillis) {
+    }
+
+    public static class Builder {
+        private Duration connectTimeout = Duration.ofSeconds(10);
+        private Duration requestTimeout = Duration.ofSeconds(30);
+        private Duration readTimeout = Duration.ofSeconds(30);
+        private int maxConcurrentPerHost = 8;
+        private Duration permitTimeout = Duration.ofSeconds(30);
+
+        private Builder() {
+        }
+
+        public Builder connectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        /**
+         * 默认的请求超时时间，从发送请求到收到响应头
+         */
+        public Builder requestTimeout(Duration requestTimeout) {
+            this.requestTimeout = requestTimeout;
+            return this;
+        }
+
+        /**
+         * 流式响应体单次读取等待数据的最长时间，不限制整个响应体的读取时长
+         */
+        public Builder readTimeout(Duration readTimeout) {
+            this.readTimeout = readTimeout;
+            return this;
+        }
+
+        public Builder maxConcurrentPerHost(int maxConcurrentPerHost) {
+            this.maxConcurrentPerHost = maxConcurrentPerHost;
+            return this;
+        }
+
+        /**
+         * 等待主机并发名额的最长时间
+         */
+        public Builder permitTimeout(Duration permitTimeout) {
+            this.permitTimeout = permitTimeout;
+            return this;
+        }
+
+        public OutboundHttpClient build() {
+            if (readTimeout == null || readTimeout.isNegative() || readTimeout.isZero()) {
+                throw new IllegalArgumentException("readTimeout must be greater than 0");
+            }
+            return new OutboundHttpClient(this);
+        }
+    }
+}
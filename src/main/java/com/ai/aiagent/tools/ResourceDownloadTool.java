@@ -1,28 +1,51 @@
 package com.ai.aiagent.tools;
 
-import cn.hutool.core.io.FileUtil;
-import cn.hutool.http.HttpUtil;
 import com.ai.aiagent.constant.FileConstant;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
 
-import java.io.File;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.file.Paths;
 
 public class ResourceDownloadTool {
 
+    private final DownloadEngine downloadEngine;
+
+    /**
+     * 使用共享的默认下载引擎：同一下载目录只能有一个引擎，否则文件锁、并发上限和索引各管各的
+     */
+    public ResourceDownloadTool() {
+        this(DefaultEngineHolder.ENGINE);
+    }
+
+    public ResourceDownloadTool(DownloadEngine downloadEngine) {
+        this.downloadEngine = downloadEngine;
+    }
+
     @Tool(description = "Download a resource from a given URL")
     public String downloadResource(@ToolParam(description = "URL of the resource to download") String url, @ToolParam(description = "Name of the file to save the downloaded resource") String fileName) {
-        String fileDir = FileConstant.FILE_SAVE_DIR + "/download";
-        String filePath = fileDir + "/" + fileName;
         try {
-            // 创建目录
-            FileUtil.mkdir(fileDir);
-            // 使用 Hutool 的 downloadFile 方法下载资源
-            HttpUtil.downloadFile(url, new File(filePath));
-            return "Resource downloaded successfully to: " + filePath;
+            // 流式写入磁盘，同一 URL 已下载过时直接复用
+            DownloadEngine.DownloadResult result = downloadEngine.download(url, fileName);
+            String filePath = result.path().toString();
+            if (result.reused()) {
+                return "Resource already downloaded, reused: " + filePath;
+            }
+            return "Resource downloaded successfully to: " + filePath + " (" + result.size() + " bytes)";
+        } catch (InterruptedException | ClosedByInterruptException e) {
+            // 被取消时保留已下载的部分，下次下载同一文件时续传
+            Thread.currentThread().interrupt();
+            return "Download cancelled";
         } catch (Exception e) {
             return "Error downloading resource: " + e.getMessage();
         }
     }
-}
 
+    /**
+     * 首次使用默认构造方法时才创建默认引擎
+     */
+    private static class DefaultEngineHolder {
+        private static final DownloadEngine ENGINE = new DownloadEngine(OutboundHttpClient.getDefault(),
+                Paths.get(FileConstant.FILE_SAVE_DIR, "download"), 200L * 1024 * 1024, 4);
+    }
+}
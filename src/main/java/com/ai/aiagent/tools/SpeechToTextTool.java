@@ -1,32 +1,72 @@
 package com.ai.aiagent.tools;
 
+import cn.hutool.json.JSONArray;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
-import cn.hutool.http.HttpUtil;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
 import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.*;
 import java.util.Base64;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 /**
  * 语音转文字工具类，基于有道AI开放平台API
+ *
+ * 音频以流的方式边读边做 Base64 和 URL 编码写入请求体，不在内存中保存整个文件或其编码结果；
+ * 较长的 WAV 录音按时长切分，各段并行识别后按顺序拼接。
  */
 @Slf4j
 public class SpeechToTextTool {
 
     private static final String YOUDAO_URL = "https://openapi.youdao.com/asrapi";
+    // 每段音频的时长（秒）
+    private static final int SEGMENT_SECONDS = 50;
+    // 同时识别的段数
+    private static final int MAX_PARALLEL_SEGMENTS = 4;
+
     private final String appKey;
     private final String appSecret;
+    private final OutboundHttpClient httpClient;
+    private final String url;
+    private final int segmentSeconds;
+    private final int maxParallelSegments;
 
     public SpeechToTextTool(String appKey, String appSecret) {
+        this(appKey, appSecret, OutboundHttpClient.getDefault());
+    }
+
+    public SpeechToTextTool(String appKey, String appSecret, OutboundHttpClient httpClient) {
+        this(appKey, appSecret, httpClient, YOUDAO_URL, SEGMENT_SECONDS, MAX_PARALLEL_SEGMENTS);
+    }
+
+    SpeechToTextTool(String appKey, String appSecret, OutboundHttpClient httpClient, String url,
+                     int segmentSeconds, int maxParallelSegments) {
         this.appKey = appKey;
         this.appSecret = appSecret;
+        this.httpClient = httpClient;
+        this.url = url;
+        this.segmentSeconds = segmentSeconds;
+        this.maxParallelSegments = maxParallelSegments;
     }
 
     /**
@@ -40,56 +80,166 @@ public class SpeechToTextTool {
             @ToolParam(description = "Audio file path") String filePath,
             @ToolParam(description = "Source language type") String langType) {
         try {
-            // 读取音频文件并转为Base64编码
-            String q = loadAsBase64(filePath);
-
-            // 生成签名参数
-            Map<String, String> params = new HashMap<>();
-            params.put("appKey", appKey);
-            params.put("q", q);
-            params.put("format", "wav");
-            params.put("rate", "16000");
-            params.put("channel", "1");
-            params.put("type", "1");
-            params.put("langType", langType);
+            return transcribeFile(Paths.get(filePath), langType);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "Error converting speech to text: cancelled";
+        } catch (Exception e) {
+            log.error("语音转文字处理失败：{}", e.getMessage(), e);
+            return "Error converting speech to text: " + e.getMessage();
+        }
+    }
 
-            String salt = UUID.randomUUID().toString();
-            params.put("salt", salt);
+    /**
+     * 将音频文件转换为文字，失败时抛出异常，供代码直接调用；工具方法把异常转换为提示文本交给模型
+     *
+     * @throws IOException 读取音频或识别失败
+     */
+    public String transcribeFile(Path file, String langType) throws IOException, InterruptedException {
+        List<AudioSegments.Segment> segments = AudioSegments.split(file, segmentSeconds);
+        if (segments.size() == 1) {
+            return transcribe(segments.get(0), langType);
+        }
+        log.info("音频分为 {} 段并行识别：{}", segments.size(), file);
+        return transcribeAll(segments, langType);
+    }
 
-            String curtime = String.valueOf(System.currentTimeMillis() / 1000);
-            params.put("curtime", curtime);
+    /**
+     * 各段并行识别，按原顺序拼接结果；任意一段失败或线程被中断时立即取消其余各段，不等待它们结束
+     */
+    private String transcribeAll(List<AudioSegments.Segment> segments, String langType)
+            throws IOException, InterruptedException {
+        Semaphore permits = new Semaphore(maxParallelSegments);
+        List<Future<String>> futures = new ArrayList<>();
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            for (AudioSegments.Segment segment : segments) {
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return transcribe(segment, langType);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    text.append(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw new IOException("segment " + (i + 1) + ": " + cause.getMessage(), cause);
+                }
+            }
+            return text.toString();
+        } finally {
+            // 正常结束时各段都已完成；失败或中断时中断仍在识别的段
+            executor.shutdownNow();
+        }
+    }
 
-            String signStr = appKey + truncate(q) + salt + curtime + appSecret;
-            String sign = getDigest(signStr);
-            params.put("sign", sign);
-            params.put("signType", "v2");
+    /**
+     * 识别一段音频，返回识别出的文本
+     */
+    private String transcribe(AudioSegments.Segment segment, String langType)
+            throws IOException, InterruptedException {
+        String salt = UUID.randomUUID().toString();
+        String curtime = String.valueOf(System.currentTimeMillis() / 1000);
+        String sign = getDigest(appKey + truncatedBase64(segment) + salt + curtime + appSecret);
 
-            // 发送HTTP请求
-            return doRequest(YOUDAO_URL, params);
+        // 除音频外的参数，音频参数 q 放在最后流式写入
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("appKey", appKey);
+        params.put("format", "wav");
+        params.put("rate", String.valueOf(segment.sampleRate()));
+        params.put("channel", String.valueOf(segment.channels()));
+        params.put("type", "1");
+        params.put("langType", langType);
+        params.put("salt", salt);
+        params.put("curtime", curtime);
+        params.put("sign", sign);
+        params.put("signType", "v2");
+        StringBuilder form = new StringBuilder();
+        for (Map.Entry<String, String> entry : params.entrySet()) {
+            form.append(entry.getKey()).append('=')
+                    .append(URLEncoder.encode(entry.getValue(), StandardCharsets.UTF_8)).append('&');
+        }
+        form.append("q=");
+        byte[] prefix = form.toString().getBytes(StandardCharsets.UTF_8);
 
-        } catch (Exception e) {
-            log.error("语音转文字处理失败：{}", e.getMessage(), e);
-            return "Error converting speech to text: " + e.getMessage();
+        // 先数出编码后的长度，请求体以固定长度发送
+        long contentLength;
+        try (InputStream body = formBody(prefix, segment)) {
+            contentLength = body.transferTo(OutputStream.nullOutputStream());
         }
+        HttpRequest request = httpClient.newRequest(url)
+                .header("Content-Type", "application/x-www-form-urlencoded;charset=UTF-8")
+                .timeout(Duration.ofSeconds(60))
+                .POST(HttpRequest.BodyPublishers.fromPublisher(HttpRequest.BodyPublishers.ofInputStream(() -> {
+                    try {
+                        return formBody(prefix, segment);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }), contentLength))
+                .build();
+        HttpResponse<String> response = httpClient.sendForString(request);
+        return parseResult(response.body());
+    }
+
+    private static InputStream formBody(byte[] prefix, AudioSegments.Segment segment) throws IOException {
+        return new SequenceInputStream(new ByteArrayInputStream(prefix),
+                new UrlEncodedBase64InputStream(segment.open(0)));
     }
 
     /**
-     * 加载音频文件为Base64编码字符串
+     * 解析识别结果，errorCode 不为 0 时视为失败
      */
-    private String loadAsBase64(String filename) throws IOException {
-        byte[] data = Files.readAllBytes(Paths.get(filename));
-        return Base64.getEncoder().encodeToString(data);
+    private static String parseResult(String body) throws IOException {
+        if (body == null || body.isBlank()) {
+            throw new IOException("empty response");
+        }
+        JSONObject json = JSONUtil.parseObj(body);
+        String errorCode = json.getStr("errorCode");
+        if (!"0".equals(errorCode)) {
+            throw new IOException("errorCode " + errorCode);
+        }
+        JSONArray result = json.getJSONArray("result");
+        if (result == null) {
+            return "";
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < result.size(); i++) {
+            text.append(result.getStr(i));
+        }
+        return text.toString();
     }
 
     /**
-     * 截断处理方法
+     * 签名使用的截断后的 Base64 字符串：前 10 个字符 + 长度 + 后 10 个字符，只读取音频的开头和结尾
      */
-    private String truncate(String q) {
-        if (q == null) {
-            return null;
+    static String truncatedBase64(AudioSegments.Segment segment) throws IOException {
+        long size = segment.size();
+        long encodedLength = (size + 2) / 3 * 4;
+        Base64.Encoder encoder = Base64.getEncoder();
+        if (encodedLength <= 20) {
+            try (InputStream in = segment.open(0)) {
+                return encoder.encodeToString(in.readAllBytes());
+            }
+        }
+        String head;
+        try (InputStream in = segment.open(0)) {
+            head = encoder.encodeToString(in.readNBytes(12)).substring(0, 10);
+        }
+        // 从 3 字节对齐的位置开始编码，得到的是完整编码结果的后缀
+        long tailStart = (size - 12) / 3 * 3;
+        String tail;
+        try (InputStream in = segment.open(tailStart)) {
+            String encoded = encoder.encodeToString(in.readAllBytes());
+            tail = encoded.substring(encoded.length() - 10);
         }
-        int len = q.length();
-        return len <= 20 ? q : (q.substring(0, 10) + len + q.substring(len - 10, len));
+        return head + encodedLength + tail;
     }
 
     /**
@@ -119,27 +269,90 @@ public class SpeechToTextTool {
     }
 
     /**
-     * 执行HTTP POST请求
+     * 边读边做 Base64 编码，并对 + / = 做 URL 编码
      */
-    private String doRequest(String url, Map<String, String> requestParams) {
-        try {
-            // 将Map参数转换为查询字符串形式
-            List<String> paramList = new ArrayList<>();
-            for (Map.Entry<String, String> entry : requestParams.entrySet()) {
-                paramList.add(entry.getKey() + "=" + URLEncoder.encode(entry.getValue(), "UTF-8"));
+    static class UrlEncodedBase64InputStream extends InputStream {
+        private static final int BLOCK = 3 * 4096;
+
+        private final InputStream source;
+        private final Base64.Encoder encoder = Base64.getEncoder();
+        private final byte[] raw = new byte[BLOCK];
+        private byte[] encoded = new byte[0];
+        private int encodedLength = 0;
+        private int position = 0;
+        private boolean eof = false;
+
+        UrlEncodedBase64InputStream(InputStream source) {
+            this.source = source;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
             }
-            String formData = String.join("&", paramList);
-
-            // 使用Hutool构建POST请求
-            String result = HttpUtil.createPost(url)
-                    .header("Content-Type", "application/x-www-form-urlencoded;charset=UTF-8")
-                    .body(formData)
-                    .timeout(10000)
-                    .execute().body();
-            return result != null ? result : "";
-        } catch (Exception e) {
-            log.error("网络请求失败：{}", e.getMessage(), e);
-            return "网络请求失败：" + e.getMessage();
+            return encoded[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, encodedLength - position);
+            System.arraycopy(encoded, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        /**
+         * 缓冲区读完后编码下一块；除最后一块外每块都是 3 的整数倍字节，不会在中间产生填充
+         */
+        private boolean fill() throws IOException {
+            if (position < encodedLength) {
+                return true;
+            }
+            if (eof) {
+                return false;
+            }
+            int length = source.readNBytes(raw, 0, BLOCK);
+            if (length < BLOCK) {
+                eof = true;
+            }
+            if (length == 0) {
+                return false;
+            }
+            byte[] base64 = encoder.encode(length == BLOCK ? raw : Arrays.copyOf(raw, length));
+            if (encoded.length < base64.length * 3) {
+                encoded = new byte[base64.length * 3];
+            }
+            int n = 0;
+            for (byte c : base64) {
+                switch (c) {
+                    case '+' -> n = escape(n, 'B');
+                    case '/' -> n = escape(n, 'F');
+                    case '=' -> n = escape(n, 'D');
+                    default -> encoded[n++] = c;
+                }
+            }
+            encodedLength = n;
+            position = 0;
+            return true;
+        }
+
+        private int escape(int n, char low) {
+            encoded[n] = '%';
+            encoded[n + 1] = (byte) (low == 'D' ? '3' : '2');
+            encoded[n + 2] = (byte) low;
+            return n + 3;
+        }
+
+        @Override
+        public void close() throws IOException {
+            source.close();
         }
     }
-}
\ No newline at end of file
+}
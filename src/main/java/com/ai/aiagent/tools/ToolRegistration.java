@@ -1,14 +1,22 @@
 package com.ai.aiagent.tools;
 
+import com.ai.aiagent.constant.FileConstant;
 import org.springframework.ai.tool.ToolCallback;
 import org.springframework.ai.support.ToolCallbacks;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Paths;
+import java.time.Duration;
 
 @Configuration
 public class ToolRegistration {
 
+    // image-search-mcp-server 的 searchImage 出错时不抛异常，而是返回以此开头的文本
+    private static final String IMAGE_SEARCH_ERROR_PREFIX = "Error search image:";
+
     @Value("${search-api.api-key}")
     private String searchApiKey;
     @Value("${youdao.appKey}")
@@ -16,17 +24,71 @@ public class ToolRegistration {
 
     @Value("${youdao.appSecret}")
     private String appSecret;
+
+    /**
+     * 所有工具共用的出站 HTTP 客户端
+     */
+    @Bean(destroyMethod = "close")
+    public OutboundHttpClient outboundHttpClient(@Value("${outbound-http.connect-timeout:10s}") Duration connectTimeout,
+                                                 @Value("${outbound-http.request-timeout:30s}") Duration requestTimeout,
+                                                 @Value("${outbound-http.read-timeout:30s}") Duration readTimeout,
+                                                 @Value("${outbound-http.max-concurrent-per-host:8}") int maxConcurrentPerHost) {
+        return OutboundHttpClient.builder()
+                .connectTimeout(connectTimeout)
+                .requestTimeout(requestTimeout)
+                .readTimeout(readTimeout)
+                .maxConcurrentPerHost(maxConcurrentPerHost)
+                .build();
+    }
+
+    /**
+     * 资源下载引擎，流式写入磁盘，支持续传和按 URL 去重
+     */
+    @Bean
+    public DownloadEngine downloadEngine(OutboundHttpClient outboundHttpClient,
+                                         @Value("${download.max-size:200MB}") DataSize maxSize,
+                                         @Value("${download.max-concurrent:4}") int maxConcurrent) {
+        return new DownloadEngine(outboundHttpClient, Paths.get(FileConstant.FILE_SAVE_DIR, "download"),
+                maxSize.toBytes(), maxConcurrent);
+    }
+
+    /**
+     * 幂等工具的结果缓存，搜索结果变化较快，网页和图片相对稳定
+     */
+    @Bean
+    public ToolResultCache toolResultCache(@Value("${tool-cache.max-entries:1000}") int maxEntries,
+                                           @Value("${tool-cache.search-ttl:30m}") Duration searchTtl,
+                                           @Value("${tool-cache.scrape-ttl:10m}") Duration scrapeTtl,
+                                           @Value("${tool-cache.image-ttl:1h}") Duration imageTtl) {
+        return ToolResultCache.builder()
+                .maxEntries(maxEntries)
+                .ttl("searchWeb", searchTtl, WebSearchTool::isCacheableResult)
+                .ttl("webSearch", searchTtl, ZhipuWebSearchTool::isCacheableResult)
+                .ttl("scrapeWebPage", scrapeTtl, WebScrapingTool::isCacheableResult)
+                .ttl("searchImage", imageTtl, ToolRegistration::isCacheableImageResult)
+                .build();
+    }
+
+    /**
+     * 图片搜索结果是否可以缓存，MCP 服务返回的出错提示不缓存
+     */
+    static boolean isCacheableImageResult(String result) {
+        String text = ToolResultCache.mcpText(result);
+        return !text.isBlank() && !text.startsWith(IMAGE_SEARCH_ERROR_PREFIX);
+    }
+
     @Bean
-    public ToolCallback[] allTools() {
+    public ToolCallback[] allTools(ToolResultCache toolResultCache, OutboundHttpClient outboundHttpClient,
+                                   DownloadEngine downloadEngine) {
         FileOperationTool fileOperationTool = new FileOperationTool();
-        WebSearchTool webSearchTool = new WebSearchTool(searchApiKey);
-        WebScrapingTool webScrapingTool = new WebScrapingTool();
-        ResourceDownloadTool resourceDownloadTool = new ResourceDownloadTool();
+        WebSearchTool webSearchTool = new WebSearchTool(searchApiKey, outboundHttpClient);
+        WebScrapingTool webScrapingTool = new WebScrapingTool(outboundHttpClient);
+        ResourceDownloadTool resourceDownloadTool = new ResourceDownloadTool(downloadEngine);
         TerminalOperationTool terminalOperationTool = new TerminalOperationTool();
         PDFGenerationTool pdfGenerationTool = new PDFGenerationTool();
         TerminateTool terminateTool = new TerminateTool();
-        SpeechToTextTool speechToTextTool = new SpeechToTextTool(appKey,appSecret);
-        return ToolCallbacks.from(
+        SpeechToTextTool speechToTextTool = new SpeechToTextTool(appKey, appSecret, outboundHttpClient);
+        return toolResultCache.wrap(ToolCallbacks.from(
                 fileOperationTool,
                 webSearchTool,
                 webScrapingTool,
@@ -35,7 +97,7 @@ public class ToolRegistration {
                 pdfGenerationTool,
                 terminateTool,
                 speechToTextTool
-        );
+        ));
     }
 }
 
@@ -0,0 +1,430 @@
+package com.ai.aiagent.tools;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * 幂等工具的结果缓存
+ *
+ * 以工具名 + 规范化后的参数（JSON 按键排序、字符串去除首尾空白）为键缓存工具结果，
+ * 同一智能体的多个步骤之间、不同用户之间重复的搜索和抓取不再重复调用付费的外部接口。
+ * 每个工具有独立的过期时间，总条目数和总字符数超限时按 LRU 淘汰；相同参数的并发调用只执行一次，
+ * 执行结果不可缓存时（例如出错），等待的调用各自重新执行。
+ * 结果是否可缓存由工具注册时提供的判断决定，未提供时缓存所有非空结果。
+ * MCP 工具的结果是内容列表的 JSON，判断前可用 mcpText 取出其中的文本。
+ * 只有配置了过期时间的工具会被包装，其他工具原样返回。
+ */
+public class ToolResultCache {
+
+    private static final ObjectMapper OBJECT_MAPPER = JsonMapper.builder()
+            .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+            .build();
+
+    private final Map<String, CachePolicy> policies;
+    private final int maxEntries;
+    private final long maxChars;
+
+    // 按访问顺序排列，队首为最久未访问的结果
+    private final LinkedHashMap<String, CacheEntry> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalChars = 0;
+    // 正在执行的调用，相同参数的并发调用等待同一个结果
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    private final Map<String, ToolCounters> counters = new ConcurrentHashMap<>();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong expirationCount = new AtomicLong();
+
+    private ToolResultCache(Builder builder) {
+        this.policies = builder.policies;
+        this.maxEntries = builder.maxEntries;
+        this.maxChars = builder.maxChars;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 为配置了过期时间的工具包装缓存，其余工具原样返回
+     */
+    public ToolCallback[] wrap(ToolCallback... toolCallbacks) {
+        ToolCallback[] wrapped = new ToolCallback[toolCallbacks.length];
+        for (int i = 0; i < toolCallbacks.length; i++) {
+            ToolCallback callback = toolCallbacks[i];
+            CachePolicy policy = policyOf(callback.getToolDefinition().name());
+            wrapped[i] = policy == null ? callback : new CachingToolCallback(callback, policy);
+        }
+        return wrapped;
+    }
+
+    /**
+     * 获取缓存统计信息
+     */
+    public CacheStats getStats() {
+        Map<String, ToolStats> tools = new TreeMap<>();
+        counters.forEach((name, counter) -> tools.put(name, counter.snapshot()));
+        synchronized (cache) {
+            return new CacheStats(cache.size(), totalChars, evictionCount.get(), expirationCount.get(), tools);
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+            totalChars = 0;
+        }
+    }
+
+    /**
+     * MCP 客户端的工具名带有服务名前缀，按后缀匹配
+     */
+    private CachePolicy policyOf(String toolName) {
+        CachePolicy policy = policies.get(toolName);
+        if (policy != null) {
+            return policy;
+        }
+        for (Map.Entry<String, CachePolicy> entry : policies.entrySet()) {
+            if (toolName.endsWith("_" + entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private String call(ToolCallback delegate, CachePolicy policy, String toolInput, ToolContext toolContext) {
+        String toolName = delegate.getToolDefinition().name();
+        ToolCounters counter = counters.computeIfAbsent(toolName, name -> new ToolCounters());
+        String key = toolName + '\u0000' + normalize(toolInput);
+        while (true) {
+            String cached = getIfPresent(key);
+            if (cached != null) {
+                counter.hits.incrementAndGet();
+                return cached;
+            }
+            CompletableFuture<String> future = new CompletableFuture<>();
+            CompletableFuture<String> running = inFlight.putIfAbsent(key, future);
+            if (running == null) {
+                counter.misses.incrementAndGet();
+                return execute(delegate, policy, key, future, toolInput, toolContext);
+            }
+            // 相同参数的调用正在执行，等待其结果；结果不可缓存时不共享，重新执行
+            String shared = await(running);
+            if (shared != null) {
+                counter.coalesced.incrementAndGet();
+                return shared;
+            }
+        }
+    }
+
+    /**
+     * 执行工具调用，可缓存的结果写入缓存并交给等待的调用；不可缓存时等待的调用得到 null
+     */
+    private String execute(ToolCallback delegate, CachePolicy policy, String key, CompletableFuture<String> future,
+                           String toolInput, ToolContext toolContext) {
+        String result = null;
+        try {
+            result = toolContext == null ? delegate.call(toolInput) : delegate.call(toolInput, toolContext);
+            if (result != null && policy.cacheable().test(toolText(result))) {
+                put(key, result, policy.ttl());
+                future.complete(result);
+            }
+            return result;
+        } finally {
+            future.complete(null);
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * 等待进行中的调用，线程被中断时放弃等待，与工具自身被取消时一样抛出异常
+     */
+    private static String await(CompletableFuture<String> running) {
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Tool call cancelled", e);
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    private String getIfPresent(String key) {
+        synchronized (cache) {
+            CacheEntry entry = cache.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expireAt < System.currentTimeMillis()) {
+                cache.remove(key);
+                totalChars -= entry.value.length();
+                expirationCount.incrementAndGet();
+                return null;
+            }
+            return entry.value;
+        }
+    }
+
+    private void put(String key, String value, Duration ttl) {
+        synchronized (cache) {
+            CacheEntry previous = cache.put(key, new CacheEntry(value, System.currentTimeMillis() + ttl.toMillis()));
+            if (previous != null) {
+                totalChars -= previous.value.length();
+            }
+            totalChars += value.length();
+            evictIfNecessary();
+        }
+    }
+
+    /**
+     * 超限时先清理过期的结果，再按 LRU 淘汰直到满足条目数和字符数限制
+     */
+    private void evictIfNecessary() {
+        if (cache.size() <= maxEntries && totalChars <= maxChars) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Iterator<CacheEntry> iterator = cache.values().iterator();
+        while (iterator.hasNext()) {
+            CacheEntry entry = iterator.next();
+            if (entry.expireAt < now) {
+                iterator.remove();
+                totalChars -= entry.value.length();
+                expirationCount.incrementAndGet();
+            }
+        }
+        iterator = cache.values().iterator();
+        while (!cache.isEmpty() && (cache.size() > maxEntries || totalChars > maxChars)) {
+            CacheEntry eldest = iterator.next();
+            iterator.remove();
+            totalChars -= eldest.value.length();
+            evictionCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * 参数规范化：JSON 对象按键排序，字符串去除首尾空白；无法解析时只去除首尾空白
+     */
+    static String normalize(String toolInput) {
+        if (toolInput == null) {
+            return "";
+        }
+        try {
+            JsonNode node = OBJECT_MAPPER.readTree(toolInput);
+            if (node == null) {
+                return toolInput.trim();
+            }
+            return OBJECT_MAPPER.writeValueAsString(OBJECT_MAPPER.treeToValue(trimStrings(node), Object.class));
+        } catch (Exception e) {
+            return toolInput.trim();
+        }
+    }
+
+    private static JsonNode trimStrings(JsonNode node) {
+        if (node.isTextual()) {
+            return TextNode.valueOf(node.asText().trim());
+        }
+        if (node.isObject()) {
+            ObjectNode object = (ObjectNode) node;
+            List<String> fieldNames = new ArrayList<>();
+            object.fieldNames().forEachRemaining(fieldNames::add);
+            for (String fieldName : fieldNames) {
+                object.set(fieldName, trimStrings(object.get(fieldName)));
+            }
+        } else if (node.isArray()) {
+            for (int i = 0; i < node.size(); i++) {
+                ((ArrayNode) node).set(i, trimStrings(node.get(i)));
+            }
+        }
+        return node;
+    }
+
+    /**
+     * 方法工具的字符串结果会被序列化为 JSON 字符串，还原为工具返回的原文再交给判断
+     */
+    private static String toolText(String result) {
+        if (result.startsWith("\"")) {
+            try {
+                return OBJECT_MAPPER.readValue(result, String.class);
+            } catch (Exception e) {
+                return result;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 取出 MCP 工具结果（[{"type":"text","text":"..."}]）中的文本，多段文本按行拼接；不是这种格式时原样返回
+     */
+    public static String mcpText(String result) {
+        JsonNode contents;
+        try {
+            contents = OBJECT_MAPPER.readTree(result);
+        } catch (Exception e) {
+            return result;
+        }
+        if (contents == null || !contents.isArray()) {
+            return result;
+        }
+        List<String> texts = new ArrayList<>();
+        for (JsonNode content : contents) {
+            if ("text".equals(content.path("type").asText()) && content.hasNonNull("text")) {
+                // 服务端的方法工具把字符串结果序列化为 JSON 字符串
+                texts.add(toolText(content.get("text").asText()));
+            }
+        }
+        return String.join("\n", texts);
+    }
+
+    /**
+     * 带缓存的工具，定义和元数据与原工具一致
+     */
+    private class CachingToolCallback implements ToolCallback {
+
+        private final ToolCallback delegate;
+        private final CachePolicy policy;
+
+        private CachingToolCallback(ToolCallback delegate, CachePolicy policy) {
+            this.delegate = delegate;
+            this.policy = policy;
+        }
+
+        @Override
+        public ToolDefinition getToolDefinition() {
+            return delegate.getToolDefinition();
+        }
+
+        @Override
+        public ToolMetadata getToolMetadata() {
+            return delegate.getToolMetadata();
+        }
+
+        @Override
+        public String call(String toolInput) {
+            return ToolResultCache.this.call(delegate, policy, toolInput, null);
+        }
+
+        @Override
+        public String call(String toolInput, ToolContext toolContext) {
+            return ToolResultCache.this.call(delegate, policy, toolInput, toolContext);
+        }
+    }
+
+    /**
+     * @param cacheable 判断工具返回的原文是否可以缓存
+     */
+    private record CachePolicy(Duration ttl, Predicate<String> cacheable) {
+    }
+
+    private static class CacheEntry {
+        private final String value;
+        private final long expireAt;
+
+        private CacheEntry(String value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+
+    private static class ToolCounters {
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong coalesced = new AtomicLong();
+
+        private ToolStats snapshot() {
+            return new ToolStats(hits.get(), misses.get(), coalesced.get());
+        }
+    }
+
+    /**
+     * 缓存统计信息
+     *
+     * @param totalChars 缓存结果的总字符数
+     * @param tools      各工具的命中情况
+     */
+    public record CacheStats(int entryCount, long totalChars, long evictionCount, long expirationCount,
+                             Map<String, ToolStats> tools) {
+    }
+
+    /**
+     * 单个工具的命中情况
+     *
+     * @param coalescedCount 与相同参数的进行中调用合并的次数
+     */
+    public record ToolStats(long hitCount, long missCount, long coalescedCount) {
+
+        public double hitRate() {
+            long total = hitCount + missCount + coalescedCount;
+            return total == 0 ? 0 : (double) (hitCount + coalescedCount) / total;
+        }
+    }
+
+    public static class Builder {
+        private final Map<String, CachePolicy> policies = new HashMap<>();
+        private int maxEntries = 1000;
+        private long maxChars = 16L * 1024 * 1024;
+
+        private Builder() {
+        }
+
+        /**
+         * 为指定工具开启缓存并设置过期时间，缓存所有非空结果
+         */
+        public Builder ttl(String toolName, Duration ttl) {
+            return ttl(toolName, ttl, result -> !result.isBlank());
+        }
+
+        /**
+         * 为指定工具开启缓存并设置过期时间
+         *
+         * @param cacheable 由工具提供，判断其返回的原文是否可以缓存，通常排除错误信息
+         */
+        public Builder ttl(String toolName, Duration ttl, Predicate<String> cacheable) {
+            this.policies.put(toolName, new CachePolicy(ttl, cacheable));
+            return this;
+        }
+
+        public Builder maxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * 缓存结果的总字符数上限
+         */
+        public Builder maxChars(long maxChars) {
+            this.maxChars = maxChars;
+            return this;
+        }
+
+        public ToolResultCache build() {
+            return new ToolResultCache(this);
+        }
+    }
+}
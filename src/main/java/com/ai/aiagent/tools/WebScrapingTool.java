@@ -2,20 +2,201 @@ package com.ai.aiagent.tools;
 
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
 
+/**
+ * 网页抓取工具
+ *
+ * 响应体以流的方式读取，超过字节上限后停止下载并只解析已读取的部分，不会把整个页面缓冲在堆内存中；
+ * 解析后去掉脚本、样式、导航等元素，优先提取 article / main 中的正文，结果按 Token 上限截断后返回给模型。
+ */
 public class WebScrapingTool {
 
+    private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 "
+            + "(KHTML, like Gecko) Chrome/124.0 Safari/537.36";
+
+    // 与正文无关的元素
+    private static final String NOISE_SELECTOR = "script, style, noscript, template, svg, canvas, iframe, form, "
+            + "nav, header, footer, aside, [role=navigation], [role=banner], [role=contentinfo], [aria-hidden=true]";
+    private static final String MAIN_SELECTOR = "article, main, [role=main]";
+    private static final String BLOCK_SELECTOR = "h1, h2, h3, h4, h5, h6, p, li, pre, blockquote, td, th, dt, dd";
+    private static final String ERROR_PREFIX = "Error scraping web page: ";
+
+    private final OutboundHttpClient httpClient;
+    private final int maxBytes;
+    private final int maxTokens;
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+
+    public WebScrapingTool() {
+        this(OutboundHttpClient.getDefault());
+    }
+
+    public WebScrapingTool(OutboundHttpClient httpClient) {
+        this(httpClient, 2 * 1024 * 1024, 3000);
+    }
+
+    /**
+     * @param maxBytes  最多下载的字节数
+     * @param maxTokens 返回结果的 Token 上限
+     */
+    public WebScrapingTool(OutboundHttpClient httpClient, int maxBytes, int maxTokens) {
+        this.httpClient = httpClient;
+        this.maxBytes = maxBytes;
+        this.maxTokens = maxTokens;
+    }
+
     @Tool(description = "Scrape the content of a web page")
     public String scrapeWebPage(@ToolParam(description = "URL of the web page to scrape") String url) {
         try {
-            Document doc = Jsoup.connect(url).get();
-            return doc.html();
-        } catch (IOException e) {
-            return "Error scraping web page: " + e.getMessage();
+            HttpRequest request = httpClient.newRequest(url)
+                    .header("User-Agent", USER_AGENT)
+                    .GET()
+                    .build();
+            HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            try (InputStream body = response.body()) {
+                if (response.statusCode() / 100 != 2) {
+                    return ERROR_PREFIX + "HTTP " + response.statusCode();
+                }
+                String contentType = response.headers().firstValue("Content-Type").orElse("text/html")
+                        .toLowerCase(Locale.ROOT);
+                if (!contentType.contains("html") && !contentType.contains("xml") && !contentType.startsWith("text/")) {
+                    return ERROR_PREFIX + "unsupported content type " + contentType;
+                }
+                BoundedBody bounded = readBounded(body, maxBytes);
+                String text;
+                String title = "";
+                if (contentType.startsWith("text/plain")) {
+                    text = new String(bounded.bytes, 0, bounded.length, charsetOf(contentType, "UTF-8"));
+                } else {
+                    // 未声明编码时由 Jsoup 根据 meta 标签识别
+                    Document doc = Jsoup.parse(new ByteArrayInputStream(bounded.bytes, 0, bounded.length),
+                            charsetOf(contentType, null), url);
+                    title = doc.title();
+                    text = extractText(doc);
+                }
+                return format(url, title, text, bounded.truncated);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ERROR_PREFIX + "cancelled";
+        } catch (IOException | IllegalArgumentException e) {
+            return ERROR_PREFIX + e.getMessage();
+        }
+    }
+
+    /**
+     * 抓取结果是否可以缓存，出错时返回的提示不缓存
+     */
+    public static boolean isCacheableResult(String result) {
+        return !result.isBlank() && !result.startsWith(ERROR_PREFIX);
+    }
+
+    /**
+     * 提取页面正文，段落之间换行
+     */
+    static String extractText(Document doc) {
+        doc.select(NOISE_SELECTOR).remove();
+        Element root = doc.selectFirst(MAIN_SELECTOR);
+        if (root == null) {
+            root = doc.body();
+        }
+        if (root == null) {
+            return "";
+        }
+        // 嵌套的段落（如 li 中的 p）只保留一次
+        Set<String> blocks = new LinkedHashSet<>();
+        int blockChars = 0;
+        for (Element block : root.select(BLOCK_SELECTOR)) {
+            if (block.parents().stream().anyMatch(parent -> parent != block && parent.is(BLOCK_SELECTOR))) {
+                continue;
+            }
+            String text = block.text().trim();
+            if (!text.isEmpty() && blocks.add(text)) {
+                blockChars += text.length();
+            }
+        }
+        // 段落中的文本不到一半，说明页面没有使用段落标签，改为提取整体文本
+        String allText = root.text();
+        if (blockChars * 2 < allText.length()) {
+            return allText;
         }
+        return String.join("\n", blocks);
+    }
+
+    private String format(String url, String title, String text, boolean bodyTruncated) {
+        StringBuilder header = new StringBuilder();
+        header.append("URL: ").append(url).append('\n');
+        if (title != null && !title.isBlank()) {
+            header.append("Title: ").append(title.trim()).append('\n');
+        }
+        if (bodyTruncated) {
+            header.append("(Page larger than ").append(maxBytes / 1024).append(" KB, only the beginning was read)\n");
+        }
+        header.append('\n');
+        return header + truncateToTokens(text);
+    }
+
+    /**
+     * 按比例缩短文本直到不超过 Token 上限
+     */
+    private String truncateToTokens(String text) {
+        int tokens = tokenCountEstimator.estimate(text);
+        if (tokens <= maxTokens) {
+            return text;
+        }
+        String truncated = text;
+        while (tokens > maxTokens && !truncated.isEmpty()) {
+            int length = (int) (truncated.length() * (maxTokens / (double) tokens) * 0.95);
+            truncated = truncated.substring(0, Math.max(0, length));
+            tokens = tokenCountEstimator.estimate(truncated);
+        }
+        return truncated + "\n...(content truncated to about " + maxTokens + " tokens)";
+    }
+
+    /**
+     * 最多读取 limit 个字节，超出部分不再下载
+     */
+    private static BoundedBody readBounded(InputStream in, int limit) throws IOException {
+        byte[] buffer = new byte[Math.min(limit, 64 * 1024)];
+        int length = 0;
+        while (length < limit) {
+            if (length == buffer.length) {
+                byte[] larger = new byte[Math.min(limit, buffer.length * 2)];
+                System.arraycopy(buffer, 0, larger, 0, length);
+                buffer = larger;
+            }
+            int read = in.read(buffer, length, buffer.length - length);
+            if (read < 0) {
+                return new BoundedBody(buffer, length, false);
+            }
+            length += read;
+        }
+        // 读满上限后再探测一个字节，判断页面是否被截断
+        return new BoundedBody(buffer, length, in.read() >= 0);
+    }
+
+    private static String charsetOf(String contentType, String defaultCharset) {
+        int index = contentType.indexOf("charset=");
+        if (index < 0) {
+            return defaultCharset;
+        }
+        String charset = contentType.substring(index + "charset=".length()).split("[;\\s]")[0];
+        return charset.replace("\"", "").toUpperCase(Locale.ROOT);
+    }
+
+    private record BoundedBody(byte[] bytes, int length, boolean truncated) {
     }
 }
@@ -1,13 +1,15 @@
 package com.ai.aiagent.tools;
 
-import cn.hutool.http.HttpUtil;
 import cn.hutool.json.JSONArray;
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
 
-import java.util.HashMap;
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -16,22 +18,34 @@ public class WebSearchTool {
 
     // SearchAPI 的搜索接口地址
     private static final String SEARCH_API_URL = "https://www.searchapi.io/api/v1/search";
+    private static final String ERROR_PREFIX = "Error searching Baidu: ";
+    private static final String CANCELLED = "Search cancelled";
 
     private final String apiKey;
+    private final OutboundHttpClient httpClient;
 
     public WebSearchTool(String apiKey) {
+        this(apiKey, OutboundHttpClient.getDefault());
+    }
+
+    public WebSearchTool(String apiKey, OutboundHttpClient httpClient) {
         this.apiKey = apiKey;
+        this.httpClient = httpClient;
     }
 
     @Tool(description = "Search for information from Baidu Search Engine")
     public String searchWeb(
             @ToolParam(description = "Search query keyword") String query) {
-        Map<String, Object> paramMap = new HashMap<>();
+        Map<String, Object> paramMap = new LinkedHashMap<>();
         paramMap.put("q", query);
         paramMap.put("api_key", apiKey);
         paramMap.put("engine", "baidu");
         try {
-            String response = HttpUtil.get(SEARCH_API_URL, paramMap);
+            // 请求可以被线程中断取消，智能体运行取消时搜索随之中止
+            HttpRequest request = httpClient.newRequest(SEARCH_API_URL + "?" + toQueryString(paramMap))
+                    .GET()
+                    .build();
+            String response = httpClient.sendForString(request).body();
             // 取出返回结果的前 5 条
             JSONObject jsonObject = JSONUtil.parseObj(response);
             // 提取 organic_results 部分
@@ -43,9 +57,25 @@ public class WebSearchTool {
                 return tmpJSONObject.toString();
             }).collect(Collectors.joining(","));
             return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CANCELLED;
         } catch (Exception e) {
-            return "Error searching Baidu: " + e.getMessage();
+            return ERROR_PREFIX + e.getMessage();
         }
     }
-}
 
+    /**
+     * 搜索结果是否可以缓存，出错和取消时返回的提示不缓存
+     */
+    public static boolean isCacheableResult(String result) {
+        return !result.isBlank() && !result.startsWith(ERROR_PREFIX) && !result.equals(CANCELLED);
+    }
+
+    private static String toQueryString(Map<String, Object> paramMap) {
+        return paramMap.entrySet().stream()
+                .map(entry -> URLEncoder.encode(entry.getKey(), StandardCharsets.UTF_8) + "="
+                        + URLEncoder.encode(String.valueOf(entry.getValue()), StandardCharsets.UTF_8))
+                .collect(Collectors.joining("&"));
+    }
+}
@@ -10,13 +10,10 @@ import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
-import org.springframework.web.client.RestClientException;
-import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.util.List;
 import java.util.UUID;
 
@@ -28,12 +25,19 @@ import java.util.UUID;
 public class ZhipuWebSearchTool {
 
     private static final String API_URL = "https://open.bigmodel.cn/api/paas/v4/web_search";
-    private final RestTemplate restTemplate;
+    // 出错时返回的提示的前缀
+    private static final List<String> ERROR_PREFIXES = List.of("搜索请求失败", "JSON处理异常", "搜索API调用失败",
+            "执行搜索时发生错误");
+    private final OutboundHttpClient httpClient;
     private final ObjectMapper objectMapper;
     private final String apiKey;
 
     public ZhipuWebSearchTool(ObjectMapper objectMapper, String apiKey) {
-        this.restTemplate = new RestTemplate();
+        this(objectMapper, apiKey, OutboundHttpClient.getDefault());
+    }
+
+    public ZhipuWebSearchTool(ObjectMapper objectMapper, String apiKey, OutboundHttpClient httpClient) {
+        this.httpClient = httpClient;
         this.objectMapper = objectMapper;
         this.apiKey = apiKey;
     }
@@ -56,11 +60,6 @@ public class ZhipuWebSearchTool {
         String userId = null;
 
         try {
-            // 构建请求头
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.set("Authorization", "Bearer " + apiKey);
-
             // 构建请求体
             WebSearchRequest request = WebSearchRequest.builder()
                     .searchEngine(searchEngine)
@@ -70,32 +69,46 @@ public class ZhipuWebSearchTool {
                     .build();
 
             String requestBody = objectMapper.writeValueAsString(request);
-            HttpEntity<String> entity = new HttpEntity<>(requestBody, headers);
 
             // 发送请求
-            ResponseEntity<String> response = restTemplate.postForEntity(API_URL, entity, String.class);
+            HttpRequest httpRequest = httpClient.newRequest(API_URL)
+                    .header("Content-Type", "application/json")
+                    .header("Authorization", "Bearer " + apiKey)
+                    .POST(HttpRequest.BodyPublishers.ofString(requestBody))
+                    .build();
+            HttpResponse<String> response = httpClient.sendForString(httpRequest);
 
             // 解析响应
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                log.debug("智谱AI Web Search API响应: {}", response.getBody());
-                WebSearchResponse webSearchResponse = objectMapper.readValue(response.getBody(), WebSearchResponse.class);
+            if (response.statusCode() / 100 == 2 && response.body() != null) {
+                log.debug("智谱AI Web Search API响应: {}", response.body());
+                WebSearchResponse webSearchResponse = objectMapper.readValue(response.body(), WebSearchResponse.class);
                 return formatSearchResults(webSearchResponse);
             } else {
-                log.error("智谱AI Web Search API请求失败: {}", response.getStatusCode());
-                return "搜索请求失败: " + response.getStatusCode();
+                log.error("智谱AI Web Search API请求失败: {}", response.statusCode());
+                return "搜索请求失败: " + response.statusCode();
             }
-        } catch (RestClientException e) {
-            log.error("Web搜索API调用失败", e);
-            return "搜索API调用失败: " + e.getMessage();
         } catch (JsonProcessingException e) {
             log.error("JSON处理异常", e);
             return "JSON处理异常: " + e.getMessage();
+        } catch (IOException e) {
+            log.error("Web搜索API调用失败", e);
+            return "搜索API调用失败: " + e.getMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "搜索API调用失败: 已取消";
         } catch (Exception e) {
             log.error("执行Web搜索时发生未知错误", e);
             return "执行搜索时发生错误: " + e.getMessage();
         }
     }
 
+    /**
+     * 搜索结果是否可以缓存，出错时返回的提示不缓存
+     */
+    public static boolean isCacheableResult(String result) {
+        return !result.isBlank() && ERROR_PREFIXES.stream().noneMatch(result::startsWith);
+    }
+
     /**
      * 格式化搜索结果为可读的字符串
      */
@@ -0,0 +1,129 @@
+package com.ai.aiagent.agent;
+
+import com.ai.aiagent.agent.model.AgentState;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+class AgentCheckpointStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void saveAndLoadCheckpoint() {
+        AgentCheckpointStore store = new AgentCheckpointStore(tempDir.toString(), Duration.ofHours(1));
+        List<Message> messages = List.of(
+                new UserMessage("帮我找约会地点"),
+                new AssistantMessage("", Map.of(), List.of(
+                        new AssistantMessage.ToolCall("call-1", "function", "searchWeb", "{\"query\":\"约会\"}"))),
+                new ToolResponseMessage(List.of(new ToolResponseMessage.ToolResponse("call-1", "searchWeb", "结果"))));
+        store.save(new AgentCheckpoint("run-1", "MyManus", 3, AgentState.RUNNING, messages, 1L));
+
+        AgentCheckpoint loaded = store.load("run-1").orElseThrow();
+        Assertions.assertEquals("MyManus", loaded.agentName());
+        Assertions.assertEquals(3, loaded.currentStep());
+        Assertions.assertEquals(AgentState.RUNNING, loaded.state());
+        Assertions.assertEquals(3, loaded.messages().size());
+        AssistantMessage assistantMessage = (AssistantMessage) loaded.messages().get(1);
+        Assertions.assertEquals("searchWeb", assistantMessage.getToolCalls().get(0).name());
+
+        store.delete("run-1");
+        Assertions.assertTrue(store.load("run-1").isEmpty());
+        // 非法的运行 ID 不会访问到目录之外的文件
+        Assertions.assertTrue(store.load("../run-1").isEmpty());
+    }
+
+    @Test
+    void leaseIsExclusiveAcrossNodesUntilItExpires() throws Exception {
+        // 两个实例共享同一目录，模拟两个节点
+        AgentCheckpointStore nodeA = new AgentCheckpointStore(tempDir.toString(), Duration.ofHours(1),
+                Duration.ofMillis(200));
+        AgentCheckpointStore nodeB = new AgentCheckpointStore(tempDir.toString(), Duration.ofHours(1));
+        Assertions.assertTrue(nodeA.acquireLease("run-3"));
+        Assertions.assertFalse(nodeB.acquireLease("run-3"));
+        Assertions.assertTrue(nodeA.renewLease("run-3"));
+
+        // 节点 A 停止续约，租约到期后由节点 B 接管，A 再续约失败
+        Thread.sleep(400);
+        Assertions.assertTrue(nodeB.acquireLease("run-3"));
+        Assertions.assertFalse(nodeA.renewLease("run-3"));
+        // A 释放不会删除 B 的租约
+        nodeA.releaseLease("run-3");
+        Assertions.assertFalse(nodeA.acquireLease("run-3"));
+
+        nodeB.releaseLease("run-3");
+        Assertions.assertTrue(nodeA.acquireLease("run-3"));
+    }
+
+    @Test
+    void resumeIsRejectedWhileAnotherNodeHoldsTheLease() throws Exception {
+        AgentCheckpointStore store = new AgentCheckpointStore(tempDir.toString(), Duration.ofHours(1));
+        AgentCheckpointStore otherNode = new AgentCheckpointStore(tempDir.toString(), Duration.ofHours(1));
+        AgentCheckpoint checkpoint = new AgentCheckpoint("run-4", "test", 1, AgentState.RUNNING,
+                List.of(new UserMessage("你好")), System.currentTimeMillis());
+        store.save(checkpoint);
+        Assertions.assertTrue(otherNode.acquireLease("run-4"));
+
+        List<Integer> executedSteps = new ArrayList<>();
+        BaseAgent agent = new BaseAgent() {
+            @Override
+            public String step() {
+                executedSteps.add(getCurrentStep());
+                return "完成";
+            }
+        };
+        agent.setMaxSteps(3);
+        agent.setCheckpointStore(store);
+        CountDownLatch finished = new CountDownLatch(1);
+        AgentRun run = agent.resumeStream(checkpoint, Executors.newVirtualThreadPerTaskExecutor());
+        run.whenFinished(finished::countDown);
+
+        Assertions.assertTrue(finished.await(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(executedSteps.isEmpty());
+        // 检查点保持原样，持有租约的节点仍可继续
+        Assertions.assertEquals(1, store.load("run-4").orElseThrow().currentStep());
+    }
+
+    @Test
+    void resumeContinuesAfterCheckpointedStep() throws Exception {
+        AgentCheckpointStore store = new AgentCheckpointStore(tempDir.toString(), Duration.ofHours(1));
+        List<Integer> executedSteps = new ArrayList<>();
+        BaseAgent agent = new BaseAgent() {
+            @Override
+            public String step() {
+                executedSteps.add(getCurrentStep());
+                return "完成";
+            }
+        };
+        agent.setMaxSteps(4);
+        agent.setCheckpointStore(store);
+        AgentCheckpoint checkpoint = new AgentCheckpoint("run-2", "test", 2, AgentState.RUNNING,
+                List.of(new UserMessage("你好")), System.currentTimeMillis());
+        store.save(checkpoint);
+
+        CountDownLatch finished = new CountDownLatch(1);
+        AgentRun run = agent.resumeStream(checkpoint, Executors.newVirtualThreadPerTaskExecutor());
+        run.whenFinished(finished::countDown);
+
+        Assertions.assertTrue(finished.await(5, TimeUnit.SECONDS));
+        Assertions.assertEquals("run-2", run.getRunId());
+        Assertions.assertEquals(List.of(3, 4), executedSteps);
+        Assertions.assertEquals(AgentState.FINISHED, agent.getState());
+        // 正常结束后删除检查点
+        Assertions.assertTrue(store.load("run-2").isEmpty());
+    }
+}
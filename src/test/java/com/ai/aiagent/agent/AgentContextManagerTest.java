@@ -0,0 +1,85 @@
+package com.ai.aiagent.agent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+class AgentContextManagerTest {
+
+    private static final String NEXT_STEP_PROMPT = "请选择合适的工具";
+
+    @Test
+    void dedupeNextStepPromptAndTruncateToolOutput() {
+        String html = "<html><body><div>" + "上海静安区约会地点推荐。".repeat(1000) + "</div></body></html>";
+        List<Message> history = new ArrayList<>();
+        history.add(new UserMessage("帮我制定约会计划"));
+        for (int i = 0; i < 3; i++) {
+            history.add(new UserMessage(NEXT_STEP_PROMPT));
+            history.add(toolCall("call-" + i, "scrapeWebPage"));
+            history.add(toolResponse("call-" + i, "scrapeWebPage", html));
+        }
+        history.add(new UserMessage(NEXT_STEP_PROMPT));
+        AgentContextManager contextManager = new AgentContextManager(2000, 200, 100000);
+        List<Message> prepared = contextManager.prepare(history, NEXT_STEP_PROMPT, 4);
+
+        // 只保留最后一条 nextStepPrompt
+        long prompts = prepared.stream().filter(m -> NEXT_STEP_PROMPT.equals(m.getText())).count();
+        Assertions.assertEquals(1, prompts);
+        Assertions.assertEquals(NEXT_STEP_PROMPT, prepared.get(prepared.size() - 1).getText());
+        // HTML 提取为正文后截断，最近一次结果保留得更多
+        String stale = ((ToolResponseMessage) prepared.get(2)).getResponses().get(0).responseData();
+        String latest = ((ToolResponseMessage) prepared.get(prepared.size() - 2)).getResponses().get(0).responseData();
+        Assertions.assertFalse(stale.contains("<div>"));
+        Assertions.assertTrue(stale.length() < 300);
+        Assertions.assertTrue(latest.length() > 2000 && latest.length() < 2100);
+        // 原始历史不受影响
+        Assertions.assertEquals(11, history.size());
+        Assertions.assertEquals(html, ((ToolResponseMessage) history.get(3)).getResponses().get(0).responseData());
+
+        AgentContextManager.StepContextStats stats = contextManager.getStepStats().get(0);
+        Assertions.assertEquals(4, stats.step());
+        Assertions.assertTrue(stats.compactedChars() * 5 < stats.originalChars());
+    }
+
+    @Test
+    void dropOldestGroupsWhenOverBudget() {
+        List<Message> history = new ArrayList<>();
+        history.add(new UserMessage("帮我制定约会计划"));
+        for (int i = 0; i < 10; i++) {
+            history.add(toolCall("call-" + i, "searchWeb"));
+            history.add(toolResponse("call-" + i, "searchWeb", "搜索结果" + i + "：" + "咖啡馆 ".repeat(200)));
+        }
+        history.add(new UserMessage(NEXT_STEP_PROMPT));
+        AgentContextManager contextManager = new AgentContextManager(4000, 4000, 1500);
+        List<Message> prepared = contextManager.prepare(history, NEXT_STEP_PROMPT, 11);
+
+        Assertions.assertTrue(contextManager.getStepStats().get(0).promptTokens() <= 1500);
+        // 原始任务保留，随后是省略提示
+        Assertions.assertEquals("帮我制定约会计划", prepared.get(0).getText());
+        Assertions.assertTrue(prepared.get(1).getText().contains("已省略"));
+        // 工具调用与结果成对保留
+        for (int i = 2; i < prepared.size() - 1; i++) {
+            if (prepared.get(i) instanceof AssistantMessage) {
+                Assertions.assertInstanceOf(ToolResponseMessage.class, prepared.get(i + 1));
+            } else {
+                Assertions.assertInstanceOf(AssistantMessage.class, prepared.get(i - 1));
+            }
+        }
+        Assertions.assertEquals(NEXT_STEP_PROMPT, prepared.get(prepared.size() - 1).getText());
+    }
+
+    private static AssistantMessage toolCall(String id, String name) {
+        return new AssistantMessage("", Map.of(), List.of(new AssistantMessage.ToolCall(id, "function", name, "{}")));
+    }
+
+    private static ToolResponseMessage toolResponse(String id, String name, String data) {
+        return new ToolResponseMessage(List.of(new ToolResponseMessage.ToolResponse(id, name, data)));
+    }
+}
@@ -0,0 +1,86 @@
+package com.ai.aiagent.agent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+class AgentExecutorTest {
+
+    @Test
+    void limitConcurrentRunsAndRejectWhenQueueFull() throws InterruptedException {
+        AgentExecutor executor = new AgentExecutor(2, 3, Duration.ofMinutes(1));
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(5);
+        Runnable run = () -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                running.decrementAndGet();
+                done.countDown();
+            }
+        };
+        for (int i = 0; i < 5; i++) {
+            executor.execute(run);
+        }
+        // 2 个运行中，3 个排队，第 6 个被拒绝
+        Thread.sleep(200);
+        Assertions.assertEquals(2, executor.getStats().activeRuns());
+        Assertions.assertEquals(3, executor.getStats().queuedRuns());
+        Assertions.assertThrows(RejectedExecutionException.class, () -> executor.execute(run));
+        release.countDown();
+        Assertions.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(2, maxRunning.get());
+        AgentExecutor.AgentExecutorStats stats = executor.getStats();
+        Assertions.assertEquals(1, stats.rejectedCount());
+        Assertions.assertEquals(5, stats.submittedCount());
+        executor.shutdown();
+    }
+
+    @Test
+    void interruptRunOnTimeout() throws InterruptedException {
+        AgentExecutor executor = new AgentExecutor(1, 1, Duration.ofMillis(100));
+        CountDownLatch interrupted = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+        });
+        Assertions.assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, executor.getStats().timedOutCount());
+        executor.shutdown();
+    }
+
+    @Test
+    void cancelCancellableRunOnTimeout() throws InterruptedException {
+        AgentExecutor executor = new AgentExecutor(1, 1, Duration.ofMillis(100));
+        AtomicReference<String> cancelReason = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        executor.execute(AgentExecutor.CancellableRun.of(() -> {
+            // 吞掉中断的任务只能靠取消标记结束
+            while (cancelReason.get() == null) {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException ignored) {
+                }
+            }
+            done.countDown();
+        }, cancelReason::set));
+        Assertions.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(cancelReason.get().contains("超时"));
+        Assertions.assertEquals(1, executor.getStats().timedOutCount());
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,159 @@
+package com.ai.aiagent.agent;
+
+import com.ai.aiagent.agent.model.AgentState;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class AgentRunTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void cancelInterruptsRunningStep() throws Exception {
+        CountDownLatch stepStarted = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(1);
+        AtomicInteger steps = new AtomicInteger();
+        BaseAgent agent = new BaseAgent() {
+            @Override
+            public String step() {
+                steps.incrementAndGet();
+                stepStarted.countDown();
+                try {
+                    // 模拟耗时的模型或工具调用
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(30));
+                    return "完成";
+                } catch (InterruptedException e) {
+                    // 与 ReActAgent 一样吞掉异常返回失败信息，中断标记随之清除
+                    return "步骤执行失败: " + e.getMessage();
+                }
+            }
+        };
+        agent.setMaxSteps(5);
+        AgentRun run = agent.startStream("你好", Executors.newVirtualThreadPerTaskExecutor());
+        run.whenFinished(finished::countDown);
+
+        Assertions.assertTrue(stepStarted.await(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(run.cancel("测试取消"));
+        Assertions.assertTrue(finished.await(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, steps.get());
+        Assertions.assertEquals(AgentState.ERROR, agent.getState());
+        Assertions.assertFalse(run.cancel("重复取消"));
+    }
+
+    @Test
+    void executorTimeoutCancelsRunThatSwallowsInterrupts() throws Exception {
+        AgentExecutor executor = new AgentExecutor(1, 1, Duration.ofMillis(200));
+        CountDownLatch finished = new CountDownLatch(1);
+        BaseAgent agent = new BaseAgent() {
+            @Override
+            public String step() {
+                try {
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(30));
+                } catch (InterruptedException ignored) {
+                    // 吞掉中断，只有取消标记能结束运行
+                }
+                return "步骤执行失败";
+            }
+        };
+        agent.setMaxSteps(1000);
+        AgentRun run = agent.startStream("你好", executor);
+        run.whenFinished(finished::countDown);
+
+        Assertions.assertTrue(finished.await(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(run.isCancelled());
+        Assertions.assertTrue(run.getCancelReason().contains("超时"));
+        executor.shutdown();
+    }
+
+    @Test
+    void cancelledStepIsNotCheckpointed() throws Exception {
+        AgentCheckpointStore store = new AgentCheckpointStore(tempDir.toString(), Duration.ofHours(1));
+        CountDownLatch secondStepStarted = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(1);
+        AtomicInteger steps = new AtomicInteger();
+        BaseAgent agent = new BaseAgent() {
+            @Override
+            public String step() {
+                if (steps.incrementAndGet() == 1) {
+                    return "第一步完成";
+                }
+                secondStepStarted.countDown();
+                try {
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(30));
+                    return "完成";
+                } catch (InterruptedException e) {
+                    // 与 ToolCallAgent 一样吞掉中断，记录一条错误回复
+                    getMessageList().add(new AssistantMessage("处理时遇到错误: " + e.getMessage()));
+                    return "步骤执行失败";
+                }
+            }
+        };
+        agent.setMaxSteps(5);
+        agent.setCheckpointStore(store);
+        AgentRun run = agent.startStream("你好", Executors.newVirtualThreadPerTaskExecutor());
+        run.whenFinished(finished::countDown);
+
+        Assertions.assertTrue(secondStepStarted.await(5, TimeUnit.SECONDS));
+        run.cancel("测试取消");
+        Assertions.assertTrue(finished.await(5, TimeUnit.SECONDS));
+        // 检查点停在第一步，不包含取消时产生的错误回复
+        AgentCheckpoint checkpoint = store.load(run.getRunId()).orElseThrow();
+        Assertions.assertEquals(1, checkpoint.currentStep());
+        Assertions.assertTrue(checkpoint.messages().stream().noneMatch(message -> message.getText().startsWith("处理时遇到错误")));
+    }
+
+    @Test
+    void concurrentClaimsOfOneRunIdAreExclusive() {
+        AgentRunRegistry registry = new AgentRunRegistry();
+        Assertions.assertTrue(registry.claim("run-1"));
+        Assertions.assertFalse(registry.claim("run-1"));
+        Assertions.assertTrue(registry.isActive("run-1"));
+        registry.release("run-1");
+        Assertions.assertFalse(registry.isActive("run-1"));
+        Assertions.assertTrue(registry.claim("run-1"));
+    }
+
+    @Test
+    void cancelBeforeStartSkipsRun() {
+        AtomicInteger steps = new AtomicInteger();
+        BaseAgent agent = new BaseAgent() {
+            @Override
+            public String step() {
+                steps.incrementAndGet();
+                return "完成";
+            }
+        };
+        AgentRunRegistry registry = new AgentRunRegistry();
+        // 任务先挂起，取消后再执行
+        CountDownLatch release = new CountDownLatch(1);
+        AgentRun run = agent.startStream("你好", task -> Thread.ofVirtual().start(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {
+            }
+            task.run();
+        }));
+        registry.register(run);
+        Assertions.assertEquals(1, registry.getActiveCount());
+        Assertions.assertTrue(registry.cancel(run.getRunId(), "测试取消"));
+        release.countDown();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!run.isFinished() && System.currentTimeMillis() < deadline) {
+            Thread.onSpinWait();
+        }
+        Assertions.assertTrue(run.isFinished());
+        Assertions.assertEquals(0, steps.get());
+        Assertions.assertEquals(0, registry.getActiveCount());
+    }
+}
@@ -0,0 +1,47 @@
+package com.ai.aiagent.agent;
+
+import com.ai.aiagent.agent.model.AgentState;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tool.ToolCallback;
+
+import java.util.List;
+
+class MyManusFactoryTest {
+
+    @Test
+    void agentsShareConfigurationButNotRunState() {
+        ChatModel chatModel = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                return new ChatResponse(List.of(new Generation(new AssistantMessage("完成"))));
+            }
+        };
+        MyManusFactory factory = new MyManusFactory(new ToolCallback[0], chatModel, null);
+        MyManus first = factory.create();
+        MyManus second = factory.create();
+
+        Assertions.assertEquals(2, factory.getCreatedCount());
+        Assertions.assertSame(first.getChatClient(), second.getChatClient());
+        Assertions.assertSame(first.getToolCallingManager(), second.getToolCallingManager());
+        Assertions.assertNotSame(first.getChatOptions(), second.getChatOptions());
+        Assertions.assertNotSame(first.getMessageList(), second.getMessageList());
+
+        Assertions.assertNotNull(first.run("你好"));
+        Assertions.assertEquals(AgentState.FINISHED, first.getState());
+        Assertions.assertFalse(first.getMessageList().isEmpty());
+        // 每步的上下文大小累计到工厂，实例结束后仍可查询
+        Assertions.assertNotSame(first.getContextManager(), second.getContextManager());
+        Assertions.assertTrue(factory.getContextStats().steps() > 0);
+        Assertions.assertTrue(factory.getContextStats().maxPromptTokens() > 0);
+        // 另一个实例的运行状态不受影响
+        Assertions.assertEquals(AgentState.IDLE, second.getState());
+        Assertions.assertTrue(second.getMessageList().isEmpty());
+        Assertions.assertEquals(0, second.getCurrentStep());
+    }
+}
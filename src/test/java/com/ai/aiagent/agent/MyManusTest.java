@@ -12,7 +12,7 @@ import org.springframework.test.context.ActiveProfiles;
 class MyManusTest {
 
     @Resource
-    private MyManus MyManus;
+    private MyManusFactory myManusFactory;
 
     @Test
     void run() {
@@ -20,7 +20,7 @@ class MyManusTest {
                 我的另一半居住在上海静安区，请帮我找到 5 公里内合适的约会地点，  
                 并结合一些网络图片，制定一份详细的约会计划，  
                 并以 PDF 格式输出""";
-        String answer = MyManus.run(userPrompt);
+        String answer = myManusFactory.create().run(userPrompt);
         Assertions.assertNotNull(answer);
     }
 }
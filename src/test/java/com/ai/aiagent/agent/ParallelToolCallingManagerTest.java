@@ -0,0 +1,84 @@
+package com.ai.aiagent.agent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+class ParallelToolCallingManagerTest {
+
+    @Test
+    void executeToolCallsInParallelAndKeepOrder() {
+        ParallelToolCallingManager manager = ParallelToolCallingManager.builder()
+                .toolCallbacks(new SleepingTool("slow", 500), new SleepingTool("fast", 100))
+                .build();
+        ChatResponse chatResponse = toolCallResponse(
+                new AssistantMessage.ToolCall("1", "function", "slow", "{}"),
+                new AssistantMessage.ToolCall("2", "function", "fast", "{}"),
+                new AssistantMessage.ToolCall("3", "function", "slow", "{}"));
+        long start = System.currentTimeMillis();
+        ToolExecutionResult result = manager.executeToolCalls(new Prompt(new UserMessage("你好")), chatResponse);
+        long elapsed = System.currentTimeMillis() - start;
+        // 耗时取决于最慢的工具，而不是所有工具之和
+        Assertions.assertTrue(elapsed < 1000, "elapsed " + elapsed + " ms");
+        List<ToolResponseMessage.ToolResponse> responses = lastResponses(result);
+        Assertions.assertEquals(List.of("1", "2", "3"), responses.stream().map(ToolResponseMessage.ToolResponse::id).toList());
+        Assertions.assertEquals("fast done", responses.get(1).responseData());
+        // 历史消息包含原始提示、助手消息和工具结果
+        Assertions.assertEquals(3, result.conversationHistory().size());
+    }
+
+    @Test
+    void timeoutSingleToolWithoutFailingOthers() {
+        ParallelToolCallingManager manager = ParallelToolCallingManager.builder()
+                .toolCallbacks(new SleepingTool("slow", 5000), new SleepingTool("fast", 10))
+                .defaultTimeout(Duration.ofSeconds(5))
+                .toolTimeout("slow", Duration.ofMillis(200))
+                .build();
+        ChatResponse chatResponse = toolCallResponse(
+                new AssistantMessage.ToolCall("1", "function", "slow", "{}"),
+                new AssistantMessage.ToolCall("2", "function", "fast", "{}"));
+        List<ToolResponseMessage.ToolResponse> responses = lastResponses(
+                manager.executeToolCalls(new Prompt(new UserMessage("你好")), chatResponse));
+        Assertions.assertTrue(responses.get(0).responseData().contains("timed out"));
+        Assertions.assertEquals("fast done", responses.get(1).responseData());
+    }
+
+    private static ChatResponse toolCallResponse(AssistantMessage.ToolCall... toolCalls) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage("", Map.of(), List.of(toolCalls)))));
+    }
+
+    private static List<ToolResponseMessage.ToolResponse> lastResponses(ToolExecutionResult result) {
+        List<?> history = result.conversationHistory();
+        return ((ToolResponseMessage) history.get(history.size() - 1)).getResponses();
+    }
+
+    private record SleepingTool(String name, long sleepMillis) implements ToolCallback {
+
+        @Override
+        public ToolDefinition getToolDefinition() {
+            return ToolDefinition.builder().name(name).description(name).inputSchema("{}").build();
+        }
+
+        @Override
+        public String call(String toolInput) {
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException e) {
+                return name + " interrupted";
+            }
+            return name + " done";
+        }
+    }
+}
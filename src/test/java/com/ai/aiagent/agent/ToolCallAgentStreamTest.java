@@ -0,0 +1,105 @@
+package com.ai.aiagent.agent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.metadata.ChatGenerationMetadata;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tool.ToolCallback;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+class ToolCallAgentStreamTest {
+
+    @Test
+    void streamTokensAndAssembleToolCalls() {
+        // 模拟模型逐段返回文本，工具调用参数分多个分片返回
+        ChatModel chatModel = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                return Flux.just(
+                        chunk("我来", List.of()),
+                        chunk("搜索一下", List.of()),
+                        chunk("", List.of(new AssistantMessage.ToolCall("call-1", "function", "searchWeb", "{\"query\":"))),
+                        chunk("", List.of(new AssistantMessage.ToolCall("", "", "", "\"约会地点\"}"))),
+                        chunk("", List.of(new AssistantMessage.ToolCall("call-2", "function", "doTerminate", "{}"))));
+            }
+        };
+        ToolCallAgent agent = new ToolCallAgent(new ToolCallback[0]);
+        agent.setSystemPrompt("你是一个智能助手");
+        agent.setChatClient(ChatClient.builder(chatModel).build());
+        agent.getMessageList().add(new UserMessage("帮我找约会地点"));
+        List<String> tokens = new ArrayList<>();
+        agent.setStreamListener(new AgentStreamListener() {
+            @Override
+            public void onToken(String token) {
+                tokens.add(token);
+            }
+        });
+
+        Assertions.assertTrue(agent.think());
+        Assertions.assertEquals(List.of("我来", "搜索一下"), tokens);
+        List<AssistantMessage.ToolCall> toolCalls = agent.getToolCallChatResponse().getResult().getOutput().getToolCalls();
+        Assertions.assertEquals(2, toolCalls.size());
+        Assertions.assertEquals("searchWeb", toolCalls.get(0).name());
+        Assertions.assertEquals("{\"query\":\"约会地点\"}", toolCalls.get(0).arguments());
+        Assertions.assertEquals("doTerminate", toolCalls.get(1).name());
+    }
+
+    @Test
+    void repeatedDeltaIsKeptAndFinalSnapshotReplaces() {
+        ChatModel chatModel = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                return Flux.just(
+                        chunk("", List.of(new AssistantMessage.ToolCall("call-1", "function", "writeFile", "{\"text\":\"ha"))),
+                        // 与已拼装参数相同的增量分片不能被丢弃
+                        chunk("", List.of(new AssistantMessage.ToolCall("", "", "", "{\"text\":\"ha"))),
+                        chunk("", List.of(new AssistantMessage.ToolCall("", "", "", "\"}"))),
+                        chunk("", List.of(new AssistantMessage.ToolCall("call-2", "function", "searchWeb", "{\"query\":"))),
+                        chunk("", List.of(new AssistantMessage.ToolCall("", "", "", "\"约会\"}"))),
+                        // 最后一个分片重复完整的调用
+                        lastChunk(List.of(new AssistantMessage.ToolCall("call-2", "function", "searchWeb",
+                                "{\"query\":\"约会\"}"))));
+            }
+        };
+        ToolCallAgent agent = new ToolCallAgent(new ToolCallback[0]);
+        agent.setSystemPrompt("你是一个智能助手");
+        agent.setChatClient(ChatClient.builder(chatModel).build());
+        agent.getMessageList().add(new UserMessage("帮我记下来"));
+        agent.setStreamListener(new AgentStreamListener() {
+        });
+
+        Assertions.assertTrue(agent.think());
+        List<AssistantMessage.ToolCall> toolCalls = agent.getToolCallChatResponse().getResult().getOutput().getToolCalls();
+        Assertions.assertEquals("{\"text\":\"ha{\"text\":\"ha\"}", toolCalls.get(0).arguments());
+        Assertions.assertEquals("{\"query\":\"约会\"}", toolCalls.get(1).arguments());
+    }
+
+    private static ChatResponse chunk(String text, List<AssistantMessage.ToolCall> toolCalls) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text, Map.of(), toolCalls))));
+    }
+
+    private static ChatResponse lastChunk(List<AssistantMessage.ToolCall> toolCalls) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage("", Map.of(), toolCalls),
+                ChatGenerationMetadata.builder().finishReason("tool_calls").build())));
+    }
+}
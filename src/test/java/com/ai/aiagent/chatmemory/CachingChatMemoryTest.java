@@ -0,0 +1,104 @@
+package com.ai.aiagent.chatmemory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+class CachingChatMemoryTest {
+
+    @Test
+    void findsLayerThroughDecorators() {
+        CountingChatMemory delegate = new CountingChatMemory();
+        CachingChatMemory chatMemory = new CachingChatMemory(delegate);
+        Assertions.assertSame(chatMemory, DelegatingChatMemory.find(chatMemory, CachingChatMemory.class).orElseThrow());
+        Assertions.assertSame(delegate, DelegatingChatMemory.find(chatMemory, CountingChatMemory.class).orElseThrow());
+        Assertions.assertTrue(DelegatingChatMemory.find(delegate, CachingChatMemory.class).isEmpty());
+    }
+
+    @Test
+    void hitAfterFirstRead() {
+        CountingChatMemory delegate = new CountingChatMemory();
+        CachingChatMemory chatMemory = new CachingChatMemory(delegate);
+        chatMemory.add("chat-1", new UserMessage("你好"));
+        chatMemory.get("chat-1");
+        chatMemory.add("chat-1", new UserMessage("在吗"));
+        List<Message> messages = chatMemory.get("chat-1");
+        Assertions.assertEquals(2, messages.size());
+        Assertions.assertEquals(1, delegate.getCount);
+        CachingChatMemory.CacheStats stats = chatMemory.getStats();
+        Assertions.assertEquals(1, stats.hitCount());
+        Assertions.assertEquals(1, stats.missCount());
+    }
+
+    @Test
+    void evictLeastRecentlyUsed() {
+        CountingChatMemory delegate = new CountingChatMemory();
+        CachingChatMemory chatMemory = CachingChatMemory.builder(delegate)
+                .maxConversations(2)
+                .build();
+        chatMemory.get("chat-1");
+        chatMemory.get("chat-2");
+        chatMemory.get("chat-1");
+        chatMemory.get("chat-3");
+        Assertions.assertEquals(1, chatMemory.getStats().evictionCount());
+        // chat-2 最久未访问，已被淘汰
+        chatMemory.get("chat-2");
+        Assertions.assertEquals(4, delegate.getCount);
+        chatMemory.get("chat-3");
+        Assertions.assertEquals(4, delegate.getCount);
+    }
+
+    @Test
+    void expireIdleConversation() throws InterruptedException {
+        CountingChatMemory delegate = new CountingChatMemory();
+        CachingChatMemory chatMemory = CachingChatMemory.builder(delegate)
+                .idleExpire(Duration.ofMillis(10))
+                .build();
+        chatMemory.get("chat-1");
+        Thread.sleep(30);
+        chatMemory.get("chat-1");
+        Assertions.assertEquals(2, delegate.getCount);
+        Assertions.assertEquals(1, chatMemory.getStats().expirationCount());
+    }
+
+    @Test
+    void keepWindowConsistentWithDelegate() {
+        CachingChatMemory chatMemory = CachingChatMemory.builder(new CountingChatMemory())
+                .maxMessagesPerConversation(2)
+                .build();
+        chatMemory.get("chat-1");
+        chatMemory.add("chat-1", List.of(new UserMessage("1"), new UserMessage("2"), new UserMessage("3")));
+        List<Message> messages = chatMemory.get("chat-1");
+        Assertions.assertEquals(2, messages.size());
+        Assertions.assertEquals("2", messages.get(0).getText());
+    }
+
+    private static class CountingChatMemory implements ChatMemory {
+        private final Map<String, List<Message>> store = new HashMap<>();
+        private int getCount = 0;
+
+        @Override
+        public void add(String conversationId, List<Message> messages) {
+            store.computeIfAbsent(conversationId, k -> new ArrayList<>()).addAll(messages);
+        }
+
+        @Override
+        public List<Message> get(String conversationId) {
+            getCount++;
+            return new ArrayList<>(store.getOrDefault(conversationId, List.of()));
+        }
+
+        @Override
+        public void clear(String conversationId) {
+            store.remove(conversationId);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.ai.aiagent.chatmemory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 对话记忆读路径基准测试：对比流式读取与内存映射读取
+ *
+ * 模拟包含大段工具输出（如抓取的网页 HTML）的长会话，运行 main 方法执行
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChatMemoryReadBenchmark {
+
+    private static final String CHAT_ID = "benchmark";
+
+    // 每条助手消息的字节数，模拟抓取网页等大段工具输出
+    @Param({"2048", "65536"})
+    private int messageBytes;
+
+    @Param({"100"})
+    private int messageCount;
+
+    private Path baseDir;
+    private FileBasedChatMemory fileBasedStream;
+    private FileBasedChatMemory fileBasedMapped;
+    private SegmentedLogChatMemory segmentedStream;
+    private SegmentedLogChatMemory segmentedMapped;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        baseDir = Files.createTempDirectory("chat-memory-benchmark");
+        List<Message> messages = new ArrayList<>(messageCount);
+        String payload = "<div>恋爱建议</div>".repeat(Math.max(1, messageBytes / 32));
+        for (int i = 0; i < messageCount; i++) {
+            messages.add(i % 2 == 0 ? new UserMessage("问题" + i) : new AssistantMessage(payload));
+        }
+        Path fileDir = baseDir.resolve("file");
+        Path segmentDir = baseDir.resolve("segment");
+        new FileBasedChatMemory(fileDir.toString()).add(CHAT_ID, messages);
+        new SegmentedLogChatMemory(segmentDir.toString(), messageCount).add(CHAT_ID, messages);
+        fileBasedStream = new FileBasedChatMemory(fileDir.toString());
+        fileBasedMapped = new FileBasedChatMemory(fileDir.toString(), 0);
+        segmentedStream = new SegmentedLogChatMemory(segmentDir.toString(), messageCount);
+        segmentedMapped = new SegmentedLogChatMemory(segmentDir.toString(), messageCount, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(baseDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public List<Message> fileBasedStreamRead() {
+        return fileBasedStream.get(CHAT_ID);
+    }
+
+    @Benchmark
+    public List<Message> fileBasedMappedRead() {
+        return fileBasedMapped.get(CHAT_ID);
+    }
+
+    @Benchmark
+    public List<Message> segmentedStreamRead() {
+        return segmentedStream.get(CHAT_ID);
+    }
+
+    @Benchmark
+    public List<Message> segmentedMappedRead() {
+        return segmentedMapped.get(CHAT_ID);
+    }
+
+    @Benchmark
+    public List<Message> segmentedMappedTailRead() {
+        return segmentedMapped.get(CHAT_ID, 10);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ChatMemoryReadBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,72 @@
+package com.ai.aiagent.chatmemory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class FileBasedChatMemoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void concurrentAddOnSameAndDifferentConversations() throws Exception {
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(tempDir.toString());
+        int threads = 8;
+        int messagesPerThread = 25;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int threadId = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < messagesPerThread; i++) {
+                        // 所有线程共同写同一个会话，同时各自写一个独立会话
+                        chatMemory.add("shared", new UserMessage("线程" + threadId + "-消息" + i));
+                        chatMemory.add("chat-" + threadId, new UserMessage("消息" + i));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assertions.assertEquals(threads * messagesPerThread, chatMemory.get("shared").size());
+        for (int t = 0; t < threads; t++) {
+            Assertions.assertEquals(messagesPerThread, chatMemory.get("chat-" + t).size());
+        }
+    }
+
+    @Test
+    void mappedRead() {
+        new FileBasedChatMemory(tempDir.toString())
+                .add("chat-mmap", List.of(new UserMessage("你好"), new AssistantMessage("<html>".repeat(1000))));
+        List<Message> messages = new FileBasedChatMemory(tempDir.toString(), 0).get("chat-mmap");
+        Assertions.assertEquals(2, messages.size());
+        Assertions.assertEquals("<html>".repeat(1000), messages.get(1).getText());
+    }
+
+    @Test
+    void mappedReadThenReplace() {
+        // 每次 add 都先映射读取再原子替换文件，映射必须在替换前解除
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(tempDir.toString(), 0);
+        for (int i = 0; i < 20; i++) {
+            chatMemory.add("chat-mmap", new UserMessage("消息" + i));
+        }
+        List<Message> messages = chatMemory.get("chat-mmap");
+        Assertions.assertEquals(20, messages.size());
+        Assertions.assertEquals("消息19", messages.get(19).getText());
+    }
+}
@@ -0,0 +1,183 @@
+package com.ai.aiagent.chatmemory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class LogStructuredChatMemoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void addGetClearAndRecover() {
+        try (LogStructuredChatMemory chatMemory = new LogStructuredChatMemory(tempDir.toString())) {
+            chatMemory.add("chat-1", List.of(new UserMessage("你好"), new AssistantMessage("你好呀")));
+            chatMemory.add("chat-2", new UserMessage("在吗"));
+            chatMemory.add("chat-1", new UserMessage("再见"));
+            chatMemory.clear("chat-2");
+            Assertions.assertEquals(3, chatMemory.get("chat-1").size());
+            Assertions.assertTrue(chatMemory.get("chat-2").isEmpty());
+        }
+        // 重新打开后从段文件重建索引
+        try (LogStructuredChatMemory chatMemory = new LogStructuredChatMemory(tempDir.toString())) {
+            List<Message> messages = chatMemory.get("chat-1");
+            Assertions.assertEquals(3, messages.size());
+            Assertions.assertEquals("再见", messages.get(2).getText());
+            Assertions.assertTrue(chatMemory.get("chat-2").isEmpty());
+        }
+    }
+
+    @Test
+    void interruptedAddEitherFailsWithoutWritingOrLands() {
+        try (LogStructuredChatMemory chatMemory = new LogStructuredChatMemory(tempDir.toString())) {
+            for (int i = 0; i < 20; i++) {
+                String conversationId = "chat-" + i;
+                Thread.currentThread().interrupt();
+                boolean failed = false;
+                try {
+                    chatMemory.add(conversationId, new UserMessage("你好"));
+                } catch (IllegalStateException e) {
+                    failed = true;
+                }
+                // 中断标记保留给调用方
+                Assertions.assertTrue(Thread.interrupted());
+                // 抛出异常时没有落盘，正常返回时已经落盘，重试不会重复写入
+                Assertions.assertEquals(failed ? 0 : 1, chatMemory.get(conversationId).size());
+            }
+        }
+    }
+
+    @Test
+    void groupCommitConcurrentWrites() throws Exception {
+        int threads = 16;
+        int messagesPerThread = 20;
+        try (LogStructuredChatMemory chatMemory = new LogStructuredChatMemory(tempDir.toString())) {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    String chatId = "chat-" + t;
+                    futures.add(executor.submit(() -> {
+                        for (int i = 0; i < messagesPerThread; i++) {
+                            chatMemory.add(chatId, new UserMessage("消息" + i));
+                        }
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+            for (int t = 0; t < threads; t++) {
+                Assertions.assertEquals(messagesPerThread, chatMemory.get("chat-" + t).size());
+            }
+            LogStructuredChatMemory.StoreStats stats = chatMemory.getStats();
+            Assertions.assertEquals(threads * messagesPerThread, stats.committedRecordCount());
+            Assertions.assertTrue(stats.commitCount() <= stats.committedRecordCount());
+        }
+    }
+
+    @Test
+    void compactAndRecover() {
+        try (LogStructuredChatMemory chatMemory = new LogStructuredChatMemory(tempDir.toString(), 4096, 64)) {
+            for (int round = 0; round < 20; round++) {
+                chatMemory.add("chat-temp", new UserMessage("临时消息".repeat(50)));
+                chatMemory.clear("chat-temp");
+            }
+            chatMemory.add("chat-keep", new UserMessage("保留"));
+            LogStructuredChatMemory.StoreStats stats = chatMemory.getStats();
+            Assertions.assertTrue(stats.totalBytes() < 4096 * 2);
+        }
+        try (LogStructuredChatMemory chatMemory = new LogStructuredChatMemory(tempDir.toString(), 4096, 64)) {
+            Assertions.assertEquals(1, chatMemory.get("chat-keep").size());
+            Assertions.assertTrue(chatMemory.get("chat-temp").isEmpty());
+        }
+    }
+
+    @Test
+    void failedCompactionKeepsStoreWritable() throws Exception {
+        try (LogStructuredChatMemory chatMemory = new LogStructuredChatMemory(tempDir.toString(), 4096, 64)) {
+            // 启动后再用目录占住压缩段的临时文件位置，打开临时文件失败，模拟压缩过程中的 I/O 异常
+            List<Path> blockers = new ArrayList<>();
+            for (int segmentId = 2; segmentId <= 64; segmentId++) {
+                blockers.add(Files.createDirectory(tempDir.resolve(String.format("%08d.seg.tmp", segmentId))));
+            }
+            for (int round = 0; round < 20; round++) {
+                chatMemory.add("chat-temp", new UserMessage("临时消息".repeat(50)));
+                chatMemory.clear("chat-temp");
+            }
+            // 压缩失败后活跃段和统计值不变，后续写入照常落盘
+            chatMemory.add("chat-keep", new UserMessage("保留"));
+            chatMemory.add("chat-keep", new UserMessage("继续写入"));
+            Assertions.assertEquals(2, chatMemory.get("chat-keep").size());
+            LogStructuredChatMemory.StoreStats stats = chatMemory.getStats();
+            Assertions.assertTrue(stats.totalBytes() > 4096);
+            Assertions.assertTrue(stats.liveBytes() > 0 && stats.liveBytes() <= stats.totalBytes());
+
+            for (Path blocker : blockers) {
+                Files.delete(blocker);
+            }
+            // 障碍移除后下一次提交之后重新压缩成功；压缩在提交返回后进行，再写一次确保压缩已完成
+            chatMemory.add("chat-keep", new UserMessage("触发压缩"));
+            chatMemory.add("chat-keep", new UserMessage("压缩后写入"));
+            Assertions.assertTrue(chatMemory.getStats().totalBytes() < 4096);
+            Assertions.assertEquals(4, chatMemory.get("chat-keep").size());
+        }
+        try (LogStructuredChatMemory chatMemory = new LogStructuredChatMemory(tempDir.toString(), 4096, 64)) {
+            Assertions.assertEquals(4, chatMemory.get("chat-keep").size());
+            Assertions.assertTrue(chatMemory.get("chat-temp").isEmpty());
+        }
+    }
+
+    @Test
+    void retentionBoundsAppendOnlyConversations() {
+        // 只追加不清空的会话超出保留条数后，旧记录计为无效数据，段文件和索引不会无限增长
+        try (LogStructuredChatMemory chatMemory = new LogStructuredChatMemory(tempDir.toString(), 4096, 64, 10)) {
+            for (int i = 0; i < 200; i++) {
+                chatMemory.add("chat-long", new UserMessage("消息 " + i + " " + "内容".repeat(20)));
+            }
+            List<Message> messages = chatMemory.get("chat-long");
+            Assertions.assertEquals(10, messages.size());
+            Assertions.assertTrue(messages.get(9).getText().startsWith("消息 199 "));
+            LogStructuredChatMemory.StoreStats stats = chatMemory.getStats();
+            Assertions.assertTrue(stats.totalBytes() < 4096 * 3);
+            Assertions.assertTrue(stats.liveBytes() <= stats.totalBytes());
+        }
+        try (LogStructuredChatMemory chatMemory = new LogStructuredChatMemory(tempDir.toString(), 4096, 64, 10)) {
+            List<Message> messages = chatMemory.get("chat-long");
+            Assertions.assertEquals(10, messages.size());
+            Assertions.assertTrue(messages.get(0).getText().startsWith("消息 190 "));
+        }
+    }
+
+    @Test
+    void truncateTornRecord() throws Exception {
+        try (LogStructuredChatMemory chatMemory = new LogStructuredChatMemory(tempDir.toString())) {
+            chatMemory.add("chat-1", new UserMessage("完整的消息"));
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(tempDir.resolve("00000001.seg").toFile(), "rw")) {
+            raf.seek(raf.length());
+            raf.writeInt(12345);
+            raf.writeInt(100);
+        }
+        try (LogStructuredChatMemory chatMemory = new LogStructuredChatMemory(tempDir.toString())) {
+            Assertions.assertEquals(1, chatMemory.get("chat-1").size());
+            chatMemory.add("chat-1", new UserMessage("恢复后继续写入"));
+            Assertions.assertEquals(2, chatMemory.get("chat-1").size());
+        }
+    }
+}
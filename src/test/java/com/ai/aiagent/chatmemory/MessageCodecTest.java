@@ -0,0 +1,138 @@
+package com.ai.aiagent.chatmemory;
+
+import com.esotericsoftware.kryo.io.Output;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+class MessageCodecTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final MessageCodec codec = new MessageCodec();
+
+    @Test
+    void roundTripAllMessageTypes() {
+        List<Message> messages = List.of(
+                SystemMessage.builder().text("你是恋爱大师").build(),
+                UserMessage.builder().text("你好").metadata(Map.of("source", "web", "turn", 1)).build(),
+                new AssistantMessage("", Map.of(), List.of(
+                        new AssistantMessage.ToolCall("call-1", "function", "searchWeb", "{\"query\":\"约会\"}"))),
+                new ToolResponseMessage(List.of(
+                        new ToolResponseMessage.ToolResponse("call-1", "searchWeb", "<html>".repeat(2000)))));
+        List<Message> decoded = codec.decodeAll(codec.encodeAll(messages));
+        Assertions.assertEquals(4, decoded.size());
+        Assertions.assertEquals(MessageType.SYSTEM, decoded.get(0).getMessageType());
+        Assertions.assertEquals("你好", decoded.get(1).getText());
+        Assertions.assertEquals("web", decoded.get(1).getMetadata().get("source"));
+        Assertions.assertEquals(1, decoded.get(1).getMetadata().get("turn"));
+        Assertions.assertEquals(MessageType.USER, decoded.get(1).getMetadata().get("messageType"));
+        AssistantMessage.ToolCall toolCall = ((AssistantMessage) decoded.get(2)).getToolCalls().get(0);
+        Assertions.assertEquals("searchWeb", toolCall.name());
+        Assertions.assertEquals("{\"query\":\"约会\"}", toolCall.arguments());
+        ToolResponseMessage.ToolResponse response = ((ToolResponseMessage) decoded.get(3)).getResponses().get(0);
+        Assertions.assertEquals("<html>".repeat(2000), response.responseData());
+        Assertions.assertEquals("call-1", response.id());
+    }
+
+    @Test
+    void smallerThanLegacyFormat() {
+        UserMessage message = new UserMessage("我想让另一半更爱我");
+        byte[] legacy = KryoPool.execute(kryo -> {
+            try (Output output = new Output(1024, -1)) {
+                kryo.writeClassAndObject(output, message);
+                return output.toBytes();
+            }
+        });
+        byte[] encoded = codec.encode(message);
+        Assertions.assertTrue(encoded.length * 2 < legacy.length,
+                "encoded " + encoded.length + " bytes, legacy " + legacy.length + " bytes");
+        // 大段重复内容会被压缩
+        byte[] large = codec.encode(new AssistantMessage("<div>".repeat(5000)));
+        Assertions.assertTrue(large.length < 1000);
+        Assertions.assertEquals("<div>".repeat(5000), codec.decode(large).getText());
+        // 关闭压缩时原样写入
+        byte[] uncompressed = new MessageCodec(MessageCodec.Compression.NONE, 0)
+                .encode(new AssistantMessage("<div>".repeat(5000)));
+        Assertions.assertTrue(uncompressed.length > 25000);
+        Assertions.assertEquals("<div>".repeat(5000), codec.decode(uncompressed).getText());
+    }
+
+    @Test
+    void decodeLegacyRecord() {
+        byte[] legacy = KryoPool.execute(kryo -> {
+            try (Output output = new Output(1024, -1)) {
+                kryo.writeClassAndObject(output, new AssistantMessage("旧回复"));
+                return output.toBytes();
+            }
+        });
+        Assertions.assertFalse(MessageCodec.isCurrentFormat(ByteBuffer.wrap(legacy)));
+        Assertions.assertEquals("旧回复", codec.decode(legacy).getText());
+    }
+
+    @Test
+    void legacyListWhoseSizeVarIntLooksLikeOldMagic() throws Exception {
+        // 元素类型相同的 205 条消息，Kryo 写出的长度首字节为 0xCE，与早期的 1 字节魔数相同
+        List<Message> legacyMessages = new ArrayList<>();
+        for (int i = 0; i < 205; i++) {
+            legacyMessages.add(new UserMessage("消息 " + i));
+        }
+        byte[] legacy = KryoPool.execute(kryo -> {
+            try (Output output = new Output(1024, -1)) {
+                kryo.writeObject(output, legacyMessages);
+                return output.toBytes();
+            }
+        });
+        Assertions.assertEquals((byte) 0xCE, legacy[0]);
+        Assertions.assertFalse(MessageCodec.isCurrentFormat(ByteBuffer.wrap(legacy)));
+        Assertions.assertEquals(205, codec.decodeAll(legacy).size());
+
+        Path fileDir = Files.createDirectories(tempDir.resolve("file"));
+        Files.write(fileDir.resolve("chat-205.kryo"), legacy);
+        List<Message> messages = new FileBasedChatMemory(fileDir.toString()).get("chat-205");
+        Assertions.assertEquals(205, messages.size());
+        Assertions.assertEquals("消息 203", messages.get(203).getText());
+
+        Path logDir = Files.createDirectories(tempDir.resolve("log"));
+        Files.write(logDir.resolve("chat-205.kryo"), legacy);
+        Assertions.assertEquals(205, new SegmentedLogChatMemory(logDir.toString(), 1000).get("chat-205").size());
+    }
+
+    @Test
+    void migrateLegacyConversationFile() throws Exception {
+        // 按旧版 FileBasedChatMemory 的格式写出会话文件
+        List<Message> legacyMessages = new ArrayList<>(List.of(new UserMessage("旧消息"), new AssistantMessage("旧回复")));
+        Path file = tempDir.resolve("chat-1.kryo");
+        try (Output output = new Output(new FileOutputStream(file.toFile()))) {
+            KryoPool.execute(kryo -> {
+                kryo.writeObject(output, legacyMessages);
+                return null;
+            });
+        }
+        long legacySize = Files.size(file);
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(tempDir.toString());
+        List<Message> messages = chatMemory.get("chat-1");
+        Assertions.assertEquals(2, messages.size());
+        Assertions.assertEquals("旧回复", messages.get(1).getText());
+        // 读取后已按新格式重写
+        Assertions.assertTrue(MessageCodec.isCurrentFormat(ByteBuffer.wrap(Files.readAllBytes(file))));
+        Assertions.assertTrue(Files.size(file) < legacySize);
+        chatMemory.add("chat-1", new UserMessage("新消息"));
+        Assertions.assertEquals(3, new FileBasedChatMemory(tempDir.toString()).get("chat-1").size());
+    }
+}
@@ -0,0 +1,115 @@
+package com.ai.aiagent.chatmemory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.List;
+
+class SegmentedLogChatMemoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void addAndGet() {
+        SegmentedLogChatMemory chatMemory = new SegmentedLogChatMemory(tempDir.toString());
+        chatMemory.add("chat-1", List.of(new UserMessage("你好"), new AssistantMessage("你好，我是恋爱大师")));
+        chatMemory.add("chat-1", new UserMessage("我想让另一半更爱我"));
+        List<Message> messages = chatMemory.get("chat-1");
+        Assertions.assertEquals(3, messages.size());
+        Assertions.assertEquals("你好", messages.get(0).getText());
+        Assertions.assertEquals("我想让另一半更爱我", messages.get(2).getText());
+        // 只读取尾部
+        List<Message> tail = chatMemory.get("chat-1", 1);
+        Assertions.assertEquals(1, tail.size());
+        Assertions.assertEquals("我想让另一半更爱我", tail.get(0).getText());
+    }
+
+    @Test
+    void compactKeepsLatestMessages() {
+        SegmentedLogChatMemory chatMemory = new SegmentedLogChatMemory(tempDir.toString(), 5);
+        for (int i = 0; i < 23; i++) {
+            chatMemory.add("chat-2", new UserMessage("消息" + i));
+        }
+        List<Message> messages = chatMemory.get("chat-2");
+        Assertions.assertEquals(5, messages.size());
+        Assertions.assertEquals("消息18", messages.get(0).getText());
+        Assertions.assertEquals("消息22", messages.get(4).getText());
+        // 压缩后段文件中的记录数不超过阈值
+        File indexFile = tempDir.resolve("chat-2.idx").toFile();
+        Assertions.assertTrue(indexFile.length() / Long.BYTES <= 10);
+    }
+
+    @Test
+    void compactionFailureDoesNotFailAppend() throws Exception {
+        SegmentedLogChatMemory chatMemory = new SegmentedLogChatMemory(tempDir.toString(), 5);
+        // 压缩用的临时文件路径被目录占用，压缩失败
+        File blocker = tempDir.resolve("chat-7.log.compact").toFile();
+        Assertions.assertTrue(blocker.mkdir());
+        for (int i = 0; i < 12; i++) {
+            chatMemory.add("chat-7", new UserMessage("消息" + i));
+        }
+        Assertions.assertEquals(12, tempDir.resolve("chat-7.idx").toFile().length() / Long.BYTES);
+        // 下一次 add 重新尝试压缩
+        Assertions.assertTrue(blocker.delete());
+        chatMemory.add("chat-7", new UserMessage("消息12"));
+        List<Message> messages = chatMemory.get("chat-7");
+        Assertions.assertEquals(5, messages.size());
+        Assertions.assertEquals("消息8", messages.get(0).getText());
+        Assertions.assertEquals(5, tempDir.resolve("chat-7.idx").toFile().length() / Long.BYTES);
+    }
+
+    @Test
+    void recoverFromTornWrite() throws Exception {
+        SegmentedLogChatMemory chatMemory = new SegmentedLogChatMemory(tempDir.toString());
+        chatMemory.add("chat-3", List.of(new UserMessage("第一条"), new UserMessage("第二条")));
+        // 模拟写入一半的帧：只有长度没有数据，且索引未更新
+        try (RandomAccessFile raf = new RandomAccessFile(tempDir.resolve("chat-3.log").toFile(), "rw")) {
+            raf.seek(raf.length());
+            raf.writeInt(100);
+        }
+        List<Message> messages = chatMemory.get("chat-3");
+        Assertions.assertEquals(2, messages.size());
+        chatMemory.add("chat-3", new UserMessage("第三条"));
+        Assertions.assertEquals("第三条", chatMemory.get("chat-3").get(2).getText());
+    }
+
+    @Test
+    void migrateLegacyFile() {
+        new FileBasedChatMemory(tempDir.toString())
+                .add("chat-4", List.of(new UserMessage("旧消息"), new AssistantMessage("旧回复")));
+        SegmentedLogChatMemory chatMemory = new SegmentedLogChatMemory(tempDir.toString());
+        List<Message> messages = chatMemory.get("chat-4");
+        Assertions.assertEquals(2, messages.size());
+        Assertions.assertFalse(tempDir.resolve("chat-4.kryo").toFile().exists());
+    }
+
+    @Test
+    void mappedReadMatchesStreamRead() {
+        SegmentedLogChatMemory streamMemory = new SegmentedLogChatMemory(tempDir.toString());
+        streamMemory.add("chat-6", List.of(new UserMessage("你好"), new AssistantMessage("<html>".repeat(1000))));
+        SegmentedLogChatMemory mappedMemory = new SegmentedLogChatMemory(tempDir.toString(), 200, 0);
+        List<Message> expected = streamMemory.get("chat-6");
+        List<Message> actual = mappedMemory.get("chat-6");
+        Assertions.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assertions.assertEquals(expected.get(i).getText(), actual.get(i).getText());
+        }
+        Assertions.assertEquals("<html>".repeat(1000), mappedMemory.get("chat-6", 1).get(0).getText());
+    }
+
+    @Test
+    void clear() {
+        SegmentedLogChatMemory chatMemory = new SegmentedLogChatMemory(tempDir.toString());
+        chatMemory.add("chat-5", new UserMessage("你好"));
+        chatMemory.clear("chat-5");
+        Assertions.assertTrue(chatMemory.get("chat-5").isEmpty());
+    }
+}
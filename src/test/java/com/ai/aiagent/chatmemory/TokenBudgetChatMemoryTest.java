@@ -0,0 +1,232 @@
+package com.ai.aiagent.chatmemory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.content.MediaContent;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class TokenBudgetChatMemoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void keepWindowWithinBudgetAndSummarizeEvicted() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        TokenBudgetChatMemory chatMemory = TokenBudgetChatMemory.builder(new FileBasedChatMemory(tempDir.toString()))
+                .maxTokens(30)
+                .tokenCountEstimator(new LengthTokenCountEstimator())
+                .summarizer((previousSummary, evicted) -> "摘要" + evicted.size())
+                .summaryExecutor(executor)
+                .build();
+        for (int i = 0; i < 5; i++) {
+            // 每条消息 10 个 Token
+            chatMemory.add("chat-1", new UserMessage("消息" + i + "abcdefg"));
+        }
+        executor.shutdown();
+        Assertions.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        List<Message> messages = chatMemory.get("chat-1");
+        Assertions.assertTrue(chatMemory.getWindowTokens("chat-1") <= 30);
+        // 摘要是开头的用户消息，不与应用的系统提示词叠加
+        Assertions.assertInstanceOf(UserMessage.class, messages.get(0));
+        Assertions.assertTrue(messages.get(0).getText().contains("摘要"));
+        Assertions.assertEquals("消息4abcdefg", messages.get(messages.size() - 1).getText());
+        // 底层存储仍可通过装饰链找到
+        Assertions.assertTrue(DelegatingChatMemory.find(chatMemory, FileBasedChatMemory.class).isPresent());
+    }
+
+    @Test
+    void summaryIsPersistedAndRestored() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        AtomicInteger failures = new AtomicInteger(2);
+        FileBasedChatMemory delegate = new FileBasedChatMemory(tempDir.toString());
+        TokenBudgetChatMemory chatMemory = TokenBudgetChatMemory.builder(delegate)
+                .maxTokens(30)
+                .tokenCountEstimator(new LengthTokenCountEstimator())
+                .summarizer((previousSummary, evicted) -> {
+                    // 前两次调用失败，退避后重试成功
+                    if (failures.getAndDecrement() > 0) {
+                        throw new IllegalStateException("429");
+                    }
+                    return previousSummary + "|" + evicted.size();
+                })
+                .summaryRetry(3, Duration.ofMillis(1))
+                .summaryExecutor(executor)
+                .build();
+        for (int i = 0; i < 6; i++) {
+            chatMemory.add("chat-3", new UserMessage("消息" + i + "abcdefg"));
+        }
+        executor.shutdown();
+        Assertions.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        List<Message> expected = chatMemory.get("chat-3");
+        Assertions.assertTrue(expected.get(0).getText().contains("|"));
+        // 摘要单独保存，不占用对话本身的消息
+        Assertions.assertEquals(6, delegate.get("chat-3").size());
+        Assertions.assertEquals(1, delegate.get(TokenBudgetChatMemory.summaryConversationId("chat-3", 0)).size()
+                + delegate.get(TokenBudgetChatMemory.summaryConversationId("chat-3", 1)).size());
+
+        // 新实例从底层存储重建：取最新的摘要，跳过已被摘要覆盖的消息
+        TokenBudgetChatMemory reopened = TokenBudgetChatMemory.builder(delegate)
+                .maxTokens(30)
+                .tokenCountEstimator(new LengthTokenCountEstimator())
+                .summarizer((previousSummary, evicted) -> {
+                    throw new AssertionError("nothing to summarize");
+                })
+                .build();
+        Assertions.assertEquals(expected.stream().map(Message::getText).toList(),
+                reopened.get("chat-3").stream().map(Message::getText).toList());
+        reopened.close();
+    }
+
+    @Test
+    void coveredMessagesAreMatchedBySequenceNotContent() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        AtomicBoolean failing = new AtomicBoolean(false);
+        FileBasedChatMemory delegate = new FileBasedChatMemory(tempDir.toString());
+        TokenBudgetChatMemory chatMemory = TokenBudgetChatMemory.builder(delegate)
+                .maxTokens(30)
+                .tokenCountEstimator(new LengthTokenCountEstimator())
+                .summarizer((previousSummary, evicted) -> {
+                    if (failing.get()) {
+                        throw new IllegalStateException("429");
+                    }
+                    return "摘要" + evicted.size();
+                })
+                .summaryRetry(1, Duration.ofMillis(1))
+                .summaryExecutor(executor)
+                .build();
+        // 内容完全相同的消息，摘要覆盖前两条
+        for (int i = 0; i < 4; i++) {
+            chatMemory.add("chat-6", new UserMessage("好的好的abcdef"));
+        }
+        executor.submit(() -> { }).get(5, TimeUnit.SECONDS);
+        // 摘要保存之后又写入几轮，摘要失败，没有新的摘要
+        failing.set(true);
+        for (int i = 0; i < 4; i++) {
+            chatMemory.add("chat-6", new UserMessage("好的好的abcdef"));
+        }
+        executor.shutdown();
+        Assertions.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        // 重建时只有前两条被覆盖，其余六条中超出预算的四条重新进入摘要
+        AtomicInteger resummarized = new AtomicInteger();
+        ExecutorService reopenedExecutor = Executors.newSingleThreadExecutor();
+        TokenBudgetChatMemory reopened = TokenBudgetChatMemory.builder(delegate)
+                .maxTokens(30)
+                .tokenCountEstimator(new LengthTokenCountEstimator())
+                .summarizer((previousSummary, evicted) -> {
+                    resummarized.addAndGet(evicted.size());
+                    return previousSummary;
+                })
+                .summaryExecutor(reopenedExecutor)
+                .build();
+        Assertions.assertEquals(2, reopened.get("chat-6").size() - 1);
+        reopenedExecutor.shutdown();
+        Assertions.assertTrue(reopenedExecutor.awaitTermination(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(4, resummarized.get());
+        Assertions.assertEquals(8, delegate.get("chat-6").size());
+    }
+
+    @Test
+    void clearDuringSummaryDiscardsItAndPendingIsBounded() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger maxBatch = new AtomicInteger();
+        FileBasedChatMemory delegate = new FileBasedChatMemory(tempDir.toString());
+        TokenBudgetChatMemory chatMemory = TokenBudgetChatMemory.builder(delegate)
+                .maxTokens(30)
+                .maxPendingSummary(5)
+                .tokenCountEstimator(new LengthTokenCountEstimator())
+                .summarizer((previousSummary, evicted) -> {
+                    maxBatch.accumulateAndGet(evicted.size(), Math::max);
+                    if (evicted.get(0).getText().startsWith("清空")) {
+                        started.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return "旧摘要";
+                    }
+                    throw new IllegalStateException("429");
+                })
+                .summaryRetry(1, Duration.ofMillis(1))
+                .summaryExecutor(executor)
+                .build();
+        for (int i = 0; i < 4; i++) {
+            chatMemory.add("chat-4", new UserMessage("清空" + i + "abcdefgh"));
+        }
+        Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+        chatMemory.clear("chat-4");
+        release.countDown();
+
+        // 摘要持续失败时，待摘要的消息不超过上限
+        for (int i = 0; i < 50; i++) {
+            chatMemory.add("chat-5", new UserMessage("消息" + i + "abcdefgh"));
+        }
+        executor.shutdown();
+        Assertions.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(delegate.get("chat-4").isEmpty());
+        Assertions.assertTrue(chatMemory.get("chat-4").isEmpty());
+        Assertions.assertTrue(maxBatch.get() <= 5);
+        Assertions.assertEquals(50, delegate.get("chat-5").size());
+    }
+
+    @Test
+    void rebuildWindowFromDelegate() throws Exception {
+        FileBasedChatMemory delegate = new FileBasedChatMemory(tempDir.toString());
+        for (int i = 0; i < 10; i++) {
+            delegate.add("chat-2", new UserMessage("消息" + i + "abcdefg"));
+        }
+        TokenBudgetChatMemory chatMemory = TokenBudgetChatMemory.builder(delegate)
+                .maxTokens(25)
+                .tokenCountEstimator(new LengthTokenCountEstimator())
+                .summarizer((previousSummary, evicted) -> "")
+                .build();
+        List<Message> messages = chatMemory.get("chat-2");
+        Assertions.assertEquals(2, messages.size());
+        Assertions.assertEquals("消息9abcdefg", messages.get(1).getText());
+        // 完整历史仍保留在底层存储
+        Assertions.assertEquals(10, delegate.get("chat-2").size());
+        chatMemory.close();
+    }
+
+    /**
+     * 按字符数估算 Token，便于构造确定的预算
+     */
+    private static class LengthTokenCountEstimator implements TokenCountEstimator {
+
+        @Override
+        public int estimate(String text) {
+            return text == null ? 0 : text.length();
+        }
+
+        @Override
+        public int estimate(MediaContent content) {
+            return estimate(content.getText());
+        }
+
+        @Override
+        public int estimate(Iterable<MediaContent> messages) {
+            int total = 0;
+            for (MediaContent message : messages) {
+                total += estimate(message);
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.ai.aiagent.chatmemory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class WriteBehindChatMemoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void addDoesNotWaitForSlowStore() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingChatMemory store = new BlockingChatMemory(new SegmentedLogChatMemory(tempDir.toString()), release);
+        WriteBehindChatMemory chatMemory = new WriteBehindChatMemory(store, 100, 16);
+        chatMemory.add("chat-1", new UserMessage("第一条"));
+        // 底层存储阻塞时，同一会话的后续 add 仍然立即返回
+        Thread writer = new Thread(() -> chatMemory.add("chat-1", new UserMessage("第二条")));
+        writer.start();
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+        Assertions.assertFalse(writer.isAlive());
+        Assertions.assertEquals(2, chatMemory.getStats().pendingMessages());
+        release.countDown();
+        // 读取合并底层存储与尚未落盘的消息
+        List<Message> messages = chatMemory.get("chat-1");
+        Assertions.assertEquals(2, messages.size());
+        Assertions.assertEquals("第二条", messages.get(1).getText());
+        release.countDown();
+        chatMemory.flush();
+        Assertions.assertEquals(2, store.delegate.get("chat-1").size());
+        Assertions.assertEquals(0, chatMemory.getStats().pendingMessages());
+        // 缓存层之下的写回层可以通过装饰链找到
+        Assertions.assertSame(chatMemory, DelegatingChatMemory.find(new CachingChatMemory(chatMemory), WriteBehindChatMemory.class).orElseThrow());
+        chatMemory.close();
+    }
+
+    @Test
+    void closeFlushesPendingWrites() throws Exception {
+        WriteBehindChatMemory chatMemory = new WriteBehindChatMemory(new SegmentedLogChatMemory(tempDir.toString()));
+        for (int i = 0; i < 50; i++) {
+            chatMemory.add("chat-" + (i % 5), new UserMessage("消息" + i));
+        }
+        chatMemory.close();
+        SegmentedLogChatMemory reopened = new SegmentedLogChatMemory(tempDir.toString());
+        for (int i = 0; i < 5; i++) {
+            List<Message> messages = reopened.get("chat-" + i);
+            Assertions.assertEquals(10, messages.size());
+            Assertions.assertEquals("消息" + i, messages.get(0).getText());
+            Assertions.assertEquals("消息" + (45 + i), messages.get(9).getText());
+        }
+    }
+
+    @Test
+    void backpressureWhenQueueIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingChatMemory store = new BlockingChatMemory(new SegmentedLogChatMemory(tempDir.toString()), release);
+        WriteBehindChatMemory chatMemory = new WriteBehindChatMemory(store, 2, 16);
+        chatMemory.add("chat-2", List.of(new UserMessage("a"), new UserMessage("b")));
+        Thread writer = new Thread(() -> chatMemory.add("chat-3", new UserMessage("c")));
+        writer.start();
+        // 队列已满，第二次写入需要等待刷盘
+        writer.join(200);
+        Assertions.assertTrue(writer.isAlive());
+        release.countDown();
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+        Assertions.assertFalse(writer.isAlive());
+        chatMemory.flush();
+        WriteBehindChatMemory.WriteBehindStats stats = chatMemory.getStats();
+        Assertions.assertEquals(1, stats.backpressureCount());
+        Assertions.assertEquals(3, stats.flushedMessages());
+        chatMemory.close();
+    }
+
+    @Test
+    void clearDropsPendingWrites() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingChatMemory store = new BlockingChatMemory(new SegmentedLogChatMemory(tempDir.toString()), release);
+        WriteBehindChatMemory chatMemory = new WriteBehindChatMemory(store, 100, 16);
+        chatMemory.add("chat-4", new UserMessage("x"));
+        chatMemory.add("chat-5", new UserMessage("y"));
+        chatMemory.clear("chat-5");
+        release.countDown();
+        chatMemory.flush();
+        Assertions.assertTrue(chatMemory.get("chat-5").isEmpty());
+        Assertions.assertEquals(1, chatMemory.get("chat-4").size());
+        chatMemory.close();
+    }
+
+    @Test
+    void failedFlushIsRetriedInOrder() throws Exception {
+        SegmentedLogChatMemory store = new SegmentedLogChatMemory(tempDir.toString());
+        AtomicInteger failures = new AtomicInteger(2);
+        ChatMemory failing = new BlockingChatMemory(store, new CountDownLatch(0)) {
+            @Override
+            public void add(String conversationId, List<Message> messages) {
+                if (failures.getAndDecrement() > 0) {
+                    throw new UncheckedIOException(new IOException("disk full"));
+                }
+                super.add(conversationId, messages);
+            }
+        };
+        WriteBehindChatMemory chatMemory = new WriteBehindChatMemory(failing, 100, 16);
+        chatMemory.add("chat-6", new UserMessage("a"));
+        chatMemory.add("chat-6", new UserMessage("b"));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (chatMemory.getStats().pendingMessages() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        Assertions.assertEquals(List.of("a", "b"), store.get("chat-6").stream().map(Message::getText).toList());
+        Assertions.assertEquals(2, chatMemory.getStats().failedFlushCount());
+        chatMemory.close();
+    }
+
+    @Test
+    void closeRetriesFailedFlushesBeforeGivingUp() throws Exception {
+        SegmentedLogChatMemory store = new SegmentedLogChatMemory(tempDir.toString());
+        AtomicBoolean available = new AtomicBoolean(false);
+        ChatMemory flaky = new BlockingChatMemory(store, new CountDownLatch(0)) {
+            @Override
+            public void add(String conversationId, List<Message> messages) {
+                if (!available.get() || conversationId.equals("chat-lost")) {
+                    throw new UncheckedIOException(new IOException("disk full"));
+                }
+                super.add(conversationId, messages);
+            }
+        };
+        WriteBehindChatMemory chatMemory = new WriteBehindChatMemory(flaky, 100, 16);
+        chatMemory.add("chat-7", new UserMessage("a"));
+        chatMemory.add("chat-7", new UserMessage("b"));
+        chatMemory.add("chat-lost", new UserMessage("c"));
+        Thread closer = Thread.ofPlatform().start(() -> {
+            try {
+                chatMemory.close();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        // 关闭期间底层存储恢复，已确认的写入仍然落盘
+        Thread.sleep(150);
+        available.set(true);
+        closer.join(TimeUnit.SECONDS.toMillis(10));
+        Assertions.assertFalse(closer.isAlive());
+        Assertions.assertEquals(List.of("a", "b"), store.get("chat-7").stream().map(Message::getText).toList());
+        // 一直写入失败的会话在重试用尽后丢弃，并计入统计
+        Assertions.assertTrue(store.get("chat-lost").isEmpty());
+        WriteBehindChatMemory.WriteBehindStats stats = chatMemory.getStats();
+        Assertions.assertEquals(1, stats.lostMessages());
+        Assertions.assertEquals(0, stats.pendingMessages());
+    }
+
+    @Test
+    void addsRacingWithCloseAreNotLost() throws Exception {
+        SegmentedLogChatMemory store = new SegmentedLogChatMemory(tempDir.toString());
+        WriteBehindChatMemory chatMemory = new WriteBehindChatMemory(store, 16, 16);
+        int threads = 4;
+        int messagesPerThread = 200;
+        CountDownLatch started = new CountDownLatch(threads);
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String conversationId = "chat-close-" + t;
+            writers.add(Thread.ofPlatform().start(() -> {
+                started.countDown();
+                for (int i = 0; i < messagesPerThread; i++) {
+                    chatMemory.add(conversationId, new UserMessage("消息" + i));
+                }
+            }));
+        }
+        started.await();
+        chatMemory.close();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        for (int t = 0; t < threads; t++) {
+            List<Message> messages = store.get("chat-close-" + t, messagesPerThread);
+            Assertions.assertEquals(messagesPerThread, messages.size());
+            Assertions.assertEquals("消息" + (messagesPerThread - 1), messages.get(messagesPerThread - 1).getText());
+        }
+    }
+
+    /**
+     * 在放行前阻塞写入的底层存储，模拟慢磁盘
+     */
+    private static class BlockingChatMemory implements ChatMemory {
+        private final ChatMemory delegate;
+        private final CountDownLatch release;
+
+        private BlockingChatMemory(ChatMemory delegate, CountDownLatch release) {
+            this.delegate = delegate;
+            this.release = release;
+        }
+
+        @Override
+        public void add(String conversationId, List<Message> messages) {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            delegate.add(conversationId, messages);
+        }
+
+        @Override
+        public List<Message> get(String conversationId) {
+            return delegate.get(conversationId);
+        }
+
+        @Override
+        public void clear(String conversationId) {
+            delegate.clear(conversationId);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.ai.aiagent.rag;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.MetadataMode;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.embedding.TokenCountBatchingStrategy;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.TransientAiException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+class BatchingEmbeddingModelTest {
+
+    @Test
+    void batchesRunInParallelWithinLimitAndKeepOrder() {
+        CountingEmbeddingModel delegate = new CountingEmbeddingModel(Map.of());
+        BatchingEmbeddingModel model = new BatchingEmbeddingModel(delegate, 10, 3, 3, Duration.ofMillis(1));
+        List<Document> documents = IntStream.range(0, 95)
+                .mapToObj(i -> new Document("doc-" + i, "x".repeat(i + 1), Map.of("filename", "doc.md")))
+                .toList();
+
+        List<float[]> vectors = model.embed(documents, EmbeddingOptionsBuilder.builder().build(),
+                new TokenCountBatchingStrategy());
+
+        // 按原顺序返回，计算向量的是包含元信息的格式化内容
+        Assertions.assertEquals(95, vectors.size());
+        for (int i = 0; i < vectors.size(); i++) {
+            Assertions.assertEquals(documents.get(i).getFormattedContent(MetadataMode.EMBED).length(),
+                    vectors.get(i)[0]);
+        }
+        Assertions.assertEquals(10, delegate.calls.get());
+        Assertions.assertTrue(delegate.maxBatch.get() <= 10);
+        Assertions.assertTrue(delegate.maxActive.get() <= 3);
+        Assertions.assertTrue(delegate.maxActive.get() > 1);
+        BatchingEmbeddingModel.EmbeddingStats stats = model.getStats();
+        Assertions.assertEquals(10, stats.requests());
+        Assertions.assertEquals(95, stats.embeddedTexts());
+        Assertions.assertTrue(stats.textsPerSecond() > 0);
+    }
+
+    @Test
+    void throttledRequestsAreRetriedWithBackoff() {
+        // "x" 所在的批次前两次被限流，"y" 所在的批次第一次网络异常
+        CountingEmbeddingModel delegate = new CountingEmbeddingModel(Map.of(
+                "x", new AtomicInteger(2), "y", new AtomicInteger(1)));
+        BatchingEmbeddingModel model = new BatchingEmbeddingModel(delegate, 1, 2, 3, Duration.ofMillis(5));
+
+        EmbeddingResponse response = model.call(new EmbeddingRequest(List.of("x", "y", "zz"), null));
+
+        Assertions.assertEquals(List.of(1f, 1f, 2f),
+                response.getResults().stream().map(embedding -> embedding.getOutput()[0]).toList());
+        BatchingEmbeddingModel.EmbeddingStats stats = model.getStats();
+        Assertions.assertEquals(3, stats.retries());
+        Assertions.assertEquals(2, stats.throttled());
+        Assertions.assertEquals(0, stats.failures());
+        Assertions.assertEquals(6, stats.requests());
+    }
+
+    @Test
+    void giveUpAfterMaxAttemptsAndOnNonTransientErrors() {
+        CountingEmbeddingModel delegate = new CountingEmbeddingModel(Map.of("x", new AtomicInteger(10)));
+        BatchingEmbeddingModel model = new BatchingEmbeddingModel(delegate, 1, 2, 3, Duration.ofMillis(1));
+        Assertions.assertThrows(TransientAiException.class,
+                () -> model.call(new EmbeddingRequest(List.of("x"), null)));
+        Assertions.assertEquals(3, model.getStats().requests());
+        Assertions.assertEquals(1, model.getStats().failures());
+
+        // 参数错误不重试
+        Assertions.assertThrows(NonTransientAiException.class,
+                () -> model.call(new EmbeddingRequest(List.of("bad"), null)));
+        Assertions.assertEquals(4, model.getStats().requests());
+        Assertions.assertEquals(2, model.getStats().failures());
+    }
+
+    @Test
+    void singleTextBypassesBulkPermits() throws Exception {
+        CountingEmbeddingModel delegate = new CountingEmbeddingModel(Map.of());
+        BatchingEmbeddingModel model = new BatchingEmbeddingModel(delegate, 1, 1, 3, Duration.ofMillis(1));
+        // 唯一的许可被大批量请求占着时，查询仍然可以直接发送
+        Thread bulk = Thread.ofVirtual().start(() -> model.call(new EmbeddingRequest(
+                IntStream.range(0, 50).mapToObj(i -> "x".repeat(i + 1)).toList(), null)));
+        Thread.sleep(50);
+        long start = System.nanoTime();
+        Assertions.assertEquals(3f, model.embed("abc")[0]);
+        Assertions.assertTrue(System.nanoTime() - start < Duration.ofMillis(500).toNanos());
+        Assertions.assertTrue(bulk.isAlive());
+        bulk.join();
+        Assertions.assertEquals(2, delegate.maxActive.get());
+    }
+
+    @Test
+    void throttlingReportedAsClientErrorIsRetried() {
+        // 默认的响应错误处理把 429 转换为 NonTransientAiException
+        AtomicInteger remaining = new AtomicInteger(1);
+        EmbeddingModel delegate = new CountingEmbeddingModel(Map.of()) {
+            @Override
+            public EmbeddingResponse call(EmbeddingRequest request) {
+                if (remaining.getAndDecrement() > 0) {
+                    throw new NonTransientAiException("429 - Throttling.RateQuota");
+                }
+                return super.call(request);
+            }
+        };
+        BatchingEmbeddingModel model = new BatchingEmbeddingModel(delegate, 10, 2, 3, Duration.ofMillis(1));
+        Assertions.assertEquals(2f, model.embed("ab")[0]);
+        Assertions.assertEquals(1, model.getStats().throttled());
+    }
+
+    @Test
+    void onlyThrottlingStatusOrErrorCodeCountsAsThrottling() {
+        Assertions.assertTrue(BatchingEmbeddingModel.isThrottling(new NonTransientAiException("429 - {}")));
+        Assertions.assertTrue(BatchingEmbeddingModel.isThrottling(new IllegalStateException("wrapped",
+                new TransientAiException("{\"code\":\"Throttling.RateQuota\"}"))));
+        // 请求 ID 或正文中恰好包含 429 的参数错误不是限流，也不重试
+        NonTransientAiException badRequest = new NonTransientAiException(
+                "400 - {\"code\":\"InvalidParameter\",\"request_id\":\"a429b\"}");
+        Assertions.assertFalse(BatchingEmbeddingModel.isThrottling(badRequest));
+        EmbeddingModel delegate = new CountingEmbeddingModel(Map.of()) {
+            @Override
+            public EmbeddingResponse call(EmbeddingRequest request) {
+                throw badRequest;
+            }
+        };
+        BatchingEmbeddingModel model = new BatchingEmbeddingModel(delegate, 10, 2, 3, Duration.ofMillis(1));
+        Assertions.assertThrows(NonTransientAiException.class, () -> model.embed("ab"));
+        Assertions.assertEquals(1, model.getStats().requests());
+        Assertions.assertEquals(0, model.getStats().throttled());
+    }
+
+    @Test
+    void invalidSettingsAreRejected() {
+        EmbeddingModel delegate = new CountingEmbeddingModel(Map.of());
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new BatchingEmbeddingModel(delegate, 0, 2, 3, Duration.ofMillis(1)));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new BatchingEmbeddingModel(delegate, 10, 0, 3, Duration.ofMillis(1)));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new BatchingEmbeddingModel(delegate, 10, 2, 0, Duration.ofMillis(1)));
+    }
+
+    /**
+     * 以文本长度生成向量；按文本注入指定次数的失败，统计请求数、最大批次和最大并发
+     */
+    private static class CountingEmbeddingModel implements EmbeddingModel {
+        private final Map<String, AtomicInteger> failuresByText;
+        private final AtomicInteger calls = new AtomicInteger();
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicInteger maxActive = new AtomicInteger();
+        private final AtomicInteger maxBatch = new AtomicInteger();
+
+        private CountingEmbeddingModel(Map<String, AtomicInteger> failuresByText) {
+            this.failuresByText = failuresByText;
+        }
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            calls.incrementAndGet();
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            maxBatch.accumulateAndGet(request.getInstructions().size(), Math::max);
+            try {
+                Thread.sleep(20);
+                List<Embedding> embeddings = new ArrayList<>();
+                for (String text : request.getInstructions()) {
+                    if ("bad".equals(text)) {
+                        throw new NonTransientAiException("400 invalid input");
+                    }
+                    AtomicInteger remaining = failuresByText.get(text);
+                    if (remaining != null && remaining.getAndDecrement() > 0) {
+                        throw new TransientAiException("y".equals(text)
+                                ? "Connection reset"
+                                : "429 Throttling.RateQuota: Requests rate limit exceeded");
+                    }
+                    embeddings.add(new Embedding(new float[]{text.length()}, embeddings.size()));
+                }
+                return new EmbeddingResponse(embeddings);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return new float[]{document.getText().length()};
+        }
+    }
+}
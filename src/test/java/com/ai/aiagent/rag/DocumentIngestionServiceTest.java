@@ -0,0 +1,128 @@
+package com.ai.aiagent.rag;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.UnaryOperator;
+
+class DocumentIngestionServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final AtomicInteger embedded = new AtomicInteger();
+    private DocumentIngestionService service;
+
+    @AfterEach
+    void stop() throws IOException {
+        if (service != null) {
+            service.close();
+        }
+    }
+
+    @Test
+    void changedFilesAreUpsertedAndDeletedFilesRemoved() throws Exception {
+        Path docs = tempDir.resolve("docs");
+        Files.createDirectories(docs);
+        Files.writeString(docs.resolve("a.md"), "第一段\n第二段");
+        SimpleVectorStore store = ConcurrentSimpleVectorStore.create(new LengthEmbeddingModel());
+        PersistentVectorIndex index = new PersistentVectorIndex(tempDir.resolve("index"), "test", store,
+                UnaryOperator.identity(), 10);
+        service = new DocumentIngestionService(docs, index, DocumentIngestionServiceTest::readLines,
+                Duration.ofMillis(100));
+        service.start();
+
+        // 启动时导入已有文件
+        await(() -> texts(store).size() == 2);
+        Assertions.assertEquals(2, embedded.get());
+
+        // 修改文件：只有新片段计算向量，删除的片段从向量库移除
+        Files.writeString(docs.resolve("a.md"), "第一段\n第三段");
+        await(() -> texts(store).contains("第三段") && !texts(store).contains("第二段"));
+        Assertions.assertEquals(3, embedded.get());
+
+        // 非 Markdown 文件被忽略，删除文件后其片段全部移除
+        Files.writeString(docs.resolve("notes.txt"), "忽略");
+        Files.delete(docs.resolve("a.md"));
+        await(() -> texts(store).isEmpty());
+        Assertions.assertEquals(3, embedded.get());
+        Assertions.assertEquals(0, service.getStats().failedFiles());
+    }
+
+    private static List<Document> readLines(Path file) {
+        try {
+            List<Document> documents = new ArrayList<>();
+            for (String line : Files.readAllLines(file)) {
+                documents.add(new Document(line, Map.of("filename", file.getFileName().toString())));
+            }
+            return documents;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static List<String> texts(SimpleVectorStore store) {
+        return store.similaritySearch(SearchRequest.builder().query("查询").topK(100).build())
+                .stream().map(Document::getText).toList();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 20_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                Assertions.fail("condition not met in time");
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    /**
+     * 以文本长度生成向量，并统计文档向量的计算次数
+     */
+    private class LengthEmbeddingModel implements EmbeddingModel {
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            embedded.addAndGet(request.getInstructions().size());
+            List<Embedding> embeddings = new ArrayList<>();
+            for (String text : request.getInstructions()) {
+                embeddings.add(new Embedding(new float[]{1, text.length()}, embeddings.size()));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return new float[]{1, document.getText().length()};
+        }
+
+        @Override
+        public float[] embed(String text) {
+            return new float[]{1, text.length()};
+        }
+
+        @Override
+        public int dimensions() {
+            return 2;
+        }
+    }
+}
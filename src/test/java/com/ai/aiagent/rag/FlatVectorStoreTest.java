@@ -0,0 +1,131 @@
+package com.ai.aiagent.rag;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.MetadataMode;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+class FlatVectorStoreTest {
+
+    private static final String[] STATUSES = {"单身", "恋爱", "已婚"};
+
+    @TempDir
+    Path tempDir;
+
+    private final EmbeddingModel embeddingModel = new RandomEmbeddingModel(64);
+
+    @Test
+    void resultsMatchSimpleVectorStore() {
+        List<Document> documents = documents(300);
+        FlatVectorStore flat = FlatVectorStore.builder(embeddingModel).build();
+        SimpleVectorStore simple = SimpleVectorStore.builder(embeddingModel).build();
+        flat.add(documents);
+        simple.add(documents);
+
+        for (String query : List.of("如何表白", "婚后相处", "分手以后")) {
+            SearchRequest request = SearchRequest.builder().query(query).topK(5).build();
+            Assertions.assertEquals(ids(simple.similaritySearch(request)), ids(flat.similaritySearch(request)));
+            SearchRequest filtered = SearchRequest.builder().query(query).topK(5)
+                    .filterExpression("status == '已婚' && index >= 100").build();
+            List<Document> hits = flat.similaritySearch(filtered);
+            Assertions.assertEquals(ids(simple.similaritySearch(filtered)), ids(hits));
+            hits.forEach(hit -> Assertions.assertEquals("已婚", hit.getMetadata().get("status")));
+        }
+        SearchRequest in = SearchRequest.builder().query("如何表白").topK(10)
+                .filterExpression("status in ['单身', '恋爱'] && filename != 'doc-3.md'").build();
+        Assertions.assertEquals(ids(simple.similaritySearch(in)), ids(flat.similaritySearch(in)));
+    }
+
+    @Test
+    void deleteAndReloadKeepRowsConsistent() {
+        FlatVectorStore store = FlatVectorStore.builder(embeddingModel).build();
+        List<Document> documents = documents(50);
+        store.add(documents);
+        store.delete(List.of(documents.get(0).getId(), documents.get(10).getId()));
+        Assertions.assertEquals(48, store.size());
+
+        // 用已删除文档的原文查询，不会再返回它，最后一行被移到空位后仍能被找到
+        List<Document> hits = store.similaritySearch(SearchRequest.builder().query(documents.get(0).getText()).topK(48).build());
+        Assertions.assertFalse(ids(hits).contains(documents.get(0).getId()));
+        Document last = documents.get(49);
+        Assertions.assertEquals(last.getId(), store.similaritySearch(
+                SearchRequest.builder().query(last.getFormattedContent(MetadataMode.EMBED)).topK(1).build())
+                .get(0).getId());
+
+        store.save(tempDir.resolve("store.dat").toFile());
+        FlatVectorStore reloaded = FlatVectorStore.builder(embeddingModel).build();
+        reloaded.load(tempDir.resolve("store.dat").toFile());
+        SearchRequest request = SearchRequest.builder().query("如何表白").topK(5)
+                .filterExpression("status == '恋爱'").build();
+        Assertions.assertEquals(ids(store.similaritySearch(request)), ids(reloaded.similaritySearch(request)));
+    }
+
+    static List<Document> documents(int count) {
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            documents.add(new Document("doc-" + i, "文档内容 " + i,
+                    Map.of("status", STATUSES[i % 3], "filename", "doc-" + (i % 10) + ".md", "index", i)));
+        }
+        return documents;
+    }
+
+    private static List<String> ids(List<Document> documents) {
+        return documents.stream().map(Document::getId).toList();
+    }
+
+    /**
+     * 以文本为种子生成固定的随机向量
+     */
+    static class RandomEmbeddingModel implements EmbeddingModel {
+        private final int dimensions;
+
+        RandomEmbeddingModel(int dimensions) {
+            this.dimensions = dimensions;
+        }
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            for (String text : request.getInstructions()) {
+                embeddings.add(new Embedding(embed(text), embeddings.size()));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(String text) {
+            Random random = new Random(text.hashCode());
+            float[] vector = new float[dimensions];
+            for (int i = 0; i < dimensions; i++) {
+                vector[i] = (float) random.nextGaussian();
+            }
+            return vector;
+        }
+
+        /**
+         * 与 DashScopeEmbeddingModel 一样对带 EMBED 元信息的格式化内容计算向量
+         */
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getFormattedContent(MetadataMode.EMBED));
+        }
+
+        @Override
+        public int dimensions() {
+            return dimensions;
+        }
+    }
+}
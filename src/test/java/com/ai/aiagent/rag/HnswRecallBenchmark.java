@@ -0,0 +1,84 @@
+package com.ai.aiagent.rag;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HNSW 近似检索基准测试：对比 FlatVectorStore 精确检索的耗时，并在初始化时打印 recall@10
+ *
+ * 向量按簇分布，接近真实语料；efSearch 越大召回率越高、耗时越长。
+ * 运行 main 方法执行
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HnswRecallBenchmark {
+
+    @Param({"10000"})
+    private int documentCount;
+
+    @Param({"768"})
+    private int dimensions;
+
+    @Param({"16", "64", "128"})
+    private int efSearch;
+
+    private HnswVectorStore hnswVectorStore;
+    private FlatVectorStore flatVectorStore;
+    private SearchRequest request;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        HnswVectorStoreTest.ClusteredEmbeddingModel embeddingModel =
+                new HnswVectorStoreTest.ClusteredEmbeddingModel(dimensions, 50);
+        List<Document> documents = FlatVectorStoreTest.documents(documentCount);
+        long start = System.nanoTime();
+        hnswVectorStore = HnswVectorStore.builder(embeddingModel).efSearch(efSearch).build();
+        hnswVectorStore.add(documents);
+        long buildMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        flatVectorStore = FlatVectorStore.builder(embeddingModel).build();
+        flatVectorStore.add(documents);
+        request = SearchRequest.builder().query("第一次约会应该注意什么").topK(10).build();
+        System.out.printf("%n建图耗时 %d ms，efSearch=%d，recall@10=%.3f%n", buildMillis, efSearch,
+                HnswVectorStoreTest.recall(hnswVectorStore, flatVectorStore, 10));
+    }
+
+    @Benchmark
+    public List<Document> hnswSearch() {
+        return hnswVectorStore.similaritySearch(request);
+    }
+
+    @Benchmark
+    public List<Document> exactSearch() {
+        return flatVectorStore.similaritySearch(request);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(HnswRecallBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
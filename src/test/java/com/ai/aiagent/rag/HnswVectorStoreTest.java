@@ -0,0 +1,206 @@
+package com.ai.aiagent.rag;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.MetadataMode;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.SearchRequest;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+class HnswVectorStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final EmbeddingModel embeddingModel = new ClusteredEmbeddingModel(32, 20);
+
+    @Test
+    void recallAgainstExactSearch() {
+        List<Document> documents = FlatVectorStoreTest.documents(2000);
+        HnswVectorStore hnsw = HnswVectorStore.builder(embeddingModel).build();
+        FlatVectorStore flat = FlatVectorStore.builder(embeddingModel).build();
+        hnsw.add(documents);
+        flat.add(documents);
+        Assertions.assertEquals(2000, hnsw.size());
+
+        Assertions.assertTrue(recall(hnsw, flat, 10) >= 0.95);
+    }
+
+    @Test
+    void concurrentInsertsKeepGraphSearchable() {
+        HnswVectorStore hnsw = HnswVectorStore.builder(embeddingModel).build();
+        FlatVectorStore flat = FlatVectorStore.builder(embeddingModel).build();
+        List<Document> documents = FlatVectorStoreTest.documents(1600);
+        flat.add(documents);
+        // 多个线程各自小批量写入，同时有查询
+        IntStream.range(0, 32).parallel().forEach(batch -> {
+            hnsw.add(documents.subList(batch * 50, batch * 50 + 50));
+            hnsw.similaritySearch(SearchRequest.builder().query("如何表白").topK(5).build());
+        });
+        Assertions.assertEquals(1600, hnsw.size());
+        Assertions.assertTrue(recall(hnsw, flat, 10) >= 0.9);
+    }
+
+    @Test
+    void deleteFilterAndReload() {
+        HnswVectorStore hnsw = HnswVectorStore.builder(embeddingModel).build();
+        List<Document> documents = FlatVectorStoreTest.documents(500);
+        hnsw.add(documents);
+        Document deleted = documents.get(7);
+        hnsw.delete(List.of(deleted.getId()));
+        Assertions.assertEquals(499, hnsw.size());
+        Assertions.assertFalse(ids(hnsw.similaritySearch(
+                SearchRequest.builder().query(deleted.getText()).topK(10).build())).contains(deleted.getId()));
+
+        // 只有 doc-3.md 且 index < 50 的文档满足条件，图搜索的候选不够时退回精确扫描，结果与精确查询一致
+        FlatVectorStore flat = FlatVectorStore.builder(embeddingModel).build();
+        flat.add(documents);
+        for (String query : List.of("如何表白", "婚后相处", "分手以后")) {
+            SearchRequest filtered = SearchRequest.builder().query(query).topK(10)
+                    .filterExpression("filename == 'doc-3.md' && index < 50").build();
+            List<Document> hits = hnsw.similaritySearch(filtered);
+            Assertions.assertFalse(hits.isEmpty());
+            Assertions.assertEquals(ids(flat.similaritySearch(filtered)), ids(hits));
+        }
+
+        hnsw.save(tempDir.resolve("hnsw.dat").toFile());
+        HnswVectorStore reloaded = HnswVectorStore.builder(embeddingModel).build();
+        reloaded.load(tempDir.resolve("hnsw.dat").toFile());
+        Assertions.assertEquals(499, reloaded.size());
+        for (String query : List.of("如何表白", "婚后相处", documents.get(100).getText())) {
+            SearchRequest request = SearchRequest.builder().query(query).topK(5).build();
+            Assertions.assertEquals(ids(hnsw.similaritySearch(request)), ids(reloaded.similaritySearch(request)));
+        }
+        // 加载后可以继续写入
+        reloaded.add(List.of(deleted));
+        Assertions.assertEquals(deleted.getId(), reloaded.similaritySearch(SearchRequest.builder()
+                .query(deleted.getFormattedContent(MetadataMode.EMBED)).topK(1).build()).get(0).getId());
+    }
+
+    @Test
+    void tombstonesArePurgedAndSaveRunsAlongsideInserts() {
+        HnswVectorStore hnsw = HnswVectorStore.builder(embeddingModel).build();
+        List<Document> documents = FlatVectorStoreTest.documents(1200);
+        hnsw.add(documents.subList(0, 800));
+        // 删除一半后触发重建，之后的节点数只包含存活节点
+        hnsw.delete(documents.subList(0, 400).stream().map(Document::getId).toList());
+        Assertions.assertEquals(400, hnsw.size());
+        Assertions.assertEquals(400, hnsw.exactSearch(new float[32], 1000, -1, index -> true).size());
+        FlatVectorStore flat = FlatVectorStore.builder(embeddingModel).build();
+        flat.add(documents.subList(400, 800));
+        Assertions.assertTrue(recall(hnsw, flat, 10) >= 0.9);
+
+        // 保存和写入同时进行，保存的内容是某一时刻的一致快照
+        File file = tempDir.resolve("hnsw.dat").toFile();
+        IntStream.range(0, 9).parallel().forEach(batch -> {
+            if (batch == 0) {
+                hnsw.save(file);
+            } else {
+                hnsw.add(documents.subList(750 + batch * 50, 800 + batch * 50));
+            }
+        });
+        HnswVectorStore reloaded = HnswVectorStore.builder(embeddingModel).build();
+        reloaded.load(file);
+        Assertions.assertTrue(reloaded.size() >= 400 && reloaded.size() <= 800);
+        Assertions.assertEquals(documents.get(500).getId(), reloaded.similaritySearch(SearchRequest.builder()
+                .query(documents.get(500).getFormattedContent(MetadataMode.EMBED)).topK(1).build()).get(0).getId());
+        Assertions.assertEquals(800, hnsw.size());
+    }
+
+    @Test
+    void invalidParametersAreRejected() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> HnswVectorStore.builder(embeddingModel).m(1).build());
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> HnswVectorStore.builder(embeddingModel).efConstruction(0).build());
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> HnswVectorStore.builder(embeddingModel).efSearch(0).build());
+        HnswVectorStore hnsw = HnswVectorStore.builder(embeddingModel).build();
+        Assertions.assertThrows(IllegalArgumentException.class, () -> hnsw.setEfSearch(0));
+    }
+
+    /**
+     * 与精确查询结果的平均重合比例
+     */
+    static double recall(HnswVectorStore hnsw, FlatVectorStore flat, int topK) {
+        int hits = 0;
+        int total = 0;
+        for (int i = 0; i < 50; i++) {
+            SearchRequest request = SearchRequest.builder().query("查询 " + i).topK(topK).build();
+            Set<String> expected = new HashSet<>(ids(flat.similaritySearch(request)));
+            for (String id : ids(hnsw.similaritySearch(request))) {
+                if (expected.contains(id)) {
+                    hits++;
+                }
+            }
+            total += expected.size();
+        }
+        return (double) hits / total;
+    }
+
+    private static List<String> ids(List<Document> documents) {
+        return documents.stream().map(Document::getId).toList();
+    }
+
+    /**
+     * 向量分布在若干个簇中心附近，接近真实语料按主题聚集的情况；簇和噪声都以文本为种子生成
+     */
+    static class ClusteredEmbeddingModel implements EmbeddingModel {
+        private final int dimensions;
+        private final float[][] centers;
+
+        ClusteredEmbeddingModel(int dimensions, int clusters) {
+            this.dimensions = dimensions;
+            this.centers = new float[clusters][dimensions];
+            Random random = new Random(42);
+            for (float[] center : centers) {
+                for (int i = 0; i < dimensions; i++) {
+                    center[i] = (float) random.nextGaussian();
+                }
+            }
+        }
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            for (String text : request.getInstructions()) {
+                embeddings.add(new Embedding(embed(text), embeddings.size()));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(String text) {
+            Random random = new Random(text.hashCode());
+            float[] center = centers[random.nextInt(centers.length)];
+            float[] vector = new float[dimensions];
+            for (int i = 0; i < dimensions; i++) {
+                vector[i] = center[i] + 0.5f * (float) random.nextGaussian();
+            }
+            return vector;
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getFormattedContent(MetadataMode.EMBED));
+        }
+
+        @Override
+        public int dimensions() {
+            return dimensions;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.ai.aiagent.rag;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class PersistentVectorIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final CountingEmbeddingModel embeddingModel = new CountingEmbeddingModel();
+    private final AtomicInteger enriched = new AtomicInteger();
+
+    @Test
+    void unchangedCorpusIsNotReembedded() {
+        List<Document> documents = List.of(doc("恋爱中如何沟通", "单身"), doc("婚后如何相处", "已婚"));
+        PersistentVectorIndex.SyncResult first = sync(documents, "m1").result;
+        Assertions.assertEquals(2, first.added());
+        Assertions.assertEquals(2, embeddingModel.embedded.get());
+
+        Synced second = sync(documents, "m1");
+        Assertions.assertEquals(new PersistentVectorIndex.SyncResult(0, 0, 2), second.result);
+        Assertions.assertEquals(2, embeddingModel.embedded.get());
+        Assertions.assertEquals(2, enriched.get());
+        // 从磁盘加载的索引可以直接检索，关键词元信息也保留了下来
+        List<Document> hits = second.store.similaritySearch(SearchRequest.builder().query("婚后").topK(1).build());
+        Assertions.assertEquals("婚后如何相处", hits.get(0).getText());
+        Assertions.assertEquals("kw", hits.get(0).getMetadata().get("excerpt_keywords"));
+    }
+
+    @Test
+    void onlyChangedDocumentsAreReembedded() {
+        sync(List.of(doc("恋爱中如何沟通", "单身"), doc("婚后如何相处", "已婚")), "m1");
+        Synced changed = sync(List.of(doc("恋爱中如何沟通", "单身"), doc("婚后如何相处（修订）", "已婚")), "m1");
+        Assertions.assertEquals(new PersistentVectorIndex.SyncResult(1, 1, 1), changed.result);
+        Assertions.assertEquals(3, embeddingModel.embedded.get());
+        List<Document> all = changed.store.similaritySearch(SearchRequest.builder().query("x").topK(10).build());
+        Assertions.assertEquals(2, all.size());
+
+        // 嵌入模型变化后全部重建
+        Assertions.assertEquals(2, sync(List.of(doc("恋爱中如何沟通", "单身"), doc("婚后如何相处（修订）", "已婚")),
+                "m2").result.added());
+    }
+
+    private Synced sync(List<Document> documents, String fingerprint) {
+        SimpleVectorStore store = ConcurrentSimpleVectorStore.create(embeddingModel);
+        // 每次模拟重新启动：加载器重新读取的文档带有新的随机 ID
+        List<Document> copies = documents.stream()
+                .map(d -> new Document(d.getText(), d.getMetadata()))
+                .toList();
+        PersistentVectorIndex.SyncResult result = newIndex(store, fingerprint).sync("classpath:document", copies);
+        return new Synced(store, result);
+    }
+
+    private PersistentVectorIndex newIndex(SimpleVectorStore store, String fingerprint) {
+        return new PersistentVectorIndex(tempDir, fingerprint, store, added -> {
+            enriched.addAndGet(added.size());
+            added.forEach(d -> d.getMetadata().put("excerpt_keywords", "kw"));
+            return added;
+        }, 1);
+    }
+
+    @Test
+    void sourcesAreSyncedIndependently() {
+        SimpleVectorStore store = ConcurrentSimpleVectorStore.create(embeddingModel);
+        PersistentVectorIndex index = newIndex(store, "m1");
+        Document shared = doc("恋爱中如何沟通", "单身");
+        index.sync("classpath:document", List.of(shared));
+        Assertions.assertEquals(new PersistentVectorIndex.SyncResult(1, 0, 1),
+                index.sync("file:a.md", List.of(shared, doc("婚后如何相处", "已婚"))));
+        // 删除一个来源不影响另一个来源引用的相同文档
+        Assertions.assertEquals(new PersistentVectorIndex.SyncResult(0, 1, 0), index.sync("file:a.md", List.of()));
+        List<Document> all = store.similaritySearch(SearchRequest.builder().query("x").topK(10).build());
+        Assertions.assertEquals(List.of("恋爱中如何沟通"), all.stream().map(Document::getText).toList());
+
+        PersistentVectorIndex reopened = newIndex(ConcurrentSimpleVectorStore.create(embeddingModel), "m1");
+        Assertions.assertEquals(Set.of("classpath:document"), reopened.getSources());
+    }
+
+    private static Document doc(String text, String status) {
+        return new Document(text, Map.of("filename", status + ".md", "status", status));
+    }
+
+    private record Synced(SimpleVectorStore store, PersistentVectorIndex.SyncResult result) {
+    }
+
+    /**
+     * 按文本中是否包含“婚”生成二维向量，并统计计算次数
+     */
+    private static class CountingEmbeddingModel implements EmbeddingModel {
+        private final AtomicInteger embedded = new AtomicInteger();
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            for (String text : request.getInstructions()) {
+                embeddings.add(new Embedding(vector(text), embeddings.size()));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return vector(document.getText());
+        }
+
+        @Override
+        public int dimensions() {
+            return 2;
+        }
+
+        private float[] vector(String text) {
+            if (!"x".equals(text) && !"婚后".equals(text)) {
+                embedded.incrementAndGet();
+            }
+            return text.contains("婚") ? new float[]{1, 0.1f} : new float[]{0.1f, 1};
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.ai.aiagent.rag;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 向量检索基准测试：对比 SimpleVectorStore 与 FlatVectorStore
+ *
+ * 与 QuestionAnswerAdvisor 的用法一致，每次查询 topK=4；查询向量由固定的随机嵌入模型生成，不计入网络耗时。
+ * 运行 main 方法执行
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VectorStoreSearchBenchmark {
+
+    @Param({"1000", "10000"})
+    private int documentCount;
+
+    @Param({"1536"})
+    private int dimensions;
+
+    private SimpleVectorStore simpleVectorStore;
+    private FlatVectorStore flatVectorStore;
+    private SearchRequest request;
+    private SearchRequest filteredRequest;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        FlatVectorStoreTest.RandomEmbeddingModel embeddingModel = new FlatVectorStoreTest.RandomEmbeddingModel(dimensions);
+        List<Document> documents = FlatVectorStoreTest.documents(documentCount);
+        simpleVectorStore = SimpleVectorStore.builder(embeddingModel).build();
+        simpleVectorStore.add(documents);
+        flatVectorStore = FlatVectorStore.builder(embeddingModel).build();
+        flatVectorStore.add(documents);
+        request = SearchRequest.builder().query("第一次约会应该注意什么").topK(4).build();
+        filteredRequest = SearchRequest.builder().query("第一次约会应该注意什么").topK(4)
+                .filterExpression("status == '单身'").build();
+    }
+
+    @Benchmark
+    public List<Document> simpleSearch() {
+        return simpleVectorStore.similaritySearch(request);
+    }
+
+    @Benchmark
+    public List<Document> flatSearch() {
+        return flatVectorStore.similaritySearch(request);
+    }
+
+    @Benchmark
+    public List<Document> simpleFilteredSearch() {
+        return simpleVectorStore.similaritySearch(filteredRequest);
+    }
+
+    @Benchmark
+    public List<Document> flatFilteredSearch() {
+        return flatVectorStore.similaritySearch(filteredRequest);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(VectorStoreSearchBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,275 @@
+package com.ai.aiagent.tools;
+
+import cn.hutool.json.JSONUtil;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class DownloadEngineTest {
+
+    private static final byte[] CONTENT = new byte[300_000];
+
+    static {
+        for (int i = 0; i < CONTENT.length; i++) {
+            CONTENT[i] = (byte) (i * 31);
+        }
+    }
+
+    @TempDir
+    Path tempDir;
+
+    private HttpServer server;
+    private String baseUrl;
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private volatile String lastRange;
+    private volatile String lastIfRange;
+    private volatile String lastIfNoneMatch;
+    // /file.bin 当前版本的 ETag
+    private volatile String etag = "\"v1\"";
+    // /slow.bin 的请求到达后等待放行
+    private final Semaphore slowArrived = new Semaphore(0);
+    private volatile CountDownLatch slowRelease = new CountDownLatch(1);
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        // 支持 Range 请求的文件服务
+        server.createContext("/file.bin", exchange -> {
+            requestCount.incrementAndGet();
+            lastRange = exchange.getRequestHeaders().getFirst("Range");
+            lastIfRange = exchange.getRequestHeaders().getFirst("If-Range");
+            lastIfNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+            exchange.getResponseHeaders().add("ETag", etag);
+            if (etag.equals(lastIfNoneMatch)) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            int start = 0;
+            int status = 200;
+            // If-Range 与当前版本不一致时忽略 Range，返回完整内容
+            boolean unchanged = lastIfRange == null || lastIfRange.equals(etag);
+            if (lastRange != null && lastRange.startsWith("bytes=") && unchanged) {
+                start = Integer.parseInt(lastRange.substring(6, lastRange.indexOf('-')));
+                if (start >= CONTENT.length) {
+                    exchange.sendResponseHeaders(416, -1);
+                    exchange.close();
+                    return;
+                }
+                status = 206;
+                exchange.getResponseHeaders().add("Content-Range",
+                        "bytes " + start + "-" + (CONTENT.length - 1) + "/" + CONTENT.length);
+            }
+            exchange.sendResponseHeaders(status, CONTENT.length - start);
+            exchange.getResponseBody().write(CONTENT, start, CONTENT.length - start);
+            exchange.close();
+        });
+        server.createContext("/slow.bin", exchange -> {
+            exchange.getResponseHeaders().add("ETag", "\"slow\"");
+            // 条件请求直接返回 304，不等待放行
+            if (exchange.getRequestHeaders().containsKey("If-None-Match")) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            slowArrived.release();
+            try {
+                slowRelease.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, 10);
+            exchange.getResponseBody().write(CONTENT, 0, 10);
+            exchange.close();
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void downloadThenReuseAfterRevalidation() throws Exception {
+        DownloadEngine engine = new DownloadEngine(OutboundHttpClient.getDefault(), tempDir, 1024 * 1024, 2);
+        DownloadEngine.DownloadResult first = engine.download(baseUrl + "/file.bin", "a.bin");
+        Assertions.assertFalse(first.reused());
+        Assertions.assertEquals(CONTENT.length, first.size());
+        Assertions.assertArrayEquals(CONTENT, Files.readAllBytes(first.path()));
+        Assertions.assertEquals(sha256(CONTENT), first.sha256());
+        Assertions.assertFalse(Files.exists(tempDir.resolve("a.bin.part")));
+
+        // 索引持久化，新实例也能复用：带上 If-None-Match，服务器返回 304
+        DownloadEngine reopened = new DownloadEngine(OutboundHttpClient.getDefault(), tempDir, 1024 * 1024, 2);
+        DownloadEngine.DownloadResult second = reopened.download(baseUrl + "/file.bin", "b.bin");
+        Assertions.assertTrue(second.reused());
+        Assertions.assertEquals(2, requestCount.get());
+        Assertions.assertEquals("\"v1\"", lastIfNoneMatch);
+        Assertions.assertArrayEquals(CONTENT, Files.readAllBytes(tempDir.resolve("b.bin")));
+    }
+
+    @Test
+    void changedResourceIsDownloadedAgain() throws Exception {
+        DownloadEngine engine = new DownloadEngine(OutboundHttpClient.getDefault(), tempDir, 1024 * 1024, 2);
+        engine.download(baseUrl + "/file.bin", "l.bin");
+        // 服务器上的版本已变化，条件请求返回完整内容，按新版本重新下载
+        etag = "\"v2\"";
+        DownloadEngine.DownloadResult changed = engine.download(baseUrl + "/file.bin", "l.bin");
+        Assertions.assertFalse(changed.reused());
+        Assertions.assertEquals("\"v1\"", lastIfNoneMatch);
+        Assertions.assertArrayEquals(CONTENT, Files.readAllBytes(changed.path()));
+
+        // 索引记录了新版本的 ETag
+        Assertions.assertTrue(engine.download(baseUrl + "/file.bin", "l.bin").reused());
+        Assertions.assertEquals("\"v2\"", lastIfNoneMatch);
+        Assertions.assertEquals(3, requestCount.get());
+    }
+
+    @Test
+    void resumeFromPartialFile() throws Exception {
+        writePart("c.bin", baseUrl + "/file.bin", "\"v1\"");
+        DownloadEngine engine = new DownloadEngine(OutboundHttpClient.getDefault(), tempDir, 1024 * 1024, 2);
+        DownloadEngine.DownloadResult result = engine.download(baseUrl + "/file.bin", "c.bin");
+        Assertions.assertTrue(result.resumed());
+        Assertions.assertEquals("bytes=100000-", lastRange);
+        Assertions.assertEquals("\"v1\"", lastIfRange);
+        Assertions.assertArrayEquals(CONTENT, Files.readAllBytes(result.path()));
+        Assertions.assertEquals(sha256(CONTENT), result.sha256());
+        Assertions.assertFalse(Files.exists(tempDir.resolve("c.bin.part.meta")));
+    }
+
+    @Test
+    void partFromOtherUrlOrVersionIsDiscarded() throws Exception {
+        DownloadEngine engine = new DownloadEngine(OutboundHttpClient.getDefault(), tempDir, 1024 * 1024, 2);
+        // 同名文件来自另一个 URL：不发 Range，从头下载
+        writePart("h.bin", baseUrl + "/other.bin", "\"v1\"");
+        DownloadEngine.DownloadResult otherUrl = engine.download(baseUrl + "/file.bin", "h.bin");
+        Assertions.assertFalse(otherUrl.resumed());
+        Assertions.assertNull(lastRange);
+        Assertions.assertArrayEquals(CONTENT, Files.readAllBytes(otherUrl.path()));
+
+        // 没有元数据的 .part 无法确认来源
+        Files.write(tempDir.resolve("i.bin.part"), new byte[100_000]);
+        Assertions.assertFalse(engine.download(baseUrl + "/file.bin?i", "i.bin").resumed());
+        Assertions.assertNull(lastRange);
+
+        // 资源已变化：If-Range 不匹配，服务器返回完整内容
+        etag = "\"v2\"";
+        writePart("j.bin", baseUrl + "/file.bin?j", "\"v1\"");
+        Files.write(tempDir.resolve("j.bin.part"), new byte[100_000]);
+        DownloadEngine.DownloadResult changed = engine.download(baseUrl + "/file.bin?j", "j.bin");
+        Assertions.assertFalse(changed.resumed());
+        Assertions.assertEquals("\"v1\"", lastIfRange);
+        Assertions.assertArrayEquals(CONTENT, Files.readAllBytes(changed.path()));
+    }
+
+    @Test
+    void refetchReturnsHostPermitFirst() throws Exception {
+        // 每个主机只有一个名额：重新下载前必须先归还 416 响应占用的名额
+        OutboundHttpClient client = OutboundHttpClient.builder()
+                .maxConcurrentPerHost(1)
+                .permitTimeout(Duration.ofMillis(500))
+                .build();
+        DownloadEngine engine = new DownloadEngine(client, tempDir, 1024 * 1024, 2);
+        writePart("k.bin", baseUrl + "/file.bin?k", etag);
+        Files.write(tempDir.resolve("k.bin.part"), new byte[CONTENT.length + 10]);
+        DownloadEngine.DownloadResult result = engine.download(baseUrl + "/file.bin?k", "k.bin");
+        Assertions.assertFalse(result.resumed());
+        Assertions.assertArrayEquals(CONTENT, Files.readAllBytes(result.path()));
+        Assertions.assertEquals(0, client.getStats().get("127.0.0.1").inFlight());
+        client.close();
+    }
+
+    /**
+     * 模拟中断的下载：前 100000 字节和记录来源的元数据
+     */
+    private void writePart(String fileName, String url, String partETag) throws IOException {
+        Files.write(tempDir.resolve(fileName + ".part"), Arrays.copyOf(CONTENT, 100_000));
+        Files.writeString(tempDir.resolve(fileName + ".part.meta"),
+                JSONUtil.createObj().set("url", url).set("etag", partETag).toString());
+    }
+
+    @Test
+    void rejectOversizedResource() {
+        DownloadEngine engine = new DownloadEngine(OutboundHttpClient.getDefault(), tempDir, 1000, 2);
+        Assertions.assertThrows(IOException.class, () -> engine.download(baseUrl + "/file.bin", "d.bin"));
+        Assertions.assertFalse(Files.exists(tempDir.resolve("d.bin")));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> engine.download(baseUrl + "/file.bin", ".."));
+    }
+
+    @Test
+    void interruptWhileWaitingForFileLockReleasesPermit() throws Exception {
+        DownloadEngine engine = new DownloadEngine(OutboundHttpClient.getDefault(), tempDir, 1024 * 1024, 2);
+        Thread holder = Thread.ofVirtual().start(() -> {
+            try {
+                engine.download(baseUrl + "/slow.bin", "e.bin");
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Assertions.assertTrue(slowArrived.tryAcquire(5, TimeUnit.SECONDS));
+        // 同一文件的第二个下载拿到许可后等待文件锁，此时被中断
+        AtomicInteger interrupted = new AtomicInteger();
+        Thread waiter = Thread.ofVirtual().start(() -> {
+            try {
+                engine.download(baseUrl + "/slow.bin", "e.bin");
+            } catch (InterruptedException e) {
+                interrupted.incrementAndGet();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(100);
+        waiter.interrupt();
+        waiter.join(5000);
+        Assertions.assertEquals(1, interrupted.get());
+        slowRelease.countDown();
+        holder.join(5000);
+
+        Assertions.assertFalse(holder.isAlive());
+
+        // 两个许可都已归还：一个下载停在服务端时，另一个许可仍可用于复用已下载的文件
+        slowRelease = new CountDownLatch(1);
+        Thread second = Thread.ofVirtual().start(() -> downloadQuietly(engine, "/slow.bin?again", "f.bin"));
+        Assertions.assertTrue(slowArrived.tryAcquire(5, TimeUnit.SECONDS));
+        Thread reuse = Thread.ofVirtual().start(() -> downloadQuietly(engine, "/slow.bin", "g.bin"));
+        reuse.join(5000);
+        Assertions.assertFalse(reuse.isAlive());
+        Assertions.assertTrue(Files.exists(tempDir.resolve("g.bin")));
+        slowRelease.countDown();
+        second.join(5000);
+        Assertions.assertTrue(Files.exists(tempDir.resolve("f.bin")));
+    }
+
+    private void downloadQuietly(DownloadEngine engine, String path, String fileName) {
+        try {
+            engine.download(baseUrl + path, fileName);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String sha256(byte[] bytes) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+    }
+}
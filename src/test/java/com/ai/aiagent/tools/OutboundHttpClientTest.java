@@ -0,0 +1,157 @@
+package com.ai.aiagent.tools;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class OutboundHttpClientTest {
+
+    private HttpServer server;
+    private String baseUrl;
+    private final AtomicInteger concurrent = new AtomicInteger();
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/slow", exchange -> {
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ignored) {
+            }
+            concurrent.decrementAndGet();
+            byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.createContext("/page", exchange -> {
+            byte[] body = "<html><body><p>约会地点</p></body></html>".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.createContext("/stall", exchange -> {
+            // 发送响应头和一部分数据后停止发送
+            exchange.sendResponseHeaders(200, 0);
+            exchange.getResponseBody().write("partial".getBytes(StandardCharsets.UTF_8));
+            exchange.getResponseBody().flush();
+            try {
+                Thread.sleep(5000);
+            } catch (InterruptedException ignored) {
+            }
+            exchange.close();
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void limitsConcurrentRequestsPerHost() throws Exception {
+        OutboundHttpClient client = OutboundHttpClient.builder().maxConcurrentPerHost(2).build();
+        List<Future<String>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 6; i++) {
+                futures.add(executor.submit(() -> {
+                    HttpRequest request = client.newRequest(baseUrl + "/slow").GET().build();
+                    return client.sendForString(request).body();
+                }));
+            }
+            for (Future<String> future : futures) {
+                Assertions.assertEquals("ok", future.get());
+            }
+        }
+        Assertions.assertTrue(maxConcurrent.get() <= 2);
+        OutboundHttpClient.HostStats stats = client.getStats().get("127.0.0.1");
+        Assertions.assertEquals(6, stats.requestCount());
+        Assertions.assertEquals(0, stats.failureCount());
+        Assertions.assertTrue(stats.throttledCount() > 0);
+        Assertions.assertEquals(0, stats.inFlight());
+        Assertions.assertTrue(stats.maxLatencyMillis() >= 100);
+    }
+
+    @Test
+    void scrapingToolUsesSharedClient() {
+        OutboundHttpClient client = OutboundHttpClient.builder().build();
+        WebScrapingTool tool = new WebScrapingTool(client);
+        Assertions.assertTrue(tool.scrapeWebPage(baseUrl + "/page").contains("约会地点"));
+        Assertions.assertTrue(tool.scrapeWebPage(baseUrl + "/missing").startsWith("Error scraping web page: HTTP 404"));
+        OutboundHttpClient.HostStats stats = client.getStats().get("127.0.0.1");
+        Assertions.assertEquals(2, stats.requestCount());
+        Assertions.assertEquals(1, stats.failureCount());
+        // 工具关闭响应体后名额已归还
+        Assertions.assertEquals(0, stats.inFlight());
+    }
+
+    @Test
+    void stalledStreamingBodyTimesOut() throws Exception {
+        OutboundHttpClient client = OutboundHttpClient.builder()
+                .readTimeout(Duration.ofMillis(200))
+                .build();
+        HttpRequest request = client.newRequest(baseUrl + "/stall").GET().build();
+        HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        long start = System.nanoTime();
+        try (InputStream body = response.body()) {
+            Assertions.assertThrows(HttpTimeoutException.class, body::readAllBytes);
+        }
+        Assertions.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(3));
+        // 超时不会在调用线程上留下中断标记，名额已归还
+        Assertions.assertFalse(Thread.currentThread().isInterrupted());
+        Assertions.assertEquals(0, client.getStats().get("127.0.0.1").inFlight());
+        // 正常的流式响应不受影响
+        HttpResponse<InputStream> page = client.send(client.newRequest(baseUrl + "/page").GET().build(),
+                HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream body = page.body()) {
+            Assertions.assertTrue(new String(body.readAllBytes(), StandardCharsets.UTF_8).contains("约会地点"));
+        }
+        client.close();
+    }
+
+    @Test
+    void streamingBodyHoldsPermitUntilClosed() throws Exception {
+        OutboundHttpClient client = OutboundHttpClient.builder()
+                .maxConcurrentPerHost(1)
+                .permitTimeout(Duration.ofMillis(200))
+                .build();
+        HttpRequest request = client.newRequest(baseUrl + "/page").GET().build();
+        HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        Assertions.assertEquals(1, client.getStats().get("127.0.0.1").inFlight());
+        // 响应体未关闭时仍占用该主机唯一的名额
+        Assertions.assertThrows(IOException.class, () -> client.sendForString(request));
+        try (InputStream body = response.body()) {
+            Assertions.assertTrue(new String(body.readAllBytes(), StandardCharsets.UTF_8).contains("约会地点"));
+        }
+        response.body().close();
+        Assertions.assertEquals(0, client.getStats().get("127.0.0.1").inFlight());
+        Assertions.assertEquals(200, client.sendForString(request).statusCode());
+
+        client.close();
+        Assertions.assertThrows(IOException.class, () -> client.sendForString(request));
+    }
+}
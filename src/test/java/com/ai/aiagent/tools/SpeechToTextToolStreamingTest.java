@@ -0,0 +1,167 @@
+package com.ai.aiagent.tools;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+class SpeechToTextToolStreamingTest {
+
+    @TempDir
+    Path tempDir;
+
+    private HttpServer server;
+    private String url;
+    // /hang 的请求等待放行
+    private final CountDownLatch hangRelease = new CountDownLatch(1);
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        // 校验签名和音频段，返回段内第一个采样值作为识别结果
+        server.createContext("/asr", exchange -> {
+            String form = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            Map<String, String> params = new HashMap<>();
+            for (String pair : form.split("&")) {
+                String[] kv = pair.split("=", 2);
+                params.put(kv[0], URLDecoder.decode(kv[1], StandardCharsets.UTF_8));
+            }
+            String q = params.get("q");
+            String expectedSign = sha256("key" + truncate(q) + params.get("salt") + params.get("curtime") + "secret");
+            ByteBuffer wav = ByteBuffer.wrap(Base64.getDecoder().decode(q)).order(ByteOrder.LITTLE_ENDIAN);
+            String body;
+            if (!expectedSign.equals(params.get("sign")) || wav.getInt(0) != 0x46464952
+                    || wav.getInt(40) != wav.capacity() - 44 || !"8000".equals(params.get("rate"))) {
+                body = "{\"errorCode\":\"108\"}";
+            } else {
+                body = "{\"errorCode\":\"0\",\"result\":[\"[" + wav.getShort(44) + "]\"]}";
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            exchange.getResponseBody().write(bytes);
+            exchange.close();
+        });
+        server.createContext("/hang", exchange -> {
+            try {
+                hangRelease.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/asr";
+    }
+
+    @AfterEach
+    void stopServer() {
+        hangRelease.countDown();
+        server.stop(0);
+    }
+
+    @Test
+    void longRecordingIsSplitAndJoinedInOrder() throws Exception {
+        // 8kHz 单声道 16 位，2.5 秒，每秒第一个采样值为秒数
+        int samples = 20000;
+        ByteBuffer pcm = ByteBuffer.allocate(samples * 2).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < samples; i++) {
+            pcm.putShort((short) (i % 8000 == 0 ? i / 8000 : 100 + i % 50));
+        }
+        Path wav = tempDir.resolve("long.wav");
+        Files.write(wav, wav(pcm.array(), 8000));
+
+        SpeechToTextTool tool = new SpeechToTextTool("key", "secret", OutboundHttpClient.getDefault(), url, 1, 2);
+        Assertions.assertEquals("[0][1][2]", tool.convertSpeechToText(wav.toString(), "zh-CHS"));
+    }
+
+    @Test
+    void failuresAndInterruptsPropagate() throws Exception {
+        Path wav = tempDir.resolve("short.wav");
+        Files.write(wav, wav(new byte[16000 * 2], 8000));
+        // 签名错误，识别失败时抛出异常，工具方法返回错误提示
+        SpeechToTextTool wrongSecret = new SpeechToTextTool("key", "wrong", OutboundHttpClient.getDefault(), url, 1, 2);
+        Assertions.assertThrows(IOException.class, () -> wrongSecret.transcribeFile(wav, "zh-CHS"));
+        Assertions.assertTrue(wrongSecret.convertSpeechToText(wav.toString(), "zh-CHS")
+                .startsWith("Error converting speech to text"));
+
+        // 线程被中断时立即返回，不等待仍在识别的段
+        String hangUrl = url.replace("/asr", "/hang");
+        SpeechToTextTool hanging = new SpeechToTextTool("key", "secret", OutboundHttpClient.getDefault(), hangUrl, 1, 2);
+        FutureTask<String> task = new FutureTask<>(() -> hanging.transcribeFile(wav, "zh-CHS"));
+        Thread thread = Thread.ofVirtual().start(task);
+        Thread.sleep(200);
+        long start = System.nanoTime();
+        thread.interrupt();
+        ExecutionException e = Assertions.assertThrows(ExecutionException.class, () -> task.get(5, TimeUnit.SECONDS));
+        Assertions.assertInstanceOf(InterruptedException.class, e.getCause());
+        Assertions.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+    }
+
+    @Test
+    void streamingEncodingMatchesUrlEncodedBase64() throws Exception {
+        Random random = new Random(7);
+        for (int size : new int[]{0, 1, 2, 3, 15, 16, 12287, 12288, 12289, 50000}) {
+            byte[] data = new byte[size];
+            random.nextBytes(data);
+            String expected = URLEncoder.encode(Base64.getEncoder().encodeToString(data), StandardCharsets.UTF_8);
+            try (var in = new SpeechToTextTool.UrlEncodedBase64InputStream(new ByteArrayInputStream(data))) {
+                Assertions.assertEquals(expected, new String(in.readAllBytes(), StandardCharsets.US_ASCII));
+            }
+            Path file = tempDir.resolve("raw" + size + ".bin");
+            Files.write(file, data);
+            AudioSegments.Segment segment = AudioSegments.split(file, 50).get(0);
+            Assertions.assertEquals(truncate(Base64.getEncoder().encodeToString(data)),
+                    SpeechToTextTool.truncatedBase64(segment));
+        }
+    }
+
+    private static byte[] wav(byte[] pcm, int sampleRate) {
+        ByteBuffer buffer = ByteBuffer.allocate(44 + pcm.length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put("RIFF".getBytes(StandardCharsets.US_ASCII)).putInt(36 + pcm.length)
+                .put("WAVE".getBytes(StandardCharsets.US_ASCII));
+        buffer.put("fmt ".getBytes(StandardCharsets.US_ASCII)).putInt(16).putShort((short) 1).putShort((short) 1)
+                .putInt(sampleRate).putInt(sampleRate * 2).putShort((short) 2).putShort((short) 16);
+        buffer.put("data".getBytes(StandardCharsets.US_ASCII)).putInt(pcm.length).put(pcm);
+        return buffer.array();
+    }
+
+    private static String truncate(String q) {
+        int len = q.length();
+        return len <= 20 ? q : (q.substring(0, 10) + len + q.substring(len - 10, len));
+    }
+
+    private static String sha256(String text) {
+        try {
+            return HexFormat.of().withUpperCase()
+                    .formatHex(MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.ai.aiagent.tools;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.support.ToolCallbacks;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.ai.tool.annotation.ToolParam;
+import org.springframework.ai.tool.function.FunctionToolCallback;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ToolResultCacheTest {
+
+    static class CountingSearchTool {
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Tool(description = "search")
+        public String searchWeb(@ToolParam(description = "query") String query) {
+            calls.incrementAndGet();
+            return query.startsWith("fail") ? "Error searching Baidu: timeout" : "结果: " + query;
+        }
+
+        @Tool(description = "not cached")
+        public String doTerminate() {
+            calls.incrementAndGet();
+            return "done";
+        }
+    }
+
+    @Test
+    void cachesByNormalizedArguments() {
+        CountingSearchTool tool = new CountingSearchTool();
+        ToolResultCache cache = ToolResultCache.builder()
+                .ttl("searchWeb", Duration.ofMinutes(1), WebSearchTool::isCacheableResult)
+                .build();
+        ToolCallback[] callbacks = cache.wrap(ToolCallbacks.from(tool));
+        ToolCallback search = callbacks[0].getToolDefinition().name().equals("searchWeb") ? callbacks[0] : callbacks[1];
+
+        Assertions.assertEquals("\"结果: 约会\"", search.call("{\"query\":\"约会\"}"));
+        // 空白和首尾空格不同的参数命中同一条缓存
+        Assertions.assertEquals("\"结果: 约会\"", search.call("{ \"query\" : \" 约会 \" }"));
+        Assertions.assertEquals(1, tool.calls.get());
+        // 错误结果不缓存
+        search.call("{\"query\":\"fail\"}");
+        search.call("{\"query\":\"fail\"}");
+        Assertions.assertEquals(3, tool.calls.get());
+
+        ToolResultCache.ToolStats stats = cache.getStats().tools().get("searchWeb");
+        Assertions.assertEquals(1, stats.hitCount());
+        Assertions.assertEquals(3, stats.missCount());
+        Assertions.assertEquals(1, cache.getStats().entryCount());
+    }
+
+    @Test
+    void expiresAndEvicts() throws Exception {
+        CountingSearchTool tool = new CountingSearchTool();
+        ToolResultCache cache = ToolResultCache.builder()
+                .ttl("searchWeb", Duration.ofMillis(50))
+                .maxEntries(2)
+                .build();
+        ToolCallback search = null;
+        for (ToolCallback callback : cache.wrap(ToolCallbacks.from(tool))) {
+            if (callback.getToolDefinition().name().equals("searchWeb")) {
+                search = callback;
+            } else {
+                // 未配置过期时间的工具不包装
+                Assertions.assertTrue(callback.getClass().getName().startsWith("org.springframework.ai"));
+            }
+        }
+        search.call("{\"query\":\"a\"}");
+        search.call("{\"query\":\"b\"}");
+        search.call("{\"query\":\"c\"}");
+        Assertions.assertEquals(2, cache.getStats().entryCount());
+        Assertions.assertEquals(1, cache.getStats().evictionCount());
+
+        Thread.sleep(100);
+        search.call("{\"query\":\"c\"}");
+        Assertions.assertEquals(4, tool.calls.get());
+    }
+
+    @Test
+    void followersReExecuteWhenLeaderResultIsNotCacheable() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        ToolCallback slow = FunctionToolCallback.builder("searchWeb", (String query) -> {
+                    if (calls.incrementAndGet() == 1) {
+                        started.countDown();
+                        awaitQuietly(release);
+                        return "Error searching Baidu: timeout";
+                    }
+                    return "结果: " + query;
+                })
+                .description("search")
+                .inputType(String.class)
+                .build();
+        ToolResultCache cache = ToolResultCache.builder()
+                .ttl("searchWeb", Duration.ofMinutes(1), WebSearchTool::isCacheableResult)
+                .build();
+        ToolCallback search = cache.wrap(slow)[0];
+
+        FutureTask<String> leader = new FutureTask<>(() -> search.call("\"约会\""));
+        Thread.ofVirtual().start(leader);
+        started.await();
+        // 等待中的调用可以被中断
+        FutureTask<String> interrupted = new FutureTask<>(() -> search.call("\"约会\""));
+        Thread waiter = Thread.ofVirtual().start(interrupted);
+        FutureTask<String> follower = new FutureTask<>(() -> search.call("\"约会\""));
+        Thread.ofVirtual().start(follower);
+        Thread.sleep(100);
+        waiter.interrupt();
+        Assertions.assertThrows(ExecutionException.class, () -> interrupted.get(5, TimeUnit.SECONDS));
+
+        // 领头调用出错，等待的调用不共享错误结果，重新执行
+        release.countDown();
+        Assertions.assertTrue(leader.get(5, TimeUnit.SECONDS).contains("Error"));
+        Assertions.assertTrue(follower.get(5, TimeUnit.SECONDS).contains("结果"));
+        Assertions.assertEquals(2, calls.get());
+    }
+
+    @Test
+    void mcpImageSearchErrorsAreNotCached() {
+        AtomicInteger calls = new AtomicInteger();
+        // MCP 工具的结果是内容列表的 JSON，服务端的字符串结果又被序列化了一次
+        ToolCallback image = FunctionToolCallback.builder("image_search_mcp_server_searchImage", (String query) ->
+                        calls.incrementAndGet() <= 2
+                                ? "[{\"type\":\"text\",\"text\":\"\\\"Error search image: 429\\\"\"}]"
+                                : "[{\"type\":\"text\",\"text\":\"\\\"https://images.pexels.com/1.jpg\\\"\"}]")
+                .description("search image")
+                .inputType(String.class)
+                .build();
+        ToolResultCache cache = ToolResultCache.builder()
+                .ttl("searchImage", Duration.ofMinutes(1), ToolRegistration::isCacheableImageResult)
+                .build();
+        ToolCallback search = cache.wrap(image)[0];
+        for (int i = 0; i < 4; i++) {
+            search.call("\"cat\"");
+        }
+        // 两次出错都不缓存，第三次成功后命中缓存
+        Assertions.assertEquals(3, calls.get());
+        Assertions.assertEquals("https://images.pexels.com/1.jpg", ToolResultCache.mcpText(
+                "[{\"type\":\"text\",\"text\":\"\\\"https://images.pexels.com/1.jpg\\\"\"}]"));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    void normalizeSortsKeys() {
+        Assertions.assertEquals(ToolResultCache.normalize("{\"b\":1,\"a\":\" x \"}"),
+                ToolResultCache.normalize("{\"a\":\"x\",\"b\":1}"));
+        Assertions.assertEquals("not json", ToolResultCache.normalize(" not json "));
+    }
+}
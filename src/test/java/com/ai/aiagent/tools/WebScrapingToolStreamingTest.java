@@ -0,0 +1,83 @@
+package com.ai.aiagent.tools;
+
+import com.sun.net.httpserver.HttpServer;
+import org.jsoup.Jsoup;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+class WebScrapingToolStreamingTest {
+
+    private HttpServer server;
+    private String baseUrl;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/large", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+            // 分块传输，约 4 MB
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write("<html><head><title>大页面</title><script>var secret = 1;</script></head><body><article>"
+                        .getBytes(StandardCharsets.UTF_8));
+                byte[] paragraph = "<p>上海静安区适合约会的地点推荐，包括公园、咖啡馆和展览。</p>\n".getBytes(StandardCharsets.UTF_8);
+                for (int i = 0; i < 40000; i++) {
+                    out.write(paragraph);
+                }
+                out.write("</article></body></html>".getBytes(StandardCharsets.UTF_8));
+            } catch (Exception ignored) {
+                // 客户端读够上限后关闭连接
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void stopsDownloadingAtByteLimitAndCapsTokens() {
+        WebScrapingTool tool = new WebScrapingTool(OutboundHttpClient.builder().build(), 64 * 1024, 500);
+        String result = tool.scrapeWebPage(baseUrl + "/large");
+
+        Assertions.assertTrue(result.contains("Title: 大页面"));
+        Assertions.assertTrue(result.contains("only the beginning was read"));
+        Assertions.assertTrue(result.contains("上海静安区适合约会的地点推荐"));
+        Assertions.assertFalse(result.contains("secret"));
+        Assertions.assertTrue(result.contains("content truncated to about 500 tokens"));
+        Assertions.assertTrue(result.length() < 5000);
+    }
+
+    @Test
+    void extractsMainContent() {
+        String html = """
+                <html><body>
+                <nav><a href="/">首页</a><a href="/about">关于</a></nav>
+                <main>
+                  <h1>约会计划</h1>
+                  <p>第一站：静安公园散步，感受城市里的绿意和安静的氛围，适合慢慢聊天。</p>
+                  <ul><li><p>第二站：附近的咖啡馆，点一杯手冲咖啡，找一个靠窗的位置坐下。</p></li></ul>
+                  <p>第三站：晚上去看一场话剧，结束后沿着南京西路散步回家，结束美好的一天。</p>
+                </main>
+                <footer>版权所有</footer><style>p { color: red; }</style>
+                </body></html>""";
+        String text = WebScrapingTool.extractText(Jsoup.parse(html));
+
+        Assertions.assertTrue(text.startsWith("约会计划\n第一站"));
+        Assertions.assertEquals(1, text.split("第二站", -1).length - 1);
+        Assertions.assertFalse(text.contains("首页"));
+        Assertions.assertFalse(text.contains("版权所有"));
+        Assertions.assertFalse(text.contains("color"));
+    }
+}